@@ -2,11 +2,13 @@ package com.bumptech.glide.integration.okhttp3;
 
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import com.bumptech.glide.Priority;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.HttpException;
 import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.data.PartialDownloadStore;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.util.ContentLengthInputStream;
 import com.bumptech.glide.util.Preconditions;
@@ -25,8 +27,11 @@ import okhttp3.ResponseBody;
 public class OkHttpStreamFetcher implements DataFetcher<InputStream>,
  okhttp3.Callback {
   private static final String TAG = "OkHttpFetcher";
+  private static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
   private final Call.Factory client;
   private final GlideUrl url;
+  @Nullable private final PartialDownloadStore partialDownloadStore;
+  @Nullable private PartialDownloadStore.Download download;
   @SuppressWarnings("WeakerAccess") @Synthetic InputStream stream;
   @SuppressWarnings("WeakerAccess") @Synthetic ResponseBody responseBody;
   private volatile Call call;
@@ -35,19 +40,43 @@ public class OkHttpStreamFetcher implements DataFetcher<InputStream>,
   // Public API.
   @SuppressWarnings("WeakerAccess")
   public OkHttpStreamFetcher(Call.Factory client, GlideUrl url) {
+    this(client, url, /*partialDownloadStore=*/ null);
+  }
+
+  /**
+   * @param partialDownloadStore An optional store used to save interrupted downloads and to resume
+   *                             them with range requests.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public OkHttpStreamFetcher(Call.Factory client, GlideUrl url,
+      @Nullable PartialDownloadStore partialDownloadStore) {
     this.client = client;
     this.url = url;
+    this.partialDownloadStore = partialDownloadStore;
   }
 
   @Override
   public void loadData(Priority priority, final DataCallback<? super InputStream> callback) {
+    this.callback = callback;
+    if (partialDownloadStore != null) {
+      download = partialDownloadStore.start(url);
+    }
+    startCall();
+  }
+
+  private void startCall() {
     Request.Builder requestBuilder = new Request.Builder().url(url.toStringUrl());
     for (Map.Entry<String, String> headerEntry : url.getHeaders().entrySet()) {
       String key = headerEntry.getKey();
       requestBuilder.addHeader(key, headerEntry.getValue());
     }
+    if (download != null) {
+      for (Map.Entry<String, String> headerEntry : download.getRequestHeaders().entrySet()) {
+        requestBuilder.header(headerEntry.getKey(), headerEntry.getValue());
+      }
+    }
     Request request = requestBuilder.build();
-    this.callback = callback;
 
     call = client.newCall(request);
     if (Build.VERSION.SDK_INT != Build.VERSION_CODES.O) {
@@ -79,7 +108,25 @@ public class OkHttpStreamFetcher implements DataFetcher<InputStream>,
   @Override
   public void onResponse(@NonNull Call call, @NonNull Response response) {
     responseBody = response.body();
-    if (response.isSuccessful()) {
+    if (download != null && (response.isSuccessful()
+        || (response.code() == STATUS_RANGE_NOT_SATISFIABLE && download.getResumeOffset() > 0))) {
+      ResponseBody body = Preconditions.checkNotNull(responseBody);
+      try {
+        stream = download.onResponse(response.code(), body.byteStream(), body.contentLength(),
+            response.header("Content-Encoding"), response.header("ETag"),
+            response.header("Last-Modified"), response.header("Content-Range"));
+      } catch (IOException e) {
+        onFailure(call, e);
+        return;
+      }
+      if (stream == null) {
+        // The server didn't resume the download as requested, so start again without it.
+        body.close();
+        startCall();
+      } else {
+        callback.onDataReady(stream);
+      }
+    } else if (response.isSuccessful()) {
       long contentLength = Preconditions.checkNotNull(responseBody).contentLength();
       stream = ContentLengthInputStream.obtain(responseBody.byteStream(), contentLength);
       callback.onDataReady(stream);
@@ -100,6 +147,10 @@ public class OkHttpStreamFetcher implements DataFetcher<InputStream>,
     if (responseBody != null) {
       responseBody.close();
     }
+    if (download != null) {
+      download.release();
+      download = null;
+    }
     callback = null;
   }
 
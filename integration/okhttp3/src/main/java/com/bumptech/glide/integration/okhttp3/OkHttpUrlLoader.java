@@ -1,7 +1,9 @@
 package com.bumptech.glide.integration.okhttp3;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.PartialDownloadStore;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
@@ -16,11 +18,24 @@ import okhttp3.OkHttpClient;
 public class OkHttpUrlLoader implements ModelLoader<GlideUrl, InputStream> {
 
   private final Call.Factory client;
+  @Nullable private final PartialDownloadStore partialDownloadStore;
 
   // Public API.
   @SuppressWarnings("WeakerAccess")
   public OkHttpUrlLoader(@NonNull Call.Factory client) {
+    this(client, /*partialDownloadStore=*/ null);
+  }
+
+  /**
+   * @param partialDownloadStore An optional store used to save interrupted downloads and to resume
+   *                             them with range requests.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public OkHttpUrlLoader(@NonNull Call.Factory client,
+      @Nullable PartialDownloadStore partialDownloadStore) {
     this.client = client;
+    this.partialDownloadStore = partialDownloadStore;
   }
 
   @Override
@@ -31,7 +46,7 @@ public class OkHttpUrlLoader implements ModelLoader<GlideUrl, InputStream> {
   @Override
   public LoadData<InputStream> buildLoadData(@NonNull GlideUrl model, int width, int height,
       @NonNull Options options) {
-    return new LoadData<>(model, new OkHttpStreamFetcher(client, model));
+    return new LoadData<>(model, new OkHttpStreamFetcher(client, model, partialDownloadStore));
   }
 
   /**
@@ -42,6 +57,7 @@ public class OkHttpUrlLoader implements ModelLoader<GlideUrl, InputStream> {
   public static class Factory implements ModelLoaderFactory<GlideUrl, InputStream> {
     private static volatile Call.Factory internalClient;
     private final Call.Factory client;
+    @Nullable private final PartialDownloadStore partialDownloadStore;
 
     private static Call.Factory getInternalClient() {
       if (internalClient == null) {
@@ -67,13 +83,26 @@ public class OkHttpUrlLoader implements ModelLoader<GlideUrl, InputStream> {
      * @param client this is typically an instance of {@code OkHttpClient}.
      */
     public Factory(@NonNull Call.Factory client) {
+      this(client, /*partialDownloadStore=*/ null);
+    }
+
+    /**
+     * Constructor for a new Factory that runs requests using given client and resumes interrupted
+     * downloads saved in the given store.
+     *
+     * @param client this is typically an instance of {@code OkHttpClient}.
+     * @param partialDownloadStore an optional store for interrupted downloads.
+     */
+    public Factory(@NonNull Call.Factory client,
+        @Nullable PartialDownloadStore partialDownloadStore) {
       this.client = client;
+      this.partialDownloadStore = partialDownloadStore;
     }
 
     @NonNull
     @Override
     public ModelLoader<GlideUrl, InputStream> build(MultiModelLoaderFactory multiFactory) {
-      return new OkHttpUrlLoader(client);
+      return new OkHttpUrlLoader(client, partialDownloadStore);
     }
 
     @Override
@@ -23,8 +23,10 @@ import com.bumptech.glide.load.data.InputStreamRewinder;
 import com.bumptech.glide.load.engine.Engine;
 import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.cache.MemoryBudgetController;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
 import com.bumptech.glide.load.engine.prefill.BitmapPreFiller;
+import com.bumptech.glide.load.engine.prefill.BitmapSizeHistogram;
 import com.bumptech.glide.load.engine.prefill.PreFillType;
 import com.bumptech.glide.load.model.AssetUriLoader;
 import com.bumptech.glide.load.model.ByteArrayLoader;
@@ -73,6 +75,7 @@ import com.bumptech.glide.module.ManifestParser;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.ImageViewTargetFactory;
 import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.util.Executors;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Util;
 import java.io.File;
@@ -85,6 +88,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A singleton to present a simple static interface for building requests with
@@ -101,6 +105,9 @@ public class Glide implements ComponentCallbacks2 {
   private final BitmapPool bitmapPool;
   private final MemoryCache memoryCache;
   private final BitmapPreFiller bitmapPreFiller;
+  @Nullable private final BitmapSizeHistogram bitmapSizeHistogram;
+  @Nullable private final ExecutorService bitmapSizeHistogramExecutor;
+  @Nullable private final MemoryBudgetController memoryBudgetController;
   private final GlideContext glideContext;
   private final Registry registry;
   private final ArrayPool arrayPool;
@@ -205,7 +212,18 @@ public class Glide implements ComponentCallbacks2 {
       glide.getContext()
           .getApplicationContext()
           .unregisterComponentCallbacks(glide);
+      if (glide.memoryBudgetController != null) {
+        glide.memoryBudgetController.stop();
+      }
       glide.engine.shutdown();
+      if (glide.bitmapSizeHistogramExecutor != null) {
+        // Finishes pending saves first, so they can't overwrite the final save below.
+        Executors.shutdownAndAwaitTermination(glide.bitmapSizeHistogramExecutor);
+      }
+      if (glide.bitmapSizeHistogram != null) {
+        glide.bitmapSizeHistogram.save();
+        glide.bitmapSizeHistogram.clear();
+      }
     }
     glide = null;
   }
@@ -265,6 +283,11 @@ public class Glide implements ComponentCallbacks2 {
     }
     applicationContext.registerComponentCallbacks(glide);
     Glide.glide = glide;
+    // Started only once all components are registered, warm up loads use the registry.
+    glide.engine.warmUp(glide.glideContext);
+    if (glide.bitmapSizeHistogram != null) {
+      glide.bitmapPreFiller.preFillRecordedSizes(glide.bitmapSizeHistogram);
+    }
   }
 
   @Nullable
@@ -306,8 +329,14 @@ public class Glide implements ComponentCallbacks2 {
       @NonNull ConnectivityMonitorFactory connectivityMonitorFactory,
       int logLevel,
       @NonNull RequestOptions defaultRequestOptions,
-      @NonNull Map<Class<?>, TransitionOptions<?, ?>> defaultTransitionOptions) {
+      @NonNull Map<Class<?>, TransitionOptions<?, ?>> defaultTransitionOptions,
+      @Nullable BitmapSizeHistogram bitmapSizeHistogram,
+      @Nullable ExecutorService bitmapSizeHistogramExecutor,
+      @Nullable MemoryBudgetController memoryBudgetController) {
     this.engine = engine;
+    this.bitmapSizeHistogram = bitmapSizeHistogram;
+    this.bitmapSizeHistogramExecutor = bitmapSizeHistogramExecutor;
+    this.memoryBudgetController = memoryBudgetController;
     this.bitmapPool = bitmapPool;
     this.arrayPool = arrayPool;
     this.memoryCache = memoryCache;
@@ -544,6 +573,7 @@ public class Glide implements ComponentCallbacks2 {
     Util.assertMainThread();
     // memory cache needs to be cleared before bitmap pool to clear re-pooled Bitmaps too. See #687.
     memoryCache.clearMemory();
+    engine.clearMemory();
     bitmapPool.clearMemory();
     arrayPool.clearMemory();
   }
@@ -558,8 +588,13 @@ public class Glide implements ComponentCallbacks2 {
     Util.assertMainThread();
     // memory cache needs to be trimmed before bitmap pool to trim re-pooled Bitmaps too. See #687.
     memoryCache.trimMemory(level);
+    engine.trimMemory(level);
     bitmapPool.trimMemory(level);
     arrayPool.trimMemory(level);
+    // The app may be killed at any point once it's in the background.
+    if (bitmapSizeHistogram != null && level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      bitmapSizeHistogram.saveAsync();
+    }
   }
 
   /**
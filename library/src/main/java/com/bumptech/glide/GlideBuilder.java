@@ -8,23 +8,32 @@ import android.support.v4.util.ArrayMap;
 import android.util.Log;
 import com.bumptech.glide.load.DecodeFormat;
 import com.bumptech.glide.load.engine.Engine;
+import com.bumptech.glide.load.engine.EngineStatsListener;
 import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPoolAdapter;
 import com.bumptech.glide.load.engine.bitmap_recycle.LruArrayPool;
 import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.MagazineBitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.SizeClassArrayPool;
 import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.DiskCacheAdmissionPolicy;
 import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
 import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemoryBudgetController;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
 import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.load.engine.cache.TinyLfuResourceCache;
 import com.bumptech.glide.load.engine.executor.GlideExecutor;
+import com.bumptech.glide.load.engine.prefill.BitmapSizeHistogram;
 import com.bumptech.glide.manager.ConnectivityMonitorFactory;
 import com.bumptech.glide.manager.DefaultConnectivityMonitorFactory;
 import com.bumptech.glide.manager.RequestManagerRetriever;
 import com.bumptech.glide.manager.RequestManagerRetriever.RequestManagerFactory;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.util.Preconditions;
+import java.io.File;
 import java.util.Map;
 
 /**
@@ -33,6 +42,10 @@ import java.util.Map;
 // Public API.
 @SuppressWarnings({"unused", "WeakerAccess"})
 public final class GlideBuilder {
+  // Lives next to DiskCache.Factory.DEFAULT_DISK_CACHE_DIR in the app's cache directory.
+  private static final String DEFAULT_HOT_KEY_SNAPSHOT_NAME = "image_manager_hot_keys";
+  private static final String DEFAULT_BITMAP_SIZES_NAME = "image_manager_bitmap_sizes";
+
   private final Map<Class<?>, TransitionOptions<?, ?>> defaultTransitionOptions = new ArrayMap<>();
   private Engine engine;
   private BitmapPool bitmapPool;
@@ -41,6 +54,8 @@ public final class GlideBuilder {
   private GlideExecutor sourceExecutor;
   private GlideExecutor diskCacheExecutor;
   private DiskCache.Factory diskCacheFactory;
+  @Nullable
+  private DiskCache.Factory resourceDiskCacheFactory;
   private MemorySizeCalculator memorySizeCalculator;
   private ConnectivityMonitorFactory connectivityMonitorFactory;
   private int logLevel = Log.INFO;
@@ -49,6 +64,21 @@ public final class GlideBuilder {
   private RequestManagerFactory requestManagerFactory;
   private GlideExecutor animationExecutor;
   private boolean isActiveResourceRetentionAllowed;
+  private boolean isMemoryCacheAdmissionFilterEnabled;
+  private boolean isDownscalingFromLargerVariantsEnabled;
+  private long compressedMemoryCacheSize;
+  private boolean isHotKeyWarmUpEnabled;
+  private boolean isWriteBehindSourceCacheEnabled;
+  private boolean isBitmapPoolMagazineEnabled;
+  private boolean isSizeClassArrayPoolEnabled;
+  private boolean isAdaptiveMemorySizingEnabled;
+  private boolean isBitmapPoolPreFillEnabled;
+  @Nullable
+  private MemoryBudgetController.Listener memoryBudgetListener;
+  @Nullable
+  private EngineStatsListener engineStatsListener;
+  @Nullable
+  private DiskCacheAdmissionPolicy diskCacheAdmissionPolicy;
 
   /**
    * Sets the {@link com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool} implementation to use
@@ -123,6 +153,30 @@ public final class GlideBuilder {
     return this;
   }
 
+  /**
+   * Sets the {@link com.bumptech.glide.load.engine.cache.DiskCache.Factory} used to construct a
+   * separate {@link com.bumptech.glide.load.engine.cache.DiskCache} for decoded and transformed
+   * resources, like thumbnails.
+   *
+   * <p>By default resources and the original unmodified source data share the cache set by
+   * {@link #setDiskCache(DiskCache.Factory)}, so loading a few large originals can evict many
+   * small resources that are read far more often. Setting a resource disk cache gives each its
+   * own size and eviction policy and leaves the cache set by
+   * {@link #setDiskCache(DiskCache.Factory)} with only source data. Hits and misses for each are
+   * reported separately to the {@link EngineStatsListener}.
+   *
+   * <p>The two caches must use different directories.
+   *
+   * @param resourceDiskCacheFactory The factory to use, or {@code null} to store resources in the
+   *                                 same cache as source data.
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setResourceDiskCache(@Nullable DiskCache.Factory resourceDiskCacheFactory) {
+    this.resourceDiskCacheFactory = resourceDiskCacheFactory;
+    return this;
+  }
+
   /**
    * Sets the {@link GlideExecutor} to use when retrieving
    * {@link com.bumptech.glide.load.engine.Resource}s that are not already in the cache.
@@ -392,6 +446,269 @@ public final class GlideBuilder {
     return this;
   }
 
+  /**
+   * If set to {@code true}, the default {@link MemoryCache} will only admit newly released
+   * resources if they've been requested more frequently than the resources they would replace.
+   *
+   * <p>Defaults to {@code false}, in which case the default {@link MemoryCache} is a
+   * {@link LruResourceCache} that admits every resource and evicts the least recently used ones.
+   *
+   * <p>Enabling the filter uses a {@link TinyLfuResourceCache}, which helps apps that show a mix
+   * of images that are re-used on every screen, like avatars and icons, and images that are only
+   * ever shown once, like those in a long feed. Without the filter, the images that are shown once
+   * evict the re-used images from the cache.
+   *
+   * <p>This has no effect if a {@link MemoryCache} is set via {@link #setMemoryCache(MemoryCache)}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsMemoryCacheAdmissionFilterEnabled(
+      boolean isMemoryCacheAdmissionFilterEnabled) {
+    this.isMemoryCacheAdmissionFilterEnabled = isMemoryCacheAdmissionFilterEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, a request that misses in memory may be fulfilled by downscaling a
+   * {@link Bitmap} already in memory that was loaded for a larger size of the same model,
+   * signature, transformations and options, rather than loading the resource again from disk or
+   * from its source.
+   *
+   * <p>Only requests transformed with {@code centerCrop()} or {@code fitCenter()} are fulfilled
+   * this way, from resources whose requested aspect ratio matches the smaller request, so that
+   * the result matches what a load for the smaller size would have produced. Scaling happens in
+   * the request's decode job and uses {@link Bitmap}s from the {@link BitmapPool}, which is
+   * typically much faster than reading and decoding the resource again.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsDownscalingFromLargerVariantsEnabled(
+      boolean isDownscalingFromLargerVariantsEnabled) {
+    this.isDownscalingFromLargerVariantsEnabled = isDownscalingFromLargerVariantsEnabled;
+    return this;
+  }
+
+  /**
+   * Sets the maximum size in bytes of compressed copies of {@link Bitmap}s evicted from the
+   * {@link MemoryCache} to keep in memory.
+   *
+   * <p>Evicted {@link Bitmap}s are losslessly compressed on a background thread and their
+   * original {@link Bitmap}s are returned to the {@link BitmapPool}. Requests that miss in the
+   * {@link MemoryCache} but hit in the compressed cache only need to decompress the pixels into a
+   * {@link Bitmap} from the {@link BitmapPool}, which is typically much faster than reading and
+   * decoding the resource from disk again. Since compressed pixels use a fraction of the memory of
+   * a {@link Bitmap}, a small budget can hold many evicted resources.
+   *
+   * <p>Defaults to {@code 0}, which disables the compressed cache.
+   *
+   * @param compressedMemoryCacheSize The maximum size in bytes, or {@code 0} to disable.
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setCompressedMemoryCacheSize(long compressedMemoryCacheSize) {
+    Preconditions.checkArgument(
+        compressedMemoryCacheSize >= 0, "Compressed memory cache size must be >= 0");
+    this.compressedMemoryCacheSize = compressedMemoryCacheSize;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, Glide saves the keys of the resources that are loaded most frequently
+   * to a small file next to the default disk cache and, the next time the app starts, loads the
+   * resources for those keys from the disk cache into the {@link MemoryCache} in the background.
+   *
+   * <p>Keys are saved periodically while loads are made, when the app's UI is hidden and when Glide
+   * is torn down. Warming up avoids paying for reading and decoding the same handful of resources
+   * that are shown on every launch while the app's first screen is displayed. Resources that are
+   * no longer in the disk cache are never loaded from their source during warm up.
+   *
+   * <p>Only keys for {@link String}, {@link android.net.Uri} and {@link java.io.File} models
+   * without a custom signature and with at most one of Glide's built in scale or crop
+   * transformations are saved.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsHotKeyWarmUpEnabled(boolean isHotKeyWarmUpEnabled) {
+    this.isHotKeyWarmUpEnabled = isHotKeyWarmUpEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, source data that's written to the disk cache because of
+   * {@link com.bumptech.glide.load.engine.DiskCacheStrategy#DATA} or
+   * {@link com.bumptech.glide.load.engine.DiskCacheStrategy#ALL} is decoded from memory while it's
+   * written to the disk cache on a background thread.
+   *
+   * <p>By default source data is written to the disk cache first and then read back from the disk
+   * cache to be decoded, so the first load of each image waits for the disk write and read. With
+   * write behind enabled, source streams up to a few megabytes are held in a buffer from the
+   * {@link ArrayPool} until they're decoded and written instead. Larger streams and any writes
+   * beyond a small backlog are still written before they're decoded.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsWriteBehindSourceCacheEnabled(boolean isWriteBehindSourceCacheEnabled) {
+    this.isWriteBehindSourceCacheEnabled = isWriteBehindSourceCacheEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, the default {@link LruBitmapPool} is wrapped in a
+   * {@link MagazineBitmapPool} that keeps a few recently released {@link android.graphics.Bitmap}s
+   * for each of Glide's background threads.
+   *
+   * <p>Decodes and transformations on the source, disk cache and animation executors all share the
+   * {@link LruBitmapPool}'s lock. With magazines enabled, {@link android.graphics.Bitmap}s that are
+   * put back and then requested again on the same thread don't take that lock. The magazines hold
+   * at most an eighth of the pool's maximum size, taken from the {@link LruBitmapPool}'s share, and
+   * are emptied into the pool when it's trimmed or when they're idle.
+   *
+   * <p>Has no effect if a {@link BitmapPool} is set with {@link #setBitmapPool(BitmapPool)}.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsBitmapPoolMagazineEnabled(boolean isBitmapPoolMagazineEnabled) {
+    this.isBitmapPoolMagazineEnabled = isBitmapPoolMagazineEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, the default {@link ArrayPool} is a {@link SizeClassArrayPool} instead
+   * of an {@link LruArrayPool}.
+   *
+   * <p>{@link SizeClassArrayPool} rounds requests up to size classes at most 25% apart and keeps
+   * lock free lists of arrays for each size class, so buffers for streams, header parsing and GIF
+   * decoding can be obtained from many threads at once without contending on a single lock.
+   *
+   * <p>Has no effect if an {@link ArrayPool} is set with {@link #setArrayPool(ArrayPool)}.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setIsSizeClassArrayPoolEnabled(boolean isSizeClassArrayPoolEnabled) {
+    this.isSizeClassArrayPoolEnabled = isSizeClassArrayPoolEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, Glide records the sizes and configs of the {@link Bitmap}s requested
+   * from the {@link LruBitmapPool}, saves the most frequently requested sizes to a file in the
+   * cache directory and pre-fills the pool with them the next time the app starts.
+   *
+   * <p>Pre-filling starts once the main thread is first idle after Glide is initialized and uses at
+   * most half of the pool, so that the first images loaded after startup can be decoded into
+   * recycled {@link Bitmap}s without having to hard code
+   * {@link com.bumptech.glide.load.engine.prefill.PreFillType}s for each device and layout.
+   *
+   * <p>Has no effect if a {@link BitmapPool} other than an {@link LruBitmapPool} is set with
+   * {@link #setBitmapPool(BitmapPool)}.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   * @see Glide#preFillBitmapPool(com.bumptech.glide.load.engine.prefill.PreFillType.Builder...)
+   */
+  @NonNull
+  public GlideBuilder setIsBitmapPoolPreFillEnabled(boolean isBitmapPoolPreFillEnabled) {
+    this.isBitmapPoolPreFillEnabled = isBitmapPoolPreFillEnabled;
+    return this;
+  }
+
+  /**
+   * If set to {@code true}, a {@link MemoryBudgetController} periodically moves bytes between the
+   * {@link MemoryCache}, the {@link LruBitmapPool} and the {@link LruArrayPool} depending on which
+   * of them misses most often, and before Android O shrinks all of them while the Java heap is
+   * nearly full.
+   *
+   * <p>The sizes from the {@link MemorySizeCalculator} are used as the starting point and their sum
+   * is never exceeded. Only caches and pools created by this builder, or an {@link LruBitmapPool}
+   * or {@link LruArrayPool} set on it, are controlled. If fewer than two of them can be controlled,
+   * this has no effect.
+   *
+   * <p>The controller sets the size multipliers of the caches and pools itself, so
+   * {@link Glide#setMemoryCategory(MemoryCategory)} should not be used when this is enabled.
+   *
+   * <p>Defaults to {@code false}.
+   *
+   * @return This builder.
+   * @see #setMemoryBudgetListener(MemoryBudgetController.Listener)
+   */
+  @NonNull
+  public GlideBuilder setIsAdaptiveMemorySizingEnabled(boolean isAdaptiveMemorySizingEnabled) {
+    this.isAdaptiveMemorySizingEnabled = isAdaptiveMemorySizingEnabled;
+    return this;
+  }
+
+  /**
+   * Sets a {@link MemoryBudgetController.Listener} that's notified each time the sizes of the
+   * memory cache and pools are changed when adaptive sizing is enabled.
+   *
+   * <p>Defaults to {@code null}.
+   *
+   * @return This builder.
+   * @see #setIsAdaptiveMemorySizingEnabled(boolean)
+   */
+  @NonNull
+  public GlideBuilder setMemoryBudgetListener(
+      @Nullable MemoryBudgetController.Listener memoryBudgetListener) {
+    this.memoryBudgetListener = memoryBudgetListener;
+    return this;
+  }
+
+  /**
+   * Sets a {@link DiskCacheAdmissionPolicy} that decides which of the source data and resources
+   * the {@link com.bumptech.glide.load.engine.DiskCacheStrategy} allows to be cached are actually
+   * written to the disk cache.
+   *
+   * <p>Rejecting entries that are only ever loaded once, for example with a
+   * {@link com.bumptech.glide.load.engine.cache.DoorkeeperAdmissionPolicy}, reduces the number of
+   * bytes written to flash. Writes and skipped writes are reported to the
+   * {@link EngineStatsListener}.
+   *
+   * <p>Defaults to {@code null}, in which case every cacheable entry is written.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setDiskCacheAdmissionPolicy(
+      @Nullable DiskCacheAdmissionPolicy diskCacheAdmissionPolicy) {
+    this.diskCacheAdmissionPolicy = diskCacheAdmissionPolicy;
+    return this;
+  }
+
+  /**
+   * Sets an {@link EngineStatsListener} that's notified of hits and misses in each tier Glide
+   * checks when loading a resource and of the time spent fetching, decoding, transforming and
+   * encoding new resources.
+   *
+   * <p>{@link com.bumptech.glide.load.engine.EngineStats} records these events in pre-allocated
+   * counters that can be read at any time and is cheap enough to leave enabled in production.
+   *
+   * <p>Defaults to {@code null}, in which case no stats are recorded.
+   *
+   * @return This builder.
+   */
+  @NonNull
+  public GlideBuilder setEngineStatsListener(@Nullable EngineStatsListener engineStatsListener) {
+    this.engineStatsListener = engineStatsListener;
+    return this;
+  }
+
   void setRequestManagerFactory(@Nullable RequestManagerFactory factory) {
     this.requestManagerFactory = factory;
   }
@@ -424,27 +741,72 @@ public final class GlideBuilder {
       connectivityMonitorFactory = new DefaultConnectivityMonitorFactory();
     }
 
+    LruBitmapPool lruBitmapPool =
+        bitmapPool instanceof LruBitmapPool ? (LruBitmapPool) bitmapPool : null;
     if (bitmapPool == null) {
       int size = memorySizeCalculator.getBitmapPoolSize();
       if (size > 0) {
-        bitmapPool = new LruBitmapPool(size);
+        if (isBitmapPoolMagazineEnabled) {
+          lruBitmapPool = new LruBitmapPool(MagazineBitmapPool.getSharedPoolSize(size));
+          bitmapPool = new MagazineBitmapPool(lruBitmapPool);
+        } else {
+          lruBitmapPool = new LruBitmapPool(size);
+          bitmapPool = lruBitmapPool;
+        }
       } else {
         bitmapPool = new BitmapPoolAdapter();
       }
     }
 
+    BitmapSizeHistogram bitmapSizeHistogram = null;
+    GlideExecutor bitmapSizeHistogramExecutor = null;
+    if (isBitmapPoolPreFillEnabled && lruBitmapPool != null) {
+      bitmapSizeHistogramExecutor = GlideExecutor.newBackgroundExecutor();
+      bitmapSizeHistogram = new BitmapSizeHistogram(
+          new File(context.getCacheDir(), DEFAULT_BITMAP_SIZES_NAME), bitmapSizeHistogramExecutor);
+      lruBitmapPool.setRequestListener(bitmapSizeHistogram);
+    }
+
     if (arrayPool == null) {
-      arrayPool = new LruArrayPool(memorySizeCalculator.getArrayPoolSizeInBytes());
+      int size = memorySizeCalculator.getArrayPoolSizeInBytes();
+      arrayPool = isSizeClassArrayPoolEnabled
+          ? new SizeClassArrayPool(size) : new LruArrayPool(size);
     }
 
     if (memoryCache == null) {
-      memoryCache = new LruResourceCache(memorySizeCalculator.getMemoryCacheSize());
+      memoryCache = isMemoryCacheAdmissionFilterEnabled
+          ? new TinyLfuResourceCache(memorySizeCalculator.getMemoryCacheSize())
+          : new LruResourceCache(memorySizeCalculator.getMemoryCacheSize());
     }
 
     if (diskCacheFactory == null) {
       diskCacheFactory = new InternalCacheDiskCacheFactory(context);
     }
 
+    EngineStatsListener statsListener = engineStatsListener;
+    MemoryBudgetController memoryBudgetController = null;
+    if (isAdaptiveMemorySizingEnabled) {
+      Map<MemoryBudgetController.Target, MemoryBudgetController.Resizable> targets =
+          new ArrayMap<>();
+      if (engine == null) {
+        MemoryBudgetController.MemoryCacheResizable memoryCacheResizable =
+            new MemoryBudgetController.MemoryCacheResizable(memoryCache, engineStatsListener);
+        targets.put(MemoryBudgetController.Target.MEMORY_CACHE, memoryCacheResizable);
+        statsListener = memoryCacheResizable;
+      }
+      if (lruBitmapPool != null) {
+        targets.put(MemoryBudgetController.Target.BITMAP_POOL,
+            MemoryBudgetController.forBitmapPool(lruBitmapPool));
+      }
+      if (arrayPool instanceof LruArrayPool) {
+        targets.put(MemoryBudgetController.Target.ARRAY_POOL,
+            MemoryBudgetController.forArrayPool((LruArrayPool) arrayPool));
+      }
+      if (targets.size() >= 2) {
+        memoryBudgetController = new MemoryBudgetController(targets, memoryBudgetListener);
+      }
+    }
+
     if (engine == null) {
       engine =
           new Engine(
@@ -454,13 +816,24 @@ public final class GlideBuilder {
               sourceExecutor,
               GlideExecutor.newUnlimitedSourceExecutor(),
               GlideExecutor.newAnimationExecutor(),
-              isActiveResourceRetentionAllowed);
+              GlideExecutor.newBackgroundExecutor(),
+              isActiveResourceRetentionAllowed,
+              statsListener,
+              bitmapPool,
+              isDownscalingFromLargerVariantsEnabled,
+              compressedMemoryCacheSize,
+              isHotKeyWarmUpEnabled
+                  ? new File(context.getCacheDir(), DEFAULT_HOT_KEY_SNAPSHOT_NAME) : null,
+              isWriteBehindSourceCacheEnabled ? GlideExecutor.newBackgroundExecutor() : null,
+              diskCacheAdmissionPolicy,
+              arrayPool,
+              resourceDiskCacheFactory);
     }
 
     RequestManagerRetriever requestManagerRetriever =
         new RequestManagerRetriever(requestManagerFactory);
 
-    return new Glide(
+    Glide glide = new Glide(
         context,
         engine,
         memoryCache,
@@ -470,6 +843,14 @@ public final class GlideBuilder {
         connectivityMonitorFactory,
         logLevel,
         defaultRequestOptions.lock(),
-        defaultTransitionOptions);
+        defaultTransitionOptions,
+        bitmapSizeHistogram,
+        bitmapSizeHistogramExecutor,
+        memoryBudgetController);
+
+    if (memoryBudgetController != null) {
+      memoryBudgetController.start();
+    }
+    return glide;
   }
 }
@@ -29,10 +29,12 @@ import com.bumptech.glide.request.target.PreloadTarget;
 import com.bumptech.glide.request.target.Target;
 import com.bumptech.glide.request.target.ViewTarget;
 import com.bumptech.glide.signature.ApplicationVersionSignature;
+import com.bumptech.glide.util.Executors;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Util;
 import java.io.File;
 import java.net.URL;
+import java.util.concurrent.Executor;
 
 /**
  * A generic class that can handle setting options and staring loads for generic resource types.
@@ -565,22 +567,17 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
    */
   @NonNull
   public <Y extends Target<TranscodeType>> Y into(@NonNull Y target) {
-    return into(target, /*targetListener=*/ null);
-  }
-
-  @NonNull
-  private <Y extends Target<TranscodeType>> Y into(
-      @NonNull Y target,
-      @Nullable RequestListener<TranscodeType> targetListener) {
-    return into(target, targetListener, getMutableOptions());
+    // 判断是否在主线程
+    Util.assertMainThread();
+    return into(target, /*targetListener=*/ null, getMutableOptions(),
+        Executors.mainThreadExecutor());
   }
 
   private <Y extends Target<TranscodeType>> Y into(
       @NonNull Y target,
       @Nullable RequestListener<TranscodeType> targetListener,
-      @NonNull RequestOptions options) {
-    // 判断是否在主线程
-    Util.assertMainThread();
+      @NonNull RequestOptions options,
+      Executor callbackExecutor) {
     // 判断target是否为空
     Preconditions.checkNotNull(target);
     // into前必须调用load
@@ -596,7 +593,7 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
      * 这个方法的返回值可知，请求最终托管给SingleRequest的实现
      * 后面会用到{@link SingleRequest#begin()}
      */
-    Request request = buildRequest(target, targetListener, options);
+    Request request = buildRequest(target, targetListener, options, callbackExecutor);
     // 获取原先target的请求
     Request previous = target.getRequest();
     // 判断新请求和原来缓存的请求是否一样
@@ -619,7 +616,10 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
     }
 
     // 如果不一样，清空原来缓存的target
-    requestManager.clear(target);
+    // Targets without a request, like those of submit(), have nothing to clear.
+    if (previous != null) {
+      requestManager.clear(target);
+    }
     // 并把新的请求用view的tag缓存起来
     target.setRequest(request);
 
@@ -700,7 +700,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
      * 在这里初始化RequestBuilder，把Drawable赋值给transcodeClass
      * glideContext.buildImageViewTarget(view, transcodeClass) -- > DrawableImageViewTarget.class
      */
-    return into(glideContext.buildImageViewTarget(view, transcodeClass), null, requestOptions);
+    return into(glideContext.buildImageViewTarget(view, transcodeClass), null, requestOptions,
+        Executors.mainThreadExecutor());
   }
 
   /**
@@ -754,25 +755,33 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
    */
   @NonNull
   public FutureTarget<TranscodeType> submit(int width, int height) {
-    final RequestFutureTarget<TranscodeType> target =
-        new RequestFutureTarget<>(glideContext.getMainHandler(), width, height);
+    final RequestFutureTarget<TranscodeType> target = new RequestFutureTarget<>(width, height);
 
-    if (Util.isOnBackgroundThread()) {
+    if (!hasCoordinatedRequests()) {
+      // Started and delivered on the calling thread and the thread that completes the load.
+      into(target, target, getMutableOptions(), Executors.directExecutor());
+    } else if (Util.isOnBackgroundThread()) {
       glideContext.getMainHandler().post(new Runnable() {
         @Override
         public void run() {
           if (!target.isCancelled()) {
-            into(target, target);
+            into(target, target, getMutableOptions(), Executors.mainThreadExecutor());
           }
         }
       });
     } else {
-      into(target, target);
+      into(target, target, getMutableOptions(), Executors.mainThreadExecutor());
     }
 
     return target;
   }
 
+  // Thumbnail and error requests are coordinated by RequestCoordinators that aren't thread safe,
+  // so requests that have them are still started and delivered on the main thread.
+  private boolean hasCoordinatedRequests() {
+    return thumbnailBuilder != null || thumbSizeMultiplier != null || errorBuilder != null;
+  }
+
   /**
    * Preloads the resource into the cache using the given width and height.
    *
@@ -869,7 +878,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
   private Request buildRequest(
       Target<TranscodeType> target,
       @Nullable RequestListener<TranscodeType> targetListener,
-      RequestOptions requestOptions) {
+      RequestOptions requestOptions,
+      Executor callbackExecutor) {
     return buildRequestRecursive(
         target,
         targetListener,
@@ -878,7 +888,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
         requestOptions.getPriority(),
         requestOptions.getOverrideWidth(),
         requestOptions.getOverrideHeight(),
-        requestOptions);
+        requestOptions,
+        callbackExecutor);
   }
 
   private Request buildRequestRecursive(
@@ -889,7 +900,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
       Priority priority,
       int overrideWidth,
       int overrideHeight,
-      RequestOptions requestOptions) {
+      RequestOptions requestOptions,
+      Executor callbackExecutor) {
 
     // Build the ErrorRequestCoordinator first if necessary so we can update parentCoordinator.
     ErrorRequestCoordinator errorRequestCoordinator = null;
@@ -907,7 +919,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
             priority,
             overrideWidth,
             overrideHeight,
-            requestOptions);
+            requestOptions,
+            callbackExecutor);
 
     if (errorRequestCoordinator == null) {
       return mainRequest;
@@ -929,7 +942,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
         errorBuilder.requestOptions.getPriority(),
         errorOverrideWidth,
         errorOverrideHeight,
-        errorBuilder.requestOptions);
+        errorBuilder.requestOptions,
+        callbackExecutor);
     errorRequestCoordinator.setRequests(mainRequest, errorRequest);
     return errorRequestCoordinator;
   }
@@ -942,7 +956,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
       Priority priority,
       int overrideWidth,
       int overrideHeight,
-      RequestOptions requestOptions) {
+      RequestOptions requestOptions,
+      Executor callbackExecutor) {
     // 是否有缩略图
     if (thumbnailBuilder != null) {
       // Recursive case: contains a potentially recursive thumbnail request builder.
@@ -981,7 +996,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
               transitionOptions,
               priority,
               overrideWidth,
-              overrideHeight);
+              overrideHeight,
+              callbackExecutor);
       isThumbnailBuilt = true;
       // Recursively generate thumbnail requests.
       Request thumbRequest =
@@ -993,7 +1009,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
               thumbPriority,
               thumbOverrideWidth,
               thumbOverrideHeight,
-              thumbnailBuilder.requestOptions);
+              thumbnailBuilder.requestOptions,
+              callbackExecutor);
       isThumbnailBuilt = false;
       coordinator.setRequests(fullRequest, thumbRequest);
       return coordinator;
@@ -1009,7 +1026,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
               transitionOptions,
               priority,
               overrideWidth,
-              overrideHeight);
+              overrideHeight,
+              callbackExecutor);
       RequestOptions thumbnailOptions = requestOptions.clone()
           .sizeMultiplier(thumbSizeMultiplier);
 
@@ -1022,7 +1040,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
               transitionOptions,
               getThumbnailPriority(priority),
               overrideWidth,
-              overrideHeight);
+              overrideHeight,
+              callbackExecutor);
 
       coordinator.setRequests(fullRequest, thumbnailRequest);
       return coordinator;
@@ -1037,7 +1056,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
           transitionOptions,
           priority,
           overrideWidth,
-          overrideHeight);
+          overrideHeight,
+          callbackExecutor);
     }
   }
 
@@ -1049,7 +1069,8 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
       TransitionOptions<?, ? super TranscodeType> transitionOptions,
       Priority priority,
       int overrideWidth,
-      int overrideHeight) {
+      int overrideHeight,
+      Executor callbackExecutor) {
     return SingleRequest.obtain(
         context,
         glideContext,
@@ -1064,6 +1085,7 @@ public class RequestBuilder<TranscodeType> implements Cloneable,
         requestListener,
         requestCoordinator,
         glideContext.getEngine(),
-        transitionOptions.getTransitionFactory());
+        transitionOptions.getTransitionFactory(),
+        callbackExecutor);
   }
 }
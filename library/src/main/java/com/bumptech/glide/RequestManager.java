@@ -200,7 +200,7 @@ public class RequestManager implements LifecycleListener,
    * @see #pauseRequests()
    * @see #resumeRequests()
    */
-  public boolean isPaused() {
+  public synchronized boolean isPaused() {
     Util.assertMainThread();
     return requestTracker.isPaused();
   }
@@ -215,7 +215,7 @@ public class RequestManager implements LifecycleListener,
    * @see #isPaused()
    * @see #resumeRequests()
    */
-  public void pauseRequests() {
+  public synchronized void pauseRequests() {
     Util.assertMainThread();
     requestTracker.pauseRequests();
   }
@@ -236,7 +236,7 @@ public class RequestManager implements LifecycleListener,
    * @see #isPaused()
    * @see #resumeRequests()
    */
-  public void pauseAllRequests() {
+  public synchronized void pauseAllRequests() {
     Util.assertMainThread();
     requestTracker.pauseAllRequests();
   }
@@ -271,7 +271,7 @@ public class RequestManager implements LifecycleListener,
    * @see #isPaused()
    * @see #pauseRequests()
    */
-  public void resumeRequests() {
+  public synchronized void resumeRequests() {
     Util.assertMainThread();
     requestTracker.resumeRequests();
   }
@@ -297,7 +297,7 @@ public class RequestManager implements LifecycleListener,
    * requests.
    */
   @Override
-  public void onStart() {
+  public synchronized void onStart() {
     // 启动先前被加入等待的请求队列
     resumeRequests();
     targetTracker.onStart();
@@ -308,7 +308,7 @@ public class RequestManager implements LifecycleListener,
    * android.permission.ACCESS_NETWORK_STATE permission is present) and pauses in progress loads.
    */
   @Override
-  public void onStop() {
+  public synchronized void onStop() {
     pauseRequests();
     targetTracker.onStop();
   }
@@ -318,7 +318,7 @@ public class RequestManager implements LifecycleListener,
    * all completed requests.
    */
   @Override
-  public void onDestroy() {
+  public synchronized void onDestroy() {
     targetTracker.onDestroy();
     for (Target<?> target : targetTracker.getAll()) {
       clear(target);
@@ -590,7 +590,7 @@ public class RequestManager implements LifecycleListener,
     }
   }
 
-  private void untrackOrDelegate(@NonNull Target<?> target) {
+  private synchronized void untrackOrDelegate(@NonNull Target<?> target) {
     boolean isOwnedByUs = untrack(target);
     // We'll end up here if the Target was cleared after the RequestManager that started the request
     // is destroyed. That can happen for at least two reasons:
@@ -616,7 +616,7 @@ public class RequestManager implements LifecycleListener,
     }
   }
 
-  boolean untrack(@NonNull Target<?> target) {
+  synchronized boolean untrack(@NonNull Target<?> target) {
     Request request = target.getRequest();
     // If the Target doesn't have a request, it's already been cleared.
     if (request == null) {
@@ -632,7 +632,9 @@ public class RequestManager implements LifecycleListener,
     }
   }
 
-  void track(Target<?> target, Request request) {
+  // Synchronized along with the other methods that use the trackers because requests that deliver
+  // their results on other threads, like those of RequestBuilder#submit(), may be tracked on them.
+  synchronized void track(Target<?> target, Request request) {
     targetTracker.track(target);
     requestTracker.runRequest(request);
   }
@@ -651,7 +653,7 @@ public class RequestManager implements LifecycleListener,
     return super.toString() + "{tracker=" + requestTracker + ", treeNode=" + treeNode + "}";
   }
 
-  private static class RequestManagerConnectivityListener implements ConnectivityMonitor
+  private class RequestManagerConnectivityListener implements ConnectivityMonitor
       .ConnectivityListener {
     private final RequestTracker requestTracker;
 
@@ -662,7 +664,10 @@ public class RequestManager implements LifecycleListener,
     @Override
     public void onConnectivityChanged(boolean isConnected) {
       if (isConnected) {
-        requestTracker.restartRequests();
+        // Requests may be tracked concurrently on other threads, see #track(Target, Request).
+        synchronized (RequestManager.this) {
+          requestTracker.restartRequests();
+        }
       }
     }
   }
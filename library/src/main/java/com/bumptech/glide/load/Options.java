@@ -2,13 +2,14 @@ package com.bumptech.glide.load;
 
 import android.support.v4.util.ArrayMap;
 import android.support.v4.util.SimpleArrayMap;
+import com.bumptech.glide.util.CachedHashCodeArrayMap;
 import java.security.MessageDigest;
 
 /**
  * A set of {@link Option Options} to apply to in memory and disk cache keys.
  */
 public final class Options implements Key {
-  private final ArrayMap<Option<?>, Object> values = new ArrayMap<>();
+  private final ArrayMap<Option<?>, Object> values = new CachedHashCodeArrayMap<>();
 
   public void putAll(Options other) {
     values.putAll((SimpleArrayMap<Option<?>, Object>) other.values);
@@ -24,6 +25,10 @@ public final class Options implements Key {
     return values.containsKey(option) ? (T) values.get(option) : option.getDefaultValue();
   }
 
+  public boolean contains(Option<?> option) {
+    return values.containsKey(option);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (o instanceof Options) {
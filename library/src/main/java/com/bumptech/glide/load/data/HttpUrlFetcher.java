@@ -1,6 +1,7 @@
 package com.bumptech.glide.load.data;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
@@ -16,6 +17,7 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -24,6 +26,7 @@ import java.util.Map;
 public class HttpUrlFetcher implements DataFetcher<InputStream> {
   private static final String TAG = "HttpUrlFetcher";
   private static final int MAXIMUM_REDIRECTS = 5;
+  private static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
   @VisibleForTesting
   static final HttpUrlConnectionFactory DEFAULT_CONNECTION_FACTORY =
       new DefaultHttpUrlConnectionFactory();
@@ -31,8 +34,10 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
   private final GlideUrl glideUrl;
   private final int timeout;
   private final HttpUrlConnectionFactory connectionFactory;
+  @Nullable private final PartialDownloadStore partialDownloadStore;
 
   private HttpURLConnection urlConnection;
+  @Nullable private PartialDownloadStore.Download download;
   private InputStream stream;
   private volatile boolean isCancelled;
 
@@ -40,17 +45,38 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
     this(glideUrl, timeout, DEFAULT_CONNECTION_FACTORY);
   }
 
+  /**
+   * @param partialDownloadStore An optional store used to save interrupted downloads and to resume
+   *                             them with range requests.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public HttpUrlFetcher(GlideUrl glideUrl, int timeout,
+      @Nullable PartialDownloadStore partialDownloadStore) {
+    this(glideUrl, timeout, DEFAULT_CONNECTION_FACTORY, partialDownloadStore);
+  }
+
   @VisibleForTesting
   HttpUrlFetcher(GlideUrl glideUrl, int timeout, HttpUrlConnectionFactory connectionFactory) {
+    this(glideUrl, timeout, connectionFactory, /*partialDownloadStore=*/ null);
+  }
+
+  @VisibleForTesting
+  HttpUrlFetcher(GlideUrl glideUrl, int timeout, HttpUrlConnectionFactory connectionFactory,
+      @Nullable PartialDownloadStore partialDownloadStore) {
     this.glideUrl = glideUrl;
     this.timeout = timeout;
     this.connectionFactory = connectionFactory;
+    this.partialDownloadStore = partialDownloadStore;
   }
 
   @Override
   public void loadData(Priority priority, DataCallback<? super InputStream> callback) {
     long startTime = LogTime.getLogTime();
     final InputStream result;
+    if (partialDownloadStore != null) {
+      download = partialDownloadStore.start(glideUrl);
+    }
     try {
       // 请求数据
       result = loadDataWithRedirects(glideUrl.toURL(), 0 /*redirects*/, null /*lastUrl*/,
@@ -92,7 +118,7 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
     }
 
     urlConnection = connectionFactory.build(url);
-    for (Map.Entry<String, String> headerEntry : headers.entrySet()) {
+    for (Map.Entry<String, String> headerEntry : getRequestHeaders(headers).entrySet()) {
       urlConnection.addRequestProperty(headerEntry.getKey(), headerEntry.getValue());
     }
     urlConnection.setConnectTimeout(timeout);
@@ -106,13 +132,32 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
 
     // Connect explicitly to avoid errors in decoders if connection fails.
     urlConnection.connect();
+    if (download != null && download.getResumeOffset() > 0
+        && urlConnection.getResponseCode() == STATUS_RANGE_NOT_SATISFIABLE) {
+      // The saved part of the download is invalid, so start again without it.
+      download.discard();
+      closeConnection();
+      return loadDataWithRedirects(url, redirects, lastUrl, headers);
+    }
     // Set the stream so that it's closed in cleanup to avoid resource leaks. See #2352.
     stream = urlConnection.getInputStream();
     if (isCancelled) {
       return null;
     }
     final int statusCode = urlConnection.getResponseCode();
-    if (statusCode / 100 == 2) {
+    if (statusCode / 100 == 2 && download != null) {
+      InputStream result = download.onResponse(statusCode, stream,
+          urlConnection.getContentLength(), urlConnection.getContentEncoding(),
+          urlConnection.getHeaderField("ETag"), urlConnection.getHeaderField("Last-Modified"),
+          urlConnection.getHeaderField("Content-Range"));
+      if (result == null) {
+        // The server didn't resume the download as requested, so start again without it.
+        closeConnection();
+        return loadDataWithRedirects(url, redirects, lastUrl, headers);
+      }
+      stream = result;
+      return stream;
+    } else if (statusCode / 100 == 2) {
       return getStreamForSuccessfulRequest(urlConnection);
     } else if (statusCode / 100 == 3) {
       String redirectUrlString = urlConnection.getHeaderField("Location");
@@ -122,7 +167,7 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
       URL redirectUrl = new URL(url, redirectUrlString);
       // Closing the stream specifically is required to avoid leaking ResponseBodys in addition
       // to disconnecting the url connection below. See #2352.
-      cleanup();
+      closeConnection();
       return loadDataWithRedirects(redirectUrl, redirects + 1, url, headers);
     } else if (statusCode == -1) {
       throw new HttpException(statusCode);
@@ -145,8 +190,25 @@ public class HttpUrlFetcher implements DataFetcher<InputStream> {
     return stream;
   }
 
+  private Map<String, String> getRequestHeaders(Map<String, String> headers) {
+    if (download == null || download.getResumeOffset() == 0) {
+      return headers;
+    }
+    Map<String, String> result = new HashMap<>(headers);
+    result.putAll(download.getRequestHeaders());
+    return result;
+  }
+
   @Override
   public void cleanup() {
+    closeConnection();
+    if (download != null) {
+      download.release();
+      download = null;
+    }
+  }
+
+  private void closeConnection() {
     if (stream != null) {
       try {
         stream.close();
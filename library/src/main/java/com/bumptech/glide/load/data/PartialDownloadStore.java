@@ -0,0 +1,623 @@
+package com.bumptech.glide.load.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.Log;
+import com.bumptech.glide.load.engine.cache.SafeKeyGenerator;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.util.ContentLengthInputStream;
+import com.bumptech.glide.util.Synthetic;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the bytes received so far for large http downloads that are cancelled or fail part way
+ * through, so that the next fetch of the same url can ask the server for only the remaining bytes
+ * with a {@code Range} request.
+ *
+ * <p>Only responses with a known length of at least the minimum download size, no content
+ * encoding and a strong {@code ETag} or a {@code Last-Modified} header are kept. Resumed requests
+ * send the saved validator in an {@code If-Range} header, so if the data changed on the server it
+ * sends the whole response again and the saved bytes are discarded.
+ *
+ * <p>Bytes are saved as they're read from the response and are deleted as soon as the whole
+ * response is read, so only downloads that are interrupted leave files behind.
+ * The oldest files are deleted once the total size of the saved bytes exceeds the maximum size.
+ *
+ * <p>Fetchers call {@link #start(GlideUrl)} once per fetch and use the returned {@link Download}
+ * to add headers to the request and to wrap the response. Only one fetch of a url at a time
+ * saves or resumes, concurrent fetches of the same url just download it normally.
+ *
+ * <p>Thread safe.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class PartialDownloadStore {
+  public static final String DEFAULT_DIRECTORY_NAME = "image_manager_partial_downloads";
+  /** 20 MB of saved downloads. */
+  public static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+  /** Smaller downloads are cheap to repeat, so they're not saved. */
+  public static final long DEFAULT_MIN_DOWNLOAD_SIZE = 256 * 1024;
+
+  private static final String TAG = "PartialDownloads";
+  private static final int VERSION = 1;
+  private static final String DATA_SUFFIX = ".partial";
+  private static final String METADATA_SUFFIX = ".meta";
+  private static final int STATUS_PARTIAL_CONTENT = 206;
+  private static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
+
+  private final File directory;
+  private final long maxSize;
+  private final long minDownloadSize;
+  private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+  private final Set<String> activeKeys = new HashSet<>();
+
+  public PartialDownloadStore(@NonNull File directory) {
+    this(directory, DEFAULT_MAX_SIZE, DEFAULT_MIN_DOWNLOAD_SIZE);
+  }
+
+  /**
+   * @param directory       A directory used only for saved downloads.
+   * @param maxSize         The maximum total size in bytes of saved downloads.
+   * @param minDownloadSize The minimum size in bytes of a response for it to be saved.
+   */
+  public PartialDownloadStore(@NonNull File directory, long maxSize, long minDownloadSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.minDownloadSize = minDownloadSize;
+  }
+
+  /**
+   * Starts a fetch of the given url and returns the {@link Download} that should be used to make
+   * the request and handle the response.
+   *
+   * <p>{@link Download#release()} must be called once the fetch is cleaned up.
+   */
+  @NonNull
+  public Download start(@NonNull GlideUrl url) {
+    String key = safeKeyGenerator.getSafeKey(url);
+    synchronized (activeKeys) {
+      if (!activeKeys.add(key)) {
+        return new Download(this, /*key=*/ null, /*saved=*/ null);
+      }
+    }
+    return new Download(this, key, readSaved(key));
+  }
+
+  /**
+   * Deletes every saved download that isn't currently being fetched.
+   */
+  public void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    synchronized (activeKeys) {
+      for (File file : files) {
+        if (!activeKeys.contains(getKey(file))) {
+          deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  @Synthetic
+  void release(String key) {
+    synchronized (activeKeys) {
+      activeKeys.remove(key);
+    }
+  }
+
+  @Nullable
+  private Saved readSaved(String key) {
+    File data = getDataFile(key);
+    File metadata = getMetadataFile(key);
+    long length = data.length();
+    if (length <= 0 || !metadata.exists()) {
+      return null;
+    }
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(metadata)));
+      if (is.readInt() != VERSION) {
+        throw new IOException("Unsupported version");
+      }
+      String validator = is.readUTF();
+      long totalLength = is.readLong();
+      if (length >= totalLength) {
+        throw new IOException("Saved data is longer than the response");
+      }
+      return new Saved(validator, length, totalLength);
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Ignoring invalid saved download", e);
+      }
+      delete(key);
+      return null;
+    } finally {
+      close(is);
+    }
+  }
+
+  @Synthetic
+  boolean shouldSave(long contentLength, @Nullable String contentEncoding,
+      @Nullable String validator) {
+    return contentLength >= minDownloadSize && contentLength > 0
+        && (TextUtils.isEmpty(contentEncoding) || "identity".equalsIgnoreCase(contentEncoding))
+        && validator != null;
+  }
+
+  /**
+   * Writes the metadata for a new saved download and returns the stream the data should be
+   * appended to, or {@code null} if the download can't be saved.
+   */
+  @Nullable
+  @Synthetic
+  OutputStream startSaving(String key, String validator, long totalLength) {
+    trimToSize(totalLength);
+    delete(key);
+    if (!directory.mkdirs() && !directory.isDirectory()) {
+      return null;
+    }
+    DataOutputStream metadata = null;
+    try {
+      metadata = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(getMetadataFile(key))));
+      metadata.writeInt(VERSION);
+      metadata.writeUTF(validator);
+      metadata.writeLong(totalLength);
+      metadata.close();
+      metadata = null;
+      return new FileOutputStream(getDataFile(key));
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to start saving download", e);
+      }
+      delete(key);
+      return null;
+    } finally {
+      close(metadata);
+    }
+  }
+
+  @Nullable
+  @Synthetic
+  OutputStream continueSaving(String key) {
+    try {
+      return new FileOutputStream(getDataFile(key), /*append=*/ true);
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to continue saving download", e);
+      }
+      return null;
+    }
+  }
+
+  @Synthetic
+  InputStream openSaved(String key, long length) throws IOException {
+    return new LimitedInputStream(new FileInputStream(getDataFile(key)), length);
+  }
+
+  @Synthetic
+  void delete(String key) {
+    deleteIfExists(getDataFile(key));
+    deleteIfExists(getMetadataFile(key));
+  }
+
+  /**
+   * Deletes the least recently written saved downloads until there's room for the given number of
+   * bytes, or until only downloads that are currently being fetched are left.
+   */
+  private void trimToSize(long toAdd) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size + toAdd <= maxSize) {
+      return;
+    }
+    final Map<File, Long> lastModified = new HashMap<>();
+    for (File file : files) {
+      lastModified.put(file, file.lastModified());
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File lhs, File rhs) {
+        long lhsTime = lastModified.get(lhs);
+        long rhsTime = lastModified.get(rhs);
+        return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+      }
+    });
+    synchronized (activeKeys) {
+      for (File file : files) {
+        if (size + toAdd <= maxSize) {
+          break;
+        }
+        if (!activeKeys.contains(getKey(file))) {
+          size -= file.length();
+          deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  File getDataFile(String key) {
+    return new File(directory, key + DATA_SUFFIX);
+  }
+
+  private File getMetadataFile(String key) {
+    return new File(directory, key + METADATA_SUFFIX);
+  }
+
+  private static String getKey(File file) {
+    String name = file.getName();
+    int end = name.indexOf('.');
+    return end == -1 ? name : name.substring(0, end);
+  }
+
+  private static void deleteIfExists(File file) {
+    if (!file.delete() && file.exists() && Log.isLoggable(TAG, Log.WARN)) {
+      Log.w(TAG, "Failed to delete: " + file);
+    }
+  }
+
+  @Synthetic
+  static void close(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  /**
+   * Returns the validator to send in {@code If-Range}, a strong {@code ETag} if there is one or
+   * otherwise the {@code Last-Modified} date, or {@code null} if there's neither.
+   */
+  @Nullable
+  @Synthetic
+  static String getValidator(@Nullable String etag, @Nullable String lastModified) {
+    if (!TextUtils.isEmpty(etag) && !etag.startsWith("W/")) {
+      return etag;
+    }
+    return TextUtils.isEmpty(lastModified) ? null : lastModified;
+  }
+
+  /**
+   * Returns the first byte position in a {@code Content-Range} header, or {@code -1} if the header
+   * is missing or invalid.
+   */
+  @Synthetic
+  static long getRangeStart(@Nullable String contentRange) {
+    if (contentRange == null || !contentRange.startsWith("bytes ")) {
+      return -1;
+    }
+    int end = contentRange.indexOf('-');
+    if (end == -1) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentRange.substring("bytes ".length(), end).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static final class Saved {
+    @Synthetic final String validator;
+    @Synthetic final long length;
+    @Synthetic final long totalLength;
+
+    Saved(String validator, long length, long totalLength) {
+      this.validator = validator;
+      this.length = length;
+      this.totalLength = totalLength;
+    }
+  }
+
+  /**
+   * A single fetch of a url that may resume a saved download and may save the data it receives.
+   */
+  public static final class Download {
+    private final PartialDownloadStore store;
+    @Nullable private final String key;
+    @Nullable private Saved saved;
+    private boolean isReleased;
+
+    @Synthetic
+    Download(PartialDownloadStore store, @Nullable String key, @Nullable Saved saved) {
+      this.store = store;
+      this.key = key;
+      this.saved = saved;
+    }
+
+    /**
+     * Returns the number of saved bytes the request will ask the server to skip, or {@code 0} if
+     * the request isn't resuming a saved download.
+     */
+    public long getResumeOffset() {
+      return saved != null ? saved.length : 0;
+    }
+
+    /**
+     * Returns the headers to add to the request, which are empty unless the request is resuming
+     * a saved download.
+     */
+    @NonNull
+    public Map<String, String> getRequestHeaders() {
+      if (saved == null) {
+        return Collections.emptyMap();
+      }
+      Map<String, String> result = new HashMap<>();
+      result.put("Range", "bytes=" + saved.length + "-");
+      result.put("If-Range", saved.validator);
+      // Ranges are offsets into the encoded response, so only resume unencoded responses.
+      result.put("Accept-Encoding", "identity");
+      return result;
+    }
+
+    /**
+     * Returns the stream to decode for a successful or {@code 416} response, or {@code null} if
+     * the saved download can't be resumed from this response, in which case the saved bytes are
+     * discarded and the request should be made again with the headers returned by
+     * {@link #getRequestHeaders()}, which will then be empty.
+     *
+     * @param contentLength The length of the response body, or {@code -1} if unknown.
+     */
+    @Nullable
+    public InputStream onResponse(int statusCode, @NonNull InputStream body, long contentLength,
+        @Nullable String contentEncoding, @Nullable String etag, @Nullable String lastModified,
+        @Nullable String contentRange) throws IOException {
+      if (key == null) {
+        return obtain(body, contentLength, contentEncoding);
+      }
+      if (saved != null) {
+        Saved resumed = saved;
+        if (statusCode == STATUS_PARTIAL_CONTENT
+            && getRangeStart(contentRange) == resumed.length
+            && (contentLength == -1 || resumed.length + contentLength == resumed.totalLength)) {
+          if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Resuming download at " + resumed.length + " of " + resumed.totalLength);
+          }
+          InputStream saving = newSavingStream(
+              body, store.continueSaving(key), resumed.totalLength - resumed.length);
+          return ContentLengthInputStream.obtain(
+              new SequenceInputStream(store.openSaved(key, resumed.length), saving),
+              resumed.totalLength);
+        }
+        discard();
+        if (statusCode == STATUS_PARTIAL_CONTENT || statusCode == STATUS_RANGE_NOT_SATISFIABLE) {
+          return null;
+        }
+        // The data changed on the server, which sent the whole response.
+      }
+      String validator = getValidator(etag, lastModified);
+      if (statusCode / 100 == 2 && statusCode != STATUS_PARTIAL_CONTENT
+          && store.shouldSave(contentLength, contentEncoding, validator)) {
+        OutputStream os = store.startSaving(key, validator, contentLength);
+        return ContentLengthInputStream.obtain(
+            newSavingStream(body, os, contentLength), contentLength);
+      }
+      return obtain(body, contentLength, contentEncoding);
+    }
+
+    /**
+     * Discards any saved bytes, for example because the server can't satisfy the requested range,
+     * after which the request should be made again with the headers returned by
+     * {@link #getRequestHeaders()}, which will then be empty.
+     */
+    public void discard() {
+      if (key != null && saved != null) {
+        saved = null;
+        store.delete(key);
+      }
+    }
+
+    private static InputStream obtain(InputStream body, long contentLength,
+        @Nullable String contentEncoding) {
+      // The length of encoded responses doesn't match the length of the decoded stream.
+      return TextUtils.isEmpty(contentEncoding)
+          ? ContentLengthInputStream.obtain(body, contentLength) : body;
+    }
+
+    private InputStream newSavingStream(InputStream body, @Nullable OutputStream os,
+        long length) {
+      return os == null ? body : new SavingInputStream(body, os, length, store, key);
+    }
+
+    /**
+     * Allows other fetches of the same url to save and resume downloads, must be called after the
+     * stream returned by {@link #onResponse} is closed.
+     */
+    public void release() {
+      if (key != null && !isReleased) {
+        isReleased = true;
+        store.release(key);
+      }
+    }
+  }
+
+  /**
+   * Copies every byte read from the response body to the saved data file, deleting the saved
+   * download once the whole body is read, whether or not the end of the body is read before the
+   * stream is closed.
+   *
+   * <p>Connections that are closed early may end the body before all of it is received, in which
+   * case the saved download is kept so that it can be resumed.
+   */
+  private static final class SavingInputStream extends FilterInputStream {
+    private final PartialDownloadStore store;
+    private final String key;
+    private OutputStream os;
+    private long remaining;
+    private boolean isComplete;
+
+    @Synthetic
+    SavingInputStream(InputStream in, OutputStream os, long length, PartialDownloadStore store,
+        String key) {
+      super(in);
+      this.os = new BufferedOutputStream(os);
+      this.remaining = length;
+      this.store = store;
+      this.key = key;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result == -1) {
+        onComplete();
+      } else {
+        save(result);
+      }
+      return result;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+      int read = super.read(buffer, offset, count);
+      if (read == -1) {
+        onComplete();
+      } else {
+        save(buffer, offset, read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+      // Skipped bytes have to be saved too.
+      byte[] buffer = new byte[(int) Math.min(byteCount, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Readers that know the length of the body may stop reading before they see its end.
+      onComplete();
+      super.close();
+    }
+
+    private void save(int value) {
+      remaining--;
+      if (os != null) {
+        try {
+          os.write(value);
+        } catch (IOException e) {
+          onSaveFailed(e);
+        }
+      }
+    }
+
+    private void save(byte[] buffer, int offset, int count) {
+      remaining -= count;
+      if (os != null) {
+        try {
+          os.write(buffer, offset, count);
+        } catch (IOException e) {
+          onSaveFailed(e);
+        }
+      }
+    }
+
+    private void onSaveFailed(IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to save download", e);
+      }
+      stopSaving();
+      store.delete(key);
+    }
+
+    private void onComplete() {
+      if (remaining > 0) {
+        stopSaving();
+      } else if (!isComplete) {
+        isComplete = true;
+        stopSaving();
+        store.delete(key);
+      }
+    }
+
+    private void stopSaving() {
+      if (os != null) {
+        PartialDownloadStore.close(os);
+        os = null;
+      }
+    }
+  }
+
+  /**
+   * Returns exactly the given number of bytes from the start of the saved data file.
+   */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private long remaining;
+
+    @Synthetic
+    LimitedInputStream(InputStream in, long length) {
+      super(in);
+      remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int result = super.read();
+      if (result != -1) {
+        remaining--;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = super.read(buffer, offset, (int) Math.min(count, remaining));
+      if (read != -1) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
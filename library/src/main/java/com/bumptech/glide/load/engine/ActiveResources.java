@@ -12,13 +12,18 @@ import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.engine.EngineResource.ResourceListener;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Synthetic;
-import com.bumptech.glide.util.Util;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Weakly holds resources that have been provided to at least one request and not yet released.
+ *
+ * <p>Thread safe. Cleaning up a reference obtains the {@link ResourceListener}'s lock before this
+ * object's lock, matching the order used by {@link Engine}.
+ */
 final class ActiveResources {
   private static final int MSG_CLEAN_REF = 1;
 
@@ -56,7 +61,7 @@ final class ActiveResources {
     this.listener = listener;
   }
 
-  void activate(Key key, EngineResource<?> resource) {
+  synchronized void activate(Key key, EngineResource<?> resource) {
     ResourceWeakReference toPut =
         new ResourceWeakReference(
             key,
@@ -70,7 +75,7 @@ final class ActiveResources {
     }
   }
 
-  void deactivate(Key key) {
+  synchronized void deactivate(Key key) {
     ResourceWeakReference removed = activeEngineResources.remove(key);
     if (removed != null) {
       removed.reset();
@@ -78,7 +83,7 @@ final class ActiveResources {
   }
 
   @Nullable
-  EngineResource<?> get(Key key) {
+  synchronized EngineResource<?> get(Key key) {
     ResourceWeakReference activeRef = activeEngineResources.get(key);
     if (activeRef == null) {
       return null;
@@ -92,16 +97,21 @@ final class ActiveResources {
   }
 
   private void cleanupActiveReference(@NonNull ResourceWeakReference ref) {
-    Util.assertMainThread();
-    activeEngineResources.remove(ref.key);
-
-    if (!ref.isCacheable || ref.resource == null) {
-      return;
+    // Engine holds its own lock when it calls into this class, so obtain the listener's lock first
+    // to avoid deadlocking with a concurrent load.
+    synchronized (listener) {
+      synchronized (this) {
+        activeEngineResources.remove(ref.key);
+
+        if (!ref.isCacheable || ref.resource == null) {
+          return;
+        }
+        EngineResource<?> newResource =
+            new EngineResource<>(ref.resource, /*isCacheable=*/ true, /*isRecyclable=*/ false);
+        newResource.setResourceListener(ref.key, listener);
+        listener.onResourceReleased(ref.key, newResource);
+      }
     }
-    EngineResource<?> newResource =
-        new EngineResource<>(ref.resource, /*isCacheable=*/ true, /*isRecyclable=*/ false);
-    newResource.setResourceListener(ref.key, listener);
-    listener.onResourceReleased(ref.key, newResource);
   }
 
   private ReferenceQueue<EngineResource<?>> getReferenceQueue() {
@@ -0,0 +1,72 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.cache.ByteBufferDiskCache;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams data from a {@link ByteBufferDiskCache} for entries that aren't stored in their own
+ * file and so can't be loaded with the {@link java.io.File} based model loaders.
+ *
+ * <p>The data is read as it's decoded rather than up front, so decoding can start before the
+ * entry has been read completely and the entry never has to be held in memory in its entirety.
+ */
+final class CachedBufferFetcher implements DataFetcher<InputStream> {
+  private final InputStream stream;
+  private final DataSource dataSource;
+
+  /**
+   * Returns a fetcher for the given key if the given disk cache is a {@link ByteBufferDiskCache}
+   * that contains the key and the data can be decoded, or {@code null} otherwise.
+   */
+  static CachedBufferFetcher obtain(DecodeHelper<?> helper, DiskCache diskCache, Key key,
+      DataSource dataSource) {
+    if (!(diskCache instanceof ByteBufferDiskCache) || !helper.hasLoadPath(InputStream.class)) {
+      return null;
+    }
+    InputStream stream = ((ByteBufferDiskCache) diskCache).openStream(key);
+    return stream != null ? new CachedBufferFetcher(stream, dataSource) : null;
+  }
+
+  private CachedBufferFetcher(InputStream stream, DataSource dataSource) {
+    this.stream = stream;
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public void loadData(Priority priority, DataCallback<? super InputStream> callback) {
+    callback.onDataReady(stream);
+  }
+
+  @Override
+  public void cleanup() {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // Ignored.
+    }
+  }
+
+  @Override
+  public void cancel() {
+    // Do nothing.
+  }
+
+  @NonNull
+  @Override
+  public Class<InputStream> getDataClass() {
+    return InputStream.class;
+  }
+
+  @NonNull
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+}
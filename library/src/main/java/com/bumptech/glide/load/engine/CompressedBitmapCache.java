@@ -0,0 +1,301 @@
+package com.bumptech.glide.load.engine;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.load.resource.bitmap.LazyBitmapDrawableResource;
+import com.bumptech.glide.util.LogTime;
+import com.bumptech.glide.util.Synthetic;
+import com.bumptech.glide.util.Util;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A second in memory tier that holds compressed copies of the pixels of {@link Bitmap}s evicted
+ * from the {@link com.bumptech.glide.load.engine.cache.MemoryCache} within a fixed byte budget.
+ *
+ * <p>Restoring a {@link Bitmap} from this cache only requires inflating its pixels into a
+ * {@link Bitmap} from the {@link BitmapPool}, which avoids reading the resource from disk and
+ * decoding it again. Pixels are compressed with {@link Deflater#BEST_SPEED} on a background
+ * {@link Executor} so that evictions on the main thread stay cheap, and are restored by
+ * {@link DecodeJob}s, like resources in the disk cache. Compression is lossless, so a restored
+ * {@link Bitmap} is identical to the evicted one.
+ *
+ * <p>Thread safe.
+ */
+class CompressedBitmapCache {
+  private static final String TAG = "CompressedBitmapCache";
+
+  private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, /*accessOrder=*/ true);
+  private final BitmapPool bitmapPool;
+  private final ArrayPool arrayPool;
+  private final Executor executor;
+  private final long maxSize;
+
+  private long currentSize;
+  // Incremented each time the cache is cleared so that pending compressions can be skipped.
+  private int generation;
+
+  CompressedBitmapCache(@NonNull BitmapPool bitmapPool, @NonNull ArrayPool arrayPool,
+      @NonNull Executor executor, long maxSize) {
+    this.bitmapPool = bitmapPool;
+    this.arrayPool = arrayPool;
+    this.executor = executor;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Schedules the {@link Bitmap} in the given evicted resource to be compressed and returns
+   * {@code true}, in which case this cache will recycle the resource with the given
+   * {@link ResourceRecycler} once it's done, or returns {@code false} if the resource can't be
+   * compressed and should be recycled by the caller.
+   */
+  boolean offer(@NonNull final Key key, @NonNull final Resource<?> resource,
+      @NonNull final ResourceRecycler resourceRecycler) {
+    Object value = resource.get();
+    final Bitmap bitmap = getBitmap(value);
+    if (bitmap == null || !canCompress(bitmap)) {
+      return false;
+    }
+    final boolean isDrawable = value instanceof BitmapDrawable;
+    final int offeredGeneration;
+    synchronized (this) {
+      offeredGeneration = generation;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (isCurrentGeneration(offeredGeneration)) {
+            compress(key, bitmap, isDrawable, offeredGeneration);
+          }
+        } finally {
+          // Recycled here rather than by the caller so that the Bitmap isn't re-used while its
+          // pixels are being copied.
+          resourceRecycler.recycle(resource);
+        }
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if a compressed copy is stored for the given key.
+   */
+  synchronized boolean contains(@NonNull Key key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Removes and returns a new resource containing the pixels of the {@link Bitmap} stored for the
+   * given key, or {@code null} if none is stored.
+   *
+   * <p>The stored entry is only valid until its key is loaded again, so it's removed even if it
+   * can't be restored.
+   *
+   * <p>Inflating the pixels may take a few milliseconds, so this must not be called on the main
+   * thread.
+   */
+  @Nullable
+  Resource<?> remove(@NonNull Resources resources, @NonNull Key key) {
+    Entry entry;
+    synchronized (this) {
+      entry = entries.remove(key);
+      if (entry == null) {
+        return null;
+      }
+      currentSize -= entry.getSize();
+    }
+
+    long startTime = LogTime.getLogTime();
+    Bitmap bitmap = decompress(entry);
+    if (bitmap == null) {
+      return null;
+    }
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Restored " + bitmap.getWidth() + "x" + bitmap.getHeight() + " Bitmap from "
+          + entry.getSize() + " bytes in " + LogTime.getElapsedMillis(startTime) + "ms");
+    }
+    Resource<Bitmap> bitmapResource = BitmapResource.obtain(bitmap, bitmapPool);
+    return entry.isDrawable
+        ? LazyBitmapDrawableResource.obtain(resources, bitmapResource) : bitmapResource;
+  }
+
+  synchronized long getCurrentSize() {
+    return currentSize;
+  }
+
+  long getMaxSize() {
+    return maxSize;
+  }
+
+  void clearMemory() {
+    synchronized (this) {
+      generation++;
+      entries.clear();
+      currentSize = 0;
+    }
+  }
+
+  void trimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      clearMemory();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      synchronized (this) {
+        trimToSize(maxSize / 2);
+      }
+    }
+  }
+
+  @Synthetic
+  synchronized boolean isCurrentGeneration(int offeredGeneration) {
+    return generation == offeredGeneration;
+  }
+
+  @Synthetic
+  void compress(Key key, Bitmap bitmap, boolean isDrawable, int offeredGeneration) {
+    long startTime = LogTime.getLogTime();
+    int byteCount = bitmap.getByteCount();
+    byte[] compressed;
+    byte[] pixels = arrayPool.get(byteCount, byte[].class);
+    byte[] buffer = arrayPool.get(byteCount, byte[].class);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, /*nowrap=*/ true);
+    try {
+      bitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels, 0, byteCount));
+      deflater.setInput(pixels, 0, byteCount);
+      deflater.finish();
+      int length = deflater.deflate(buffer, 0, byteCount);
+      if (!deflater.finished() || length > maxSize) {
+        // Pixels that don't compress or that don't fit in the cache aren't worth keeping.
+        return;
+      }
+      compressed = Arrays.copyOf(buffer, length);
+    } finally {
+      deflater.end();
+      arrayPool.put(buffer);
+      arrayPool.put(pixels);
+    }
+
+    Entry entry = new Entry(compressed, bitmap.getWidth(), bitmap.getHeight(),
+        bitmap.getConfig(), bitmap.hasAlpha(), isDrawable);
+    synchronized (this) {
+      if (generation != offeredGeneration) {
+        return;
+      }
+      Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        currentSize -= previous.getSize();
+      }
+      currentSize += entry.getSize();
+      trimToSize(maxSize);
+    }
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Compressed " + byteCount + " bytes to " + compressed.length + " bytes in "
+          + LogTime.getElapsedMillis(startTime) + "ms, key: " + key);
+    }
+  }
+
+  @Nullable
+  private Bitmap decompress(Entry entry) {
+    int byteCount = Util.getBitmapByteSize(
+        entry.width, entry.height, entry.config);
+    Bitmap result = bitmapPool.getDirty(entry.width, entry.height, entry.config);
+    byte[] pixels = arrayPool.get(byteCount, byte[].class);
+    Inflater inflater = new Inflater(/*nowrap=*/ true);
+    try {
+      inflater.setInput(entry.data);
+      int length = inflater.inflate(pixels, 0, byteCount);
+      if (length != byteCount) {
+        throw new DataFormatException("Expected " + byteCount + " bytes, but got: " + length);
+      }
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+        result.setPremultiplied(true);
+      }
+      result.copyPixelsFromBuffer(ByteBuffer.wrap(pixels, 0, byteCount));
+    } catch (DataFormatException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to restore compressed Bitmap", e);
+      }
+      bitmapPool.put(result);
+      return null;
+    } finally {
+      inflater.end();
+      arrayPool.put(pixels);
+    }
+    result.setHasAlpha(entry.hasAlpha);
+    return result;
+  }
+
+  private void trimToSize(long size) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (currentSize > size && iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      currentSize -= eldest.getSize();
+    }
+  }
+
+  @Nullable
+  private static Bitmap getBitmap(Object value) {
+    if (value instanceof Bitmap) {
+      return (Bitmap) value;
+    } else if (value instanceof BitmapDrawable) {
+      return ((BitmapDrawable) value).getBitmap();
+    }
+    return null;
+  }
+
+  private static boolean canCompress(Bitmap bitmap) {
+    Bitmap.Config config = bitmap.getConfig();
+    if (bitmap.isRecycled() || config == null) {
+      return false;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE) {
+      return false;
+    }
+    // Pixels are copied out and back in premultiplied form, which only round trips exactly for
+    // premultiplied Bitmaps.
+    return Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || bitmap.isPremultiplied();
+  }
+
+  private static final class Entry {
+    @Synthetic final byte[] data;
+    @Synthetic final int width;
+    @Synthetic final int height;
+    @Synthetic final Bitmap.Config config;
+    @Synthetic final boolean hasAlpha;
+    @Synthetic final boolean isDrawable;
+
+    @Synthetic
+    Entry(byte[] data, int width, int height, Bitmap.Config config, boolean hasAlpha,
+        boolean isDrawable) {
+      this.data = data;
+      this.width = width;
+      this.height = height;
+      this.config = config;
+      this.hasAlpha = hasAlpha;
+      this.isDrawable = isDrawable;
+    }
+
+    @Synthetic
+    int getSize() {
+      return data.length;
+    }
+  }
+}
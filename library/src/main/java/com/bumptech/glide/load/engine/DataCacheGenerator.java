@@ -56,6 +56,8 @@ class DataCacheGenerator implements DataFetcherGenerator,
         this.sourceKey = sourceId;
         modelLoaders = helper.getModelLoaders(cacheFile);
         modelLoaderIndex = 0;
+      } else if (startCachedBuffer(sourceId, originalKey)) {
+        return true;
       }
     }
 
@@ -75,6 +77,23 @@ class DataCacheGenerator implements DataFetcherGenerator,
     return started;
   }
 
+  /**
+   * Starts a load from the data for the given key if it's stored in a
+   * {@link com.bumptech.glide.load.engine.cache.ByteBufferDiskCache} without its own file.
+   */
+  private boolean startCachedBuffer(Key sourceId, Key cacheKey) {
+    CachedBufferFetcher fetcher =
+        CachedBufferFetcher.obtain(helper, helper.getDiskCache(), cacheKey,
+            DataSource.DATA_DISK_CACHE);
+    if (fetcher == null) {
+      return false;
+    }
+    this.sourceKey = sourceId;
+    loadData = new LoadData<>(cacheKey, fetcher);
+    fetcher.loadData(helper.getPriority(), this);
+    return true;
+  }
+
   private boolean hasNextModelLoader() {
     return modelLoaderIndex < modelLoaders.size();
   }
@@ -3,7 +3,7 @@ package com.bumptech.glide.load.engine;
 import android.support.annotation.NonNull;
 import com.bumptech.glide.load.Encoder;
 import com.bumptech.glide.load.Options;
-import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.ExpiringDiskCache;
 import java.io.File;
 
 /**
@@ -12,13 +12,17 @@ import java.io.File;
  * {@link com.bumptech.glide.load.ResourceEncoder} and the given data or
  * {@link com.bumptech.glide.load.engine.Resource}.
  *
+ * <p>Entries are given the time to live set with {@link ExpiringDiskCache#TIME_TO_LIVE_MILLIS}
+ * in the given options, if any.
+ *
  * @param <DataType> The type of data that will be encoded (InputStream, ByteBuffer,
  *                  Resource<Bitmap> etc).
  */
-class DataCacheWriter<DataType> implements DiskCache.Writer {
+class DataCacheWriter<DataType> implements ExpiringDiskCache.TimeToLiveWriter {
   private final Encoder<DataType> encoder;
   private final DataType data;
   private final Options options;
+  private long writtenBytes;
 
   DataCacheWriter(Encoder<DataType> encoder, DataType data, Options options) {
     this.encoder = encoder;
@@ -28,6 +32,24 @@ class DataCacheWriter<DataType> implements DiskCache.Writer {
 
   @Override
   public boolean write(@NonNull File file) {
-    return encoder.encode(data, file, options);
+    boolean isWritten = encoder.encode(data, file, options);
+    if (isWritten) {
+      writtenBytes = file.length();
+    }
+    return isWritten;
+  }
+
+  @Override
+  public long getTimeToLiveMillis() {
+    Long timeToLiveMillis = options.get(ExpiringDiskCache.TIME_TO_LIVE_MILLIS);
+    return timeToLiveMillis != null ? timeToLiveMillis : 0;
+  }
+
+  /**
+   * Returns the size in bytes of the file most recently written by this writer, or {@code 0} if
+   * nothing has been written.
+   */
+  long getWrittenBytes() {
+    return writtenBytes;
   }
 }
@@ -96,6 +96,10 @@ final class DecodeHelper<Transcode> {
     return diskCacheProvider.getDiskCache();
   }
 
+  DiskCache getResourceDiskCache() {
+    return diskCacheProvider.getResourceDiskCache();
+  }
+
   DiskCacheStrategy getDiskCacheStrategy() {
     return diskCacheStrategy;
   }
@@ -2,6 +2,8 @@ package com.bumptech.glide.load.engine;
 
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.os.TraceCompat;
 import android.support.v4.util.Pools;
 import android.util.Log;
@@ -19,6 +21,7 @@ import com.bumptech.glide.load.data.DataRewinder;
 import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.resource.bitmap.Downsampler;
 import com.bumptech.glide.util.LogTime;
+import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Synthetic;
 import com.bumptech.glide.util.pool.FactoryPools.Poolable;
 import com.bumptech.glide.util.pool.StateVerifier;
@@ -52,6 +55,11 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
   @Synthetic
   final DeferredEncodeManager<?> deferredEncodeManager = new DeferredEncodeManager<>();
   private final ReleaseManager releaseManager = new ReleaseManager();
+  @SuppressWarnings("WeakerAccess") @Synthetic @Nullable final EngineStatsListener statsListener;
+  private final SourceFetchCoalescer sourceFetchCoalescer;
+  @Nullable private final SourceCacheWriter sourceCacheWriter;
+  @SuppressWarnings("WeakerAccess") @Synthetic final DiskCacheAdmission admission;
+  @Nullable private final DerivedResourceProvider derivedResourceProvider;
 
   private GlideContext glideContext;
   @SuppressWarnings("WeakerAccess") @Synthetic Key signature;
@@ -66,7 +74,10 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
   private Stage stage;
   private RunReason runReason;
   private long startFetchTime;
+  // The time spent fetching and decoding, excluding time spent waiting to be (re)scheduled.
+  private double loadTimeMillis;
   private boolean onlyRetrieveFromCache;
+  private boolean isDerivable;
 
   private Thread currentThread;
   @SuppressWarnings("WeakerAccess") @Synthetic Key currentSourceKey;
@@ -75,13 +86,23 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
   private DataSource currentDataSource;
   private DataFetcher<?> currentFetcher;
 
+  @SuppressWarnings("WeakerAccess") @Synthetic double transformMillis;
+
   private volatile DataFetcherGenerator currentGenerator;
   private volatile boolean isCallbackNotified;
   private volatile boolean isCancelled;
 
-  DecodeJob(DiskCacheProvider diskCacheProvider, Pools.Pool<DecodeJob<?>> pool) {
+  DecodeJob(DiskCacheProvider diskCacheProvider, Pools.Pool<DecodeJob<?>> pool,
+      @Nullable EngineStatsListener statsListener, SourceFetchCoalescer sourceFetchCoalescer,
+      @Nullable SourceCacheWriter sourceCacheWriter, DiskCacheAdmission admission,
+      @Nullable DerivedResourceProvider derivedResourceProvider) {
     this.diskCacheProvider = diskCacheProvider;
     this.pool = pool;
+    this.statsListener = statsListener;
+    this.sourceFetchCoalescer = sourceFetchCoalescer;
+    this.sourceCacheWriter = sourceCacheWriter;
+    this.admission = admission;
+    this.derivedResourceProvider = derivedResourceProvider;
   }
 
   DecodeJob<R> init(
@@ -99,6 +120,7 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
       boolean isTransformationRequired,
       boolean isScaleOnlyOrNoTransform,
       boolean onlyRetrieveFromCache,
+      boolean isDerivable,
       Options options,
       Callback<R> callback,
       int order) {
@@ -125,6 +147,7 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     this.height = height;
     this.diskCacheStrategy = diskCacheStrategy;
     this.onlyRetrieveFromCache = onlyRetrieveFromCache;
+    this.isDerivable = isDerivable && derivedResourceProvider != null;
     this.options = options;
     this.callback = callback;
     this.order = order;
@@ -133,12 +156,12 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
   }
 
   /**
-   * Returns true if this job will attempt to decode a resource from the disk cache, and false if it
-   * will always decode from source.
+   * Returns true if this job will attempt to derive a resource from memory or decode a resource
+   * from the disk cache, and false if it will always decode from source.
    */
   boolean willDecodeFromCache() {
     Stage firstStage = getNextStage(Stage.INITIALIZE);
-    return firstStage == Stage.RESOURCE_CACHE || firstStage == Stage.DATA_CACHE;
+    return isDerivable || firstStage == Stage.RESOURCE_CACHE || firstStage == Stage.DATA_CACHE;
   }
 
   /**
@@ -191,6 +214,8 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     currentDataSource = null;
     currentFetcher = null;
     startFetchTime = 0L;
+    loadTimeMillis = 0;
+    transformMillis = 0;
     isCancelled = false;
     throwables.clear();
     pool.release(this);
@@ -269,8 +294,17 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
      switch (runReason) {
        // 首次请求时
       case INITIALIZE:
+        if (isDerivable && deriveFromMemory()) {
+          break;
+        }
         stage = getNextStage(Stage.INITIALIZE);
         currentGenerator = getNextGenerator();
+        if (isDerivable && stage == Stage.SOURCE) {
+          // We were started on the disk cache executor to derive the resource, source loads
+          // belong on the source executor.
+          reschedule();
+          break;
+        }
         // load数据
         runGenerators();
         break;
@@ -287,6 +321,27 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     }
   }
 
+  /**
+   * Returns {@code true} and completes the job if the resource could be derived from another
+   * resource in memory, or {@code false} if the job should go on to the disk cache and source.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean deriveFromMemory() {
+    long startTime = LogTime.getLogTime();
+    Resource<R> resource = (Resource<R>) Preconditions.checkNotNull(derivedResourceProvider)
+        .loadDerivedResource(glideContext, loadKey);
+    if (resource == null) {
+      return false;
+    }
+    // The time it takes to derive the resource again is its cost if it's evicted.
+    loadTimeMillis += LogTime.getElapsedMillis(startTime);
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      logWithTimeAndKey("Derived resource from memory", startTime);
+    }
+    notifyEncodeAndRelease(resource, DataSource.MEMORY_CACHE);
+    return true;
+  }
+
   private DataFetcherGenerator getNextGenerator() {
     switch (stage) {
       case RESOURCE_CACHE:
@@ -294,7 +349,8 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
       case DATA_CACHE:
         return new DataCacheGenerator(decodeHelper, this);
       case SOURCE:
-        return new SourceGenerator(decodeHelper, this);
+        return new SourceGenerator(
+            decodeHelper, this, sourceFetchCoalescer, sourceCacheWriter, admission);
       case FINISHED:
         return null;
       default:
@@ -313,6 +369,7 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     // currentGenerator.startNext() : 从当前策略对应的Generator获取数据，数据获取成功则回调DecodeJob的onDataFetcherReady对资源进行处理。否则尝试从下一个策略的Generator获取数据
     while (!isCancelled && currentGenerator != null
         && !(isStarted = currentGenerator.startNext())) {
+      notifyTierMiss(stage);
       stage = getNextStage(stage);
       // 根据Stage获取到相应的Generator后会执行currentGenerator.startNext()，如果中途startNext返回true，则直接回调，否则最终会得到SOURCE的stage，重新调度任务
       currentGenerator = getNextGenerator();
@@ -332,6 +389,47 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     // onDataFetcherReady.
   }
 
+  private void notifyTierMiss(Stage stage) {
+    if (statsListener == null) {
+      return;
+    }
+    switch (stage) {
+      case RESOURCE_CACHE:
+        statsListener.onTierMiss(EngineStatsListener.Tier.RESOURCE_DISK_CACHE);
+        break;
+      case DATA_CACHE:
+        statsListener.onTierMiss(EngineStatsListener.Tier.DATA_DISK_CACHE);
+        break;
+      case SOURCE:
+        statsListener.onTierMiss(EngineStatsListener.Tier.SOURCE);
+        break;
+      default:
+        // Other stages don't correspond to a tier.
+        break;
+    }
+  }
+
+  private void notifyTierHit(DataSource dataSource, Resource<R> resource) {
+    if (statsListener == null) {
+      return;
+    }
+    switch (dataSource) {
+      case RESOURCE_DISK_CACHE:
+        statsListener.onTierHit(EngineStatsListener.Tier.RESOURCE_DISK_CACHE, resource.getSize());
+        break;
+      case DATA_DISK_CACHE:
+        statsListener.onTierHit(EngineStatsListener.Tier.DATA_DISK_CACHE, resource.getSize());
+        break;
+      case LOCAL:
+      case REMOTE:
+        statsListener.onTierHit(EngineStatsListener.Tier.SOURCE, resource.getSize());
+        break;
+      default:
+        // Memory cache hits are reported by Engine.
+        break;
+    }
+  }
+
   private void notifyFailed() {
     setNotifiedOrThrow();
     GlideException e = new GlideException("Failed to load resource", new ArrayList<>(throwables));
@@ -341,7 +439,8 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
 
   private void notifyComplete(Resource<R> resource, DataSource dataSource) {
     setNotifiedOrThrow();
-    callback.onResourceReady(resource, dataSource);
+    callback.onResourceReady(
+        resource, dataSource, (long) loadTimeMillis);
   }
 
   private void setNotifiedOrThrow() {
@@ -385,6 +484,11 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     this.currentFetcher = fetcher;
     this.currentDataSource = dataSource;
     this.currentAttemptingKey = attemptedKey;
+    double fetchMillis = LogTime.getElapsedMillis(startFetchTime);
+    loadTimeMillis += fetchMillis;
+    if (statsListener != null) {
+      statsListener.onPhaseCompleted(EngineStatsListener.Phase.FETCH, fetchMillis);
+    }
     if (Thread.currentThread() != currentThread) {
       runReason = RunReason.DECODE_DATA;
       callback.reschedule(this);
@@ -429,6 +533,7 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
       throwables.add(e);
     }
     if (resource != null) {
+      notifyTierHit(currentDataSource, resource);
       notifyEncodeAndRelease(resource, currentDataSource);
     } else {
       runGenerators();
@@ -452,7 +557,12 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
     stage = Stage.ENCODE;
     try {
       if (deferredEncodeManager.hasResourceToEncode()) {
-        deferredEncodeManager.encode(diskCacheProvider, options);
+        long startTime = LogTime.getLogTime();
+        deferredEncodeManager.encode(diskCacheProvider, options, admission);
+        if (statsListener != null) {
+          statsListener.onPhaseCompleted(
+              EngineStatsListener.Phase.ENCODE, LogTime.getElapsedMillis(startTime));
+        }
       }
     } finally {
       if (lockedResource != null) {
@@ -471,7 +581,13 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
         return null;
       }
       long startTime = LogTime.getLogTime();
+      transformMillis = 0;
       Resource<R> result = decodeFromFetcher(data, dataSource);
+      loadTimeMillis += LogTime.getElapsedMillis(startTime);
+      if (statsListener != null && result != null) {
+        statsListener.onPhaseCompleted(EngineStatsListener.Phase.DECODE,
+            Math.max(0, LogTime.getElapsedMillis(startTime) - transformMillis));
+      }
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
         logWithTimeAndKey("Decoded result " + result, startTime);
       }
@@ -551,7 +667,13 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
       Resource<Z> transformed = decoded;
       if (dataSource != DataSource.RESOURCE_DISK_CACHE) {
         appliedTransformation = decodeHelper.getTransformation(resourceSubClass);
+        long startTime = LogTime.getLogTime();
         transformed = appliedTransformation.transform(glideContext, decoded, width, height);
+        if (statsListener != null) {
+          double elapsedMillis = LogTime.getElapsedMillis(startTime);
+          transformMillis += elapsedMillis;
+          statsListener.onPhaseCompleted(EngineStatsListener.Phase.TRANSFORM, elapsedMillis);
+        }
       }
       // TODO: Make this the responsibility of the Transformation.
       if (!decoded.equals(transformed)) {
@@ -596,9 +718,12 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
             throw new IllegalArgumentException("Unknown strategy: " + encodeStrategy);
         }
 
-        LockedResource<Z> lockedResult = LockedResource.obtain(transformed);
-        deferredEncodeManager.init(key, encoder, lockedResult);
-        result = lockedResult;
+        boolean isResource = encodeStrategy == EncodeStrategy.TRANSFORMED;
+        if (admission.shouldWrite(key, dataSource, isResource, transformed.getSize())) {
+          LockedResource<Z> lockedResult = LockedResource.obtain(transformed);
+          deferredEncodeManager.init(key, encoder, lockedResult, isResource);
+          result = lockedResult;
+        }
       }
       return result;
     }
@@ -650,27 +775,37 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
    * Allows transformed resources to be encoded after the transcoded result is already delivered
    * to requestors.
    */
-  private static class DeferredEncodeManager<Z> {
+  @VisibleForTesting
+  static class DeferredEncodeManager<Z> {
     private Key key;
     private ResourceEncoder<Z> encoder;
     private LockedResource<Z> toEncode;
+    private boolean isResource;
 
     @Synthetic
     DeferredEncodeManager() { }
 
     // We just need the encoder and resource type to match, which this will enforce.
     @SuppressWarnings("unchecked")
-    <X> void init(Key key, ResourceEncoder<X> encoder, LockedResource<X> toEncode) {
+    <X> void init(Key key, ResourceEncoder<X> encoder, LockedResource<X> toEncode,
+        boolean isResource) {
       this.key = key;
+      this.isResource = isResource;
       this.encoder = (ResourceEncoder<Z>) encoder;
       this.toEncode = (LockedResource<Z>) toEncode;
     }
 
-    void encode(DiskCacheProvider diskCacheProvider, Options options) {
+    void encode(DiskCacheProvider diskCacheProvider, Options options,
+        DiskCacheAdmission admission) {
       TraceCompat.beginSection("DecodeJob.encode");
       try {
-        diskCacheProvider.getDiskCache().put(key,
-            new DataCacheWriter<>(encoder, toEncode, options));
+        DataCacheWriter<Resource<Z>> writer = new DataCacheWriter<>(encoder, toEncode, options);
+        DiskCache diskCache = isResource
+            ? diskCacheProvider.getResourceDiskCache() : diskCacheProvider.getDiskCache();
+        diskCache.put(key, writer);
+        if (writer.getWrittenBytes() > 0) {
+          admission.onWritten(isResource, writer.getWrittenBytes());
+        }
       } finally {
         toEncode.unlock();
         TraceCompat.endSection();
@@ -690,15 +825,46 @@ class DecodeJob<R> implements DataFetcherGenerator.FetcherReadyCallback,
 
   interface Callback<R> {
 
-    void onResourceReady(Resource<R> resource, DataSource dataSource);
+    /**
+     * Called when a resource is decoded and transformed.
+     *
+     * @param loadTimeMillis The time spent fetching, decoding and transforming the resource,
+     *                       excluding any time spent waiting to be scheduled or rescheduled on
+     *                       an executor.
+     */
+    void onResourceReady(Resource<R> resource, DataSource dataSource, long loadTimeMillis);
 
     void onLoadFailed(GlideException e);
 
     void reschedule(DecodeJob<?> job);
   }
 
+  /**
+   * Derives resources from other resources that are already in memory, so that they don't have to
+   * be loaded from disk or source.
+   */
+  interface DerivedResourceProvider {
+    /**
+     * Returns a new resource for the given key derived from another resource in memory, or
+     * {@code null} if no such resource is available.
+     *
+     * <p>Called on the thread running the job.
+     */
+    @Nullable
+    Resource<?> loadDerivedResource(GlideContext glideContext, EngineKey key);
+  }
+
   interface DiskCacheProvider {
+    /**
+     * Returns the disk cache for unmodified source data.
+     */
     DiskCache getDiskCache();
+
+    /**
+     * Returns the disk cache for decoded and transformed resources, which may be the same cache
+     * returned by {@link #getDiskCache()}.
+     */
+    DiskCache getResourceDiskCache();
   }
 
   /**
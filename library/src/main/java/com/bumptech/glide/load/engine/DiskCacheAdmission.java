@@ -0,0 +1,51 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskCacheAdmissionPolicy;
+
+/**
+ * Consults the optional {@link DiskCacheAdmissionPolicy} before entries are written to the disk
+ * cache and reports both writes and skipped writes to the optional {@link EngineStatsListener}.
+ */
+final class DiskCacheAdmission {
+  @Nullable private final DiskCacheAdmissionPolicy policy;
+  @Nullable private final EngineStatsListener statsListener;
+
+  DiskCacheAdmission(@Nullable DiskCacheAdmissionPolicy policy,
+      @Nullable EngineStatsListener statsListener) {
+    this.policy = policy;
+    this.statsListener = statsListener;
+  }
+
+  /**
+   * Returns {@code true} if an entry that the disk cache strategy allows to be cached should be
+   * written to the disk cache.
+   *
+   * @param size The size in bytes of the data or resource in memory, or {@code -1} if unknown.
+   */
+  boolean shouldWrite(Key key, DataSource dataSource, boolean isResource, long size) {
+    if (policy == null || policy.shouldAdmit(key, dataSource, isResource, size)) {
+      return true;
+    }
+    if (statsListener != null) {
+      statsListener.onDiskCacheWriteSkipped(getTier(isResource));
+    }
+    return false;
+  }
+
+  /**
+   * Records an entry of the given size written to the disk cache.
+   */
+  void onWritten(boolean isResource, long bytes) {
+    if (statsListener != null) {
+      statsListener.onDiskCacheWrite(getTier(isResource), bytes);
+    }
+  }
+
+  private static EngineStatsListener.Tier getTier(boolean isResource) {
+    return isResource
+        ? EngineStatsListener.Tier.RESOURCE_DISK_CACHE : EngineStatsListener.Tier.DATA_DISK_CACHE;
+  }
+}
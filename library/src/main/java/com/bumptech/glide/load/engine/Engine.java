@@ -1,5 +1,6 @@
 package com.bumptech.glide.load.engine;
 
+import android.content.ComponentCallbacks2;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -11,26 +12,38 @@ import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.engine.cache.DiskCacheAdapter;
+import com.bumptech.glide.load.engine.cache.DiskCacheAdmissionPolicy;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
+import com.bumptech.glide.load.engine.cache.PeekableMemoryCache;
 import com.bumptech.glide.load.engine.executor.GlideExecutor;
 import com.bumptech.glide.request.ResourceCallback;
+import com.bumptech.glide.util.Executors;
 import com.bumptech.glide.util.LogTime;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Synthetic;
-import com.bumptech.glide.util.Util;
 import com.bumptech.glide.util.pool.FactoryPools;
+import java.io.File;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 /**
  * Responsible for starting loads and managing active and cached resources.
+ *
+ * <p>Loads may be started, cancelled and released on any thread. Book keeping for active resources,
+ * the memory cache and in progress jobs is guarded by this object's lock, which is always obtained
+ * before the locks of the {@link EngineResource}s, {@link EngineJob}s and {@link ActiveResources}
+ * it manages. It's never held while resources are decompressed or downscaled or while callbacks
+ * are called.
  */
 public class Engine implements EngineJobListener,
     MemoryCache.ResourceRemovedListener,
-    EngineResource.ResourceListener {
+    EngineResource.ResourceListener,
+    DecodeJob.DerivedResourceProvider {
   private static final String TAG = "Engine";
   private static final int JOB_POOL_SIZE = 150;
   private final Jobs jobs;
@@ -41,7 +54,45 @@ public class Engine implements EngineJobListener,
   private final LazyDiskCacheProvider diskCacheProvider;
   private final DecodeJobFactory decodeJobFactory;
   private final ActiveResources activeResources;
+  @Nullable private final EngineStatsListener statsListener;
+  @Nullable private final ResidentVariants residentVariants;
+  @Nullable private final CompressedBitmapCache compressedCache;
+  @Nullable private final HotKeySnapshot hotKeys;
+  @Nullable private final SourceCacheWriter sourceCacheWriter;
+  private final GlideExecutor backgroundExecutor;
+  private final ResourceCallback warmUpCallback = new WarmUpCallback();
 
+  /**
+   * @param backgroundExecutor        Runs background work that isn't part of a load, like
+   *                                  compressing evicted resources and saving hot keys.
+   * @param statsListener             An optional listener notified of hits, misses and latencies
+   *                                  for each tier checked while loading.
+   * @param bitmapPool                The pool used to obtain {@link android.graphics.Bitmap}s for
+   *                                  downscaled and decompressed resources.
+   * @param isDownscalingEnabled      If {@code true}, requests that miss in memory may be
+   *                                  fulfilled by downscaling a {@link android.graphics.Bitmap}
+   *                                  loaded for a larger size of the same model, signature and
+   *                                  options.
+   * @param compressedMemoryCacheSize The maximum size in bytes of compressed copies of
+   *                                  {@link android.graphics.Bitmap}s evicted from the memory
+   *                                  cache to keep in memory, or {@code 0} to disable the tier.
+   * @param hotKeySnapshotFile        If non-null, the file used to save the most frequently loaded
+   *                                  keys so that they can be loaded by {@link #warmUp} the next
+   *                                  time the app starts.
+   * @param sourceCacheWriteExecutor  If non-null, source data written to the data disk cache is
+   *                                  decoded from memory while it's written to disk in the
+   *                                  background on this executor, rather than written to and then
+   *                                  read back from disk before it's decoded.
+   * @param admissionPolicy           If non-null, decides which of the entries the
+   *                                  {@link DiskCacheStrategy} allows to be cached are actually
+   *                                  written to the disk cache.
+   * @param arrayPool                 The pool used to obtain buffers for compressing and
+   *                                  decompressing resources.
+   * @param resourceDiskCacheFactory  If non-null, builds a separate disk cache for decoded and
+   *                                  transformed resources, so that they have their own size and
+   *                                  eviction policy rather than competing with source data in
+   *                                  the cache built by {@code diskCacheFactory}.
+   */
   public Engine(
       MemoryCache memoryCache,
       DiskCache.Factory diskCacheFactory,
@@ -49,39 +100,76 @@ public class Engine implements EngineJobListener,
       GlideExecutor sourceExecutor,
       GlideExecutor sourceUnlimitedExecutor,
       GlideExecutor animationExecutor,
-      boolean isActiveResourceRetentionAllowed) {
+      GlideExecutor backgroundExecutor,
+      boolean isActiveResourceRetentionAllowed,
+      @Nullable EngineStatsListener statsListener,
+      @NonNull BitmapPool bitmapPool,
+      boolean isDownscalingEnabled,
+      long compressedMemoryCacheSize,
+      @Nullable File hotKeySnapshotFile,
+      @Nullable GlideExecutor sourceCacheWriteExecutor,
+      @Nullable DiskCacheAdmissionPolicy admissionPolicy,
+      @NonNull ArrayPool arrayPool,
+      @Nullable DiskCache.Factory resourceDiskCacheFactory) {
     this(
         memoryCache,
         diskCacheFactory,
+        resourceDiskCacheFactory,
         diskCacheExecutor,
         sourceExecutor,
         sourceUnlimitedExecutor,
         animationExecutor,
+        backgroundExecutor,
         /*jobs=*/ null,
         /*keyFactory=*/ null,
         /*activeResources=*/ null,
         /*engineJobFactory=*/ null,
         /*decodeJobFactory=*/ null,
         /*resourceRecycler=*/ null,
-        isActiveResourceRetentionAllowed);
+        isActiveResourceRetentionAllowed,
+        statsListener,
+        isDownscalingEnabled ? new ResidentVariants(bitmapPool) : null,
+        compressedMemoryCacheSize > 0
+            ? new CompressedBitmapCache(
+                bitmapPool, arrayPool, backgroundExecutor, compressedMemoryCacheSize)
+            : null,
+        hotKeySnapshotFile != null
+            ? new HotKeySnapshot(hotKeySnapshotFile, backgroundExecutor) : null,
+        sourceCacheWriteExecutor != null ? new SourceCacheWriter(sourceCacheWriteExecutor) : null,
+        admissionPolicy);
   }
 
   @VisibleForTesting
   Engine(MemoryCache cache,
       DiskCache.Factory diskCacheFactory,
+      @Nullable DiskCache.Factory resourceDiskCacheFactory,
       GlideExecutor diskCacheExecutor,
       GlideExecutor sourceExecutor,
       GlideExecutor sourceUnlimitedExecutor,
       GlideExecutor animationExecutor,
+      GlideExecutor backgroundExecutor,
       Jobs jobs,
       EngineKeyFactory keyFactory,
       ActiveResources activeResources,
       EngineJobFactory engineJobFactory,
       DecodeJobFactory decodeJobFactory,
       ResourceRecycler resourceRecycler,
-      boolean isActiveResourceRetentionAllowed) {
+      boolean isActiveResourceRetentionAllowed,
+      @Nullable EngineStatsListener statsListener,
+      @Nullable ResidentVariants residentVariants,
+      @Nullable CompressedBitmapCache compressedCache,
+      @Nullable HotKeySnapshot hotKeys,
+      @Nullable SourceCacheWriter sourceCacheWriter,
+      @Nullable DiskCacheAdmissionPolicy admissionPolicy) {
     this.cache = cache;
-    this.diskCacheProvider = new LazyDiskCacheProvider(diskCacheFactory);
+    this.backgroundExecutor = backgroundExecutor;
+    this.hotKeys = hotKeys;
+    this.sourceCacheWriter = sourceCacheWriter;
+    this.statsListener = statsListener;
+    this.residentVariants = residentVariants;
+    this.compressedCache = compressedCache;
+    this.diskCacheProvider =
+        new LazyDiskCacheProvider(diskCacheFactory, resourceDiskCacheFactory);
 
     if (activeResources == null) {
       activeResources = new ActiveResources(isActiveResourceRetentionAllowed);
@@ -107,7 +195,10 @@ public class Engine implements EngineJobListener,
     this.engineJobFactory = engineJobFactory;
 
     if (decodeJobFactory == null) {
-      decodeJobFactory = new DecodeJobFactory(diskCacheProvider);
+      decodeJobFactory = new DecodeJobFactory(diskCacheProvider, statsListener, sourceCacheWriter,
+          new DiskCacheAdmission(admissionPolicy, statsListener),
+          /*derivedResourceProvider=*/
+          residentVariants != null || compressedCache != null ? this : null);
     }
     this.decodeJobFactory = decodeJobFactory;
 
@@ -119,10 +210,60 @@ public class Engine implements EngineJobListener,
     cache.setResourceRemovedListener(this);
   }
 
+  /**
+   * Starts a load for the given arguments, delivering the results of new loads on the main thread.
+   *
+   * @see #load(GlideContext, Object, Key, int, int, Class, Class, Priority, DiskCacheStrategy,
+   * Map, boolean, boolean, Options, boolean, boolean, boolean, boolean, ResourceCallback, Executor)
+   */
+  public <R> LoadStatus load(
+      GlideContext glideContext,
+      Object model,
+      Key signature,
+      int width,
+      int height,
+      Class<?> resourceClass,
+      Class<R> transcodeClass,
+      Priority priority,
+      DiskCacheStrategy diskCacheStrategy,
+      Map<Class<?>, Transformation<?>> transformations,
+      boolean isTransformationRequired,
+      boolean isScaleOnlyOrNoTransform,
+      Options options,
+      boolean isMemoryCacheable,
+      boolean useUnlimitedSourceExecutorPool,
+      boolean useAnimationPool,
+      boolean onlyRetrieveFromCache,
+      ResourceCallback cb) {
+    return load(
+        glideContext,
+        model,
+        signature,
+        width,
+        height,
+        resourceClass,
+        transcodeClass,
+        priority,
+        diskCacheStrategy,
+        transformations,
+        isTransformationRequired,
+        isScaleOnlyOrNoTransform,
+        options,
+        isMemoryCacheable,
+        useUnlimitedSourceExecutorPool,
+        useAnimationPool,
+        onlyRetrieveFromCache,
+        cb,
+        Executors.mainThreadExecutor());
+  }
+
   /**
    * Starts a load for the given arguments.
    *
-   * <p>Must be called on the main thread.
+   * <p>May be called on any thread. Resources found in memory are delivered to the given callback
+   * synchronously on the calling thread, resources from new loads with the given executor. Our
+   * lock is only held while looking up resources in memory and adding the callback to a load, so
+   * the callback is never called with it held.
    *
    * <p>The flow for any request is as follows:
    * <ul>
@@ -131,7 +272,9 @@ public class Engine implements EngineJobListener,
    *   <li>Check the memory cache and provide the cached resource if present.</li>
    *   <li>Check the current set of in progress loads and add the cb to the in progress load if
    *   one is present.</li>
-   *   <li>Start a new load.</li>
+   *   <li>Start a new load, which first checks for a compressed copy of a resource evicted from
+   *   the memory cache and provides a decompressed copy if present, then for a larger variant of
+   *   the resource in memory and provides a downscaled copy if present, if enabled.</li>
    * </ul>
    *
    * <p>Active resources are those that have been provided to at least one request and have not yet
@@ -145,6 +288,7 @@ public class Engine implements EngineJobListener,
    * @param height The target height in pixels of the desired resource.
    * @param cb     The callback that will be called when the load completes.
    * @param onlyRetrieveFromCache 仅存内存缓存加载
+   * @param callbackExecutor The executor used to call the callback when a new load completes.
    */
   public <R> LoadStatus load(
       GlideContext glideContext,
@@ -164,87 +308,149 @@ public class Engine implements EngineJobListener,
       boolean useUnlimitedSourceExecutorPool,
       boolean useAnimationPool,
       boolean onlyRetrieveFromCache,
-      ResourceCallback cb) {
-    Util.assertMainThread();
+      ResourceCallback cb,
+      Executor callbackExecutor) {
     long startTime = LogTime.getLogTime();
-    // 创建缓存key
-    EngineKey key = keyFactory.buildKey(model, signature, width, height, transformations,
+    // Look up resources in memory with a pooled probe key so that hits don't allocate a new key.
+    EngineKey probe = keyFactory.obtainProbe(model, signature, width, height, transformations,
         resourceClass, transcodeClass, options);
+    EngineResource<?> active;
+    EngineResource<?> cached = null;
+    try {
+      synchronized (this) {
+        // 一级缓存
+        // active的资源是指那些已经被提供给至少一个请求并且还没有被释放的资源。一旦资源的所有使用者都释放了该资源，资源就会去缓存。
+        active = loadFromActiveResources(probe, isMemoryCacheable);
+        if (active == null) {
+          // 二级缓存
+          cached = loadFromCache(probe, isMemoryCacheable);
+          if (cached != null) {
+            Key cachedKey = cached.getKey();
+            if (cachedKey == null) {
+              // Only resources put in the cache by someone other than us lack a key and a
+              // listener.
+              cachedKey = keyFactory.buildKey(model, signature, width, height, transformations,
+                  resourceClass, transcodeClass, options);
+              cached.setResourceListener(cachedKey, this);
+            }
+            activeResources.activate(cachedKey, cached);
+          }
+        }
+      }
+    } finally {
+      keyFactory.releaseProbe(probe);
+    }
 
-    // 一级缓存
-    // active的资源是指那些已经被提供给至少一个请求并且还没有被释放的资源。一旦资源的所有使用者都释放了该资源，资源就会去缓存。
-    EngineResource<?> active = loadFromActiveResources(key, isMemoryCacheable);
+    notifyTier(EngineStatsListener.Tier.ACTIVE_RESOURCES, isMemoryCacheable, active);
     if (active != null) {
+      recordHotKey(active.getKey(), cb);
       // 如果命中, 则回调加载
       cb.onResourceReady(active, DataSource.MEMORY_CACHE);
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
-        logWithTimeAndKey("Loaded resource from active resources", startTime, key);
+        logWithTimeAndKey("Loaded resource from active resources", startTime, active.getKey());
       }
       return null;
     }
 
-    // 二级缓存
-    EngineResource<?> cached = loadFromCache(key, isMemoryCacheable);
+    notifyTier(EngineStatsListener.Tier.MEMORY_CACHE, isMemoryCacheable, cached);
     if (cached != null) {
+      recordHotKey(cached.getKey(), cb);
       // 如果命中, 则回调加载
       cb.onResourceReady(cached, DataSource.MEMORY_CACHE);
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
-        logWithTimeAndKey("Loaded resource from cache", startTime, key);
+        logWithTimeAndKey("Loaded resource from cache", startTime, cached.getKey());
       }
       return null;
     }
-    // EngineJob : 调度DecodeJob, 添加, 移除资源回调, 并notify回调
-    EngineJob<?> current = jobs.get(key, onlyRetrieveFromCache);
-    // 当前存活的资源和内存缓存都没有的情况下
-    // 1. 先判断是否有资源(resouce什么时候回调true 不明), 如果有, 则回调加载
-    // 2. 如果加载失败, 则加载抛出异常
-    // 3. 否则, 在资源回调中添加
-    if (current != null) {
-      current.addCallback(cb);
+
+    // 创建缓存key
+    EngineKey key = keyFactory.buildKey(model, signature, width, height, transformations,
+        resourceClass, transcodeClass, options);
+    if (isMemoryCacheable) {
+      recordHotKey(key, cb);
+    }
+    // Compressed copies are restored by the DecodeJob, hits are reported once they're restored.
+    boolean isCompressed =
+        isMemoryCacheable && compressedCache != null && compressedCache.contains(key);
+    if (compressedCache != null && !isCompressed) {
+      notifyTier(EngineStatsListener.Tier.COMPRESSED_MEMORY_CACHE, isMemoryCacheable, null);
+    }
+
+    synchronized (this) {
+      // EngineJob : 调度DecodeJob, 添加, 移除资源回调, 并notify回调
+      EngineJob<?> current = jobs.get(key, onlyRetrieveFromCache);
+      // 当前存活的资源和内存缓存都没有的情况下, 在资源回调中添加
+      if (current != null) {
+        if (current.addCallback(cb, callbackExecutor)) {
+          if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            logWithTimeAndKey("Added to existing load", startTime, key);
+          }
+          // 返回当前的LoadStatus
+          return new LoadStatus(cb, current);
+        }
+        // Cancelled concurrently by the last of its callbacks, so it can't be joined.
+        jobs.removeIfCurrent(key, current);
+      }
+      // 当资源回调中都没有的情况
+      EngineJob<R> engineJob =
+          engineJobFactory.build(
+              key,
+              isMemoryCacheable,
+              useUnlimitedSourceExecutorPool,
+              useAnimationPool,
+              onlyRetrieveFromCache);
+      // 实现了Runnable接口，调度任务的核心类，整个请求的繁重工作都在这里完成：处理来自缓存或者原始的资源，应用转换动画以及transcode。
+      // 负责根据缓存类型获取不同的Generator加载数据，数据加载成功后回调DecodeJob的onDataFetcherReady方法对资源进行处理
+      DecodeJob<R> decodeJob =
+          decodeJobFactory.build(
+              glideContext,
+              model,
+              key,
+              signature,
+              width,
+              height,
+              resourceClass,
+              transcodeClass,
+              priority,
+              diskCacheStrategy,
+              transformations,
+              isTransformationRequired,
+              isScaleOnlyOrNoTransform,
+              onlyRetrieveFromCache,
+              /*isDerivable=*/ isCompressed
+                  || (isMemoryCacheable && isScaleOnlyOrNoTransform && hasLargerVariant(key)),
+              options,
+              engineJob);
+
+      jobs.put(key, engineJob);
+
+      engineJob.addCallback(cb, callbackExecutor);
+      engineJob.start(decodeJob);
+
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
-        logWithTimeAndKey("Added to existing load", startTime, key);
+        logWithTimeAndKey("Started new load", startTime, key);
       }
-      // 返回当前的LoadStatus
-      return new LoadStatus(cb, current);
-    }
-    // 当资源回调中都没有的情况
-    EngineJob<R> engineJob =
-        engineJobFactory.build(
-            key,
-            isMemoryCacheable,
-            useUnlimitedSourceExecutorPool,
-            useAnimationPool,
-            onlyRetrieveFromCache);
-    // 实现了Runnable接口，调度任务的核心类，整个请求的繁重工作都在这里完成：处理来自缓存或者原始的资源，应用转换动画以及transcode。
-    // 负责根据缓存类型获取不同的Generator加载数据，数据加载成功后回调DecodeJob的onDataFetcherReady方法对资源进行处理
-    DecodeJob<R> decodeJob =
-        decodeJobFactory.build(
-            glideContext,
-            model,
-            key,
-            signature,
-            width,
-            height,
-            resourceClass,
-            transcodeClass,
-            priority,
-            diskCacheStrategy,
-            transformations,
-            isTransformationRequired,
-            isScaleOnlyOrNoTransform,
-            onlyRetrieveFromCache,
-            options,
-            engineJob);
-
-    jobs.put(key, engineJob);
-
-    engineJob.addCallback(cb);
-    engineJob.start(decodeJob);
-
-    if (Log.isLoggable(TAG, Log.VERBOSE)) {
-      logWithTimeAndKey("Started new load", startTime, key);
-    }
-    return new LoadStatus(cb, engineJob);
+      return new LoadStatus(cb, engineJob);
+    }
+  }
+
+  private void notifyTier(EngineStatsListener.Tier tier, boolean isMemoryCacheable,
+      @Nullable EngineResource<?> resource) {
+    if (statsListener == null || !isMemoryCacheable) {
+      return;
+    }
+    if (resource != null) {
+      statsListener.onTierHit(tier, resource.getSize());
+    } else {
+      statsListener.onTierMiss(tier);
+    }
+  }
+
+  private void recordHotKey(@Nullable Key key, ResourceCallback cb) {
+    // Warm up loads replay the snapshot, counting them would keep the saved keys hot forever.
+    if (hotKeys != null && cb != warmUpCallback && key instanceof EngineKey) {
+      hotKeys.record((EngineKey) key);
+    }
   }
 
   private static void logWithTimeAndKey(String log, long startTime, Key key) {
@@ -272,11 +478,86 @@ public class Engine implements EngineJobListener,
     EngineResource<?> cached = getEngineResourceFromCache(key);
     if (cached != null) {
       cached.acquire();
-      activeResources.activate(key, cached);
     }
     return cached;
   }
 
+  private boolean hasLargerVariant(EngineKey key) {
+    return residentVariants != null && !residentVariants.getLargerVariants(key).isEmpty();
+  }
+
+  /**
+   * Returns a decompressed copy of the resource for the given key, or a downscaled copy of a larger
+   * variant of the resource for the given key, or {@code null} if neither is in memory.
+   *
+   * <p>Called by {@link DecodeJob}s without our lock held. Variants are kept from being recycled
+   * while they're scaled, by acquiring active variants and by pinning variants in the memory cache,
+   * which are read without removing them so that their place in the cache isn't affected.
+   */
+  @Nullable
+  @Override
+  public Resource<?> loadDerivedResource(GlideContext glideContext, EngineKey key) {
+    if (compressedCache != null) {
+      Resource<?> restored = compressedCache.remove(glideContext.getResources(), key);
+      if (restored != null) {
+        if (statsListener != null) {
+          statsListener.onTierHit(
+              EngineStatsListener.Tier.COMPRESSED_MEMORY_CACHE, restored.getSize());
+        }
+        return restored;
+      }
+    }
+
+    ResidentVariants variants = residentVariants;
+    if (variants == null) {
+      return null;
+    }
+    List<EngineKey> largerVariants = variants.getLargerVariants(key);
+    //noinspection ForLoopReplaceableByForEach to improve perf
+    for (int i = 0, size = largerVariants.size(); i < size; i++) {
+      EngineKey variant = largerVariants.get(i);
+      Resource<?> downscaled = null;
+      EngineResource<?> active = acquireActiveResource(variant);
+      if (active != null) {
+        try {
+          downscaled = variants.downscale(glideContext.getResources(), active, variant, key);
+        } finally {
+          active.release();
+        }
+      } else if (cache instanceof PeekableMemoryCache) {
+        variants.pin(variant);
+        try {
+          Resource<?> cached = ((PeekableMemoryCache) cache).peek(variant);
+          if (cached == null) {
+            variants.remove(variant);
+          } else {
+            downscaled = variants.downscale(glideContext.getResources(), cached, variant, key);
+          }
+        } finally {
+          List<Resource<?>> evicted = variants.unpin(variant);
+          //noinspection ForLoopReplaceableByForEach to improve perf
+          for (int j = 0, evictedSize = evicted.size(); j < evictedSize; j++) {
+            recycleEvicted(variant, evicted.get(j));
+          }
+        }
+      }
+
+      if (downscaled != null) {
+        return downscaled;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private synchronized EngineResource<?> acquireActiveResource(Key key) {
+    EngineResource<?> active = activeResources.get(key);
+    if (active != null) {
+      active.acquire();
+    }
+    return active;
+  }
+
   @SuppressWarnings("unchecked")
   private EngineResource<?> getEngineResourceFromCache(Key key) {
     Resource<?> cached = cache.remove(key);
@@ -294,7 +575,6 @@ public class Engine implements EngineJobListener,
   }
 
   public void release(Resource<?> resource) {
-    Util.assertMainThread();
     if (resource instanceof EngineResource) {
       ((EngineResource<?>) resource).release();
     } else {
@@ -304,14 +584,17 @@ public class Engine implements EngineJobListener,
 
   @SuppressWarnings("unchecked")
   @Override
-  public void onEngineJobComplete(EngineJob<?> engineJob, Key key, EngineResource<?> resource) {
-    Util.assertMainThread();
+  public synchronized void onEngineJobComplete(
+      EngineJob<?> engineJob, Key key, EngineResource<?> resource) {
     // A null resource indicates that the load failed, usually due to an exception.
     if (resource != null) {
       resource.setResourceListener(key, this);
 
       if (resource.isCacheable()) {
         activeResources.activate(key, resource);
+        if (residentVariants != null && key instanceof EngineKey) {
+          residentVariants.add((EngineKey) key);
+        }
       }
     }
 
@@ -319,21 +602,34 @@ public class Engine implements EngineJobListener,
   }
 
   @Override
-  public void onEngineJobCancelled(EngineJob<?> engineJob, Key key) {
-    Util.assertMainThread();
-
+  public synchronized void onEngineJobCancelled(EngineJob<?> engineJob, Key key) {
     jobs.removeIfCurrent(key, engineJob);
   }
 
   @Override
   public void onResourceRemoved(@NonNull final Resource<?> resource) {
-    Util.assertMainThread();
-    resourceRecycler.recycle(resource);
+    // Called with the memory cache's lock held, so this must not obtain our own lock.
+    Key key = resource instanceof EngineResource ? ((EngineResource<?>) resource).getKey() : null;
+    if (residentVariants != null && key instanceof EngineKey) {
+      residentVariants.remove((EngineKey) key);
+      // Recycled once the variant is no longer being downscaled.
+      if (residentVariants.deferIfPinned((EngineKey) key, resource)) {
+        return;
+      }
+    }
+    recycleEvicted(key, resource);
+  }
+
+  private void recycleEvicted(@Nullable Key key, Resource<?> resource) {
+    // The compressed cache recycles the resource once it's done copying its pixels.
+    if (compressedCache == null || key == null
+        || !compressedCache.offer(key, resource, resourceRecycler)) {
+      resourceRecycler.recycle(resource);
+    }
   }
 
   @Override
-  public void onResourceReleased(Key cacheKey, EngineResource<?> resource) {
-    Util.assertMainThread();
+  public synchronized void onResourceReleased(Key cacheKey, EngineResource<?> resource) {
     activeResources.deactivate(cacheKey);
     if (resource.isCacheable()) {
       cache.put(cacheKey, resource);
@@ -342,15 +638,112 @@ public class Engine implements EngineJobListener,
     }
   }
 
+  /**
+   * Clears any compressed copies of evicted resources held in memory.
+   */
+  public void clearMemory() {
+    if (compressedCache != null) {
+      compressedCache.clearMemory();
+    }
+  }
+
+  /**
+   * Clears some of the compressed copies of evicted resources held in memory depending on the
+   * given level.
+   *
+   * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+   */
+  public void trimMemory(int level) {
+    if (compressedCache != null) {
+      compressedCache.trimMemory(level);
+    }
+    // The app may be killed at any point once it's in the background.
+    if (hotKeys != null && level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      hotKeys.saveAsync();
+    }
+  }
+
+  /**
+   * Asynchronously loads the resources for the keys that were loaded most frequently the last time
+   * the app ran from the disk cache into memory, if enabled.
+   *
+   * <p>Only resources that are already in the disk cache are loaded. Loads are started with
+   * {@link Priority#LOW} on the disk cache executor and the loaded resources are immediately
+   * released, which puts them in the memory cache.
+   */
+  public void warmUp(@NonNull final GlideContext glideContext) {
+    if (hotKeys == null) {
+      return;
+    }
+    backgroundExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        warmUpHotKeys(glideContext);
+      }
+    });
+  }
+
+  @Synthetic
+  void warmUpHotKeys(GlideContext glideContext) {
+    List<EngineKey> keys = Preconditions.checkNotNull(hotKeys).read();
+    DiskCacheStrategy diskCacheStrategy =
+        glideContext.getDefaultRequestOptions().getDiskCacheStrategy();
+    //noinspection ForLoopReplaceableByForEach to improve perf
+    for (int i = 0, size = keys.size(); i < size; i++) {
+      EngineKey key = keys.get(i);
+      load(
+          glideContext,
+          key.getModel(),
+          key.getSignature(),
+          key.getWidth(),
+          key.getHeight(),
+          key.getResourceClass(),
+          key.getTranscodeClass(),
+          Priority.LOW,
+          diskCacheStrategy,
+          key.getTransformations(),
+          /*isTransformationRequired=*/ false,
+          HotKeySnapshot.isScaleOnlyOrNoTransform(key),
+          key.getOptions(),
+          /*isMemoryCacheable=*/ true,
+          /*useUnlimitedSourceExecutorPool=*/ false,
+          /*useAnimationPool=*/ false,
+          /*onlyRetrieveFromCache=*/ true,
+          warmUpCallback);
+    }
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      Log.d(TAG, "Started warm up of " + keys.size() + " hot keys");
+    }
+  }
+
   public void clearDiskCache() {
-    diskCacheProvider.getDiskCache().clear();
+    DiskCache diskCache = diskCacheProvider.getDiskCache();
+    diskCache.clear();
+    DiskCache resourceDiskCache = diskCacheProvider.getResourceDiskCache();
+    if (resourceDiskCache != diskCache) {
+      resourceDiskCache.clear();
+    }
   }
 
   @VisibleForTesting
   public void shutdown() {
+    if (hotKeys != null) {
+      hotKeys.save();
+      hotKeys.clear();
+    }
     engineJobFactory.shutdown();
+    backgroundExecutor.shutdown();
+    if (sourceCacheWriter != null) {
+      sourceCacheWriter.shutdown();
+    }
     diskCacheProvider.clearDiskCacheIfCreated();
     activeResources.shutdown();
+    if (residentVariants != null) {
+      residentVariants.clear();
+    }
+    if (compressedCache != null) {
+      compressedCache.clearMemory();
+    }
   }
 
   /**
@@ -366,25 +759,50 @@ public class Engine implements EngineJobListener,
     }
 
     public void cancel() {
+      // Concurrent loads can't join the job once it's cancelled, see EngineJob#addCallback.
       engineJob.removeCallback(cb);
     }
   }
 
+  private final class WarmUpCallback implements ResourceCallback {
+
+    @Synthetic
+    WarmUpCallback() { }
+
+    @Override
+    public void onResourceReady(Resource<?> resource, DataSource dataSource) {
+      release(resource);
+    }
+
+    @Override
+    public void onLoadFailed(GlideException e) {
+      // Expected if the resource is no longer in the disk cache.
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Failed to warm up resource", e);
+      }
+    }
+  }
+
   private static class LazyDiskCacheProvider implements DecodeJob.DiskCacheProvider {
 
     private final DiskCache.Factory factory;
+    @Nullable private final DiskCache.Factory resourceFactory;
     private volatile DiskCache diskCache;
+    private volatile DiskCache resourceDiskCache;
 
-    LazyDiskCacheProvider(DiskCache.Factory factory) {
+    LazyDiskCacheProvider(DiskCache.Factory factory, @Nullable DiskCache.Factory resourceFactory) {
       this.factory = factory;
+      this.resourceFactory = resourceFactory;
     }
 
     @VisibleForTesting
     synchronized void clearDiskCacheIfCreated() {
-      if (diskCache == null) {
-        return;
+      if (diskCache != null) {
+        diskCache.clear();
+      }
+      if (resourceDiskCache != null && resourceDiskCache != diskCache) {
+        resourceDiskCache.clear();
       }
-      diskCache.clear();
     }
 
     @Override
@@ -392,31 +810,61 @@ public class Engine implements EngineJobListener,
       if (diskCache == null) {
         synchronized (this) {
           if (diskCache == null) {
-            diskCache = factory.build();
-          }
-          if (diskCache == null) {
-            diskCache = new DiskCacheAdapter();
+            diskCache = build(factory);
           }
         }
       }
       return diskCache;
     }
+
+    @Override
+    public DiskCache getResourceDiskCache() {
+      if (resourceFactory == null) {
+        return getDiskCache();
+      }
+      if (resourceDiskCache == null) {
+        synchronized (this) {
+          if (resourceDiskCache == null) {
+            resourceDiskCache = build(resourceFactory);
+          }
+        }
+      }
+      return resourceDiskCache;
+    }
+
+    private static DiskCache build(DiskCache.Factory factory) {
+      DiskCache result = factory.build();
+      return result != null ? result : new DiskCacheAdapter();
+    }
   }
 
   @VisibleForTesting
   static class DecodeJobFactory {
     @Synthetic final DecodeJob.DiskCacheProvider diskCacheProvider;
+    @Synthetic final EngineStatsListener statsListener;
+    @Synthetic final SourceFetchCoalescer sourceFetchCoalescer = new SourceFetchCoalescer();
+    @Synthetic @Nullable final SourceCacheWriter sourceCacheWriter;
+    @Synthetic final DiskCacheAdmission admission;
+    @Synthetic @Nullable final DecodeJob.DerivedResourceProvider derivedResourceProvider;
     @Synthetic final Pools.Pool<DecodeJob<?>> pool = FactoryPools.simple(JOB_POOL_SIZE,
         new FactoryPools.Factory<DecodeJob<?>>() {
           @Override
           public DecodeJob<?> create() {
-            return new DecodeJob<>(diskCacheProvider, pool);
+            return new DecodeJob<>(diskCacheProvider, pool, statsListener, sourceFetchCoalescer,
+                sourceCacheWriter, admission, derivedResourceProvider);
           }
         });
     private int creationOrder;
 
-    DecodeJobFactory(DecodeJob.DiskCacheProvider diskCacheProvider) {
+    DecodeJobFactory(DecodeJob.DiskCacheProvider diskCacheProvider,
+        @Nullable EngineStatsListener statsListener,
+        @Nullable SourceCacheWriter sourceCacheWriter, DiskCacheAdmission admission,
+        @Nullable DecodeJob.DerivedResourceProvider derivedResourceProvider) {
       this.diskCacheProvider = diskCacheProvider;
+      this.statsListener = statsListener;
+      this.sourceCacheWriter = sourceCacheWriter;
+      this.admission = admission;
+      this.derivedResourceProvider = derivedResourceProvider;
     }
 
     @SuppressWarnings("unchecked")
@@ -434,6 +882,7 @@ public class Engine implements EngineJobListener,
         boolean isTransformationRequired,
         boolean isScaleOnlyOrNoTransform,
         boolean onlyRetrieveFromCache,
+        boolean isDerivable,
         Options options,
         DecodeJob.Callback<R> callback) {
       DecodeJob<R> result = Preconditions.checkNotNull((DecodeJob<R>) pool.acquire());
@@ -452,6 +901,7 @@ public class Engine implements EngineJobListener,
           isTransformationRequired,
           isScaleOnlyOrNoTransform,
           onlyRetrieveFromCache,
+          isDerivable,
           options,
           callback,
           creationOrder++);
@@ -494,10 +944,10 @@ public class Engine implements EngineJobListener,
 
     @VisibleForTesting
     void shutdown() {
-      shutdownAndAwaitTermination(diskCacheExecutor);
-      shutdownAndAwaitTermination(sourceExecutor);
-      shutdownAndAwaitTermination(sourceUnlimitedExecutor);
-      shutdownAndAwaitTermination(animationExecutor);
+      Executors.shutdownAndAwaitTermination(diskCacheExecutor);
+      Executors.shutdownAndAwaitTermination(sourceExecutor);
+      Executors.shutdownAndAwaitTermination(sourceUnlimitedExecutor);
+      Executors.shutdownAndAwaitTermination(animationExecutor);
     }
 
     @SuppressWarnings("unchecked")
@@ -516,19 +966,5 @@ public class Engine implements EngineJobListener,
           onlyRetrieveFromCache);
     }
 
-    private static void shutdownAndAwaitTermination(ExecutorService pool) {
-      long shutdownSeconds = 5;
-      pool.shutdown();
-      try {
-        if (!pool.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
-          pool.shutdownNow();
-          if (!pool.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
-            throw new RuntimeException("Failed to shutdown");
-          }
-        }
-      } catch (InterruptedException ie) {
-        throw new RuntimeException(ie);
-      }
-    }
   }
 }
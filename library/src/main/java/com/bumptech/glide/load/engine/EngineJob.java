@@ -1,8 +1,6 @@
 package com.bumptech.glide.load.engine;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.support.v4.util.Pools;
 import com.bumptech.glide.load.DataSource;
@@ -10,29 +8,27 @@ import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.engine.executor.GlideExecutor;
 import com.bumptech.glide.request.ResourceCallback;
 import com.bumptech.glide.util.Synthetic;
-import com.bumptech.glide.util.Util;
 import com.bumptech.glide.util.pool.FactoryPools.Poolable;
 import com.bumptech.glide.util.pool.StateVerifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A class that manages a load by adding and removing callbacks for for the load and notifying
  * callbacks when the load completes.
+ *
+ * <p>Callbacks may be added and removed from any thread. State is guarded by this object's lock,
+ * but the {@link EngineJobListener} and {@link ResourceCallback}s are always called without it
+ * held so that they're free to call back into {@link Engine}. Results are delivered to each
+ * callback with the {@link Executor} it was added with, while holding the callback's own lock so
+ * that a callback that synchronizes on itself is never notified after it has been removed.
  */
 class EngineJob<R> implements DecodeJob.Callback<R>,
     Poolable {
   private static final EngineResourceFactory DEFAULT_FACTORY = new EngineResourceFactory();
-  private static final Handler MAIN_THREAD_HANDLER =
-      new Handler(Looper.getMainLooper(), new MainThreadCallback());
 
-  private static final int MSG_COMPLETE = 1;
-  private static final int MSG_EXCEPTION = 2;
-  // Used when we realize we're cancelled on a background thread in reschedule and can recycle
-  // immediately rather than waiting for a result or an error.
-  private static final int MSG_CANCELLED = 3;
-
-  private final List<ResourceCallback> cbs = new ArrayList<>(2);
+  private final List<ResourceCallbackAndExecutor> cbs = new ArrayList<>(2);
   private final StateVerifier stateVerifier = StateVerifier.newInstance();
   private final Pools.Pool<EngineJob<?>> pool;
   private final EngineResourceFactory engineResourceFactory;
@@ -49,6 +45,7 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
   private boolean onlyRetrieveFromCache;
   private Resource<?> resource;
   private DataSource dataSource;
+  private long loadTimeMillis;
   private boolean hasResource;
   private GlideException exception;
   private boolean hasLoadFailed;
@@ -57,8 +54,13 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
   private List<ResourceCallback> ignoredCallbacks;
   private EngineResource<?> engineResource;
   private DecodeJob<R> decodeJob;
+  // The number of callbacks that still have to be notified of the result, plus one for the thread
+  // notifying them and one while the job is being cancelled. The job is released once the count
+  // reaches zero after the result is received.
+  private int pendingCallbacks;
+  private boolean isResultReceived;
 
-  // Checked primarily on the main thread, but also on other threads in reschedule.
+  // Written with this object's lock held, but also read without it on other threads in reschedule.
   private volatile boolean isCancelled;
 
   EngineJob(
@@ -108,6 +110,8 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     this.useUnlimitedSourceGeneratorPool = useUnlimitedSourceGeneratorPool;
     this.useAnimationPool = useAnimationPool;
     this.onlyRetrieveFromCache = onlyRetrieveFromCache;
+    // Reset here rather than in release so that a cancelled job can't be joined until it's reused.
+    isCancelled = false;
     return this;
   }
 
@@ -119,27 +123,56 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     executor.execute(decodeJob);
   }
 
-  void addCallback(ResourceCallback cb) {
-    Util.assertMainThread();
-    stateVerifier.throwIfRecycled();
-    if (hasResource) {
-      cb.onResourceReady(engineResource, dataSource);
-    } else if (hasLoadFailed) {
-      cb.onLoadFailed(exception);
-    } else {
-      cbs.add(cb);
+  /**
+   * Adds a callback that's notified of the result of the load using the given executor.
+   *
+   * <p>Returns {@code false} without adding the callback if the job was cancelled, in which case a
+   * new job has to be started. {@link Engine} only adds callbacks to jobs in {@link Jobs}, which
+   * it removes before the jobs are marked complete, so the callback is never notified on the
+   * calling thread while {@link Engine}'s lock is held.
+   */
+  boolean addCallback(ResourceCallback cb, Executor callbackExecutor) {
+    Runnable notification;
+    synchronized (this) {
+      // Checked first because a cancelled job may be released before Engine removes it from Jobs.
+      if (isCancelled) {
+        return false;
+      }
+      stateVerifier.throwIfRecycled();
+      cbs.add(new ResourceCallbackAndExecutor(cb, callbackExecutor));
+      if (hasResource) {
+        notification = new CallResourceReady(cb, engineResource, dataSource);
+      } else if (hasLoadFailed) {
+        notification = new CallLoadFailed(cb, exception);
+      } else {
+        return true;
+      }
+      pendingCallbacks++;
     }
+    callbackExecutor.execute(notification);
+    return true;
   }
 
   void removeCallback(ResourceCallback cb) {
-    Util.assertMainThread();
-    stateVerifier.throwIfRecycled();
-    if (hasResource || hasLoadFailed) {
-      addIgnoredCallback(cb);
-    } else {
-      cbs.remove(cb);
-      if (cbs.isEmpty()) {
-        cancel();
+    synchronized (this) {
+      stateVerifier.throwIfRecycled();
+      if (hasResource || hasLoadFailed) {
+        addIgnoredCallback(cb);
+        return;
+      }
+      removeCallbackAndExecutor(cb);
+      if (!cbs.isEmpty()) {
+        return;
+      }
+    }
+    cancel();
+  }
+
+  private void removeCallbackAndExecutor(ResourceCallback cb) {
+    for (int i = 0, size = cbs.size(); i < size; i++) {
+      if (cbs.get(i).cb.equals(cb)) {
+        cbs.remove(i);
+        return;
       }
     }
   }
@@ -167,21 +200,31 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     }
   }
 
-  private boolean isInIgnoredCallbacks(ResourceCallback cb) {
+  private synchronized boolean isInIgnoredCallbacks(ResourceCallback cb) {
     return ignoredCallbacks != null && ignoredCallbacks.contains(cb);
   }
 
   // Exposed for testing.
   void cancel() {
-    if (hasLoadFailed || hasResource || isCancelled) {
-      return;
-    }
+    DecodeJob<R> toCancel;
+    Key cancelledKey;
+    synchronized (this) {
+      if (hasLoadFailed || hasResource || isCancelled) {
+        return;
+      }
 
-    isCancelled = true;
-    decodeJob.cancel();
+      isCancelled = true;
+      toCancel = decodeJob;
+      cancelledKey = key;
+      // Held until we're done with the DecodeJob so that neither it nor this job can be released
+      // and reused for another load if the result is received in the meantime.
+      pendingCallbacks++;
+    }
+    toCancel.cancel();
     // TODO: Consider trying to remove jobs that have never been run before from executor queues.
     // Removing jobs that have run before can break things. See #1996.
-    listener.onEngineJobCancelled(this, key);
+    listener.onEngineJobCancelled(this, cancelledKey);
+    decrementPendingCallbacks();
   }
 
   // Exposed for testing.
@@ -189,57 +232,139 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     return isCancelled;
   }
 
-  @Synthetic
-  void handleResultOnMainThread() {
-    stateVerifier.throwIfRecycled();
-    if (isCancelled) {
-      resource.recycle();
-      release(false /*isRemovedFromQueue*/);
-      return;
-    } else if (cbs.isEmpty()) {
-      throw new IllegalStateException("Received a resource without any callbacks to notify");
-    } else if (hasResource) {
-      throw new IllegalStateException("Already have resource");
+  private void notifyCallbacksOfResult() {
+    EngineResource<?> localResource;
+    Key localKey;
+    synchronized (this) {
+      stateVerifier.throwIfRecycled();
+      if (isCancelled) {
+        resource.recycle();
+        onCancelledResultReceived();
+        return;
+      } else if (cbs.isEmpty()) {
+        throw new IllegalStateException("Received a resource without any callbacks to notify");
+      } else if (hasResource) {
+        throw new IllegalStateException("Already have resource");
+      }
+      engineResource = engineResourceFactory.build(resource, isCacheable);
+      engineResource.setLoadCost(dataSource, loadTimeMillis);
+      localResource = engineResource;
+      localKey = key;
+
+      // Hold on to resource for duration of request so we don't recycle it in the middle of
+      // notifying if it synchronously released by one of the callbacks.
+      // 如果同步发布了一个回调, 就不回收资源
+      localResource.acquire();
     }
-    engineResource = engineResourceFactory.build(resource, isCacheable);
-    hasResource = true;
 
-    // Hold on to resource for duration of request so we don't recycle it in the middle of
-    // notifying if it synchronously released by one of the callbacks.
-    // 如果同步发布了一个回调, 就不回收资源
-    engineResource.acquire();
-    listener.onEngineJobComplete(this, key, engineResource);
+    // Before we're marked complete, so that a concurrent load for the same key either adds its
+    // callback to us and is notified below or finds the resource in active resources.
+    listener.onEngineJobComplete(this, localKey, localResource);
+
+    List<ResourceCallbackAndExecutor> toNotify;
+    DataSource localDataSource;
+    synchronized (this) {
+      hasResource = true;
+      isResultReceived = true;
+      toNotify = new ArrayList<>(cbs);
+      localDataSource = dataSource;
+      // One for each callback and one for ourselves so that we aren't released while posting.
+      pendingCallbacks += toNotify.size() + 1;
+    }
 
     //noinspection ForLoopReplaceableByForEach to improve perf
-    for (int i = 0, size = cbs.size(); i < size; i++) {
-      ResourceCallback cb = cbs.get(i);
-      if (!isInIgnoredCallbacks(cb)) {
-        engineResource.acquire();
-        /**
-         * Called when a resource is successfully loaded.
-         * 当资源ok的时候回调
-         */
-        cb.onResourceReady(engineResource, dataSource);
+    for (int i = 0, size = toNotify.size(); i < size; i++) {
+      ResourceCallbackAndExecutor next = toNotify.get(i);
+      next.executor.execute(new CallResourceReady(next.cb, localResource, localDataSource));
+    }
+    decrementPendingCallbacks();
+  }
+
+  private void notifyCallbacksOfException() {
+    Key localKey;
+    synchronized (this) {
+      stateVerifier.throwIfRecycled();
+      if (isCancelled) {
+        onCancelledResultReceived();
+        return;
+      } else if (cbs.isEmpty()) {
+        throw new IllegalStateException("Received an exception without any callbacks to notify");
+      } else if (hasLoadFailed) {
+        throw new IllegalStateException("Already failed once");
       }
+      localKey = key;
+    }
+
+    listener.onEngineJobComplete(this, localKey, null);
+
+    List<ResourceCallbackAndExecutor> toNotify;
+    GlideException localException;
+    synchronized (this) {
+      hasLoadFailed = true;
+      isResultReceived = true;
+      toNotify = new ArrayList<>(cbs);
+      localException = exception;
+      pendingCallbacks += toNotify.size() + 1;
+    }
+
+    //noinspection ForLoopReplaceableByForEach to improve perf
+    for (int i = 0, size = toNotify.size(); i < size; i++) {
+      ResourceCallbackAndExecutor next = toNotify.get(i);
+      next.executor.execute(new CallLoadFailed(next.cb, localException));
     }
-    // Our request is complete, so we can release the resource.
-    engineResource.release();
+    decrementPendingCallbacks();
+  }
 
-    release(false /*isRemovedFromQueue*/);
+  // Called with our lock held.
+  private void onCancelledResultReceived() {
+    isResultReceived = true;
+    // Otherwise cancel() is still using the DecodeJob and releases us once it's done.
+    if (pendingCallbacks == 0) {
+      release(false /*isRemovedFromQueue*/);
+    }
   }
 
+  /**
+   * Called once each callback has been notified, or skipped because it was removed, once by the
+   * thread that notified them and once by the thread that cancelled the job, after which the job
+   * and our hold on the resource are released.
+   */
   @Synthetic
-  void handleCancelledOnMainThread() {
-    stateVerifier.throwIfRecycled();
-    if (!isCancelled) {
-      throw new IllegalStateException("Not cancelled");
+  void decrementPendingCallbacks() {
+    EngineResource<?> toRelease;
+    synchronized (this) {
+      stateVerifier.throwIfRecycled();
+      if (pendingCallbacks <= 0) {
+        throw new IllegalStateException("Not waiting for callbacks");
+      }
+      if (--pendingCallbacks > 0 || !isResultReceived) {
+        return;
+      }
+      toRelease = engineResource;
+      release(false /*isRemovedFromQueue*/);
     }
-    listener.onEngineJobCancelled(this, key);
-    release(false /*isRemovedFromQueue*/);
+    // Released without our lock held because releasing may obtain the Engine's lock.
+    if (toRelease != null) {
+      toRelease.release();
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given callback should be notified and, if it has a resource to
+   * notify the callback of, acquires the resource on the callback's behalf.
+   */
+  @Synthetic
+  synchronized boolean prepareToNotify(ResourceCallback cb, @Nullable EngineResource<?> toAcquire) {
+    if (isInIgnoredCallbacks(cb)) {
+      return false;
+    }
+    if (toAcquire != null) {
+      toAcquire.acquire();
+    }
+    return true;
   }
 
-  private void release(boolean isRemovedFromQueue) {
-    Util.assertMainThread();
+  private synchronized void release(boolean isRemovedFromQueue) {
     cbs.clear();
     key = null;
     engineResource = null;
@@ -248,26 +373,34 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
       ignoredCallbacks.clear();
     }
     hasLoadFailed = false;
-    isCancelled = false;
     hasResource = false;
+    isResultReceived = false;
     decodeJob.release(isRemovedFromQueue);
     decodeJob = null;
     exception = null;
     dataSource = null;
+    loadTimeMillis = 0L;
+    pendingCallbacks = 0;
     pool.release(this);
   }
 
   @Override
-  public void onResourceReady(Resource<R> resource, DataSource dataSource) {
-    this.resource = resource;
-    this.dataSource = dataSource;
-    MAIN_THREAD_HANDLER.obtainMessage(MSG_COMPLETE, this).sendToTarget();
+  public void onResourceReady(
+      Resource<R> resource, DataSource dataSource, long loadTimeMillis) {
+    synchronized (this) {
+      this.resource = resource;
+      this.dataSource = dataSource;
+      this.loadTimeMillis = loadTimeMillis;
+    }
+    notifyCallbacksOfResult();
   }
 
   @Override
   public void onLoadFailed(GlideException e) {
-    this.exception = e;
-    MAIN_THREAD_HANDLER.obtainMessage(MSG_EXCEPTION, this).sendToTarget();
+    synchronized (this) {
+      this.exception = e;
+    }
+    notifyCallbacksOfException();
   }
 
   @Override
@@ -277,30 +410,6 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     getActiveSourceExecutor().execute(job);
   }
 
-  @Synthetic
-  void handleExceptionOnMainThread() {
-    stateVerifier.throwIfRecycled();
-    if (isCancelled) {
-      release(false /*isRemovedFromQueue*/);
-      return;
-    } else if (cbs.isEmpty()) {
-      throw new IllegalStateException("Received an exception without any callbacks to notify");
-    } else if (hasLoadFailed) {
-      throw new IllegalStateException("Already failed once");
-    }
-    hasLoadFailed = true;
-
-    listener.onEngineJobComplete(this, key, null);
-
-    for (ResourceCallback cb : cbs) {
-      if (!isInIgnoredCallbacks(cb)) {
-        cb.onLoadFailed(exception);
-      }
-    }
-
-    release(false /*isRemovedFromQueue*/);
-  }
-
   @Override
   public StateVerifier getVerifier() {
     return stateVerifier;
@@ -313,29 +422,65 @@ class EngineJob<R> implements DecodeJob.Callback<R>,
     }
   }
 
-  private static class MainThreadCallback implements Handler.Callback {
+  private static final class ResourceCallbackAndExecutor {
+    @Synthetic final ResourceCallback cb;
+    @Synthetic final Executor executor;
+
+    ResourceCallbackAndExecutor(ResourceCallback cb, Executor executor) {
+      this.cb = cb;
+      this.executor = executor;
+    }
+  }
+
+  private class CallResourceReady implements Runnable {
+    private final ResourceCallback cb;
+    private final EngineResource<?> resource;
+    private final DataSource dataSource;
+
+    CallResourceReady(ResourceCallback cb, EngineResource<?> resource, DataSource dataSource) {
+      this.cb = cb;
+      this.resource = resource;
+      this.dataSource = dataSource;
+    }
+
+    @Override
+    public void run() {
+      try {
+        synchronized (cb) {
+          if (prepareToNotify(cb, resource)) {
+            /**
+             * Called when a resource is successfully loaded.
+             * 当资源ok的时候回调
+             */
+            cb.onResourceReady(resource, dataSource);
+          }
+        }
+      } finally {
+        decrementPendingCallbacks();
+      }
+    }
+  }
+
+  private class CallLoadFailed implements Runnable {
+    private final ResourceCallback cb;
+    private final GlideException exception;
 
-    @Synthetic
-    @SuppressWarnings("WeakerAccess")
-    MainThreadCallback() { }
+    CallLoadFailed(ResourceCallback cb, GlideException exception) {
+      this.cb = cb;
+      this.exception = exception;
+    }
 
     @Override
-    public boolean handleMessage(Message message) {
-      EngineJob<?> job = (EngineJob<?>) message.obj;
-      switch (message.what) {
-        case MSG_COMPLETE:
-          job.handleResultOnMainThread();
-          break;
-        case MSG_EXCEPTION:
-          job.handleExceptionOnMainThread();
-          break;
-        case MSG_CANCELLED:
-          job.handleCancelledOnMainThread();
-          break;
-        default:
-          throw new IllegalStateException("Unrecognized message: " + message.what);
+    public void run() {
+      try {
+        synchronized (cb) {
+          if (prepareToNotify(cb, /*toAcquire=*/ null)) {
+            cb.onLoadFailed(exception);
+          }
+        }
+      } finally {
+        decrementPendingCallbacks();
       }
-      return true;
     }
   }
 }
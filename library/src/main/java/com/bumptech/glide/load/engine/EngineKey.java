@@ -9,16 +9,20 @@ import java.util.Map;
 
 /**
  * An in memory only cache key used to multiplex loads.
+ *
+ * <p>The hash code is calculated up front so that lookups only pay for it once. Keys are
+ * immutable, except for the probe keys handed out by {@link EngineKeyFactory#obtainProbe}, which
+ * are re-initialized for each lookup and must never be retained.
  */
 class EngineKey implements Key {
-  private final Object model;
-  private final int width;
-  private final int height;
-  private final Class<?> resourceClass;
-  private final Class<?> transcodeClass;
-  private final Key signature;
-  private final Map<Class<?>, Transformation<?>> transformations;
-  private final Options options;
+  private Object model;
+  private int width;
+  private int height;
+  private Class<?> resourceClass;
+  private Class<?> transcodeClass;
+  private Key signature;
+  private Map<Class<?>, Transformation<?>> transformations;
+  private Options options;
   private int hashCode;
 
   EngineKey(
@@ -30,6 +34,23 @@ class EngineKey implements Key {
       Class<?> resourceClass,
       Class<?> transcodeClass,
       Options options) {
+    init(model, signature, width, height, transformations, resourceClass, transcodeClass, options);
+  }
+
+  /**
+   * Creates an empty probe key that must be initialized with {@link #init} before it's used.
+   */
+  EngineKey() { }
+
+  EngineKey init(
+      Object model,
+      Key signature,
+      int width,
+      int height,
+      Map<Class<?>, Transformation<?>> transformations,
+      Class<?> resourceClass,
+      Class<?> transcodeClass,
+      Options options) {
     this.model = Preconditions.checkNotNull(model);
     this.signature = Preconditions.checkNotNull(signature, "Signature must not be null");
     this.width = width;
@@ -40,6 +61,63 @@ class EngineKey implements Key {
     this.transcodeClass =
         Preconditions.checkNotNull(transcodeClass, "Transcode class must not be null");
     this.options = Preconditions.checkNotNull(options);
+    hashCode = calculateHashCode();
+    return this;
+  }
+
+  /**
+   * Drops the references held by a probe key so that it doesn't keep models alive while pooled.
+   */
+  void clear() {
+    model = null;
+    signature = null;
+    transformations = null;
+    resourceClass = null;
+    transcodeClass = null;
+    options = null;
+    width = 0;
+    height = 0;
+    hashCode = 0;
+  }
+
+  Object getModel() {
+    return model;
+  }
+
+  Key getSignature() {
+    return signature;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  Map<Class<?>, Transformation<?>> getTransformations() {
+    return transformations;
+  }
+
+  Class<?> getResourceClass() {
+    return resourceClass;
+  }
+
+  Class<?> getTranscodeClass() {
+    return transcodeClass;
+  }
+
+  Options getOptions() {
+    return options;
+  }
+
+  /**
+   * Returns a key that's equal for every key that differs from this one only by width and height.
+   */
+  EngineKey getSizelessKey() {
+    return new EngineKey(model, signature, /*width=*/ 0, /*height=*/ 0, transformations,
+        resourceClass, transcodeClass, options);
   }
 
   /**
@@ -51,7 +129,8 @@ class EngineKey implements Key {
   public boolean equals(Object o) {
     if (o instanceof EngineKey) {
       EngineKey other = (EngineKey) o;
-      return model.equals(other.model)
+      return hashCode == other.hashCode
+          && model.equals(other.model)
           && signature.equals(other.signature)
           && height == other.height
           && width == other.width
@@ -80,19 +159,21 @@ class EngineKey implements Key {
    */
   @Override
   public int hashCode() {
-    if (hashCode == 0) {
-      hashCode = model.hashCode();
-      hashCode = 31 * hashCode + signature.hashCode();
-      hashCode = 31 * hashCode + width;
-      hashCode = 31 * hashCode + height;
-      hashCode = 31 * hashCode + transformations.hashCode();
-      hashCode = 31 * hashCode + resourceClass.hashCode();
-      hashCode = 31 * hashCode + transcodeClass.hashCode();
-      hashCode = 31 * hashCode + options.hashCode();
-    }
     return hashCode;
   }
 
+  private int calculateHashCode() {
+    int result = model.hashCode();
+    result = 31 * result + signature.hashCode();
+    result = 31 * result + width;
+    result = 31 * result + height;
+    result = 31 * result + transformations.hashCode();
+    result = 31 * result + resourceClass.hashCode();
+    result = 31 * result + transcodeClass.hashCode();
+    result = 31 * result + options.hashCode();
+    return result;
+  }
+
   @Override
   public String toString() {
     return "EngineKey{"
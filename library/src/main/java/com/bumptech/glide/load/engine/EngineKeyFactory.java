@@ -3,9 +3,14 @@ package com.bumptech.glide.load.engine;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.util.Util;
 import java.util.Map;
+import java.util.Queue;
 
 class EngineKeyFactory {
+  // Lookups may be nested if a callback for a memory cache hit synchronously starts another load.
+  private static final int MAX_PROBE_POOL_SIZE = 4;
+  private final Queue<EngineKey> probes = Util.createQueue(MAX_PROBE_POOL_SIZE);
 
   @SuppressWarnings("rawtypes")
   EngineKey buildKey(Object model, Key signature, int width, int height,
@@ -14,4 +19,29 @@ class EngineKeyFactory {
     return new EngineKey(model, signature, width, height, transformations, resourceClass,
         transcodeClass, options);
   }
+
+  /**
+   * Returns a pooled key equal to the key {@link #buildKey} would return for the same arguments
+   * that can be used to look up resources without allocating.
+   *
+   * <p>Probe keys must never be retained, for example as the key of a map entry, and must be
+   * returned with {@link #releaseProbe(EngineKey)} once the lookup is complete.
+   */
+  synchronized EngineKey obtainProbe(Object model, Key signature, int width, int height,
+      Map<Class<?>, Transformation<?>> transformations, Class<?> resourceClass,
+      Class<?> transcodeClass, Options options) {
+    EngineKey probe = probes.poll();
+    if (probe == null) {
+      probe = new EngineKey();
+    }
+    return probe.init(model, signature, width, height, transformations, resourceClass,
+        transcodeClass, options);
+  }
+
+  synchronized void releaseProbe(EngineKey probe) {
+    probe.clear();
+    if (probes.size() < MAX_PROBE_POOL_SIZE) {
+      probes.offer(probe);
+    }
+  }
 }
@@ -1,7 +1,8 @@
 package com.bumptech.glide.load.engine;
 
-import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.util.Preconditions;
 
@@ -9,15 +10,21 @@ import com.bumptech.glide.util.Preconditions;
  * A wrapper resource that allows reference counting a wrapped {@link
  * com.bumptech.glide.load.engine.Resource} interface.
  *
+ * <p>The reference count may be changed from any thread. To keep the order in which locks are
+ * obtained consistent with {@link Engine}, {@link #release()} obtains the
+ * {@link ResourceListener}'s lock before this object's lock.
+ *
  * @param <Z> The type of data returned by the wrapped {@link Resource}.
  */
-class EngineResource<Z> implements Resource<Z> {
+class EngineResource<Z> implements Resource<Z>, LoadCost {
   private final boolean isCacheable;
   private final boolean isRecyclable;
   private ResourceListener listener;
   private Key key;
   private int acquired;
   private boolean isRecycled;
+  private DataSource loadDataSource;
+  private long loadTimeMillis;
   private final Resource<Z> resource;
 
   interface ResourceListener {
@@ -30,11 +37,35 @@ class EngineResource<Z> implements Resource<Z> {
     this.isRecyclable = isRecyclable;
   }
 
-  void setResourceListener(Key key, ResourceListener listener) {
+  synchronized void setResourceListener(Key key, ResourceListener listener) {
     this.key = key;
     this.listener = listener;
   }
 
+  /**
+   * Records where the wrapped resource was loaded from and how long it took so that memory caches
+   * can weigh the cost of loading it again.
+   */
+  void setLoadCost(DataSource loadDataSource, long loadTimeMillis) {
+    this.loadDataSource = loadDataSource;
+    this.loadTimeMillis = loadTimeMillis;
+  }
+
+  @Nullable
+  @Override
+  public DataSource getLoadDataSource() {
+    return loadDataSource;
+  }
+
+  @Override
+  public long getLoadTimeMillis() {
+    return loadTimeMillis;
+  }
+
+  synchronized Key getKey() {
+    return key;
+  }
+
   Resource<Z> getResource() {
     return resource;
   }
@@ -61,7 +92,7 @@ class EngineResource<Z> implements Resource<Z> {
   }
 
   @Override
-  public void recycle() {
+  public synchronized void recycle() {
     if (acquired > 0) {
       throw new IllegalStateException("Cannot recycle a resource while it is still acquired");
     }
@@ -75,52 +106,62 @@ class EngineResource<Z> implements Resource<Z> {
   }
 
   /**
-   * Increments the number of consumers using the wrapped resource. Must be called on the main
-   * thread.
+   * Increments the number of consumers using the wrapped resource.
    *
    * <p> This must be called with a number corresponding to the number of new consumers each time
    * new consumers begin using the wrapped resource. It is always safer to call acquire more often
    * than necessary. Generally external users should never call this method, the framework will take
    * care of this for you. </p>
    */
-  void acquire() {
+  synchronized void acquire() {
     if (isRecycled) {
       throw new IllegalStateException("Cannot acquire a recycled resource");
     }
-    if (!Looper.getMainLooper().equals(Looper.myLooper())) {
-      throw new IllegalThreadStateException("Must call acquire on the main thread");
-    }
     ++acquired;
   }
 
   /**
-   * Decrements the number of consumers using the wrapped resource. Must be called on the main
-   * thread.
+   * Decrements the number of consumers using the wrapped resource.
    *
    * <p>This must only be called when a consumer that called the {@link #acquire()} method is now
    * done with the resource. Generally external users should never call this method, the framework
    * will take care of this for you.
    */
   void release() {
+    ResourceListener currentListener;
+    synchronized (this) {
+      currentListener = listener;
+    }
+    if (currentListener == null) {
+      releaseLocked();
+      return;
+    }
+    // The listener must be locked first so that a resource that's being released can't be
+    // acquired again by a concurrent load while it's moved into the memory cache.
+    synchronized (currentListener) {
+      releaseLocked();
+    }
+  }
+
+  private synchronized void releaseLocked() {
     if (acquired <= 0) {
       throw new IllegalStateException("Cannot release a recycled or not yet acquired resource");
     }
-    if (!Looper.getMainLooper().equals(Looper.myLooper())) {
-      throw new IllegalThreadStateException("Must call release on the main thread");
-    }
     if (--acquired == 0) {
       listener.onResourceReleased(key, this);
     }
   }
 
   @Override
-  public String toString() {
+  public synchronized String toString() {
     return "EngineResource{"
         + "isCacheable=" + isCacheable
         + ", listener=" + listener
         + ", key=" + key
         + ", acquired=" + acquired
         + ", isRecycled=" + isRecycled
+        + ", loadDataSource=" + loadDataSource
+        + ", loadTimeMillis=" + loadTimeMillis
         + ", resource=" + resource
         + '}';
   }
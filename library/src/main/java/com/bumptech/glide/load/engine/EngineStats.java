@@ -0,0 +1,247 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link EngineStatsListener} that keeps running totals of hits, misses and bytes for each
+ * {@link EngineStatsListener.Tier} and a latency histogram for each
+ * {@link EngineStatsListener.Phase} that can be polled at any time.
+ *
+ * <p>All counters are primitive atomics allocated up front, so recording an event never allocates
+ * and never blocks. This makes it cheap enough to leave registered in production builds.
+ *
+ * <p>Latencies are recorded in power of two buckets. Bucket {@code 0} counts phases that took less
+ * than one millisecond, bucket {@code i} counts phases that took at least {@code 2^(i - 1)} and
+ * less than {@code 2^i} milliseconds and the last bucket counts everything slower than that.
+ */
+public final class EngineStats implements EngineStatsListener {
+  /** The number of buckets in each latency histogram. */
+  public static final int BUCKET_COUNT = 16;
+
+  private static final int TIER_COUNT = Tier.values().length;
+  private static final int PHASE_COUNT = Phase.values().length;
+
+  private final AtomicLongArray hits = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray misses = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray bytes = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray writes = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray writtenBytes = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray skippedWrites = new AtomicLongArray(TIER_COUNT);
+  private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASE_COUNT);
+  private final AtomicLongArray phaseTotalMicros = new AtomicLongArray(PHASE_COUNT);
+  private final AtomicLongArray histograms = new AtomicLongArray(PHASE_COUNT * BUCKET_COUNT);
+
+  @Override
+  public void onTierHit(@NonNull Tier tier, long bytes) {
+    hits.incrementAndGet(tier.ordinal());
+    this.bytes.addAndGet(tier.ordinal(), bytes);
+  }
+
+  @Override
+  public void onTierMiss(@NonNull Tier tier) {
+    misses.incrementAndGet(tier.ordinal());
+  }
+
+  @Override
+  public void onPhaseCompleted(@NonNull Phase phase, double elapsedMillis) {
+    int index = phase.ordinal();
+    phaseCounts.incrementAndGet(index);
+    phaseTotalMicros.addAndGet(index, (long) (elapsedMillis * 1000));
+    histograms.incrementAndGet(index * BUCKET_COUNT + getBucket(elapsedMillis));
+  }
+
+  @Override
+  public void onDiskCacheWrite(@NonNull Tier tier, long bytes) {
+    writes.incrementAndGet(tier.ordinal());
+    writtenBytes.addAndGet(tier.ordinal(), bytes);
+  }
+
+  @Override
+  public void onDiskCacheWriteSkipped(@NonNull Tier tier) {
+    skippedWrites.incrementAndGet(tier.ordinal());
+  }
+
+  /**
+   * Returns the number of times a resource was found in the given tier.
+   */
+  public long getHitCount(@NonNull Tier tier) {
+    return hits.get(tier.ordinal());
+  }
+
+  /**
+   * Returns the number of times the given tier was checked and didn't contain the resource.
+   */
+  public long getMissCount(@NonNull Tier tier) {
+    return misses.get(tier.ordinal());
+  }
+
+  /**
+   * Returns the total size in bytes of the resources loaded from the given tier.
+   */
+  public long getBytes(@NonNull Tier tier) {
+    return bytes.get(tier.ordinal());
+  }
+
+  /**
+   * Returns the fraction of checks of the given tier that were hits, or {@code 0} if the tier has
+   * never been checked.
+   */
+  public double getHitRate(@NonNull Tier tier) {
+    long hitCount = getHitCount(tier);
+    long requestCount = hitCount + getMissCount(tier);
+    return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+  }
+
+  /**
+   * Returns the number of entries written to the disk cache for the given tier.
+   */
+  public long getWriteCount(@NonNull Tier tier) {
+    return writes.get(tier.ordinal());
+  }
+
+  /**
+   * Returns the total size in bytes of the entries written to the disk cache for the given tier.
+   */
+  public long getWrittenBytes(@NonNull Tier tier) {
+    return writtenBytes.get(tier.ordinal());
+  }
+
+  /**
+   * Returns the number of entries the disk cache admission policy kept from being written to the
+   * disk cache for the given tier.
+   */
+  public long getSkippedWriteCount(@NonNull Tier tier) {
+    return skippedWrites.get(tier.ordinal());
+  }
+
+  /**
+   * Returns an estimate of the number of bytes the disk cache admission policy kept from being
+   * written to the disk cache for the given tier, or {@code 0} if nothing has been written yet.
+   *
+   * <p>Skipped entries are never encoded, so their size on disk is unknown and is estimated as the
+   * average size of the entries that were written.
+   */
+  public long getEstimatedSkippedBytes(@NonNull Tier tier) {
+    long writeCount = getWriteCount(tier);
+    return writeCount == 0 ? 0 : getSkippedWriteCount(tier) * getWrittenBytes(tier) / writeCount;
+  }
+
+  /**
+   * Returns the number of times the given phase completed.
+   */
+  public long getCount(@NonNull Phase phase) {
+    return phaseCounts.get(phase.ordinal());
+  }
+
+  /**
+   * Returns the average time in milliseconds spent in the given phase, or {@code 0} if the phase
+   * has never completed.
+   */
+  public double getAverageMillis(@NonNull Phase phase) {
+    long count = getCount(phase);
+    return count == 0 ? 0 : phaseTotalMicros.get(phase.ordinal()) / 1000d / count;
+  }
+
+  /**
+   * Returns the number of times the given phase took a time within the given histogram bucket.
+   *
+   * @param bucket A bucket between {@code 0} and {@link #BUCKET_COUNT} - 1.
+   */
+  public long getBucketCount(@NonNull Phase phase, int bucket) {
+    if (bucket < 0 || bucket >= BUCKET_COUNT) {
+      throw new IllegalArgumentException("Bucket must be >= 0 and < " + BUCKET_COUNT);
+    }
+    return histograms.get(phase.ordinal() * BUCKET_COUNT + bucket);
+  }
+
+  /**
+   * Returns the exclusive upper bound in milliseconds of the given bucket, or
+   * {@link Long#MAX_VALUE} for the last bucket.
+   */
+  public static long getBucketUpperBoundMillis(int bucket) {
+    return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  /**
+   * Returns an upper bound in milliseconds for the given percentile of times spent in the given
+   * phase, limited by the resolution of the histogram, or {@code 0} if the phase has never
+   * completed.
+   *
+   * @param percentile A value between 0 and 100.
+   */
+  public long getPercentileMillis(@NonNull Phase phase, double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+    long count = getCount(phase);
+    if (count == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      seen += getBucketCount(phase, bucket);
+      if (seen >= target) {
+        return getBucketUpperBoundMillis(bucket);
+      }
+    }
+    return getBucketUpperBoundMillis(BUCKET_COUNT - 1);
+  }
+
+  /**
+   * Resets all counters and histograms to zero.
+   *
+   * <p>Events recorded concurrently with a reset may be partially counted.
+   */
+  public void reset() {
+    for (int i = 0; i < TIER_COUNT; i++) {
+      hits.set(i, 0);
+      misses.set(i, 0);
+      bytes.set(i, 0);
+      writes.set(i, 0);
+      writtenBytes.set(i, 0);
+      skippedWrites.set(i, 0);
+    }
+    for (int i = 0; i < PHASE_COUNT; i++) {
+      phaseCounts.set(i, 0);
+      phaseTotalMicros.set(i, 0);
+    }
+    for (int i = 0; i < histograms.length(); i++) {
+      histograms.set(i, 0);
+    }
+  }
+
+  private static int getBucket(double elapsedMillis) {
+    long millis = (long) elapsedMillis;
+    if (millis <= 0) {
+      return 0;
+    }
+    return Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(millis));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder("EngineStats{");
+    for (Tier tier : Tier.values()) {
+      result.append(tier)
+          .append("=[hits=").append(getHitCount(tier))
+          .append(", misses=").append(getMissCount(tier))
+          .append(", bytes=").append(getBytes(tier))
+          .append(", writes=").append(getWriteCount(tier))
+          .append(", writtenBytes=").append(getWrittenBytes(tier))
+          .append(", skippedWrites=").append(getSkippedWriteCount(tier))
+          .append("], ");
+    }
+    for (Phase phase : Phase.values()) {
+      result.append(phase)
+          .append("=[count=").append(getCount(phase))
+          .append(", avgMs=").append(getAverageMillis(phase))
+          .append(", p50Ms=").append(getPercentileMillis(phase, 50))
+          .append(", p99Ms=").append(getPercentileMillis(phase, 99))
+          .append("], ");
+    }
+    result.setLength(result.length() - 2);
+    return result.append('}').toString();
+  }
+}
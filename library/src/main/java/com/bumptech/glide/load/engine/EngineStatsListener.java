@@ -0,0 +1,95 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Receives events for each tier {@link Engine} checks when resolving a load and for the time spent
+ * in each phase of loading a new resource.
+ *
+ * <p>Events are delivered on the thread that started the load for the active resource and memory
+ * cache tiers and on Glide's executor threads for everything else, so implementations must be
+ * thread safe and should return quickly. Every method only receives enums and primitives so that
+ * listeners, like {@link EngineStats}, can record events without allocating.
+ *
+ * <p>Events may be added in future versions, so implementations should extend
+ * {@link EngineStatsListenerAdapter} rather than implementing this interface directly.
+ *
+ * @see com.bumptech.glide.GlideBuilder#setEngineStatsListener(EngineStatsListener)
+ */
+public interface EngineStatsListener {
+
+  /**
+   * The places {@link Engine} looks for a resource, in the order they're checked.
+   */
+  enum Tier {
+    /** Resources that are currently displayed in at least one target. */
+    ACTIVE_RESOURCES,
+    /** The {@link com.bumptech.glide.load.engine.cache.MemoryCache}. */
+    MEMORY_CACHE,
+    /**
+     * Compressed copies of {@link android.graphics.Bitmap}s evicted from the memory cache, only
+     * checked if enabled.
+     *
+     * @see com.bumptech.glide.GlideBuilder#setCompressedMemoryCacheSize(long)
+     */
+    COMPRESSED_MEMORY_CACHE,
+    /** Decoded and transformed resources in the disk cache. */
+    RESOURCE_DISK_CACHE,
+    /** Unmodified source data in the disk cache. */
+    DATA_DISK_CACHE,
+    /** The original source of the data, either local or remote. */
+    SOURCE,
+  }
+
+  /**
+   * The phases of loading a resource that isn't already in memory.
+   */
+  enum Phase {
+    /** Retrieving data from a disk cache or from the source. */
+    FETCH,
+    /** Decoding and transcoding data into a resource, excluding any transformation. */
+    DECODE,
+    /** Applying a {@link com.bumptech.glide.load.Transformation} to a decoded resource. */
+    TRANSFORM,
+    /** Writing a resource to the disk cache. */
+    ENCODE,
+  }
+
+  /**
+   * Called when a resource is found in the given tier.
+   *
+   * @param bytes The size in bytes of the resource loaded from the tier.
+   */
+  void onTierHit(@NonNull Tier tier, long bytes);
+
+  /**
+   * Called when the given tier is checked and doesn't contain the requested resource.
+   *
+   * <p>Tiers that are skipped because of the request's options, or because a load for the same
+   * resource is already in progress, are neither hits nor misses.
+   */
+  void onTierMiss(@NonNull Tier tier);
+
+  /**
+   * Called each time the given phase completes successfully.
+   *
+   * @param elapsedMillis The time spent in the phase in milliseconds.
+   */
+  void onPhaseCompleted(@NonNull Phase phase, double elapsedMillis);
+
+  /**
+   * Called when data or a resource is written to the disk cache for the given tier, either
+   * {@link Tier#RESOURCE_DISK_CACHE} or {@link Tier#DATA_DISK_CACHE}.
+   *
+   * @param bytes The size in bytes of the entry written to disk.
+   */
+  void onDiskCacheWrite(@NonNull Tier tier, long bytes);
+
+  /**
+   * Called when data or a resource that the
+   * {@link com.bumptech.glide.load.engine.DiskCacheStrategy} allows to be cached isn't written to
+   * the disk cache for the given tier because the
+   * {@link com.bumptech.glide.load.engine.cache.DiskCacheAdmissionPolicy} rejected it.
+   */
+  void onDiskCacheWriteSkipped(@NonNull Tier tier);
+}
@@ -0,0 +1,35 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A simple class that ignores every event, which listeners can extend to only override the events
+ * they're interested in and to keep compiling when new events are added to
+ * {@link EngineStatsListener}.
+ */
+public class EngineStatsListenerAdapter implements EngineStatsListener {
+  @Override
+  public void onTierHit(@NonNull Tier tier, long bytes) {
+    // no op, default for overriders
+  }
+
+  @Override
+  public void onTierMiss(@NonNull Tier tier) {
+    // no op, default for overriders
+  }
+
+  @Override
+  public void onPhaseCompleted(@NonNull Phase phase, double elapsedMillis) {
+    // no op, default for overriders
+  }
+
+  @Override
+  public void onDiskCacheWrite(@NonNull Tier tier, long bytes) {
+    // no op, default for overriders
+  }
+
+  @Override
+  public void onDiskCacheWriteSkipped(@NonNull Tier tier) {
+    // no op, default for overriders
+  }
+}
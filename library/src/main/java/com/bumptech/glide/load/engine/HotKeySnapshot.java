@@ -0,0 +1,562 @@
+package com.bumptech.glide.load.engine;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.model.stream.HttpGlideUrlLoader;
+import com.bumptech.glide.load.resource.bitmap.BitmapEncoder;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.load.resource.bitmap.CenterInside;
+import com.bumptech.glide.load.resource.bitmap.CircleCrop;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.load.resource.bitmap.Downsampler;
+import com.bumptech.glide.load.resource.bitmap.FitCenter;
+import com.bumptech.glide.load.resource.bitmap.VideoBitmapDecoder;
+import com.bumptech.glide.load.resource.gif.GifOptions;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.signature.EmptySignature;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Counts how often each {@link EngineKey} is loaded and saves the most frequently loaded keys to a
+ * file so that their resources can be loaded into memory ahead of time when the app next starts.
+ *
+ * <p>Only keys that can be read back from the file as an equal {@link EngineKey} are saved. That
+ * is keys for {@link String}, {@link Uri} and {@link File} models with the default signature,
+ * at most one of Glide's scale or crop transformations and only Glide's own options. Keys for
+ * other models or signatures aren't recorded at all, so that models like {@link Bitmap}s and
+ * byte arrays aren't retained. Keys with other transformations or options are counted, but skipped
+ * when saving.
+ *
+ * <p>Thread safe.
+ */
+class HotKeySnapshot {
+  private static final String TAG = "HotKeySnapshot";
+  // Must be incremented whenever the format or any of the arrays of known values below change.
+  private static final int VERSION = 1;
+  @VisibleForTesting
+  static final int MAX_SAVED_KEYS = 50;
+  private static final int MAX_TRACKED_KEYS = 8 * MAX_SAVED_KEYS;
+  // The number of recorded loads after which the snapshot is saved again.
+  @VisibleForTesting
+  static final int SAVE_INTERVAL = 200;
+
+  private static final int MODEL_STRING = 0;
+  private static final int MODEL_URI = 1;
+  private static final int MODEL_FILE = 2;
+  private static final int NO_TRANSFORMATION = -1;
+  private static final int VALUE_BOOLEAN = 0;
+  private static final int VALUE_INTEGER = 1;
+  private static final int VALUE_LONG = 2;
+  private static final int VALUE_ENUM = 3;
+  private static final int VALUE_DOWNSAMPLE_STRATEGY = 4;
+
+  private static final Option<?>[] KNOWN_OPTIONS = {
+      Downsampler.DECODE_FORMAT,
+      Downsampler.DOWNSAMPLE_STRATEGY,
+      Downsampler.FIX_BITMAP_SIZE_TO_REQUESTED_DIMENSIONS,
+      Downsampler.ALLOW_HARDWARE_CONFIG,
+      BitmapEncoder.COMPRESSION_QUALITY,
+      BitmapEncoder.COMPRESSION_FORMAT,
+      VideoBitmapDecoder.TARGET_FRAME,
+      VideoBitmapDecoder.FRAME_OPTION,
+      GifOptions.DECODE_FORMAT,
+      GifOptions.DISABLE_ANIMATION,
+      HttpGlideUrlLoader.TIMEOUT,
+  };
+  private static final DownsampleStrategy[] KNOWN_DOWNSAMPLE_STRATEGIES = {
+      DownsampleStrategy.FIT_CENTER,
+      DownsampleStrategy.CENTER_OUTSIDE,
+      DownsampleStrategy.AT_LEAST,
+      DownsampleStrategy.AT_MOST,
+      DownsampleStrategy.CENTER_INSIDE,
+      DownsampleStrategy.NONE,
+  };
+  private static final Class<?>[] KNOWN_TRANSFORMATIONS = {
+      CenterCrop.class,
+      CenterInside.class,
+      FitCenter.class,
+      CircleCrop.class,
+  };
+
+  private static final Comparator<Map.Entry<EngineKey, Counter>> BY_COUNT_DESCENDING =
+      new Comparator<Map.Entry<EngineKey, Counter>>() {
+        @Override
+        public int compare(Map.Entry<EngineKey, Counter> lhs, Map.Entry<EngineKey, Counter> rhs) {
+          int lhsCount = lhs.getValue().count;
+          int rhsCount = rhs.getValue().count;
+          return lhsCount > rhsCount ? -1 : (lhsCount == rhsCount ? 0 : 1);
+        }
+      };
+
+  private final Map<EngineKey, Counter> counts = new HashMap<>();
+  private final File file;
+  private final Executor executor;
+  private final Object saveLock = new Object();
+  private final Runnable saveRunnable = new Runnable() {
+    @Override
+    public void run() {
+      save();
+    }
+  };
+  private int recordsSinceSave;
+
+  HotKeySnapshot(@NonNull File file, @NonNull Executor executor) {
+    this.file = file;
+    this.executor = executor;
+  }
+
+  /**
+   * Records a load of the given key and periodically schedules the snapshot to be saved.
+   *
+   * <p>The given key is retained if it may be saved, so it must not be a temporary probe key.
+   */
+  void record(@NonNull EngineKey key) {
+    if (!isSavableModel(key.getModel()) || !(key.getSignature() instanceof EmptySignature)) {
+      return;
+    }
+    boolean shouldSave;
+    synchronized (this) {
+      Counter counter = counts.get(key);
+      if (counter == null) {
+        if (counts.size() >= MAX_TRACKED_KEYS) {
+          age();
+        }
+        counter = new Counter();
+        counts.put(key, counter);
+      }
+      counter.count++;
+      shouldSave = ++recordsSinceSave >= SAVE_INTERVAL;
+      if (shouldSave) {
+        recordsSinceSave = 0;
+      }
+    }
+    if (shouldSave) {
+      saveAsync();
+    }
+  }
+
+  void saveAsync() {
+    executor.execute(saveRunnable);
+  }
+
+  /**
+   * Synchronously writes the most frequently loaded keys to the snapshot file and returns the
+   * number of keys written.
+   *
+   * <p>Does nothing if none of the recorded keys can be saved, so that the previous snapshot isn't
+   * replaced if Glide is torn down before any loads are made.
+   */
+  int save() {
+    synchronized (saveLock) {
+      return saveLocked();
+    }
+  }
+
+  private int saveLocked() {
+    List<EngineKey> keys = getKeysByCount();
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    int written = 0;
+    for (int i = 0, size = keys.size(); i < size && written < MAX_SAVED_KEYS; i++) {
+      EngineKey key = keys.get(i);
+      byte[] entry = encode(key);
+      if (entry != null && key.equals(decode(entry))) {
+        entries.write(entry, 0, entry.length);
+        written++;
+      }
+    }
+    if (written == 0) {
+      return 0;
+    }
+
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream os = null;
+    try {
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      os.writeInt(VERSION);
+      os.writeInt(written);
+      entries.writeTo(os);
+      os.close();
+      os = null;
+      if (!temp.renameTo(file)) {
+        throw new IOException("Failed to rename " + temp + " to " + file);
+      }
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to save hot keys", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return 0;
+    } finally {
+      close(os);
+    }
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      Log.d(TAG, "Saved " + written + " of " + keys.size() + " hot keys to " + file);
+    }
+    return written;
+  }
+
+  /**
+   * Synchronously reads the keys saved in the snapshot file, most frequently loaded first, or
+   * returns an empty list if there is no valid snapshot file.
+   */
+  @NonNull
+  List<EngineKey> read() {
+    if (!file.exists()) {
+      return Collections.emptyList();
+    }
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (is.readInt() != VERSION) {
+        throw new IOException("Unsupported version");
+      }
+      int count = is.readInt();
+      List<EngineKey> result = new ArrayList<>(Math.min(count, MAX_SAVED_KEYS));
+      for (int i = 0; i < count; i++) {
+        EngineKey key = readKey(is);
+        if (key != null) {
+          result.add(key);
+        }
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Ignoring invalid hot key snapshot", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+      return Collections.emptyList();
+    } finally {
+      close(is);
+    }
+  }
+
+  /**
+   * Returns the value {@link RequestOptions} had for its scale only flag when the given key was
+   * loaded, so that loads replayed from the snapshot decode the same way as the original load, for
+   * example with or without hardware {@link Bitmap}s.
+   */
+  static boolean isScaleOnlyOrNoTransform(@NonNull EngineKey key) {
+    Map<Class<?>, Transformation<?>> transformations = key.getTransformations();
+    if (transformations.isEmpty()) {
+      return true;
+    }
+    // RequestOptions only treats fitCenter() and centerInside() as scale only, centerCrop() crops.
+    Transformation<?> transformation = transformations.get(Bitmap.class);
+    return transformation != null
+        && (transformation.getClass() == FitCenter.class
+            || transformation.getClass() == CenterInside.class);
+  }
+
+  synchronized void clear() {
+    counts.clear();
+    recordsSinceSave = 0;
+  }
+
+  /**
+   * Halves every count and forgets keys whose count reaches zero, so that keys that were popular
+   * a long time ago don't stay in the snapshot forever and the number of tracked keys is bounded.
+   */
+  private void age() {
+    Iterator<Counter> iterator = counts.values().iterator();
+    while (iterator.hasNext()) {
+      Counter counter = iterator.next();
+      counter.count /= 2;
+      if (counter.count == 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private synchronized List<EngineKey> getKeysByCount() {
+    List<Map.Entry<EngineKey, Counter>> entries = new ArrayList<>(counts.entrySet());
+    Collections.sort(entries, BY_COUNT_DESCENDING);
+    List<EngineKey> result = new ArrayList<>(entries.size());
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      result.add(entries.get(i).getKey());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the serialized form of the given key, or {@code null} if any part of the key can't be
+   * serialized.
+   */
+  @Nullable
+  private static byte[] encode(EngineKey key) {
+    if (!(key.getSignature() instanceof EmptySignature)) {
+      return null;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream os = new DataOutputStream(bytes);
+    try {
+      if (!writeModel(os, key.getModel())) {
+        return null;
+      }
+      os.writeInt(key.getWidth());
+      os.writeInt(key.getHeight());
+      os.writeUTF(key.getResourceClass().getName());
+      os.writeUTF(key.getTranscodeClass().getName());
+      if (!writeTransformations(os, key.getTransformations())
+          || !writeOptions(os, key.getOptions())) {
+        return null;
+      }
+      os.flush();
+    } catch (IOException e) {
+      // Can't happen when writing to a ByteArrayOutputStream.
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Nullable
+  private static EngineKey decode(byte[] entry) {
+    try {
+      return readKey(new DataInputStream(new ByteArrayInputStream(entry)));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean isSavableModel(Object model) {
+    return model instanceof String || model instanceof Uri || model instanceof File;
+  }
+
+  private static boolean writeModel(DataOutputStream os, Object model) throws IOException {
+    if (model instanceof String) {
+      os.writeByte(MODEL_STRING);
+      os.writeUTF((String) model);
+    } else if (model instanceof Uri) {
+      os.writeByte(MODEL_URI);
+      os.writeUTF(model.toString());
+    } else if (model instanceof File) {
+      os.writeByte(MODEL_FILE);
+      os.writeUTF(((File) model).getPath());
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean writeTransformations(
+      DataOutputStream os, Map<Class<?>, Transformation<?>> transformations) throws IOException {
+    if (transformations.isEmpty()) {
+      os.writeByte(NO_TRANSFORMATION);
+      return true;
+    }
+    // The transformations for other resource classes wrap the transformation for Bitmaps.
+    Transformation<?> transformation = transformations.get(Bitmap.class);
+    int index = transformation != null ? indexOf(KNOWN_TRANSFORMATIONS, transformation.getClass())
+        : -1;
+    if (index == -1) {
+      return false;
+    }
+    os.writeByte(index);
+    return true;
+  }
+
+  private static boolean writeOptions(DataOutputStream os, Options options) throws IOException {
+    List<Option<?>> present = new ArrayList<>(KNOWN_OPTIONS.length);
+    for (Option<?> option : KNOWN_OPTIONS) {
+      if (options.contains(option)) {
+        present.add(option);
+      }
+    }
+    os.writeByte(present.size());
+    for (int i = 0, size = present.size(); i < size; i++) {
+      Option<?> option = present.get(i);
+      os.writeByte(indexOf(KNOWN_OPTIONS, option));
+      Object value = options.get(option);
+      if (value instanceof Boolean) {
+        os.writeByte(VALUE_BOOLEAN);
+        os.writeBoolean((Boolean) value);
+      } else if (value instanceof Integer) {
+        os.writeByte(VALUE_INTEGER);
+        os.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        os.writeByte(VALUE_LONG);
+        os.writeLong((Long) value);
+      } else if (value instanceof Enum) {
+        os.writeByte(VALUE_ENUM);
+        os.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+        os.writeUTF(((Enum<?>) value).name());
+      } else if (value instanceof DownsampleStrategy
+          && indexOf(KNOWN_DOWNSAMPLE_STRATEGIES, value) != -1) {
+        os.writeByte(VALUE_DOWNSAMPLE_STRATEGY);
+        os.writeByte(indexOf(KNOWN_DOWNSAMPLE_STRATEGIES, value));
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the next key in the given stream, or {@code null} if the key refers to classes that
+   * no longer exist.
+   */
+  @Nullable
+  private static EngineKey readKey(DataInputStream is) throws IOException {
+    Object model = readModel(is);
+    int width = is.readInt();
+    int height = is.readInt();
+    String resourceClassName = is.readUTF();
+    String transcodeClassName = is.readUTF();
+    Map<Class<?>, Transformation<?>> transformations = readTransformations(is);
+    Options options = readOptions(is);
+    Class<?> resourceClass;
+    Class<?> transcodeClass;
+    try {
+      resourceClass = Class.forName(resourceClassName);
+      transcodeClass = Class.forName(transcodeClassName);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    return new EngineKey(model, EmptySignature.obtain(), width, height, transformations,
+        resourceClass, transcodeClass, options);
+  }
+
+  private static Object readModel(DataInputStream is) throws IOException {
+    int type = is.readByte();
+    String value = is.readUTF();
+    switch (type) {
+      case MODEL_STRING:
+        return value;
+      case MODEL_URI:
+        return Uri.parse(value);
+      case MODEL_FILE:
+        return new File(value);
+      default:
+        throw new IOException("Unknown model type: " + type);
+    }
+  }
+
+  private static Map<Class<?>, Transformation<?>> readTransformations(DataInputStream is)
+      throws IOException {
+    int index = is.readByte();
+    if (index == NO_TRANSFORMATION) {
+      return Collections.emptyMap();
+    }
+    Class<?> transformationClass = getOrThrow(KNOWN_TRANSFORMATIONS, index);
+    Transformation<Bitmap> transformation;
+    if (transformationClass == CenterCrop.class) {
+      transformation = new CenterCrop();
+    } else if (transformationClass == CenterInside.class) {
+      transformation = new CenterInside();
+    } else if (transformationClass == FitCenter.class) {
+      transformation = new FitCenter();
+    } else {
+      transformation = new CircleCrop();
+    }
+    // Use RequestOptions to add the same wrappers for Drawables and GifDrawables it would add.
+    return new RequestOptions().optionalTransform(transformation).getTransformations();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Options readOptions(DataInputStream is) throws IOException {
+    Options options = new Options();
+    int count = is.readByte();
+    for (int i = 0; i < count; i++) {
+      Option<Object> option = (Option<Object>) getOrThrow(KNOWN_OPTIONS, is.readByte());
+      int type = is.readByte();
+      Object value;
+      switch (type) {
+        case VALUE_BOOLEAN:
+          value = is.readBoolean();
+          break;
+        case VALUE_INTEGER:
+          value = is.readInt();
+          break;
+        case VALUE_LONG:
+          value = is.readLong();
+          break;
+        case VALUE_ENUM:
+          value = readEnum(is.readUTF(), is.readUTF());
+          break;
+        case VALUE_DOWNSAMPLE_STRATEGY:
+          value = getOrThrow(KNOWN_DOWNSAMPLE_STRATEGIES, is.readByte());
+          break;
+        default:
+          throw new IOException("Unknown value type: " + type);
+      }
+      options.set(option, value);
+    }
+    return options;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object readEnum(String className, String name) throws IOException {
+    try {
+      return Enum.valueOf((Class) Class.forName(className), name);
+    } catch (ClassNotFoundException | IllegalArgumentException e) {
+      throw new IOException("Unknown enum value: " + className + "." + name, e);
+    }
+  }
+
+  private static <T> T getOrThrow(T[] values, int index) throws IOException {
+    if (index < 0 || index >= values.length) {
+      throw new IOException("Unknown index: " + index);
+    }
+    return values[index];
+  }
+
+  private static int indexOf(Object[] values, Object value) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void close(@Nullable InputStream is) {
+    if (is != null) {
+      try {
+        is.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  private static void close(@Nullable OutputStream os) {
+    if (os != null) {
+      try {
+        os.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  private static final class Counter {
+    int count;
+  }
+}
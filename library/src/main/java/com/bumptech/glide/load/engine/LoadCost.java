@@ -0,0 +1,23 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.DataSource;
+
+/**
+ * Implemented by {@link Resource}s that know how expensive they were to load so that caches can
+ * prefer to keep resources that would be slow to load again.
+ */
+public interface LoadCost {
+
+  /**
+   * Returns the {@link DataSource} the resource was loaded from, or {@code null} if unknown.
+   */
+  @Nullable
+  DataSource getLoadDataSource();
+
+  /**
+   * Returns the time in milliseconds spent fetching, decoding and transforming the resource, or
+   * {@code 0} if unknown.
+   */
+  long getLoadTimeMillis();
+}
@@ -0,0 +1,246 @@
+package com.bumptech.glide.load.engine;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.load.resource.bitmap.FitCenter;
+import com.bumptech.glide.load.resource.bitmap.LazyBitmapDrawableResource;
+import com.bumptech.glide.load.resource.bitmap.TransformationUtils;
+import com.bumptech.glide.util.Synthetic;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the sizes at which each model, signature and set of options is resident in
+ * memory, either in active resources or in the memory cache, so that requests for a smaller size
+ * can be fulfilled by downscaling a larger {@link Bitmap} instead of starting a new load.
+ *
+ * <p>Only loads transformed with {@link CenterCrop} or {@link FitCenter} are tracked. The size
+ * of their results depends only on the requested size, so applying the same transformation to a
+ * larger variant produces what a load for the smaller size would have. Other transformations,
+ * like rounded corners, depend on the size of the image they're applied to, and loads without
+ * transformations or with {@link com.bumptech.glide.load.resource.bitmap.CenterInside} may
+ * produce images smaller than the requested size.
+ *
+ * <p>The index may contain keys that are no longer resident, callers are expected to verify that
+ * a variant is still available and to {@link #remove(EngineKey)} it if not.
+ *
+ * <p>Variants in the memory cache are read without removing them, so they may be evicted while
+ * they're downscaled. Callers {@link #pin(EngineKey)} a variant before reading it so that a
+ * resource evicted in the meantime is handed back by {@link #unpin(EngineKey)} instead of being
+ * recycled.
+ *
+ * <p>Thread safe.
+ */
+class ResidentVariants {
+  private static final Comparator<EngineKey> BY_AREA = new Comparator<EngineKey>() {
+    @Override
+    public int compare(EngineKey lhs, EngineKey rhs) {
+      long lhsArea = (long) lhs.getWidth() * lhs.getHeight();
+      long rhsArea = (long) rhs.getWidth() * rhs.getHeight();
+      return lhsArea < rhsArea ? -1 : (lhsArea == rhsArea ? 0 : 1);
+    }
+  };
+
+  private final Map<EngineKey, List<EngineKey>> variantsBySizelessKey = new HashMap<>();
+  private final Map<EngineKey, Pin> pins = new HashMap<>();
+  private final BitmapPool bitmapPool;
+
+  ResidentVariants(@NonNull BitmapPool bitmapPool) {
+    this.bitmapPool = bitmapPool;
+  }
+
+  synchronized void add(@NonNull EngineKey key) {
+    if (!isDownscalable(key)) {
+      return;
+    }
+    EngineKey sizelessKey = key.getSizelessKey();
+    List<EngineKey> variants = variantsBySizelessKey.get(sizelessKey);
+    if (variants == null) {
+      variants = new ArrayList<>(2);
+      variantsBySizelessKey.put(sizelessKey, variants);
+    }
+    if (!variants.contains(key)) {
+      variants.add(key);
+    }
+  }
+
+  synchronized void remove(@NonNull EngineKey key) {
+    if (!isDownscalable(key)) {
+      return;
+    }
+    EngineKey sizelessKey = key.getSizelessKey();
+    List<EngineKey> variants = variantsBySizelessKey.get(sizelessKey);
+    if (variants != null && variants.remove(key) && variants.isEmpty()) {
+      variantsBySizelessKey.remove(sizelessKey);
+    }
+  }
+
+  synchronized void clear() {
+    variantsBySizelessKey.clear();
+  }
+
+  /**
+   * Prevents resources removed from the memory cache for the given variant from being recycled
+   * until a matching call to {@link #unpin(EngineKey)}.
+   */
+  synchronized void pin(@NonNull EngineKey variant) {
+    Pin pin = pins.get(variant);
+    if (pin == null) {
+      pin = new Pin();
+      pins.put(variant, pin);
+    }
+    pin.count++;
+  }
+
+  /**
+   * Returns {@code true} if the given variant is pinned, in which case the given resource, which
+   * was removed from the memory cache, is returned by {@link #unpin(EngineKey)} once the variant is
+   * no longer pinned and must not be recycled before then.
+   */
+  synchronized boolean deferIfPinned(@NonNull EngineKey variant, @NonNull Resource<?> removed) {
+    Pin pin = pins.get(variant);
+    if (pin == null) {
+      return false;
+    }
+    pin.deferred.add(removed);
+    return true;
+  }
+
+  /**
+   * Releases a pin obtained with {@link #pin(EngineKey)} and returns the resources removed from
+   * the memory cache while the variant was pinned, which the caller is responsible for.
+   */
+  @NonNull
+  synchronized List<Resource<?>> unpin(@NonNull EngineKey variant) {
+    Pin pin = pins.get(variant);
+    if (pin == null) {
+      throw new IllegalStateException("Variant is not pinned: " + variant);
+    }
+    if (--pin.count > 0) {
+      return Collections.emptyList();
+    }
+    pins.remove(variant);
+    return pin.deferred;
+  }
+
+  /**
+   * Returns the keys of resident variants that can be downscaled to the size of the given key,
+   * smallest first.
+   */
+  @NonNull
+  synchronized List<EngineKey> getLargerVariants(@NonNull EngineKey key) {
+    if (!isDownscalable(key)) {
+      return Collections.emptyList();
+    }
+    List<EngineKey> variants = variantsBySizelessKey.get(key.getSizelessKey());
+    if (variants == null) {
+      return Collections.emptyList();
+    }
+    List<EngineKey> result = null;
+    for (int i = 0, size = variants.size(); i < size; i++) {
+      EngineKey variant = variants.get(i);
+      if (canDownscale(variant, key)) {
+        if (result == null) {
+          result = new ArrayList<>(2);
+        }
+        result.add(variant);
+      }
+    }
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    Collections.sort(result, BY_AREA);
+    return result;
+  }
+
+  /**
+   * Returns a new {@link Resource} containing a copy of the given resource, which was loaded for
+   * {@code from}, downscaled with the transformation of {@code to}, or {@code null} if the
+   * resource doesn't contain a {@link Bitmap} that can be scaled or {@code to} can't be derived
+   * from a larger variant.
+   */
+  @Nullable
+  Resource<?> downscale(@NonNull Resources resources, @NonNull Resource<?> resource,
+      @NonNull EngineKey from, @NonNull EngineKey to) {
+    Object value = resource.get();
+    Bitmap source;
+    if (value instanceof Bitmap) {
+      source = (Bitmap) value;
+    } else if (value instanceof BitmapDrawable) {
+      source = ((BitmapDrawable) value).getBitmap();
+    } else {
+      return null;
+    }
+    Transformation<?> transformation = getScaleOnlyTransformation(to);
+    if (transformation == null || source == null || source.isRecycled() || !isSoftware(source)
+        || (to.getWidth() >= source.getWidth() && to.getHeight() >= source.getHeight())) {
+      return null;
+    }
+
+    // Scaled from the size of the Bitmap rather than the size it was requested at, which it may
+    // not match, to the requested size, the same way the transformation would have.
+    Bitmap scaled = transformation instanceof CenterCrop
+        ? TransformationUtils.centerCrop(bitmapPool, source, to.getWidth(), to.getHeight())
+        : TransformationUtils.fitCenter(bitmapPool, source, to.getWidth(), to.getHeight());
+    if (scaled == source) {
+      // Scaling wouldn't save any memory and the Bitmap must not be shared between two resources.
+      return null;
+    }
+    Resource<Bitmap> scaledResource = BitmapResource.obtain(scaled, bitmapPool);
+    return value instanceof Bitmap
+        ? scaledResource : LazyBitmapDrawableResource.obtain(resources, scaledResource);
+  }
+
+  /**
+   * Returns {@code true} if {@code from} is larger than {@code to} and has the same aspect ratio,
+   * so that applying the transformation again for {@code to} matches what a load for {@code to}
+   * would have produced.
+   */
+  private static boolean canDownscale(EngineKey from, EngineKey to) {
+    return from.getWidth() >= to.getWidth()
+        && from.getHeight() >= to.getHeight()
+        && !(from.getWidth() == to.getWidth() && from.getHeight() == to.getHeight())
+        && (long) from.getWidth() * to.getHeight() == (long) from.getHeight() * to.getWidth();
+  }
+
+  private static boolean isDownscalable(EngineKey key) {
+    // Target.SIZE_ORIGINAL is negative, those loads can't be scaled to or from.
+    return key.getWidth() > 0 && key.getHeight() > 0 && getScaleOnlyTransformation(key) != null;
+  }
+
+  @Nullable
+  private static Transformation<?> getScaleOnlyTransformation(EngineKey key) {
+    Transformation<?> transformation = key.getTransformations().get(Bitmap.class);
+    // Subclasses may draw something else, so only the exact classes are known to be scale only.
+    if (transformation != null && (transformation.getClass() == CenterCrop.class
+        || transformation.getClass() == FitCenter.class)) {
+      return transformation;
+    }
+    return null;
+  }
+
+  private static boolean isSoftware(Bitmap bitmap) {
+    return Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+        || bitmap.getConfig() != Bitmap.Config.HARDWARE;
+  }
+
+  private static final class Pin {
+    @Synthetic final List<Resource<?>> deferred = new ArrayList<>(0);
+    @Synthetic int count;
+
+    @Synthetic
+    Pin() { }
+  }
+}
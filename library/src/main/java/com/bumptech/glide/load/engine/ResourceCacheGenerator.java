@@ -67,11 +67,13 @@ class ResourceCacheGenerator implements DataFetcherGenerator,
               transformation,
               resourceClass,
               helper.getOptions());
-      cacheFile = helper.getDiskCache().get(currentKey);
+      cacheFile = helper.getResourceDiskCache().get(currentKey);
       if (cacheFile != null) {
         this.sourceKey = sourceId;
         modelLoaders = helper.getModelLoaders(cacheFile);
         modelLoaderIndex = 0;
+      } else if (startCachedBuffer(sourceId, currentKey)) {
+        return true;
       }
     }
 
@@ -91,6 +93,23 @@ class ResourceCacheGenerator implements DataFetcherGenerator,
     return started;
   }
 
+  /**
+   * Starts a load from the data for the given key if it's stored in a
+   * {@link com.bumptech.glide.load.engine.cache.ByteBufferDiskCache} without its own file.
+   */
+  private boolean startCachedBuffer(Key sourceId, Key cacheKey) {
+    CachedBufferFetcher fetcher =
+        CachedBufferFetcher.obtain(helper, helper.getResourceDiskCache(), cacheKey,
+            DataSource.RESOURCE_DISK_CACHE);
+    if (fetcher == null) {
+      return false;
+    }
+    this.sourceKey = sourceId;
+    loadData = new LoadData<>(cacheKey, fetcher);
+    fetcher.loadData(helper.getPriority(), this);
+    return true;
+  }
+
   private boolean hasNextModelLoader() {
     return modelLoaderIndex < modelLoaders.size();
   }
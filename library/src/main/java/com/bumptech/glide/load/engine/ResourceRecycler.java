@@ -4,7 +4,6 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import com.bumptech.glide.util.Synthetic;
-import com.bumptech.glide.util.Util;
 
 /**
  * A class that can safely recycle recursive resources.
@@ -14,9 +13,7 @@ class ResourceRecycler {
   private final Handler handler =
       new Handler(Looper.getMainLooper(), new ResourceRecyclerCallback());
 
-  void recycle(Resource<?> resource) {
-    Util.assertMainThread();
-
+  synchronized void recycle(Resource<?> resource) {
     if (isRecycling) {
       // If a resource has sub-resources, releasing a sub resource can cause it's parent to be
       // synchronously
@@ -0,0 +1,276 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Encoder;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.util.Executors;
+import com.bumptech.glide.util.Synthetic;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes source data to the data disk cache behind the decode, rather than before it.
+ *
+ * <p>Source {@link InputStream}s are read into a buffer obtained from the {@link ArrayPool}. The
+ * buffer is then decoded directly while a copy of the same bytes is written to the disk cache on
+ * a dedicated executor, so that the first load of an image doesn't wait for the data to be written
+ * to and read back from disk before it's decoded.
+ *
+ * <p>The number of bytes waiting to be written is bounded. Once the bound is reached, writes
+ * are made synchronously on the calling thread, as they would be without write behind.
+ */
+final class SourceCacheWriter {
+  private static final String TAG = "SourceCacheWriter";
+  @VisibleForTesting
+  static final int MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+  private static final int DEFAULT_MAX_PENDING_BYTES = 2 * MAX_BUFFER_SIZE;
+
+  private final ExecutorService executor;
+  private final long maxPendingBytes;
+  private long pendingBytes;
+
+  interface Callback {
+    /**
+     * Called on the thread that wrote the data once the write completes.
+     *
+     * @param isDataCached {@code true} if the data was written to the disk cache.
+     */
+    void onWriteComplete(boolean isDataCached);
+  }
+
+  SourceCacheWriter(ExecutorService executor) {
+    this(executor, DEFAULT_MAX_PENDING_BYTES);
+  }
+
+  @VisibleForTesting
+  SourceCacheWriter(ExecutorService executor, long maxPendingBytes) {
+    this.executor = executor;
+    this.maxPendingBytes = maxPendingBytes;
+  }
+
+  /**
+   * Reads the given stream into a pooled {@link Buffer}.
+   *
+   * <p>Streams larger than {@link #MAX_BUFFER_SIZE} are only partially read. The returned buffer is
+   * not {@link Buffer#isComplete() complete} and the rest of the data is left in the stream.
+   */
+  @NonNull
+  static Buffer read(@NonNull InputStream is, @NonNull ArrayPool arrayPool) throws IOException {
+    byte[] bytes = arrayPool.get(ArrayPool.STANDARD_BUFFER_SIZE_BYTES, byte[].class);
+    int length = 0;
+    try {
+      while (true) {
+        if (length == bytes.length) {
+          if (bytes.length >= MAX_BUFFER_SIZE) {
+            return new Buffer(arrayPool, bytes, length, /*isComplete=*/ false);
+          }
+          byte[] larger =
+              arrayPool.get(Math.min(MAX_BUFFER_SIZE, bytes.length * 2), byte[].class);
+          System.arraycopy(bytes, 0, larger, 0, length);
+          arrayPool.put(bytes);
+          bytes = larger;
+        }
+        int read = is.read(bytes, length, bytes.length - length);
+        if (read == -1) {
+          break;
+        }
+        length += read;
+      }
+    } catch (IOException | RuntimeException e) {
+      arrayPool.put(bytes);
+      throw e;
+    }
+    return new Buffer(arrayPool, bytes, length, /*isComplete=*/ true);
+  }
+
+  /**
+   * Writes the contents of the given buffer to the disk cache with the given key and encoder,
+   * asynchronously unless too many bytes are already waiting to be written.
+   *
+   * <p>Holds a reference to the buffer until the write completes.
+   */
+  void write(@NonNull final DiskCache diskCache, @NonNull final Key key,
+      @NonNull final Encoder<InputStream> encoder, @NonNull final Buffer buffer,
+      @NonNull final Options options, @NonNull final Callback callback) {
+    buffer.acquire();
+    final int size = buffer.length;
+    boolean isAsync;
+    synchronized (this) {
+      isAsync = pendingBytes + size <= maxPendingBytes;
+      if (isAsync) {
+        pendingBytes += size;
+      }
+    }
+
+    Runnable write = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeToDiskCache(diskCache, key, encoder, buffer, options, callback);
+        } finally {
+          onWriteFinished(size);
+        }
+      }
+    };
+    if (isAsync) {
+      try {
+        executor.execute(write);
+        return;
+      } catch (RejectedExecutionException e) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+          Log.d(TAG, "Write rejected, writing synchronously, key: " + key, e);
+        }
+        onWriteFinished(size);
+      }
+    } else if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Too many pending bytes, writing synchronously, key: " + key);
+    }
+    // Not counted against pending bytes, so run the write directly rather than via the Runnable.
+    writeToDiskCache(diskCache, key, encoder, buffer, options, callback);
+  }
+
+  @Synthetic
+  void writeToDiskCache(DiskCache diskCache, Key key, Encoder<InputStream> encoder,
+      Buffer buffer, Options options, Callback callback) {
+    boolean isDataCached = false;
+    try {
+      diskCache.put(key, new DataCacheWriter<>(encoder, buffer.newInputStream(), options));
+      isDataCached = true;
+    } finally {
+      buffer.release();
+      callback.onWriteComplete(isDataCached);
+    }
+  }
+
+  @Synthetic
+  synchronized void onWriteFinished(int size) {
+    pendingBytes -= size;
+  }
+
+  @VisibleForTesting
+  synchronized long getPendingBytes() {
+    return pendingBytes;
+  }
+
+  /**
+   * Stops accepting new asynchronous writes and waits for writes that are already queued to
+   * complete.
+   */
+  void shutdown() {
+    Executors.shutdownAndAwaitTermination(executor);
+  }
+
+  /**
+   * Reference counted source data read from a stream into an array obtained from an
+   * {@link ArrayPool}. The array is returned to the pool once every reference is released.
+   */
+  static final class Buffer {
+    private final ArrayPool arrayPool;
+    private final byte[] bytes;
+    @Synthetic final int length;
+    private final boolean isComplete;
+    private int references = 1;
+
+    @Synthetic
+    Buffer(ArrayPool arrayPool, byte[] bytes, int length, boolean isComplete) {
+      this.arrayPool = arrayPool;
+      this.bytes = bytes;
+      this.length = length;
+      this.isComplete = isComplete;
+    }
+
+    /**
+     * Returns {@code true} if this buffer contains the entire stream it was read from.
+     */
+    boolean isComplete() {
+      return isComplete;
+    }
+
+    /**
+     * Returns a new stream over the contents of this buffer that must not be used after the last
+     * reference is released.
+     */
+    InputStream newInputStream() {
+      return new ByteArrayInputStream(bytes, 0, length);
+    }
+
+    /**
+     * Returns a {@link DataFetcher} for the data in this buffer that releases the reference held
+     * by the caller when it's cleaned up.
+     */
+    DataFetcher<InputStream> asFetcher(DataSource dataSource) {
+      return new BufferFetcher(this, dataSource);
+    }
+
+    synchronized void acquire() {
+      if (references <= 0) {
+        throw new IllegalStateException("Cannot acquire a released buffer");
+      }
+      references++;
+    }
+
+    void release() {
+      synchronized (this) {
+        if (references <= 0) {
+          throw new IllegalStateException("Cannot release a released buffer");
+        }
+        if (--references > 0) {
+          return;
+        }
+      }
+      arrayPool.put(bytes);
+    }
+  }
+
+  private static final class BufferFetcher implements DataFetcher<InputStream> {
+    private final Buffer buffer;
+    private final DataSource dataSource;
+    private boolean isReleased;
+
+    BufferFetcher(Buffer buffer, DataSource dataSource) {
+      this.buffer = buffer;
+      this.dataSource = dataSource;
+    }
+
+    @Override
+    public void loadData(Priority priority, DataCallback<? super InputStream> callback) {
+      callback.onDataReady(buffer.newInputStream());
+    }
+
+    @Override
+    public synchronized void cleanup() {
+      if (!isReleased) {
+        isReleased = true;
+        buffer.release();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      // Do nothing.
+    }
+
+    @NonNull
+    @Override
+    public Class<InputStream> getDataClass() {
+      return InputStream.class;
+    }
+
+    @NonNull
+    @Override
+    public DataSource getDataSource() {
+      return dataSource;
+    }
+  }
+}
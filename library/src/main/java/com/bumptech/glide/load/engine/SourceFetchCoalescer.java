@@ -0,0 +1,94 @@
+package com.bumptech.glide.load.engine;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import com.bumptech.glide.load.Key;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the source fetches that are in progress and will be written to the data disk cache so
+ * that loads for the same source data, but with a different size or transformation, can wait for
+ * the first fetch and decode from the cache rather than fetching the same data again.
+ *
+ * <p>Fetches are keyed on their {@link DataCacheKey}. Waiting is asynchronous, a {@link Waiter}
+ * is notified on the thread that completes the fetch and is expected to reschedule itself rather
+ * than block one of Glide's threads.
+ */
+final class SourceFetchCoalescer {
+  private final Map<Key, Fetch> fetches = new HashMap<>();
+
+  interface Waiter {
+    /**
+     * Called when the fetch this waiter was waiting on completes.
+     *
+     * @param isDataCached {@code true} if the fetched data was written to the data disk cache,
+     *                     {@code false} if the fetch failed, was cancelled or couldn't be cached.
+     */
+    void onSourceFetchComplete(boolean isDataCached);
+  }
+
+  /**
+   * Registers a fetch for the given key if none is in progress and returns {@code true}, or adds
+   * the given waiter to the fetch that's already in progress and returns {@code false}.
+   *
+   * <p>Callers that receive {@code true} must call {@link #complete(Key, Waiter, boolean)} once
+   * the fetch is finished, whether it succeeded or not.
+   */
+  synchronized boolean startOrAwait(@NonNull Key key, @NonNull Waiter waiter) {
+    Fetch fetch = fetches.get(key);
+    if (fetch == null) {
+      fetches.put(key, new Fetch(waiter));
+      return true;
+    }
+    fetch.waiters.add(waiter);
+    return false;
+  }
+
+  /**
+   * Removes the given waiter from the fetch for the given key and returns {@code true} if it was
+   * still waiting, or {@code false} if it has been or is being notified.
+   */
+  synchronized boolean stopWaiting(@NonNull Key key, @NonNull Waiter waiter) {
+    Fetch fetch = fetches.get(key);
+    return fetch != null && fetch.waiters.remove(waiter);
+  }
+
+  /**
+   * Marks the fetch for the given key started by the given owner as complete and notifies any
+   * waiters.
+   *
+   * <p>Does nothing if the owner's fetch has already been completed.
+   */
+  void complete(@NonNull Key key, @NonNull Waiter owner, boolean isDataCached) {
+    List<Waiter> toNotify;
+    synchronized (this) {
+      Fetch fetch = fetches.get(key);
+      if (fetch == null || fetch.owner != owner) {
+        return;
+      }
+      fetches.remove(key);
+      toNotify = fetch.waiters;
+    }
+    //noinspection ForLoopReplaceableByForEach to improve perf
+    for (int i = 0, size = toNotify.size(); i < size; i++) {
+      toNotify.get(i).onSourceFetchComplete(isDataCached);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean isInProgress(@NonNull Key key) {
+    return fetches.containsKey(key);
+  }
+
+  private static final class Fetch {
+    final Waiter owner;
+    final List<Waiter> waiters = new ArrayList<>(2);
+
+    Fetch(Waiter owner) {
+      this.owner = owner;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.bumptech.glide.load.engine;
 
+import android.support.annotation.Nullable;
 import android.util.Log;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.Encoder;
@@ -8,6 +9,12 @@ import com.bumptech.glide.load.data.DataFetcher;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoader.LoadData;
 import com.bumptech.glide.util.LogTime;
+import com.bumptech.glide.util.Preconditions;
+import com.bumptech.glide.util.Synthetic;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 
 /**
@@ -17,24 +24,48 @@ import java.util.Collections;
  *
  * <p> Depending on the disk cache strategy, source data may first be written to disk and then
  * loaded from the cache file rather than returned directly. </p>
+ *
+ * <p> Source data that will be written to disk is only fetched once at a time. If another load is
+ * already fetching the same data, this generator waits for that fetch to be written to the disk
+ * cache and then loads from the cache file instead. </p>
+ *
+ * <p> If a {@link SourceCacheWriter} is provided, source streams are instead decoded from memory
+ * while they're written to disk in the background. </p>
+ *
+ * <p> Source data the {@link DiskCacheAdmission} rejects is decoded directly, as if the disk cache
+ * strategy didn't allow it to be cached. </p>
  */
 class SourceGenerator implements DataFetcherGenerator,
     DataFetcher.DataCallback<Object>,
-    DataFetcherGenerator.FetcherReadyCallback {
+    DataFetcherGenerator.FetcherReadyCallback,
+    SourceFetchCoalescer.Waiter {
   private static final String TAG = "SourceGenerator";
 
   private final DecodeHelper<?> helper;
   private final FetcherReadyCallback cb;
+  private final SourceFetchCoalescer coalescer;
+  @Nullable private final SourceCacheWriter sourceCacheWriter;
+  private final DiskCacheAdmission admission;
 
   private int loadDataListIndex;
   private DataCacheGenerator sourceCacheGenerator;
   private Object dataToCache;
   private volatile ModelLoader.LoadData<?> loadData;
   private DataCacheKey originalKey;
+  // The key of the fetch we started and other loads may be waiting on.
+  private volatile DataCacheKey ownedFetchKey;
+  // The key of another load's fetch we're waiting on.
+  private volatile DataCacheKey awaitedFetchKey;
+  private volatile boolean isAwaitedDataCached;
 
-  SourceGenerator(DecodeHelper<?> helper, FetcherReadyCallback cb) {
+  SourceGenerator(DecodeHelper<?> helper, FetcherReadyCallback cb,
+      SourceFetchCoalescer coalescer, @Nullable SourceCacheWriter sourceCacheWriter,
+      DiskCacheAdmission admission) {
     this.helper = helper;
     this.cb = cb;
+    this.coalescer = coalescer;
+    this.sourceCacheWriter = sourceCacheWriter;
+    this.admission = admission;
   }
 
   @Override
@@ -42,7 +73,27 @@ class SourceGenerator implements DataFetcherGenerator,
     if (dataToCache != null) {
       Object data = dataToCache;
       dataToCache = null;
-      cacheData(data);
+      if (sourceCacheWriter != null && data instanceof InputStream) {
+        if (cacheDataBehindDecode((InputStream) data)) {
+          return true;
+        }
+      } else {
+        cacheData(data);
+      }
+    }
+
+    DataCacheKey awaited = awaitedFetchKey;
+    if (awaited != null) {
+      awaitedFetchKey = null;
+      if (isAwaitedDataCached) {
+        sourceCacheGenerator = new DataCacheGenerator(
+            Collections.singletonList(awaited.getSourceKey()), helper, this);
+        if (sourceCacheGenerator.startNext()) {
+          return true;
+        }
+      }
+      // The fetch we waited on failed or its data isn't in the cache, try it again ourselves.
+      loadDataListIndex--;
     }
 
     if (sourceCacheGenerator != null && sourceCacheGenerator.startNext()) {
@@ -58,24 +109,71 @@ class SourceGenerator implements DataFetcherGenerator,
           && (helper.getDiskCacheStrategy().isDataCacheable(loadData.fetcher.getDataSource())
           || helper.hasLoadPath(loadData.fetcher.getDataClass()))) {
         started = true;
-        loadData.fetcher.loadData(helper.getPriority(), this);
+        startOrAwaitFetch(loadData);
       }
     }
     return started;
   }
 
+  private void startOrAwaitFetch(LoadData<?> toStart) {
+    if (!helper.getDiskCacheStrategy().isDataCacheable(toStart.fetcher.getDataSource())) {
+      toStart.fetcher.loadData(helper.getPriority(), this);
+      return;
+    }
+
+    DataCacheKey key = new DataCacheKey(toStart.sourceKey, helper.getSignature());
+    // Set before registering because we may be notified before startOrAwait returns.
+    awaitedFetchKey = key;
+    isAwaitedDataCached = false;
+    if (!coalescer.startOrAwait(key, this)) {
+      if (Log.isLoggable(TAG, Log.VERBOSE)) {
+        Log.v(TAG, "Waiting for in progress fetch, key: " + key);
+      }
+      return;
+    }
+    awaitedFetchKey = null;
+    ownedFetchKey = key;
+    try {
+      toStart.fetcher.loadData(helper.getPriority(), this);
+    } catch (RuntimeException e) {
+      completeOwnedFetch(/*isDataCached=*/ false);
+      throw e;
+    }
+  }
+
+  private void completeOwnedFetch(boolean isDataCached) {
+    DataCacheKey key = ownedFetchKey;
+    if (key != null) {
+      ownedFetchKey = null;
+      coalescer.complete(key, this, isDataCached);
+    }
+  }
+
+  @Override
+  public void onSourceFetchComplete(boolean isDataCached) {
+    isAwaitedDataCached = isDataCached;
+    // We're called back on the thread that completed the other fetch, reschedule to get back onto
+    // one of Glide's threads for our own load.
+    cb.reschedule();
+  }
+
   private boolean hasNextModelLoader() {
     return loadDataListIndex < helper.getLoadData().size();
   }
 
   private void cacheData(Object dataToCache) {
     long startTime = LogTime.getLogTime();
+    boolean isDataCached = false;
     try {
       Encoder<Object> encoder = helper.getSourceEncoder(dataToCache);
       DataCacheWriter<Object> writer =
           new DataCacheWriter<>(encoder, dataToCache, helper.getOptions());
       originalKey = new DataCacheKey(loadData.sourceKey, helper.getSignature());
       helper.getDiskCache().put(originalKey, writer);
+      isDataCached = true;
+      if (writer.getWrittenBytes() > 0) {
+        admission.onWritten(/*isResource=*/ false, writer.getWrittenBytes());
+      }
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
         Log.v(TAG, "Finished encoding source to cache"
             + ", key: " + originalKey
@@ -85,36 +183,112 @@ class SourceGenerator implements DataFetcherGenerator,
       }
     } finally {
       loadData.fetcher.cleanup();
+      completeOwnedFetch(isDataCached);
     }
 
     sourceCacheGenerator =
         new DataCacheGenerator(Collections.singletonList(loadData.sourceKey), helper, this);
   }
 
+  /**
+   * Decodes the given stream from memory while it's written to the disk cache in the background
+   * and returns {@code true}, or falls back to writing it to the disk cache first and returns
+   * {@code false} if the stream is too large to hold in memory.
+   */
+  private boolean cacheDataBehindDecode(InputStream data) {
+    Preconditions.checkNotNull(sourceCacheWriter);
+    long startTime = LogTime.getLogTime();
+    SourceCacheWriter.Buffer buffer;
+    try {
+      buffer = SourceCacheWriter.read(data, helper.getArrayPool());
+    } catch (IOException e) {
+      onLoadFailed(e);
+      return true;
+    }
+
+    if (!buffer.isComplete()) {
+      try {
+        cacheData(new SequenceInputStream(buffer.newInputStream(), data));
+      } finally {
+        buffer.release();
+      }
+      return false;
+    }
+
+    DataSource dataSource = loadData.fetcher.getDataSource();
+    loadData.fetcher.cleanup();
+    // The write, rather than this generator, now completes the fetch for anyone waiting on it.
+    WriteBehindCallback writeCallback = new WriteBehindCallback(ownedFetchKey, buffer.length);
+    ownedFetchKey = null;
+    originalKey = new DataCacheKey(loadData.sourceKey, helper.getSignature());
+    InputStream toDecode = buffer.newInputStream();
+    try {
+      Encoder<InputStream> encoder = helper.getSourceEncoder(toDecode);
+      sourceCacheWriter.write(helper.getDiskCache(), originalKey, encoder, buffer,
+          helper.getOptions(), writeCallback);
+    } catch (RuntimeException e) {
+      // A synchronous write that threw has already completed the fetch.
+      writeCallback.onWriteComplete(/*isDataCached=*/ false);
+      buffer.release();
+      throw e;
+    }
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Buffered source for write behind"
+          + ", key: " + originalKey
+          + ", size: " + buffer.length
+          + ", duration: " + LogTime.getElapsedMillis(startTime));
+    }
+    // Our reference to the buffer is released when the decode cleans up the fetcher.
+    cb.onDataFetcherReady(loadData.sourceKey, toDecode, buffer.asFetcher(dataSource), dataSource,
+        loadData.sourceKey);
+    return true;
+  }
+
   @Override
   public void cancel() {
     LoadData<?> local = loadData;
     if (local != null) {
       local.fetcher.cancel();
     }
+    DataCacheKey awaited = awaitedFetchKey;
+    if (awaited != null && coalescer.stopWaiting(awaited, this)) {
+      // Nothing else will resume us, so reschedule to let our job notice that it's cancelled.
+      cb.reschedule();
+    }
+    // Our data won't be cached once we're cancelled, so let anyone waiting on us fetch it.
+    completeOwnedFetch(/*isDataCached=*/ false);
   }
 
   @Override
   public void onDataReady(Object data) {
     DiskCacheStrategy diskCacheStrategy = helper.getDiskCacheStrategy();
-    if (data != null && diskCacheStrategy.isDataCacheable(loadData.fetcher.getDataSource())) {
+    DataSource dataSource = loadData.fetcher.getDataSource();
+    if (data != null && diskCacheStrategy.isDataCacheable(dataSource)
+        && admission.shouldWrite(new DataCacheKey(loadData.sourceKey, helper.getSignature()),
+            dataSource, /*isResource=*/ false, getSize(data))) {
       dataToCache = data;
       // We might be being called back on someone else's thread. Before doing anything, we should
       // reschedule to get back onto Glide's thread.
       cb.reschedule();
     } else {
+      completeOwnedFetch(/*isDataCached=*/ false);
       cb.onDataFetcherReady(loadData.sourceKey, data, loadData.fetcher,
           loadData.fetcher.getDataSource(), originalKey);
     }
   }
 
+  private static long getSize(Object data) {
+    if (data instanceof ByteBuffer) {
+      return ((ByteBuffer) data).remaining();
+    } else if (data instanceof byte[]) {
+      return ((byte[]) data).length;
+    }
+    return -1;
+  }
+
   @Override
   public void onLoadFailed(Exception e) {
+    completeOwnedFetch(/*isDataCached=*/ false);
     cb.onDataFetcherFailed(originalKey, e, loadData.fetcher, loadData.fetcher.getDataSource());
   }
 
@@ -139,4 +313,36 @@ class SourceGenerator implements DataFetcherGenerator,
       DataSource dataSource) {
     cb.onDataFetcherFailed(sourceKey, e, fetcher, loadData.fetcher.getDataSource());
   }
+
+  /**
+   * Completes a fetch written behind the decode exactly once, whether the write completes or fails
+   * before it's started.
+   */
+  private final class WriteBehindCallback implements SourceCacheWriter.Callback {
+    @Nullable private final DataCacheKey fetchKey;
+    private final int length;
+    private boolean isComplete;
+
+    @Synthetic
+    WriteBehindCallback(@Nullable DataCacheKey fetchKey, int length) {
+      this.fetchKey = fetchKey;
+      this.length = length;
+    }
+
+    @Override
+    public void onWriteComplete(boolean isDataCached) {
+      synchronized (this) {
+        if (isComplete) {
+          return;
+        }
+        isComplete = true;
+      }
+      if (isDataCached) {
+        admission.onWritten(/*isResource=*/ false, length);
+      }
+      if (fetchKey != null) {
+        coalescer.complete(fetchKey, SourceGenerator.this, isDataCached);
+      }
+    }
+  }
 }
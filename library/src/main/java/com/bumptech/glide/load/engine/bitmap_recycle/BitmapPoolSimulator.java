@@ -0,0 +1,140 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import com.bumptech.glide.util.Preconditions;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Replays a {@link BitmapPoolTrace} recorded in an app against an {@link LruBitmapPool} with a
+ * given {@link Strategy} and maximum size, so that strategies and pool sizes can be compared using
+ * the app's real workload.
+ *
+ * <p>Every {@link Bitmap} put into the pool in the trace is allocated again while replaying, so
+ * simulations are meant to be run offline, in tests or on a development device, rather than in a
+ * production app.
+ *
+ * <p>Bitmaps in the trace are put back into the pool with their requested size rather than the
+ * size of the {@link Bitmap} that was originally reused, so wasted bytes are slightly
+ * underestimated for strategies that reuse larger {@link Bitmap}s.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class BitmapPoolSimulator {
+
+  /**
+   * The {@link LruPoolStrategy}s that can be simulated.
+   */
+  public enum Strategy {
+    /**
+     * Reuses {@link Bitmap}s with the same config and at least the requested size in bytes.
+     *
+     * <p>The default on {@link Build.VERSION_CODES#KITKAT KitKat} and higher.
+     */
+    SIZE_CONFIG,
+    /**
+     * Reuses {@link Bitmap}s with at least the requested size in bytes, regardless of their config.
+     */
+    SIZE,
+    /**
+     * Reuses only {@link Bitmap}s with exactly the requested width, height and config.
+     *
+     * <p>The default below {@link Build.VERSION_CODES#KITKAT KitKat}.
+     */
+    ATTRIBUTE;
+
+    /**
+     * Returns {@code true} if the strategy can be used on the current device. Strategies that
+     * reconfigure {@link Bitmap}s require {@link Build.VERSION_CODES#KITKAT KitKat} or higher.
+     */
+    public boolean isSupported() {
+      return this == ATTRIBUTE || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    LruPoolStrategy newStrategy() {
+      Preconditions.checkArgument(isSupported(), this + " requires KitKat or higher");
+      switch (this) {
+        case SIZE_CONFIG:
+          return new SizeConfigStrategy();
+        case SIZE:
+          return new SizeStrategy();
+        case ATTRIBUTE:
+          return new AttributeStrategy();
+        default:
+          throw new IllegalStateException("Unrecognized strategy: " + this);
+      }
+    }
+  }
+
+  private BitmapPoolSimulator() {
+    // Utility class.
+  }
+
+  /**
+   * Replays the given trace against an empty {@link LruBitmapPool} with the given strategy and
+   * maximum size and returns the pool's stats once all requests are replayed.
+   *
+   * @throws IllegalArgumentException If the strategy isn't supported on this device.
+   */
+  @NonNull
+  public static BitmapPoolStats simulate(
+      @NonNull BitmapPoolTrace trace, @NonNull Strategy strategy, long maxSize) {
+    LruBitmapPool pool = new LruBitmapPool(
+        maxSize, strategy.newStrategy(), LruBitmapPool.getDefaultAllowedConfigs());
+    for (int i = 0; i < trace.size(); i++) {
+      replay(trace, i, pool);
+    }
+    BitmapPoolStats result = pool.getStats();
+    pool.clearMemory();
+    return result;
+  }
+
+  /**
+   * Replays the given trace against each {@link Strategy} that is supported on this device with
+   * the given maximum size.
+   */
+  @NonNull
+  public static Map<Strategy, BitmapPoolStats> simulateAll(
+      @NonNull BitmapPoolTrace trace, long maxSize) {
+    Map<Strategy, BitmapPoolStats> result = new EnumMap<>(Strategy.class);
+    for (Strategy strategy : Strategy.values()) {
+      if (strategy.isSupported()) {
+        result.put(strategy, simulate(trace, strategy, maxSize));
+      }
+    }
+    return result;
+  }
+
+  private static void replay(BitmapPoolTrace trace, int index, LruBitmapPool pool) {
+    switch (trace.getType(index)) {
+      case BitmapPoolTrace.GET:
+        Bitmap result =
+            pool.getDirtyOrNull(trace.getWidth(index), trace.getHeight(index),
+                trace.getConfig(index));
+        // The app puts the Bitmaps it no longer needs back into the pool, which is recorded
+        // separately.
+        if (result != null) {
+          result.recycle();
+        }
+        break;
+      case BitmapPoolTrace.PUT:
+        Bitmap.Config config = trace.getConfig(index);
+        pool.put(Bitmap.createBitmap(trace.getWidth(index), trace.getHeight(index),
+            config != null ? config : Bitmap.Config.ARGB_8888));
+        break;
+      case BitmapPoolTrace.TRIM_MEMORY:
+        pool.trimMemory(trace.getLevel(index));
+        break;
+      case BitmapPoolTrace.CLEAR_MEMORY:
+        pool.clearMemory();
+        break;
+      case BitmapPoolTrace.SIZE_MULTIPLIER:
+        pool.setSizeMultiplier(trace.getSizeMultiplier(index));
+        break;
+      default:
+        throw new IllegalStateException("Unrecognized event: " + trace.getType(index));
+    }
+  }
+}
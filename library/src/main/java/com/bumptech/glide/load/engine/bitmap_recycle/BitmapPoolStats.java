@@ -0,0 +1,215 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the contents and counters of an {@link LruBitmapPool}, used to compare
+ * how well different {@link LruPoolStrategy}s suit an app's workload.
+ *
+ * @see LruBitmapPool#getStats()
+ * @see BitmapPoolSimulator
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class BitmapPoolStats {
+  private final long maxSize;
+  private final long currentSize;
+  private final long hits;
+  private final long misses;
+  private final long puts;
+  private final long rejections;
+  private final long oversizedHits;
+  private final long wastedBytes;
+  private final long[] evictions;
+  private final List<SizeClass> sizeClasses;
+
+  /**
+   * The reasons for which {@link android.graphics.Bitmap}s are evicted from the pool.
+   */
+  public enum EvictionReason {
+    /**
+     * A {@link android.graphics.Bitmap} was put into a full pool.
+     */
+    MAX_SIZE,
+    /**
+     * The pool's maximum size was reduced with
+     * {@link LruBitmapPool#setSizeMultiplier(float)}.
+     */
+    SIZE_MULTIPLIER,
+    /**
+     * The pool was trimmed with {@link LruBitmapPool#trimMemory(int)}.
+     */
+    TRIM_MEMORY,
+    /**
+     * The pool was cleared with {@link LruBitmapPool#clearMemory()}.
+     */
+    CLEAR_MEMORY,
+  }
+
+  /**
+   * The number and total size of the {@link android.graphics.Bitmap}s in the pool whose size in
+   * bytes is at least {@link #getMinBytes()} and less than {@link #getMaxBytes()}.
+   *
+   * <p>Size classes are powers of two, regardless of how the pool's strategy groups
+   * {@link android.graphics.Bitmap}s, so that pools with different strategies can be compared.
+   */
+  public static final class SizeClass {
+    private final long minBytes;
+    private final int bitmapCount;
+    private final long bytes;
+
+    SizeClass(long minBytes, int bitmapCount, long bytes) {
+      this.minBytes = minBytes;
+      this.bitmapCount = bitmapCount;
+      this.bytes = bytes;
+    }
+
+    public long getMinBytes() {
+      return minBytes;
+    }
+
+    public long getMaxBytes() {
+      return minBytes * 2;
+    }
+
+    public int getBitmapCount() {
+      return bitmapCount;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + minBytes + ", " + getMaxBytes() + "): " + bitmapCount + " bitmaps, " + bytes
+          + " bytes";
+    }
+  }
+
+  BitmapPoolStats(long maxSize, long currentSize, long hits, long misses, long puts,
+      long rejections, long oversizedHits, long wastedBytes, long[] evictions,
+      int[] sizeClassCounts, long[] sizeClassBytes) {
+    this.maxSize = maxSize;
+    this.currentSize = currentSize;
+    this.hits = hits;
+    this.misses = misses;
+    this.puts = puts;
+    this.rejections = rejections;
+    this.oversizedHits = oversizedHits;
+    this.wastedBytes = wastedBytes;
+    this.evictions = evictions.clone();
+    List<SizeClass> classes = new ArrayList<>();
+    for (int i = 0; i < sizeClassCounts.length; i++) {
+      if (sizeClassCounts[i] > 0) {
+        classes.add(new SizeClass(1L << i, sizeClassCounts[i], sizeClassBytes[i]));
+      }
+    }
+    this.sizeClasses = Collections.unmodifiableList(classes);
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getCurrentSize() {
+    return currentSize;
+  }
+
+  public long getHitCount() {
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of {@link android.graphics.Bitmap}s that were added to the pool.
+   */
+  public long getPutCount() {
+    return puts;
+  }
+
+  /**
+   * Returns the number of {@link android.graphics.Bitmap}s that were recycled instead of being
+   * added to the pool because they were immutable, had a config that isn't allowed or were larger
+   * than the pool.
+   */
+  public long getRejectedCount() {
+    return rejections;
+  }
+
+  /**
+   * Returns the number of hits that were served with a {@link android.graphics.Bitmap} that is
+   * larger than the requested size.
+   */
+  public long getOversizedHitCount() {
+    return oversizedHits;
+  }
+
+  /**
+   * Returns the total number of bytes by which the {@link android.graphics.Bitmap}s returned for
+   * oversized hits were larger than the requested size.
+   *
+   * <p>Strategies that reuse larger {@link android.graphics.Bitmap}s have higher hit rates, but
+   * hold on to more memory than the requested images need.
+   */
+  public long getWastedBytes() {
+    return wastedBytes;
+  }
+
+  public long getEvictionCount() {
+    long result = 0;
+    for (long count : evictions) {
+      result += count;
+    }
+    return result;
+  }
+
+  public long getEvictionCount(@NonNull EvictionReason reason) {
+    return evictions[reason.ordinal()];
+  }
+
+  /**
+   * Returns the size classes that currently contain at least one
+   * {@link android.graphics.Bitmap}, smallest first.
+   */
+  @NonNull
+  public List<SizeClass> getSizeClasses() {
+    return sizeClasses;
+  }
+
+  /**
+   * Returns the fraction of requests that were served from the pool, or {@code 0} if there were no
+   * requests.
+   */
+  public float getHitRate() {
+    long requests = hits + misses;
+    return requests == 0 ? 0 : hits / (float) requests;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder()
+        .append("BitmapPoolStats{hits=").append(hits)
+        .append(", misses=").append(misses)
+        .append(", puts=").append(puts)
+        .append(", rejections=").append(rejections)
+        .append(", oversizedHits=").append(oversizedHits)
+        .append(", wastedBytes=").append(wastedBytes)
+        .append(", currentSize=").append(currentSize)
+        .append(", maxSize=").append(maxSize)
+        .append(", evictions=(");
+    for (EvictionReason reason : EvictionReason.values()) {
+      if (reason.ordinal() > 0) {
+        sb.append(", ");
+      }
+      sb.append(reason).append('=').append(evictions[reason.ordinal()]);
+    }
+    return sb.append("), sizeClasses=").append(sizeClasses).append('}').toString();
+  }
+}
@@ -0,0 +1,225 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.util.Preconditions;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Records the requests made to an {@link LruBitmapPool} so that they can be written to a file and
+ * replayed later against other strategies and sizes with {@link BitmapPoolSimulator}.
+ *
+ * <p>Only the first {@link #getCapacity()} requests are recorded, so that a trace never grows
+ * unbounded and always contains a consistent prefix of the app's requests.
+ *
+ * <p>Thread safe.
+ *
+ * @see LruBitmapPool#setTrace(BitmapPoolTrace)
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class BitmapPoolTrace {
+  // Must be incremented whenever the format changes.
+  private static final int VERSION = 1;
+  private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+  private static final byte NULL_CONFIG = -1;
+
+  static final byte GET = 0;
+  static final byte PUT = 1;
+  static final byte TRIM_MEMORY = 2;
+  static final byte CLEAR_MEMORY = 3;
+  static final byte SIZE_MULTIPLIER = 4;
+
+  private final byte[] types;
+  private final int[] widths;
+  private final int[] heights;
+  private final byte[] configs;
+  private int size;
+
+  /**
+   * @param capacity The maximum number of requests to record.
+   */
+  public BitmapPoolTrace(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+    types = new byte[capacity];
+    widths = new int[capacity];
+    heights = new int[capacity];
+    configs = new byte[capacity];
+  }
+
+  void recordGet(int width, int height, @NonNull Bitmap.Config config) {
+    record(GET, width, height, config);
+  }
+
+  void recordPut(int width, int height, @Nullable Bitmap.Config config) {
+    record(PUT, width, height, config);
+  }
+
+  void recordTrimMemory(int level) {
+    record(TRIM_MEMORY, level, 0, null);
+  }
+
+  void recordClearMemory() {
+    record(CLEAR_MEMORY, 0, 0, null);
+  }
+
+  void recordSizeMultiplier(float sizeMultiplier) {
+    record(SIZE_MULTIPLIER, Float.floatToIntBits(sizeMultiplier), 0, null);
+  }
+
+  private synchronized void record(
+      byte type, int width, int height, @Nullable Bitmap.Config config) {
+    if (size == types.length) {
+      return;
+    }
+    types[size] = type;
+    widths[size] = width;
+    heights[size] = height;
+    configs[size] = config == null ? NULL_CONFIG : (byte) config.ordinal();
+    size++;
+  }
+
+  /**
+   * Returns the number of recorded requests.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return types.length;
+  }
+
+  public synchronized boolean isFull() {
+    return size == types.length;
+  }
+
+  public synchronized void clear() {
+    size = 0;
+  }
+
+  synchronized byte getType(int index) {
+    return types[index];
+  }
+
+  // Gets and puts use every field, other requests keep their argument in the width.
+
+  /**
+   * Returns the width of a get or put.
+   */
+  synchronized int getWidth(int index) {
+    checkIsGetOrPut(index);
+    return widths[index];
+  }
+
+  /**
+   * Returns the height of a get or put.
+   */
+  synchronized int getHeight(int index) {
+    checkIsGetOrPut(index);
+    return heights[index];
+  }
+
+  /**
+   * Returns the config of a get or put.
+   */
+  @Nullable
+  synchronized Bitmap.Config getConfig(int index) {
+    checkIsGetOrPut(index);
+    return configs[index] == NULL_CONFIG ? null : CONFIGS[configs[index]];
+  }
+
+  /**
+   * Returns the level of a trim.
+   */
+  synchronized int getLevel(int index) {
+    checkType(index, TRIM_MEMORY);
+    return widths[index];
+  }
+
+  /**
+   * Returns the multiplier of a size multiplier change.
+   */
+  synchronized float getSizeMultiplier(int index) {
+    checkType(index, SIZE_MULTIPLIER);
+    return Float.intBitsToFloat(widths[index]);
+  }
+
+  private void checkIsGetOrPut(int index) {
+    if (types[index] != GET && types[index] != PUT) {
+      checkType(index, GET);
+    }
+  }
+
+  private void checkType(int index, byte type) {
+    if (types[index] != type) {
+      throw new IllegalArgumentException(
+          "Request at " + index + " has type: " + types[index] + ", expected: " + type);
+    }
+  }
+
+  /**
+   * Writes the recorded requests to the given stream, which is not closed.
+   */
+  public synchronized void writeTo(@NonNull OutputStream os) throws IOException {
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.writeInt(VERSION);
+    dos.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      dos.writeByte(types[i]);
+      dos.writeInt(widths[i]);
+      dos.writeInt(heights[i]);
+      dos.writeUTF(configs[i] == NULL_CONFIG ? "" : CONFIGS[configs[i]].name());
+    }
+    dos.flush();
+  }
+
+  /**
+   * Reads a trace previously written with {@link #writeTo(OutputStream)} from the given stream,
+   * which is not closed.
+   *
+   * @throws IOException If the stream doesn't contain a valid trace.
+   */
+  @NonNull
+  public static BitmapPoolTrace readFrom(@NonNull InputStream is) throws IOException {
+    DataInputStream dis = new DataInputStream(is);
+    if (dis.readInt() != VERSION) {
+      throw new IOException("Unsupported version");
+    }
+    int count = dis.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid size: " + count);
+    }
+    BitmapPoolTrace result = new BitmapPoolTrace(Math.max(count, 1));
+    for (int i = 0; i < count; i++) {
+      byte type = dis.readByte();
+      if (type < GET || type > SIZE_MULTIPLIER) {
+        throw new IOException("Invalid type: " + type);
+      }
+      int width = dis.readInt();
+      int height = dis.readInt();
+      String configName = dis.readUTF();
+      Bitmap.Config config = null;
+      if (!configName.isEmpty()) {
+        config = readConfig(configName);
+      }
+      result.record(type, width, height, config);
+    }
+    return result;
+  }
+
+  @NonNull
+  private static Bitmap.Config readConfig(String name) throws IOException {
+    for (Bitmap.Config config : CONFIGS) {
+      if (config.name().equals(name)) {
+        return config;
+      }
+    }
+    throw new IOException("Unknown config: " + name);
+  }
+}
@@ -31,12 +31,15 @@ public final class LruArrayPool implements ArrayPool {
   private final KeyPool keyPool = new KeyPool();
   private final Map<Class<?>, NavigableMap<Integer, Integer>> sortedSizes = new HashMap<>();
   private final Map<Class<?>, ArrayAdapterInterface<?>> adapters = new HashMap<>();
-  private final int maxSize;
+  private final int initialMaxSize;
+  private int maxSize;
   private int currentSize;
+  private long hits;
+  private long misses;
 
   @VisibleForTesting
   public LruArrayPool() {
-    maxSize = DEFAULT_SIZE;
+    this(DEFAULT_SIZE);
   }
 
   /**
@@ -45,9 +48,47 @@ public final class LruArrayPool implements ArrayPool {
    * @param maxSize The maximum size in integers of the pool.
    */
   public LruArrayPool(int maxSize) {
+    this.initialMaxSize = maxSize;
     this.maxSize = maxSize;
   }
 
+  /**
+   * Returns the current maximum size of the pool in bytes.
+   */
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Multiplies the initial size of the pool by the given multiplier to dynamically and
+   * synchronously allow users to adjust the size of the pool.
+   *
+   * <p>If the current total size of the pool is larger than the max size after the given
+   * multiplier is applied, arrays will be evicted until the pool is smaller than the new max size.
+   *
+   * @param sizeMultiplier A size multiplier >= 0.
+   */
+  public synchronized void setSizeMultiplier(float sizeMultiplier) {
+    Preconditions.checkArgument(sizeMultiplier >= 0, "Multiplier must be >= 0");
+    maxSize = Math.round(initialMaxSize * sizeMultiplier);
+    evict();
+  }
+
+  /**
+   * Returns the number of requests that were served with an array from the pool.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of requests that couldn't be served from the pool and required a new array
+   * to be allocated.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
   @Deprecated
   @Override
   public <T> void put(T array, Class<T> arrayClass) {
@@ -97,11 +138,13 @@ public final class LruArrayPool implements ArrayPool {
     ArrayAdapterInterface<T> arrayAdapter = getAdapterFromType(arrayClass);
     T result = getArrayForKey(key);
     if (result != null) {
+      hits++;
       currentSize -= arrayAdapter.getArrayLength(result) * arrayAdapter.getElementSizeInBytes();
       decrementArrayOfSize(arrayAdapter.getArrayLength(result), arrayClass);
     }
 
     if (result == null) {
+      misses++;
       if (Log.isLoggable(arrayAdapter.getTag(), Log.VERBOSE)) {
         Log.v(arrayAdapter.getTag(), "Allocated " + key.size + " bytes");
       }
@@ -205,8 +248,10 @@ public final class LruArrayPool implements ArrayPool {
     return (ArrayAdapterInterface<T>) adapter;
   }
 
-  // VisibleForTesting
-  int getCurrentSize() {
+  /**
+   * Returns the total size in bytes of the arrays currently in the pool.
+   */
+  public synchronized int getCurrentSize() {
     int currentSize = 0;
     for (Class<?> type : sortedSizes.keySet()) {
       for (Integer size : sortedSizes.get(type).keySet()) {
@@ -8,11 +8,14 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPoolStats.EvictionReason;
 import com.bumptech.glide.util.Synthetic;
+import com.bumptech.glide.util.Util;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An {@link com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool} implementation that uses an
@@ -23,11 +26,31 @@ import java.util.Set;
 public class LruBitmapPool implements BitmapPool {
   private static final String TAG = "LruBitmapPool";
   private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
+  // One power of two size class for every possible bit of a Bitmap's size in bytes.
+  private static final int SIZE_CLASS_COUNT = Integer.SIZE;
+
+  /**
+   * An interface that will be called whenever a {@link Bitmap} is requested from the pool.
+   */
+  public interface RequestListener {
+    /**
+     * Called with the dimensions and config of each request, whether or not the pool contains a
+     * matching {@link Bitmap}.
+     *
+     * <p>Called while the pool's lock is held, so implementations must return quickly and must not
+     * call back into the pool. Requests served by a {@link MagazineBitmapPool} in front of the pool
+     * are reported without the pool's lock, so implementations must also be thread safe.
+     */
+    void onBitmapRequested(int width, int height, @NonNull Bitmap.Config config);
+  }
 
   private final LruPoolStrategy strategy;
   private final Set<Bitmap.Config> allowedConfigs;
   private final long initialMaxSize;
   private final BitmapTracker tracker;
+  private final long[] evictionsByReason = new long[EvictionReason.values().length];
+  private final int[] sizeClassCounts = new int[SIZE_CLASS_COUNT];
+  private final long[] sizeClassBytes = new long[SIZE_CLASS_COUNT];
 
   private long maxSize;
   private long currentSize;
@@ -35,6 +58,13 @@ public class LruBitmapPool implements BitmapPool {
   private int misses;
   private int puts;
   private int evictions;
+  private int rejections;
+  private int oversizedHits;
+  private long wastedBytes;
+  // Not guarded by the pool's lock, so that magazines can count their hits without taking it.
+  private final AtomicLong magazineHits = new AtomicLong();
+  @Nullable private volatile RequestListener requestListener;
+  @Nullable private BitmapPoolTrace trace;
 
   // Exposed for testing only.
   LruBitmapPool(long maxSize, LruPoolStrategy strategy, Set<Bitmap.Config> allowedConfigs) {
@@ -75,8 +105,70 @@ public class LruBitmapPool implements BitmapPool {
 
   @Override
   public synchronized void setSizeMultiplier(float sizeMultiplier) {
+    if (trace != null) {
+      trace.recordSizeMultiplier(sizeMultiplier);
+    }
     maxSize = Math.round(initialMaxSize * sizeMultiplier);
-    evict();
+    trimToSize(maxSize, EvictionReason.SIZE_MULTIPLIER);
+  }
+
+  /**
+   * Sets the listener to be called whenever a {@link Bitmap} is requested from the pool.
+   *
+   * @param listener The listener, or {@code null} to remove the current listener.
+   */
+  public synchronized void setRequestListener(@Nullable RequestListener listener) {
+    this.requestListener = listener;
+  }
+
+  /**
+   * Sets the trace that every subsequent request to the pool is recorded in, so that the requests
+   * can be replayed with {@link BitmapPoolSimulator}.
+   *
+   * @param trace The trace, or {@code null} to stop recording.
+   */
+  public synchronized void setTrace(@Nullable BitmapPoolTrace trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * Returns a snapshot of the pool's counters and of the size classes of the {@link Bitmap}s it
+   * currently contains.
+   */
+  @NonNull
+  public synchronized BitmapPoolStats getStats() {
+    return new BitmapPoolStats(maxSize, currentSize, hits + magazineHits.get(), misses, puts,
+        rejections, oversizedHits, wastedBytes, evictionsByReason, sizeClassCounts, sizeClassBytes);
+  }
+
+  /**
+   * Returns the total size in bytes of the {@link Bitmap}s currently in the pool.
+   */
+  public synchronized long getCurrentSize() {
+    return currentSize;
+  }
+
+  /**
+   * Returns the number of requests that were served with a {@link Bitmap} from the pool, including
+   * requests served by a {@link MagazineBitmapPool} in front of the pool.
+   */
+  public synchronized long getHitCount() {
+    return hits + magazineHits.get();
+  }
+
+  /**
+   * Returns the number of requests that couldn't be served from the pool and required a new
+   * {@link Bitmap} to be allocated.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of {@link Bitmap}s evicted from the pool to keep it under its maximum size.
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
   }
 
   @Override
@@ -95,16 +187,22 @@ public class LruBitmapPool implements BitmapPool {
                 + ", is mutable: " + bitmap.isMutable()
                 + ", is allowed config: " + allowedConfigs.contains(bitmap.getConfig()));
       }
+      rejections++;
       bitmap.recycle();
       return;
     }
 
+    // Rejected puts don't change the pool, so they're not worth replaying.
+    if (trace != null) {
+      trace.recordPut(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
     final int size = strategy.getSize(bitmap);
     strategy.put(bitmap);
     tracker.add(bitmap);
 
     puts++;
     currentSize += size;
+    addToSizeClass(size, 1);
 
     if (Log.isLoggable(TAG, Log.VERBOSE)) {
       Log.v(TAG, "Put bitmap in pool=" + strategy.logBitmap(bitmap));
@@ -114,8 +212,20 @@ public class LruBitmapPool implements BitmapPool {
     evict();
   }
 
+  /**
+   * Counts a request served by a {@link MagazineBitmapPool} in front of this pool as a hit, so that
+   * the pool's stats and {@link RequestListener} see every request.
+   */
+  void onMagazineHit(int width, int height, Bitmap.Config config) {
+    magazineHits.incrementAndGet();
+    RequestListener listener = requestListener;
+    if (listener != null) {
+      listener.onBitmapRequested(width, height, config);
+    }
+  }
+
   private void evict() {
-    trimToSize(maxSize);
+    trimToSize(maxSize, EvictionReason.MAX_SIZE);
   }
 
   @Override
@@ -159,11 +269,18 @@ public class LruBitmapPool implements BitmapPool {
   }
 
   @Nullable
-  private synchronized Bitmap getDirtyOrNull(int width, int height, Bitmap.Config config) {
+  synchronized Bitmap getDirtyOrNull(int width, int height, Bitmap.Config config) {
     assertNotHardwareConfig(config);
     // Config will be null for non public config types, which can lead to transformations naively
     // passing in null as the requested config here. See issue #194.
-    final Bitmap result = strategy.get(width, height, config != null ? config : DEFAULT_CONFIG);
+    Bitmap.Config lookupConfig = config != null ? config : DEFAULT_CONFIG;
+    if (requestListener != null) {
+      requestListener.onBitmapRequested(width, height, lookupConfig);
+    }
+    if (trace != null) {
+      trace.recordGet(width, height, lookupConfig);
+    }
+    final Bitmap result = strategy.get(width, height, lookupConfig);
     if (result == null) {
       if (Log.isLoggable(TAG, Log.DEBUG)) {
         Log.d(TAG, "Missing bitmap=" + strategy.logBitmap(width, height, config));
@@ -171,7 +288,15 @@ public class LruBitmapPool implements BitmapPool {
       misses++;
     } else {
       hits++;
-      currentSize -= strategy.getSize(result);
+      int size = strategy.getSize(result);
+      currentSize -= size;
+      addToSizeClass(size, -1);
+      // Strategies may return a larger Bitmap than was requested, see SizeConfigStrategy.
+      int wasted = size - Util.getBitmapByteSize(width, height, lookupConfig);
+      if (wasted > 0) {
+        oversizedHits++;
+        wastedBytes += wasted;
+      }
       tracker.remove(result);
       normalize(result);
     }
@@ -202,7 +327,12 @@ public class LruBitmapPool implements BitmapPool {
     if (Log.isLoggable(TAG, Log.DEBUG)) {
       Log.d(TAG, "clearMemory");
     }
-    trimToSize(0);
+    synchronized (this) {
+      if (trace != null) {
+        trace.recordClearMemory();
+      }
+    }
+    trimToSize(0, EvictionReason.CLEAR_MEMORY);
   }
 
   @SuppressLint("InlinedApi")
@@ -211,14 +341,19 @@ public class LruBitmapPool implements BitmapPool {
     if (Log.isLoggable(TAG, Log.DEBUG)) {
       Log.d(TAG, "trimMemory, level=" + level);
     }
+    synchronized (this) {
+      if (trace != null) {
+        trace.recordTrimMemory(level);
+      }
+    }
     if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
-      clearMemory();
+      trimToSize(0, EvictionReason.TRIM_MEMORY);
     } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
-      trimToSize(maxSize / 2);
+      trimToSize(maxSize / 2, EvictionReason.TRIM_MEMORY);
     }
   }
 
-  private synchronized void trimToSize(long size) {
+  private synchronized void trimToSize(long size, EvictionReason reason) {
     while (currentSize > size) {
       final Bitmap removed = strategy.removeLast();
       // TODO: This shouldn't ever happen, see #331.
@@ -228,11 +363,16 @@ public class LruBitmapPool implements BitmapPool {
           dumpUnchecked();
         }
         currentSize = 0;
+        Arrays.fill(sizeClassCounts, 0);
+        Arrays.fill(sizeClassBytes, 0);
         return;
       }
       tracker.remove(removed);
-      currentSize -= strategy.getSize(removed);
+      int removedSize = strategy.getSize(removed);
+      currentSize -= removedSize;
+      addToSizeClass(removedSize, -1);
       evictions++;
+      evictionsByReason[reason.ordinal()]++;
       if (Log.isLoggable(TAG, Log.DEBUG)) {
         Log.d(TAG, "Evicting bitmap=" + strategy.logBitmap(removed));
       }
@@ -241,6 +381,12 @@ public class LruBitmapPool implements BitmapPool {
     }
   }
 
+  private void addToSizeClass(int size, int count) {
+    int sizeClass = size > 0 ? 31 - Integer.numberOfLeadingZeros(size) : 0;
+    sizeClassCounts[sizeClass] += count;
+    sizeClassBytes[sizeClass] += (long) size * count;
+  }
+
   private void dump() {
     if (Log.isLoggable(TAG, Log.VERBOSE)) {
       dumpUnchecked();
@@ -249,7 +395,8 @@ public class LruBitmapPool implements BitmapPool {
 
   private void dumpUnchecked() {
     Log.v(TAG, "Hits=" + hits + ", misses=" + misses + ", puts=" + puts + ", evictions=" + evictions
-        + ", currentSize=" + currentSize + ", maxSize=" + maxSize + "\nStrategy=" + strategy);
+        + ", wastedBytes=" + wastedBytes + ", currentSize=" + currentSize + ", maxSize=" + maxSize
+        + "\nStrategy=" + strategy);
   }
 
   private static LruPoolStrategy getDefaultStrategy() {
@@ -263,7 +410,7 @@ public class LruBitmapPool implements BitmapPool {
   }
 
   @TargetApi(Build.VERSION_CODES.O)
-  private static Set<Bitmap.Config> getDefaultAllowedConfigs() {
+  static Set<Bitmap.Config> getDefaultAllowedConfigs() {
     Set<Bitmap.Config> configs = new HashSet<>(Arrays.asList(Bitmap.Config.values()));
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
       // GIFs, among other types, end up with a native Bitmap config that doesn't map to a java
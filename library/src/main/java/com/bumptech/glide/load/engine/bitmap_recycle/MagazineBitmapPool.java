@@ -0,0 +1,410 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.bumptech.glide.util.Preconditions;
+import com.bumptech.glide.util.Synthetic;
+import com.bumptech.glide.util.Util;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link BitmapPool} that keeps a small magazine of recently released {@link Bitmap}s for each
+ * background thread in front of a shared pool, usually an {@link LruBitmapPool}.
+ *
+ * <p>Decoders and transformations often put a {@link Bitmap} back and then ask for one of the same
+ * size and config on the same thread, for example when an intermediate {@link Bitmap} is released
+ * by one transformation and the next transformation needs a new canvas. Those requests are served
+ * from the thread's own magazine without taking the shared pool's lock. Requests that don't match
+ * a {@link Bitmap} in the magazine exactly, and {@link Bitmap}s that don't fit in the magazine, go
+ * to the shared pool.
+ *
+ * <p>{@link Bitmap}s put on the main thread go straight to the shared pool, because they're
+ * usually released resources that background threads will ask for and the main thread rarely
+ * asks for {@link Bitmap}s itself.
+ *
+ * <p>The magazines count against the pool's maximum size. Together they hold at most an eighth of
+ * it and the shared pool holds the rest, so the shared pool should be created with
+ * {@link #getSharedPoolSize(long)} bytes. Magazines are emptied into the shared pool whenever the
+ * pool is trimmed or resized, and the magazines of threads that have died or that haven't used
+ * their magazine for a while are emptied on the next request to the pool from any thread, so the
+ * magazines don't keep memory the shared pool would have released.
+ *
+ * <p>Requests served from a magazine are reported to a shared {@link LruBitmapPool}'s stats and
+ * {@link LruBitmapPool.RequestListener}, as if the shared pool had served them.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class MagazineBitmapPool implements BitmapPool {
+  /** The default number of {@link Bitmap}s held for each thread. */
+  public static final int DEFAULT_MAGAZINE_SIZE = 4;
+  // Magazines can hold up to 1/8th of the pool's maximum size in total.
+  private static final int MAX_SIZE_DIVISOR = 8;
+  private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
+  @VisibleForTesting
+  static final long IDLE_TIMEOUT_MILLIS = 10 * 1000;
+
+  @VisibleForTesting
+  interface Clock {
+    long uptimeMillis();
+  }
+
+  private static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long uptimeMillis() {
+      return SystemClock.uptimeMillis();
+    }
+  };
+
+  private final BitmapPool pool;
+  @Nullable private final LruBitmapPool lruPool;
+  private final int magazineSize;
+  private final Clock clock;
+  private final ThreadLocal<Magazine> magazines = new ThreadLocal<Magazine>() {
+    @Override
+    protected Magazine initialValue() {
+      return newMagazine();
+    }
+  };
+  private final List<Magazine> allMagazines = new ArrayList<>();
+  private final AtomicLong currentSize = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile long nextIdleCheckTime;
+
+  public MagazineBitmapPool(@NonNull BitmapPool pool) {
+    this(pool, DEFAULT_MAGAZINE_SIZE);
+  }
+
+  /**
+   * @param pool         The shared pool used for requests the magazines can't serve.
+   * @param magazineSize The maximum number of {@link Bitmap}s held for each thread.
+   */
+  public MagazineBitmapPool(@NonNull BitmapPool pool, int magazineSize) {
+    this(pool, magazineSize, SYSTEM_CLOCK);
+  }
+
+  @VisibleForTesting
+  MagazineBitmapPool(BitmapPool pool, int magazineSize, Clock clock) {
+    Preconditions.checkArgument(magazineSize > 0, "Magazine size must be > 0");
+    this.pool = Preconditions.checkNotNull(pool);
+    this.magazineSize = magazineSize;
+    this.clock = clock;
+    lruPool = pool instanceof LruBitmapPool ? (LruBitmapPool) pool : null;
+    nextIdleCheckTime = clock.uptimeMillis() + IDLE_TIMEOUT_MILLIS;
+  }
+
+  /**
+   * Returns the maximum size in bytes of the shared pool for a {@link MagazineBitmapPool} that
+   * should hold at most the given number of bytes, leaving the rest for the magazines.
+   */
+  public static long getSharedPoolSize(long maxSize) {
+    return maxSize - maxSize / MAX_SIZE_DIVISOR;
+  }
+
+  /**
+   * Returns the maximum size of the shared pool plus the maximum total size of the magazines.
+   */
+  @Override
+  public long getMaxSize() {
+    return pool.getMaxSize() + getMaxMagazinesSize();
+  }
+
+  @Override
+  public void setSizeMultiplier(float sizeMultiplier) {
+    returnAll();
+    pool.setSizeMultiplier(sizeMultiplier);
+  }
+
+  @Override
+  public void put(Bitmap bitmap) {
+    if (bitmap == null) {
+      throw new NullPointerException("Bitmap must not be null");
+    }
+    maybeReturnIdle();
+    if (bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null
+        || Util.isOnMainThread()) {
+      pool.put(bitmap);
+      return;
+    }
+    int size = Util.getBitmapByteSize(bitmap);
+    if (!reserve(size)) {
+      pool.put(bitmap);
+      return;
+    }
+    Bitmap overflow;
+    Magazine magazine = magazines.get();
+    synchronized (magazine) {
+      overflow = magazine.add(bitmap);
+    }
+    if (overflow != null) {
+      currentSize.addAndGet(-Util.getBitmapByteSize(overflow));
+      pool.put(overflow);
+    }
+  }
+
+  @NonNull
+  @Override
+  public Bitmap get(int width, int height, Bitmap.Config config) {
+    Bitmap result = getFromMagazine(width, height, config);
+    if (result == null) {
+      return pool.get(width, height, config);
+    }
+    // Match LruBitmapPool, which returns erased Bitmaps from get, see issue #131.
+    result.eraseColor(Color.TRANSPARENT);
+    return result;
+  }
+
+  @NonNull
+  @Override
+  public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+    Bitmap result = getFromMagazine(width, height, config);
+    return result != null ? result : pool.getDirty(width, height, config);
+  }
+
+  @Override
+  public void clearMemory() {
+    for (Bitmap bitmap : removeAll()) {
+      bitmap.recycle();
+    }
+    pool.clearMemory();
+  }
+
+  @Override
+  public void trimMemory(int level) {
+    returnAll();
+    pool.trimMemory(level);
+  }
+
+  /**
+   * Returns the number of requests that were served from a thread's magazine.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of requests that were passed on to the shared pool.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the total size in bytes of the {@link Bitmap}s held in all magazines.
+   */
+  public long getCurrentSize() {
+    return currentSize.get();
+  }
+
+  @Override
+  public String toString() {
+    return "MagazineBitmapPool{hits=" + hits.get() + ", misses=" + misses.get()
+        + ", currentSize=" + currentSize.get() + ", pool=" + pool + "}";
+  }
+
+  @Nullable
+  private Bitmap getFromMagazine(int width, int height, Bitmap.Config config) {
+    maybeReturnIdle();
+    // Config will be null for non public config types, see issue #194.
+    Bitmap.Config lookupConfig = config != null ? config : DEFAULT_CONFIG;
+    Bitmap result = null;
+    if (currentSize.get() > 0) {
+      Magazine magazine = magazines.get();
+      synchronized (magazine) {
+        result = magazine.remove(width, height, lookupConfig);
+      }
+    }
+    if (result == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    currentSize.addAndGet(-Util.getBitmapByteSize(result));
+    if (lruPool != null) {
+      lruPool.onMagazineHit(width, height, lookupConfig);
+    }
+    normalize(result);
+    return result;
+  }
+
+  private long getMaxMagazinesSize() {
+    // The shared pool has the other 7/8ths of the maximum size.
+    return pool.getMaxSize() / (MAX_SIZE_DIVISOR - 1);
+  }
+
+  private boolean reserve(int size) {
+    long maxSize = getMaxMagazinesSize();
+    long current;
+    do {
+      current = currentSize.get();
+      if (current + size > maxSize) {
+        return false;
+      }
+    } while (!currentSize.compareAndSet(current, current + size));
+    return true;
+  }
+
+  /**
+   * Moves every {@link Bitmap} in every magazine back to the shared pool, which then applies its
+   * own size limit.
+   */
+  private void returnAll() {
+    for (Bitmap bitmap : removeAll()) {
+      pool.put(bitmap);
+    }
+  }
+
+  /**
+   * Moves the {@link Bitmap}s in the magazines of threads that have died or that haven't used their
+   * magazine for {@link #IDLE_TIMEOUT_MILLIS} back to the shared pool, at most once every
+   * {@link #IDLE_TIMEOUT_MILLIS}.
+   */
+  private void maybeReturnIdle() {
+    long now = clock.uptimeMillis();
+    if (now < nextIdleCheckTime) {
+      return;
+    }
+    nextIdleCheckTime = now + IDLE_TIMEOUT_MILLIS;
+    for (Bitmap bitmap : removeUnusedSince(now - IDLE_TIMEOUT_MILLIS)) {
+      pool.put(bitmap);
+    }
+  }
+
+  private List<Bitmap> removeAll() {
+    return removeUnusedSince(Long.MAX_VALUE);
+  }
+
+  /**
+   * Empties the magazines of threads that have died and the magazines that haven't been used
+   * since the given time, and forgets the magazines of threads that have died.
+   */
+  private List<Bitmap> removeUnusedSince(long time) {
+    List<Bitmap> result = new ArrayList<>();
+    synchronized (allMagazines) {
+      Iterator<Magazine> iterator = allMagazines.iterator();
+      while (iterator.hasNext()) {
+        Magazine magazine = iterator.next();
+        boolean isThreadAlive = magazine.isThreadAlive();
+        synchronized (magazine) {
+          if (!isThreadAlive || magazine.lastUsedTime < time) {
+            magazine.removeAll(result);
+          }
+        }
+        if (!isThreadAlive) {
+          iterator.remove();
+        }
+      }
+    }
+    for (Bitmap bitmap : result) {
+      currentSize.addAndGet(-Util.getBitmapByteSize(bitmap));
+    }
+    return result;
+  }
+
+  @Synthetic
+  Magazine newMagazine() {
+    Magazine result = new Magazine(Thread.currentThread(), magazineSize, clock);
+    synchronized (allMagazines) {
+      allMagazines.add(result);
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  int getMagazineCount() {
+    synchronized (allMagazines) {
+      return allMagazines.size();
+    }
+  }
+
+  // Setting these two values provides Bitmaps that are essentially equivalent to those returned
+  // from Bitmap.createBitmap, see LruBitmapPool.
+  private static void normalize(Bitmap bitmap) {
+    bitmap.setHasAlpha(true);
+    maybeSetPreMultiplied(bitmap);
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static void maybeSetPreMultiplied(Bitmap bitmap) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      bitmap.setPremultiplied(true);
+    }
+  }
+
+  /**
+   * The {@link Bitmap}s put by a single thread, newest last.
+   *
+   * <p>Only the owning thread adds and removes single {@link Bitmap}s, other threads only empty
+   * the magazine, so the magazine's lock is almost never contended.
+   */
+  private static final class Magazine {
+    private final WeakReference<Thread> thread;
+    private final Bitmap[] bitmaps;
+    private final Clock clock;
+    private int count;
+    @Synthetic long lastUsedTime;
+
+    @Synthetic
+    Magazine(Thread thread, int size, Clock clock) {
+      this.thread = new WeakReference<>(thread);
+      this.clock = clock;
+      bitmaps = new Bitmap[size];
+      lastUsedTime = clock.uptimeMillis();
+    }
+
+    /**
+     * Adds the given {@link Bitmap} and returns the oldest {@link Bitmap} if the magazine was
+     * full, or {@code null}.
+     */
+    @Nullable
+    Bitmap add(Bitmap bitmap) {
+      lastUsedTime = clock.uptimeMillis();
+      Bitmap removed = null;
+      if (count == bitmaps.length) {
+        removed = bitmaps[0];
+        System.arraycopy(bitmaps, 1, bitmaps, 0, count - 1);
+        count--;
+      }
+      bitmaps[count++] = bitmap;
+      return removed;
+    }
+
+    @Nullable
+    Bitmap remove(int width, int height, Bitmap.Config config) {
+      lastUsedTime = clock.uptimeMillis();
+      for (int i = count - 1; i >= 0; i--) {
+        Bitmap bitmap = bitmaps[i];
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height
+            && bitmap.getConfig() == config) {
+          System.arraycopy(bitmaps, i + 1, bitmaps, i, count - i - 1);
+          bitmaps[--count] = null;
+          return bitmap;
+        }
+      }
+      return null;
+    }
+
+    void removeAll(List<Bitmap> result) {
+      for (int i = 0; i < count; i++) {
+        result.add(bitmaps[i]);
+        bitmaps[i] = null;
+      }
+      count = 0;
+    }
+
+    boolean isThreadAlive() {
+      Thread owner = thread.get();
+      return owner != null && owner.isAlive();
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.util.Synthetic;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An {@link ArrayPool} that rounds requested sizes up to a fixed set of size classes and keeps a
+ * lock free list of free arrays for each size class and array type, so that getting and putting
+ * arrays from different threads never blocks.
+ *
+ * <p>Size classes are a quarter of a power of two apart, so each is at most 1.25 times larger
+ * than the previous one and arrays are at most 25% larger than requested. Requests for sizes that
+ * are already a size class, like {@link ArrayPool#STANDARD_BUFFER_SIZE_BYTES}, are never rounded.
+ * Arrays put in the pool with lengths that aren't a size class are kept in the largest size class
+ * they can fill.
+ *
+ * <p>Like {@link LruArrayPool}, the total size of the arrays in the pool is limited to a maximum
+ * size in bytes. Once it's exceeded, arrays are evicted from the size class that was least
+ * recently used until the pool fits again. Only eviction takes a lock, so it only blocks other
+ * evictions and the pool's trim methods.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class SizeClassArrayPool implements ArrayPool {
+  // 4MB.
+  private static final int DEFAULT_SIZE = 4 * 1024 * 1024;
+  /** Used to calculate the maximum % of the total pool size a single byte array may consume. */
+  private static final int SINGLE_ARRAY_MAX_SIZE_DIVISOR = 2;
+  private static final int SUB_CLASS_BITS = 2;
+  private static final int SUB_CLASSES = 1 << SUB_CLASS_BITS;
+  // The smallest size class, any smaller requests are rounded up to it.
+  private static final int MIN_CLASS_SIZE_BITS = 3;
+  @VisibleForTesting
+  static final int MIN_CLASS_SIZE = 1 << MIN_CLASS_SIZE_BITS;
+  // Enough size classes for any positive int.
+  private static final int CLASS_COUNT = getSizeClass(Integer.MAX_VALUE) + 1;
+
+  private final int maxSize;
+  private final ArrayClassPool<byte[]> bytePool =
+      new ArrayClassPool<>(new ByteArrayAdapter(), CLASS_COUNT);
+  private final ArrayClassPool<int[]> intPool =
+      new ArrayClassPool<>(new IntegerArrayAdapter(), CLASS_COUNT);
+  private final AtomicLong currentSize = new AtomicLong();
+  private final Object evictionLock = new Object();
+
+  @VisibleForTesting
+  public SizeClassArrayPool() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * Constructor for a new pool.
+   *
+   * @param maxSize The maximum size in bytes of the pool.
+   */
+  public SizeClassArrayPool(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  @Deprecated
+  @Override
+  public <T> void put(T array, Class<T> arrayClass) {
+    put(array);
+  }
+
+  @Override
+  public <T> void put(T array) {
+    @SuppressWarnings("unchecked")
+    ArrayClassPool<T> pool = getPool((Class<T>) array.getClass());
+    int length = pool.adapter.getArrayLength(array);
+    int arrayBytes = length * pool.adapter.getElementSizeInBytes();
+    int sizeClass = getFloorSizeClass(length);
+    if (sizeClass < 0 || !isSmallEnoughForReuse(arrayBytes)) {
+      return;
+    }
+    // Count the array before it's visible to other threads so the size is never negative.
+    long size = currentSize.addAndGet(arrayBytes);
+    pool.lists[sizeClass].push(array);
+    if (size > maxSize) {
+      evictToSize(maxSize);
+    }
+  }
+
+  @Override
+  public <T> T get(int size, Class<T> arrayClass) {
+    ArrayClassPool<T> pool = getPool(arrayClass);
+    int sizeClass = getSizeClass(size);
+    long classSize = getClassSize(sizeClass);
+    if (!isSmallEnoughForReuse(classSize * pool.adapter.getElementSizeInBytes())) {
+      return pool.adapter.newArray(size);
+    }
+    T result = pool.lists[sizeClass].pop();
+    if (result != null) {
+      currentSize.addAndGet(-getByteSize(pool.adapter, result));
+      return result;
+    }
+    if (Log.isLoggable(pool.adapter.getTag(), Log.VERBOSE)) {
+      Log.v(pool.adapter.getTag(), "Allocated " + classSize + " bytes");
+    }
+    return pool.adapter.newArray((int) classSize);
+  }
+
+  @Override
+  public <T> T getExact(int size, Class<T> arrayClass) {
+    ArrayClassPool<T> pool = getPool(arrayClass);
+    int sizeClass = getSizeClass(size);
+    if (getClassSize(sizeClass) == size) {
+      FreeList<T> list = pool.lists[sizeClass];
+      T result = list.pop();
+      if (result != null) {
+        if (pool.adapter.getArrayLength(result) == size) {
+          currentSize.addAndGet(-getByteSize(pool.adapter, result));
+          return result;
+        }
+        // A larger array that was put with a length that isn't a size class.
+        list.push(result);
+      }
+    }
+    if (Log.isLoggable(pool.adapter.getTag(), Log.VERBOSE)) {
+      Log.v(pool.adapter.getTag(), "Allocated " + size + " bytes");
+    }
+    return pool.adapter.newArray(size);
+  }
+
+  @Override
+  public void clearMemory() {
+    evictToSize(0);
+  }
+
+  @Override
+  public void trimMemory(int level) {
+    if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      clearMemory();
+    } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      evictToSize(maxSize / 2);
+    }
+  }
+
+  private void evictToSize(long size) {
+    synchronized (evictionLock) {
+      while (currentSize.get() > size) {
+        if (!evictLeastRecentlyUsed()) {
+          // Arrays that are being put but aren't in a list yet are counted, but can't be evicted.
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean evictLeastRecentlyUsed() {
+    ArrayClassPool<?> oldestPool = null;
+    int oldestClass = -1;
+    long oldestTime = Long.MAX_VALUE;
+    for (ArrayClassPool<?> pool : new ArrayClassPool<?>[] { bytePool, intPool }) {
+      for (int i = 0; i < pool.lists.length; i++) {
+        FreeList<?> list = pool.lists[i];
+        if (!list.isEmpty() && list.lastUsedNanos < oldestTime) {
+          oldestPool = pool;
+          oldestClass = i;
+          oldestTime = list.lastUsedNanos;
+        }
+      }
+    }
+    return oldestPool != null && evict(oldestPool, oldestClass);
+  }
+
+  private <T> boolean evict(ArrayClassPool<T> pool, int sizeClass) {
+    T evicted = pool.lists[sizeClass].removeForEviction();
+    if (evicted == null) {
+      // Taken by another thread since it was checked, there may be other arrays to evict.
+      return true;
+    }
+    currentSize.addAndGet(-getByteSize(pool.adapter, evicted));
+    if (Log.isLoggable(pool.adapter.getTag(), Log.VERBOSE)) {
+      Log.v(pool.adapter.getTag(), "evicted: " + pool.adapter.getArrayLength(evicted));
+    }
+    return true;
+  }
+
+  private boolean isSmallEnoughForReuse(long byteSize) {
+    return byteSize <= maxSize / SINGLE_ARRAY_MAX_SIZE_DIVISOR;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> ArrayClassPool<T> getPool(Class<T> arrayClass) {
+    if (arrayClass == byte[].class) {
+      return (ArrayClassPool<T>) bytePool;
+    } else if (arrayClass == int[].class) {
+      return (ArrayClassPool<T>) intPool;
+    }
+    throw new IllegalArgumentException("No array pool found for: " + arrayClass.getSimpleName());
+  }
+
+  private static <T> int getByteSize(ArrayAdapterInterface<T> adapter, T array) {
+    return adapter.getArrayLength(array) * adapter.getElementSizeInBytes();
+  }
+
+  @VisibleForTesting
+  long getCurrentSize() {
+    return currentSize.get();
+  }
+
+  /**
+   * Returns the index of the smallest size class that holds arrays of at least the given length.
+   */
+  @VisibleForTesting
+  static int getSizeClass(int length) {
+    int value = Math.max(length, MIN_CLASS_SIZE) - 1;
+    int powerOfTwo = 31 - Integer.numberOfLeadingZeros(value);
+    int subClass = (value - (1 << powerOfTwo)) >> (powerOfTwo - SUB_CLASS_BITS);
+    return (powerOfTwo - MIN_CLASS_SIZE_BITS + 1) * SUB_CLASSES + subClass - (SUB_CLASSES - 1);
+  }
+
+  /**
+   * Returns the length of the arrays in the given size class.
+   */
+  @VisibleForTesting
+  static long getClassSize(int sizeClass) {
+    int index = sizeClass + SUB_CLASSES - 1;
+    int powerOfTwo = index / SUB_CLASSES + MIN_CLASS_SIZE_BITS - 1;
+    int subClass = index % SUB_CLASSES;
+    return (1L << powerOfTwo) + ((subClass + 1L) << (powerOfTwo - SUB_CLASS_BITS));
+  }
+
+  /**
+   * Returns the index of the largest size class with arrays no longer than the given length, or
+   * {@code -1} if the length is smaller than the smallest size class.
+   */
+  private static int getFloorSizeClass(int length) {
+    if (length < MIN_CLASS_SIZE) {
+      return -1;
+    }
+    int sizeClass = getSizeClass(length);
+    return getClassSize(sizeClass) == length ? sizeClass : sizeClass - 1;
+  }
+
+  private static final class ArrayClassPool<T> {
+    @Synthetic final ArrayAdapterInterface<T> adapter;
+    @Synthetic final FreeList<T>[] lists;
+
+    @SuppressWarnings("unchecked")
+    ArrayClassPool(ArrayAdapterInterface<T> adapter, int classCount) {
+      this.adapter = adapter;
+      lists = (FreeList<T>[]) new FreeList<?>[classCount];
+      for (int i = 0; i < classCount; i++) {
+        lists[i] = new FreeList<>();
+      }
+    }
+  }
+
+  /**
+   * A lock free stack of the free arrays in a size class.
+   */
+  private static final class FreeList<T> {
+    private final AtomicReference<Node<T>> top = new AtomicReference<>();
+    // Only used to pick the size class to evict from, so updates don't need to be atomic.
+    @Synthetic volatile long lastUsedNanos;
+
+    @Synthetic
+    FreeList() { }
+
+    void push(T array) {
+      Node<T> node = new Node<>(array);
+      Node<T> current;
+      do {
+        current = top.get();
+        node.next = current;
+      } while (!top.compareAndSet(current, node));
+      lastUsedNanos = System.nanoTime();
+    }
+
+    @Nullable
+    T pop() {
+      T result = removeForEviction();
+      if (result != null) {
+        lastUsedNanos = System.nanoTime();
+      }
+      return result;
+    }
+
+    @Nullable
+    T removeForEviction() {
+      Node<T> current;
+      do {
+        current = top.get();
+        if (current == null) {
+          return null;
+        }
+      } while (!top.compareAndSet(current, current.next));
+      return current.array;
+    }
+
+    boolean isEmpty() {
+      return top.get() == null;
+    }
+  }
+
+  private static final class Node<T> {
+    @Synthetic final T array;
+    @Synthetic Node<T> next;
+
+    @Synthetic
+    Node(T array) {
+      this.array = array;
+    }
+  }
+}
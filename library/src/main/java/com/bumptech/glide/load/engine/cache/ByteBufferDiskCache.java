@@ -0,0 +1,38 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.Key;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DiskCache} that may store entries inside of larger files rather than one file per
+ * entry.
+ *
+ * <p>{@link #get(Key)} only returns files for entries that are stored in their own file. The data
+ * for every entry, including those that aren't stored in their own file, can be read with
+ * {@link #getBuffer(Key)} or {@link #openStream(Key)}.
+ */
+public interface ByteBufferDiskCache extends DiskCache {
+
+  /**
+   * Returns the data for the entry with the given key, or {@code null} if there is no such entry
+   * or it could not be read.
+   *
+   * @param key The key in the cache.
+   */
+  @Nullable
+  ByteBuffer getBuffer(Key key);
+
+  /**
+   * Returns a stream that reads the data for the entry with the given key as it's consumed, or
+   * {@code null} if there is no such entry.
+   *
+   * <p>Reads from the stream throw an {@link java.io.IOException} if the data turns out to be
+   * corrupt or can no longer be read. The caller is responsible for closing the stream.
+   *
+   * @param key The key in the cache.
+   */
+  @Nullable
+  InputStream openStream(Key key);
+}
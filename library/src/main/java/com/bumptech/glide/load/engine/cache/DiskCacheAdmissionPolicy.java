@@ -0,0 +1,38 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+
+/**
+ * Decides whether data or a resource that the
+ * {@link com.bumptech.glide.load.engine.DiskCacheStrategy} allows to be cached is actually written
+ * to the {@link DiskCache}.
+ *
+ * <p>Entries that are skipped are decoded exactly as if the strategy didn't allow them to be
+ * cached, so a policy can only reduce the number of disk writes and never changes what's loaded.
+ * Rejecting entries that are unlikely to be read again, like images in an infinite feed that are
+ * only ever displayed once, avoids writing them and avoids evicting entries that are read again.
+ *
+ * <p>Called on Glide's executor threads, so implementations must be thread safe.
+ *
+ * @see DoorkeeperAdmissionPolicy
+ * @see com.bumptech.glide.GlideBuilder#setDiskCacheAdmissionPolicy(DiskCacheAdmissionPolicy)
+ */
+public interface DiskCacheAdmissionPolicy {
+
+  /**
+   * Returns {@code true} if the entry for the given key should be written to the disk cache.
+   *
+   * @param key        The key the entry would be written with.
+   * @param dataSource Where the data being written, or the data the resource being written was
+   *                   decoded from, was loaded from.
+   * @param isResource {@code true} if the entry is a decoded and transformed resource,
+   *                   {@code false} if it's unmodified source data.
+   * @param size       The size in bytes of the data or resource in memory, or {@code -1} if it's
+   *                   unknown, for example for streams. For resources this is the decoded size,
+   *                   which is usually much larger than the encoded size written to disk.
+   */
+  boolean shouldAdmit(@NonNull Key key, @NonNull DataSource dataSource, boolean isResource,
+      long size);
+}
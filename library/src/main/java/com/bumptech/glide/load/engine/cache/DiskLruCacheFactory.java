@@ -1,5 +1,6 @@
 package com.bumptech.glide.load.engine.cache;
 
+import com.bumptech.glide.util.Preconditions;
 import java.io.File;
 
 /**
@@ -14,6 +15,8 @@ import java.io.File;
 public class DiskLruCacheFactory implements DiskCache.Factory {
   private final long diskCacheSize;
   private final CacheDirectoryGetter cacheDirectoryGetter;
+  private final int shardCount;
+  private final KeyHasher keyHasher;
 
   /**
    * Interface called out of UI thread to get the cache folder.
@@ -51,8 +54,48 @@ public class DiskLruCacheFactory implements DiskCache.Factory {
   // Public API.
   @SuppressWarnings("WeakerAccess")
   public DiskLruCacheFactory(CacheDirectoryGetter cacheDirectoryGetter, long diskCacheSize) {
+    this(cacheDirectoryGetter, diskCacheSize, 1);
+  }
+
+  /**
+   * Creates a factory that splits the disk cache into the given number of independent caches so
+   * that disk cache reads and writes on multiple threads don't all contend for the same locks.
+   *
+   * <p>The shard count must not change for a given directory. See
+   * {@link ShardedDiskLruCacheWrapper}.
+   *
+   * @param cacheDirectoryGetter Interface called out of UI thread to get the cache folder.
+   * @param diskCacheSize        Desired max bytes size for the LRU disk cache, shared between all
+   *                             shards.
+   * @param shardCount           The number of shards to use, 1 disables sharding.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public DiskLruCacheFactory(CacheDirectoryGetter cacheDirectoryGetter, long diskCacheSize,
+      int shardCount) {
+    this(cacheDirectoryGetter, diskCacheSize, shardCount, KeyHasher.SHA_256);
+  }
+
+  /**
+   * Creates a factory that names disk cache entries using the given {@link KeyHasher}.
+   *
+   * <p>Entries written with a different {@link KeyHasher} are not found. See {@link KeyHasher}.
+   *
+   * @param cacheDirectoryGetter Interface called out of UI thread to get the cache folder.
+   * @param diskCacheSize        Desired max bytes size for the LRU disk cache, shared between all
+   *                             shards.
+   * @param shardCount           The number of shards to use, 1 disables sharding.
+   * @param keyHasher            The hash function used to name entries.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public DiskLruCacheFactory(CacheDirectoryGetter cacheDirectoryGetter, long diskCacheSize,
+      int shardCount, KeyHasher keyHasher) {
+    Preconditions.checkArgument(shardCount > 0, "shardCount must be at least 1");
     this.diskCacheSize = diskCacheSize;
     this.cacheDirectoryGetter = cacheDirectoryGetter;
+    this.shardCount = shardCount;
+    this.keyHasher = Preconditions.checkNotNull(keyHasher);
   }
 
   @Override
@@ -67,6 +110,9 @@ public class DiskLruCacheFactory implements DiskCache.Factory {
       return null;
     }
 
-    return DiskLruCacheWrapper.create(cacheDir, diskCacheSize);
+    if (shardCount > 1) {
+      return ShardedDiskLruCacheWrapper.create(cacheDir, diskCacheSize, shardCount, keyHasher);
+    }
+    return DiskLruCacheWrapper.create(cacheDir, diskCacheSize, keyHasher);
   }
 }
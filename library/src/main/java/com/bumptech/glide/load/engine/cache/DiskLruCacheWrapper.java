@@ -15,6 +15,12 @@ import java.io.IOException;
  * The default DiskCache implementation. There must be no more than one active instance for a given
  * directory at a time.
  *
+ * <p>Keeps a Bloom filter of the safe keys in the cache, built from the names of the files in the
+ * directory when the cache is opened and updated on each put, so that most misses return without
+ * taking the cache's lock. Loads that check many keys that aren't cached, like the combinations
+ * of resource classes and transformations checked for each request, are then mostly bound by
+ * the cost of calculating safe keys, which {@link KeyHasher#MURMUR3_128} reduces.
+ *
  * @see #get(java.io.File, long)
  */
 public class DiskLruCacheWrapper implements DiskCache {
@@ -29,6 +35,8 @@ public class DiskLruCacheWrapper implements DiskCache {
   private final long maxSize;
   private final DiskCacheWriteLocker writeLocker = new DiskCacheWriteLocker();
   private DiskLruCache diskLruCache;
+  // Null until the cache is opened, written while holding this object's lock.
+  private volatile SafeKeyFilter keyFilter;
 
   /**
    * Get a DiskCache in the given directory and size. If a disk cache has already been created with
@@ -64,6 +72,19 @@ public class DiskLruCacheWrapper implements DiskCache {
     return new DiskLruCacheWrapper(directory, maxSize);
   }
 
+  /**
+   * Create a new DiskCache in the given directory with a specified max size that names entries
+   * using the given {@link KeyHasher}.
+   *
+   * @param directory The directory for the disk cache
+   * @param maxSize   The max size for the disk cache
+   * @param keyHasher The hash function used to name entries
+   * @return The new disk cache with the given arguments
+   */
+  public static DiskCache create(File directory, long maxSize, KeyHasher keyHasher) {
+    return new DiskLruCacheWrapper(directory, maxSize, new SafeKeyGenerator(keyHasher));
+  }
+
   /**
    * @deprecated Do not extend this class.
    */
@@ -71,24 +92,41 @@ public class DiskLruCacheWrapper implements DiskCache {
   // Deprecated public API.
   @SuppressWarnings({"WeakerAccess", "DeprecatedIsStillUsed"})
   protected DiskLruCacheWrapper(File directory, long maxSize) {
+    this(directory, maxSize, new SafeKeyGenerator());
+  }
+
+  DiskLruCacheWrapper(File directory, long maxSize, SafeKeyGenerator safeKeyGenerator) {
     this.directory = directory;
     this.maxSize = maxSize;
-    this.safeKeyGenerator = new SafeKeyGenerator();
+    this.safeKeyGenerator = safeKeyGenerator;
   }
 
   private synchronized DiskLruCache getDiskCache() throws IOException {
     if (diskLruCache == null) {
       diskLruCache = DiskLruCache.open(directory, APP_VERSION, VALUE_COUNT, maxSize);
+      // Opening deletes the files of incomplete and removed entries, so list the directory after.
+      keyFilter = SafeKeyFilter.fromDirectory(directory);
     }
     return diskLruCache;
   }
 
   @Override
   public File get(Key key) {
-    String safeKey = safeKeyGenerator.getSafeKey(key);
+    return get(key, safeKeyGenerator.getSafeKey(key));
+  }
+
+  /**
+   * Same as {@link #get(Key)}, but uses a safe key that was already calculated for the given
+   * {@link Key}.
+   */
+  File get(Key key, String safeKey) {
     if (Log.isLoggable(TAG, Log.VERBOSE)) {
       Log.v(TAG, "Get: Obtained: " + safeKey + " for for Key: " + key);
     }
+    SafeKeyFilter filter = keyFilter;
+    if (filter != null && !filter.mightContain(safeKey)) {
+      return null;
+    }
     File result = null;
     try {
       // It is possible that the there will be a put in between these two gets. If so that shouldn't
@@ -108,9 +146,16 @@ public class DiskLruCacheWrapper implements DiskCache {
 
   @Override
   public void put(Key key, Writer writer) {
+    put(key, safeKeyGenerator.getSafeKey(key), writer);
+  }
+
+  /**
+   * Same as {@link #put(Key, Writer)}, but uses a safe key that was already calculated for the
+   * given {@link Key}.
+   */
+  void put(Key key, String safeKey, Writer writer) {
     // We want to make sure that puts block so that data is available when put completes. We may
     // actually not write any data if we find that data is written by the time we acquire the lock.
-    String safeKey = safeKeyGenerator.getSafeKey(key);
     writeLocker.acquire(safeKey);
     try {
       if (Log.isLoggable(TAG, Log.VERBOSE)) {
@@ -122,6 +167,7 @@ public class DiskLruCacheWrapper implements DiskCache {
         DiskLruCache diskCache = getDiskCache();
         Value current = diskCache.get(safeKey);
         if (current != null) {
+          addToKeyFilter(safeKey);
           return;
         }
 
@@ -133,6 +179,7 @@ public class DiskLruCacheWrapper implements DiskCache {
           File file = editor.getFile(0);
           if (writer.write(file)) {
             editor.commit();
+            addToKeyFilter(safeKey);
           }
         } finally {
           editor.abortUnlessCommitted();
@@ -147,9 +194,27 @@ public class DiskLruCacheWrapper implements DiskCache {
     }
   }
 
+  /**
+   * Adds the given key to the filter after its entry is committed, or replaces the filter if it's
+   * full. Listing the directory only includes entries committed before the listing started, so
+   * puts are added while holding the same lock to avoid racing with the replacement.
+   */
+  private synchronized void addToKeyFilter(String safeKey) {
+    // If null, the cache was cleared and the filter is rebuilt when it's opened again.
+    if (keyFilter != null) {
+      keyFilter.add(safeKey);
+      if (keyFilter.isFull()) {
+        keyFilter = SafeKeyFilter.fromDirectory(directory);
+      }
+    }
+  }
+
   @Override
   public void delete(Key key) {
-    String safeKey = safeKeyGenerator.getSafeKey(key);
+    delete(safeKeyGenerator.getSafeKey(key));
+  }
+
+  void delete(String safeKey) {
     try {
       getDiskCache().remove(safeKey);
     } catch (IOException e) {
@@ -177,5 +242,6 @@ public class DiskLruCacheWrapper implements DiskCache {
 
   private synchronized void resetDiskCache() {
     diskLruCache = null;
+    keyFilter = null;
   }
 }
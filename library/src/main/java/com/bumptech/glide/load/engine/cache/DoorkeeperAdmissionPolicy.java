@@ -0,0 +1,291 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DiskCacheAdmissionPolicy} that only admits an entry the second time it would be
+ * written, so that data and resources that are only ever loaded once are never written to disk.
+ *
+ * <p>Keys are remembered in a pair of Bloom filters. Once the newer filter holds the expected
+ * number of keys, the older filter is dropped and a new, empty filter is started, so keys are
+ * remembered for between one and two times the expected number of rejected writes. False
+ * positives admit an entry on its first write, which is no worse than not having a policy.
+ *
+ * <p>If a file is given, the filters are read from it the first time the policy is used and are
+ * written back to it periodically on a background thread, so keys seen shortly before the app was
+ * killed are still admitted after it restarts.
+ *
+ * <p>Thread safe.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class DoorkeeperAdmissionPolicy implements DiskCacheAdmissionPolicy {
+  private static final String TAG = "DoorkeeperPolicy";
+  private static final int VERSION = 1;
+  /** The default number of keys remembered before the oldest keys start to be forgotten. */
+  public static final int DEFAULT_EXPECTED_ENTRIES = 10000;
+  // About a 1% false positive rate with five hash functions.
+  private static final int BITS_PER_ENTRY = 10;
+  private static final int HASH_COUNT = 5;
+  // The number of keys added to the filter after which it's written to the file again in the
+  // background.
+  @VisibleForTesting
+  static final int SAVE_INTERVAL = 100;
+
+  private final int expectedEntries;
+  private final int bitCount;
+  @Nullable private final File file;
+  private final Executor saveExecutor;
+  private final Runnable saveRunnable = new Runnable() {
+    @Override
+    public void run() {
+      save();
+    }
+  };
+  // Held while the file is written so that saves don't overlap and clear() can't be undone by a
+  // save in progress. Acquired before, and never while holding, the lock on this object.
+  private final Object fileLock = new Object();
+  private long[] current;
+  private long[] previous;
+  private int insertions;
+  private int insertionsSinceSave;
+  private boolean isLoaded;
+  private boolean isSaveScheduled;
+
+  /**
+   * Creates a policy that remembers {@link #DEFAULT_EXPECTED_ENTRIES} keys in memory only.
+   */
+  public DoorkeeperAdmissionPolicy() {
+    this(DEFAULT_EXPECTED_ENTRIES, /*file=*/ null);
+  }
+
+  /**
+   * @param expectedEntries The number of keys to remember before the oldest keys start to be
+   *                        forgotten.
+   * @param file            An optional file used to keep the remembered keys across restarts.
+   */
+  public DoorkeeperAdmissionPolicy(int expectedEntries, @Nullable File file) {
+    this(expectedEntries, file, MaintenanceExecutor.get());
+  }
+
+  @VisibleForTesting
+  DoorkeeperAdmissionPolicy(int expectedEntries, @Nullable File file, Executor saveExecutor) {
+    if (expectedEntries <= 0) {
+      throw new IllegalArgumentException("Expected entries must be > 0");
+    }
+    this.expectedEntries = expectedEntries;
+    this.file = file;
+    this.saveExecutor = saveExecutor;
+    int words = (int) Math.max(1, ((long) expectedEntries * BITS_PER_ENTRY + 63) / Long.SIZE);
+    bitCount = words * Long.SIZE;
+    current = new long[words];
+    previous = new long[words];
+  }
+
+  @Override
+  public boolean shouldAdmit(@NonNull Key key, @NonNull DataSource dataSource,
+      boolean isResource, long size) {
+    byte[] hash = hash(key);
+    long h1 = getLong(hash, 0);
+    long h2 = getLong(hash, 8);
+    synchronized (this) {
+      loadIfNeeded();
+      if (contains(current, h1, h2) || contains(previous, h1, h2)) {
+        return true;
+      }
+      add(h1, h2);
+      if (file != null && ++insertionsSinceSave >= SAVE_INTERVAL && !isSaveScheduled) {
+        isSaveScheduled = true;
+        saveExecutor.execute(saveRunnable);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets every key seen so far.
+   */
+  public void clear() {
+    synchronized (fileLock) {
+      synchronized (this) {
+        isLoaded = true;
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+        insertions = 0;
+        insertionsSinceSave = 0;
+      }
+      if (file != null) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Synchronously writes the remembered keys to the file given in the constructor, if any.
+   *
+   * <p>The keys are copied while holding the policy's lock and written without it, so calls to
+   * {@link #shouldAdmit(Key, DataSource, boolean, long)} aren't blocked while the file is written.
+   */
+  public void save() {
+    if (file == null) {
+      return;
+    }
+    synchronized (fileLock) {
+      int savedInsertions;
+      long[] savedCurrent;
+      long[] savedPrevious;
+      synchronized (this) {
+        isSaveScheduled = false;
+        if (!isLoaded) {
+          return;
+        }
+        insertionsSinceSave = 0;
+        savedInsertions = insertions;
+        savedCurrent = current.clone();
+        savedPrevious = previous.clone();
+      }
+      write(file, savedInsertions, savedCurrent, savedPrevious);
+    }
+  }
+
+  private static void write(File file, int insertions, long[] current, long[] previous) {
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream os = null;
+    try {
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      os.writeInt(VERSION);
+      os.writeInt(current.length);
+      os.writeInt(insertions);
+      for (long word : current) {
+        os.writeLong(word);
+      }
+      for (long word : previous) {
+        os.writeLong(word);
+      }
+      os.close();
+      os = null;
+      if (!temp.renameTo(file)) {
+        throw new IOException("Failed to rename " + temp + " to " + file);
+      }
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to save doorkeeper", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+    } finally {
+      close(os);
+    }
+  }
+
+  private void loadIfNeeded() {
+    if (isLoaded) {
+      return;
+    }
+    isLoaded = true;
+    if (file == null || !file.exists()) {
+      return;
+    }
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (is.readInt() != VERSION || is.readInt() != current.length) {
+        throw new IOException("Unsupported version or size");
+      }
+      int savedInsertions = is.readInt();
+      long[] savedCurrent = new long[current.length];
+      long[] savedPrevious = new long[previous.length];
+      for (int i = 0; i < savedCurrent.length; i++) {
+        savedCurrent[i] = is.readLong();
+      }
+      for (int i = 0; i < savedPrevious.length; i++) {
+        savedPrevious[i] = is.readLong();
+      }
+      current = savedCurrent;
+      previous = savedPrevious;
+      insertions = savedInsertions;
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Ignoring invalid doorkeeper file", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    } finally {
+      close(is);
+    }
+  }
+
+  private void add(long h1, long h2) {
+    if (insertions >= expectedEntries) {
+      long[] oldest = previous;
+      previous = current;
+      Arrays.fill(oldest, 0);
+      current = oldest;
+      insertions = 0;
+    }
+    insertions++;
+    long combined = h1;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      int bit = index(combined);
+      current[bit >>> 6] |= 1L << bit;
+      combined += h2;
+    }
+  }
+
+  private boolean contains(long[] filter, long h1, long h2) {
+    long combined = h1;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      int bit = index(combined);
+      if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+      combined += h2;
+    }
+    return true;
+  }
+
+  private int index(long combined) {
+    return (int) ((combined & Long.MAX_VALUE) % bitCount);
+  }
+
+  private static byte[] hash(Key key) {
+    Murmur3MessageDigest digest = new Murmur3MessageDigest();
+    key.updateDiskCacheKey(digest);
+    return digest.digest();
+  }
+
+  private static long getLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = offset + 7; i >= offset; i--) {
+      result = (result << 8) | (bytes[i] & 0xFFL);
+    }
+    return result;
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+}
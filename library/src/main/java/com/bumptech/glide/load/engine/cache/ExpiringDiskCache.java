@@ -0,0 +1,485 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.util.Synthetic;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link DiskCache} that wraps another {@link DiskCache} and drops entries once they're older
+ * than the time to live they were written with.
+ *
+ * <p>Entries are given a time to live by setting {@link #TIME_TO_LIVE_MILLIS} on the request.
+ * Entries written without one never expire, as if they were written to the wrapped cache directly.
+ *
+ * <p>The expiration time of each entry is kept in an in-memory index that's saved to a file,
+ * along with the bytes of the entry's {@link Key} so that it can be deleted after a restart.
+ * Lookups of expired entries are misses and only schedule the entry to be deleted. Expired entries
+ * are deleted in small batches on a low priority background thread, both after expired lookups
+ * and periodically while entries are written, so entries that are never requested again are
+ * reclaimed too.
+ *
+ * <p>The index is saved in the background after every few writes and after every sweep, so the
+ * expiration times of the last few entries written before the process is killed may be lost, in
+ * which case those entries remain until they're evicted by the wrapped cache.
+ *
+ * <p>The wrapped cache doesn't report the entries it evicts, so the expiration time of an evicted
+ * entry is only dropped once a lookup finds that the wrapped cache no longer has it. To keep the
+ * index bounded regardless, once it holds more than a maximum number of entries the entries
+ * closest to expiring are deleted early.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class ExpiringDiskCache implements ByteBufferDiskCache {
+  /**
+   * The time in milliseconds that source data and resources loaded for a request are kept in an
+   * {@link ExpiringDiskCache} after they're written.
+   *
+   * <p>Defaults to {@code null}, in which case entries don't expire.
+   */
+  public static final Option<Long> TIME_TO_LIVE_MILLIS =
+      Option.memory("com.bumptech.glide.load.engine.cache.ExpiringDiskCache.TimeToLiveMillis");
+
+  private static final String TAG = "ExpiringDiskCache";
+  private static final int VERSION = 1;
+  @VisibleForTesting
+  static final int SWEEP_BATCH_SIZE = 20;
+  // The number of entries given an expiration time after which the index is saved again.
+  @VisibleForTesting
+  static final int SAVE_INTERVAL = 20;
+  private static final long SWEEP_INTERVAL_MILLIS = 10 * 60 * 1000;
+  // About as many entries as the default 250MB disk cache holds, a few hundred KB of index.
+  private static final int MAX_EXPIRING_ENTRIES = 5000;
+
+  /**
+   * A {@link DiskCache.Writer} that knows how long the data it writes should be kept.
+   */
+  public interface TimeToLiveWriter extends DiskCache.Writer {
+    /**
+     * Returns the time in milliseconds that the written data should be kept, or {@code 0} if it
+     * shouldn't expire.
+     */
+    long getTimeToLiveMillis();
+  }
+
+  @VisibleForTesting
+  interface Clock {
+    long currentTimeMillis();
+  }
+
+  private static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+  };
+
+  private final DiskCache delegate;
+  private final File indexFile;
+  private final int maxEntries;
+  private final Executor executor;
+  private final Clock clock;
+  private final Map<KeyBytes, Long> expirationTimes = new ConcurrentHashMap<>();
+  private final AtomicBoolean isSweepScheduled = new AtomicBoolean();
+  private final Runnable sweepRunnable = new Runnable() {
+    @Override
+    public void run() {
+      isSweepScheduled.set(false);
+      sweep();
+    }
+  };
+  private final AtomicBoolean isSaveScheduled = new AtomicBoolean();
+  private final Runnable saveRunnable = new Runnable() {
+    @Override
+    public void run() {
+      isSaveScheduled.set(false);
+      save();
+    }
+  };
+  private final AtomicInteger unsavedCount = new AtomicInteger();
+  // Guards loading, saving and deleting the index file.
+  private final Object indexLock = new Object();
+  private volatile boolean isLoaded;
+  private volatile long lastSweepTime;
+
+  /**
+   * Returns a cache that expires entries from the given cache, keeping expiration times in the
+   * given file.
+   */
+  public static ExpiringDiskCache create(@NonNull DiskCache delegate, @NonNull File indexFile) {
+    return new ExpiringDiskCache(delegate, indexFile, MAX_EXPIRING_ENTRIES,
+        MaintenanceExecutor.get(), SYSTEM_CLOCK);
+  }
+
+  @VisibleForTesting
+  ExpiringDiskCache(DiskCache delegate, File indexFile, int maxEntries, Executor executor,
+      Clock clock) {
+    this.delegate = delegate;
+    this.indexFile = indexFile;
+    this.maxEntries = maxEntries;
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  @Nullable
+  @Override
+  public File get(Key key) {
+    KeyBytes keyBytes = getKeyBytesIfAnyExpire(key);
+    Long expirationTime = keyBytes != null ? expirationTimes.get(keyBytes) : null;
+    if (isExpired(expirationTime)) {
+      scheduleSweep();
+      return null;
+    }
+    File result = delegate.get(key);
+    // A ByteBufferDiskCache may have entries that aren't in their own file.
+    if (result == null && !(delegate instanceof ByteBufferDiskCache)) {
+      onMissing(keyBytes, expirationTime);
+    }
+    return result;
+  }
+
+  @Nullable
+  @Override
+  public ByteBuffer getBuffer(@NonNull Key key) {
+    if (!(delegate instanceof ByteBufferDiskCache)) {
+      return null;
+    }
+    KeyBytes keyBytes = getKeyBytesIfAnyExpire(key);
+    Long expirationTime = keyBytes != null ? expirationTimes.get(keyBytes) : null;
+    if (isExpired(expirationTime)) {
+      scheduleSweep();
+      return null;
+    }
+    ByteBuffer result = ((ByteBufferDiskCache) delegate).getBuffer(key);
+    if (result == null) {
+      onMissing(keyBytes, expirationTime);
+    }
+    return result;
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(@NonNull Key key) {
+    if (!(delegate instanceof ByteBufferDiskCache)) {
+      return null;
+    }
+    KeyBytes keyBytes = getKeyBytesIfAnyExpire(key);
+    Long expirationTime = keyBytes != null ? expirationTimes.get(keyBytes) : null;
+    if (isExpired(expirationTime)) {
+      scheduleSweep();
+      return null;
+    }
+    InputStream result = ((ByteBufferDiskCache) delegate).openStream(key);
+    if (result == null) {
+      onMissing(keyBytes, expirationTime);
+    }
+    return result;
+  }
+
+  @Override
+  public void put(Key key, Writer writer) {
+    loadIfNeeded();
+    long timeToLiveMillis = writer instanceof TimeToLiveWriter
+        ? ((TimeToLiveWriter) writer).getTimeToLiveMillis() : 0;
+    if (timeToLiveMillis <= 0 && expirationTimes.isEmpty()) {
+      delegate.put(key, writer);
+      return;
+    }
+
+    KeyBytes keyBytes = new KeyBytes(SafeKeyGenerator.getKeyBytes(key));
+    long now = clock.currentTimeMillis();
+    Long expirationTime = expirationTimes.get(keyBytes);
+    boolean isExpired = expirationTime != null && expirationTime <= now;
+    if (isExpired) {
+      // Otherwise the wrapped cache may find the expired entry and skip the write.
+      delegate.delete(key);
+      expirationTimes.remove(keyBytes, expirationTime);
+    }
+    delegate.put(key, writer);
+    // An entry that's already cached isn't written again, so keep its original expiration time.
+    if (timeToLiveMillis > 0 && (expirationTime == null || isExpired)) {
+      expirationTimes.put(keyBytes, now + timeToLiveMillis);
+      onIndexChanged();
+    }
+    if (now - lastSweepTime >= SWEEP_INTERVAL_MILLIS || expirationTimes.size() > maxEntries) {
+      scheduleSweep();
+    }
+  }
+
+  @Override
+  public void delete(Key key) {
+    delegate.delete(key);
+    loadIfNeeded();
+    if (!expirationTimes.isEmpty()
+        && expirationTimes.remove(new KeyBytes(SafeKeyGenerator.getKeyBytes(key))) != null) {
+      onIndexChanged();
+    }
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    synchronized (indexLock) {
+      isLoaded = true;
+      expirationTimes.clear();
+      unsavedCount.set(0);
+      //noinspection ResultOfMethodCallIgnored
+      indexFile.delete();
+    }
+  }
+
+  /**
+   * Returns the number of entries with an expiration time, expired or not.
+   */
+  @VisibleForTesting
+  int getExpiringEntryCount() {
+    loadIfNeeded();
+    return expirationTimes.size();
+  }
+
+  /**
+   * Returns the bytes of the given key, or {@code null} if no entry has an expiration time, in
+   * which case they aren't needed.
+   */
+  @Nullable
+  private KeyBytes getKeyBytesIfAnyExpire(Key key) {
+    loadIfNeeded();
+    return expirationTimes.isEmpty() ? null : new KeyBytes(SafeKeyGenerator.getKeyBytes(key));
+  }
+
+  private boolean isExpired(@Nullable Long expirationTime) {
+    return expirationTime != null && expirationTime <= clock.currentTimeMillis();
+  }
+
+  /**
+   * Drops the expiration time of an entry that the wrapped cache doesn't have, usually because it
+   * was evicted, unless the entry was written again in the meantime.
+   */
+  private void onMissing(@Nullable KeyBytes keyBytes, @Nullable Long expirationTime) {
+    if (expirationTime != null && expirationTimes.remove(keyBytes, expirationTime)) {
+      onIndexChanged();
+    }
+  }
+
+  private void scheduleSweep() {
+    if (isSweepScheduled.compareAndSet(false, true)) {
+      executor.execute(sweepRunnable);
+    }
+  }
+
+  /**
+   * Deletes up to {@link #SWEEP_BATCH_SIZE} expired entries and schedules another sweep if there
+   * are more, so that other background work isn't held up by a large number of expired entries.
+   *
+   * <p>Once all expired entries are deleted, also deletes the entries closest to expiring if there
+   * are more than the maximum number of entries.
+   */
+  @Synthetic
+  void sweep() {
+    long now = clock.currentTimeMillis();
+    lastSweepTime = now;
+    int deleted = 0;
+    boolean hasMore = false;
+    for (Iterator<Map.Entry<KeyBytes, Long>> iterator = expirationTimes.entrySet().iterator();
+        iterator.hasNext(); ) {
+      Map.Entry<KeyBytes, Long> entry = iterator.next();
+      if (entry.getValue() > now) {
+        continue;
+      }
+      if (deleted == SWEEP_BATCH_SIZE) {
+        hasMore = true;
+        break;
+      }
+      delegate.delete(entry.getKey());
+      // Keep the entry if it was written again since we read it.
+      expirationTimes.remove(entry.getKey(), entry.getValue());
+      deleted++;
+    }
+    int trimmed = hasMore ? 0 : trimToMaxEntries();
+    if (deleted > 0 || trimmed > 0) {
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Deleted " + deleted + " expired entries and " + trimmed + " entries over the"
+            + " maximum");
+      }
+      save();
+    }
+    if (hasMore) {
+      scheduleSweep();
+    }
+  }
+
+  private int trimToMaxEntries() {
+    int excess = expirationTimes.size() - maxEntries;
+    if (excess <= 0) {
+      return 0;
+    }
+    List<Map.Entry<KeyBytes, Long>> entries = new ArrayList<>(expirationTimes.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<KeyBytes, Long>>() {
+      @Override
+      public int compare(Map.Entry<KeyBytes, Long> first, Map.Entry<KeyBytes, Long> second) {
+        return first.getValue().compareTo(second.getValue());
+      }
+    });
+    int trimmed = Math.min(excess, entries.size());
+    for (int i = 0; i < trimmed; i++) {
+      Map.Entry<KeyBytes, Long> entry = entries.get(i);
+      delegate.delete(entry.getKey());
+      expirationTimes.remove(entry.getKey(), entry.getValue());
+    }
+    return trimmed;
+  }
+
+  /**
+   * Saves the index in the background once enough entries have changed, so that the index is
+   * written once for any number of changes made while a save is pending.
+   */
+  private void onIndexChanged() {
+    if (unsavedCount.incrementAndGet() >= SAVE_INTERVAL
+        && isSaveScheduled.compareAndSet(false, true)) {
+      executor.execute(saveRunnable);
+    }
+  }
+
+  @Synthetic
+  void save() {
+    synchronized (indexLock) {
+      unsavedCount.set(0);
+      File temp = new File(indexFile.getPath() + ".tmp");
+      DataOutputStream os = null;
+      try {
+        os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        os.writeInt(VERSION);
+        for (Map.Entry<KeyBytes, Long> entry : expirationTimes.entrySet()) {
+          byte[] bytes = entry.getKey().bytes;
+          if (bytes.length == 0) {
+            continue;
+          }
+          os.writeInt(bytes.length);
+          os.write(bytes);
+          os.writeLong(entry.getValue());
+        }
+        // Marks the end of the entries.
+        os.writeInt(0);
+        os.close();
+        os = null;
+        if (!temp.renameTo(indexFile)) {
+          throw new IOException("Failed to rename " + temp + " to " + indexFile);
+        }
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Failed to save expiration times", e);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      } finally {
+        close(os);
+      }
+    }
+  }
+
+  private void loadIfNeeded() {
+    if (isLoaded) {
+      return;
+    }
+    synchronized (indexLock) {
+      if (isLoaded) {
+        return;
+      }
+      load();
+      isLoaded = true;
+    }
+    scheduleSweep();
+  }
+
+  private void load() {
+    if (!indexFile.exists()) {
+      return;
+    }
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      if (is.readInt() != VERSION) {
+        throw new IOException("Unsupported version");
+      }
+      int length;
+      while ((length = is.readInt()) > 0) {
+        byte[] bytes = new byte[length];
+        is.readFully(bytes);
+        expirationTimes.put(new KeyBytes(bytes), is.readLong());
+      }
+    } catch (IOException | RuntimeException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Ignoring invalid expiration times", e);
+      }
+      // Entries already read are valid, keep them.
+    } finally {
+      close(is);
+    }
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  /**
+   * A {@link Key} that writes the bytes another key wrote to
+   * {@link Key#updateDiskCacheKey(MessageDigest)}, so that the wrapped cache can find that key's
+   * entry without the original key.
+   */
+  private static final class KeyBytes implements Key {
+    @Synthetic final byte[] bytes;
+    private final int hashCode;
+
+    KeyBytes(byte[] bytes) {
+      this.bytes = bytes;
+      hashCode = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public void updateDiskCacheKey(@NonNull MessageDigest messageDigest) {
+      messageDigest.update(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof KeyBytes && Arrays.equals(bytes, ((KeyBytes) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
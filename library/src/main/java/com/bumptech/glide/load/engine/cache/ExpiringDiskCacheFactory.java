@@ -0,0 +1,69 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.content.Context;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheFactory.CacheDirectoryGetter;
+import java.io.File;
+
+/**
+ * Wraps the {@link DiskCache} created by another {@link DiskCache.Factory} in an
+ * {@link ExpiringDiskCache} so that entries written with
+ * {@link ExpiringDiskCache#TIME_TO_LIVE_MILLIS} are dropped once they expire.
+ *
+ * <p>Each wrapped cache needs its own index file, so use a different file name for each factory
+ * if both {@link com.bumptech.glide.GlideBuilder#setDiskCache(DiskCache.Factory)} and
+ * {@link com.bumptech.glide.GlideBuilder#setResourceDiskCache(DiskCache.Factory)} are wrapped.
+ */
+// Public API.
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ExpiringDiskCacheFactory implements DiskCache.Factory {
+  public static final String DEFAULT_INDEX_FILE_NAME = "image_manager_disk_cache_expiration";
+
+  private final DiskCache.Factory wrapped;
+  private final CacheDirectoryGetter indexDirectoryGetter;
+  private final String indexFileName;
+
+  public ExpiringDiskCacheFactory(DiskCache.Factory wrapped, Context context) {
+    this(wrapped, context, DEFAULT_INDEX_FILE_NAME);
+  }
+
+  public ExpiringDiskCacheFactory(DiskCache.Factory wrapped, final Context context,
+      String indexFileName) {
+    this(wrapped, new CacheDirectoryGetter() {
+      @Override
+      public File getCacheDirectory() {
+        return context.getCacheDir();
+      }
+    }, indexFileName);
+  }
+
+  /**
+   * @param wrapped              The factory for the cache to expire entries from.
+   * @param indexDirectoryGetter Called on a background thread to get the directory for the file
+   *                             that holds expiration times, which must not be the directory of
+   *                             the wrapped cache.
+   * @param indexFileName        The name of the file that holds expiration times.
+   */
+  public ExpiringDiskCacheFactory(DiskCache.Factory wrapped,
+      CacheDirectoryGetter indexDirectoryGetter, String indexFileName) {
+    this.wrapped = wrapped;
+    this.indexDirectoryGetter = indexDirectoryGetter;
+    this.indexFileName = indexFileName;
+  }
+
+  @Override
+  public DiskCache build() {
+    DiskCache diskCache = wrapped.build();
+    if (diskCache == null) {
+      return null;
+    }
+    File indexDirectory = indexDirectoryGetter.getCacheDirectory();
+    if (indexDirectory == null) {
+      return diskCache;
+    }
+    if (!indexDirectory.mkdirs()
+        && (!indexDirectory.exists() || !indexDirectory.isDirectory())) {
+      return diskCache;
+    }
+    return ExpiringDiskCache.create(diskCache, new File(indexDirectory, indexFileName));
+  }
+}
@@ -0,0 +1,154 @@
+package com.bumptech.glide.load.engine.cache;
+
+/**
+ * A probabilistic, fixed size estimate of how often keys have been seen recently, used to decide
+ * whether or not a new entry is worth admitting to a cache.
+ *
+ * <p>Frequencies are stored in a count-min sketch of four bit counters, sixteen of which are packed
+ * into each {@code long}. Each key maps to one counter in each of four rows and its estimated
+ * frequency is the minimum of those counters. To avoid spending counters on keys that are only
+ * ever seen once, the first sighting of a key is recorded in a small Bloom filter (the
+ * doorkeeper) and only subsequent sightings are counted in the sketch.
+ *
+ * <p>After a number of increments proportional to the expected number of entries, all counters
+ * are halved and the doorkeeper is cleared so that keys that were popular long ago gradually
+ * lose out to keys that are popular now.
+ *
+ * <p>This class is not thread safe.
+ */
+final class FrequencySketch {
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_COUNT = 15;
+  private static final int MIN_EXPECTED_ENTRIES = 16;
+  private static final int SAMPLE_SIZE_MULTIPLIER = 10;
+  private static final int DOORKEEPER_BITS_PER_ENTRY = 8;
+  private static final long[] SEEDS = new long[] {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  private final long[] table;
+  private final int tableMask;
+  private final long[] doorkeeper;
+  private final int doorkeeperMask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * @param expectedEntries The approximate number of distinct keys the cache is expected to hold.
+   */
+  FrequencySketch(int expectedEntries) {
+    int entries = Math.max(MIN_EXPECTED_ENTRIES, expectedEntries);
+    int tableLength = ceilingPowerOfTwo(entries);
+    table = new long[tableLength];
+    tableMask = tableLength - 1;
+    int doorkeeperBits = ceilingPowerOfTwo(entries * DOORKEEPER_BITS_PER_ENTRY);
+    doorkeeper = new long[Math.max(1, doorkeeperBits / Long.SIZE)];
+    doorkeeperMask = doorkeeperBits - 1;
+    sampleSize = SAMPLE_SIZE_MULTIPLIER * entries;
+  }
+
+  /**
+   * Records a single sighting of the key with the given hash code.
+   */
+  void increment(int hashCode) {
+    int hash = spread(hashCode);
+    if (!doorkeeperContains(hash)) {
+      addToDoorkeeper(hash);
+      return;
+    }
+
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Returns the estimated number of times the key with the given hash code has been seen, up to
+   * sixteen.
+   */
+  int frequency(int hashCode) {
+    int hash = spread(hashCode);
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int count = (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return doorkeeperContains(hash) ? frequency + 1 : frequency;
+  }
+
+  /**
+   * Forgets every recorded key.
+   */
+  void clear() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = 0;
+    }
+    clearDoorkeeper();
+    additions = 0;
+  }
+
+  private boolean incrementAt(int index, int offset) {
+    long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    clearDoorkeeper();
+    additions /= 2;
+  }
+
+  private boolean doorkeeperContains(int hash) {
+    int first = hash & doorkeeperMask;
+    int second = (hash >>> 16 | hash << 16) & doorkeeperMask;
+    return isSet(first) && isSet(second);
+  }
+
+  private void addToDoorkeeper(int hash) {
+    int first = hash & doorkeeperMask;
+    int second = (hash >>> 16 | hash << 16) & doorkeeperMask;
+    doorkeeper[first >>> 6] |= 1L << first;
+    doorkeeper[second >>> 6] |= 1L << second;
+  }
+
+  private boolean isSet(int bit) {
+    return (doorkeeper[bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  private void clearDoorkeeper() {
+    for (int i = 0; i < doorkeeper.length; i++) {
+      doorkeeper[i] = 0;
+    }
+  }
+
+  private int indexOf(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return (int) h & tableMask;
+  }
+
+  private static int offsetOf(int hash, int row) {
+    // Each row uses a different group of four counters in a long so that rows that happen to
+    // choose the same long don't share counters.
+    return ((hash >>> (row << 3)) & 3) << 4 | row << 2;
+  }
+
+  private static int spread(int hashCode) {
+    int h = hashCode * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  private static int ceilingPowerOfTwo(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+}
@@ -0,0 +1,249 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.annotation.SuppressLint;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.LoadCost;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.util.Synthetic;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An in memory cache for {@link com.bumptech.glide.load.engine.Resource}s that evicts using the
+ * GreedyDual-Size policy, which weighs how recently a resource was put against how expensive it
+ * would be to load again per byte of memory it uses.
+ *
+ * <p>Each resource is given a priority of {@code L + cost / size} when it's put, where {@code L}
+ * is the priority of the most recently evicted resource. The resource with the lowest priority is
+ * always evicted first. Since {@code L} only grows, resources that aren't put again gradually lose
+ * out to newer resources, no matter how expensive they were to load. Resources with equal costs
+ * and sizes are evicted in least recently put order, just like {@link LruResourceCache}.
+ *
+ * <p>The cost of a resource is the time it took to fetch and decode if the resource implements
+ * {@link LoadCost}, which the resources Glide puts in the memory cache do, and
+ * {@link #DEFAULT_COST_MILLIS} otherwise. The time is weighted by the {@link DataSource} the
+ * resource was loaded from, since loading a resource from a remote source again also uses the
+ * network and may fail, while a resource in the disk cache can be loaded again locally.
+ * Subclasses can override {@link #getCost(Resource)} to take other factors into account.
+ */
+public class GreedyDualSizeResourceCache implements PeekableMemoryCache {
+  /** The cost used for resources that don't know how long they took to load. */
+  public static final long DEFAULT_COST_MILLIS = 1;
+  private static final int REMOTE_COST_WEIGHT = 4;
+  private static final int DATA_DISK_CACHE_COST_WEIGHT = 2;
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+  private final TreeSet<Entry> evictionOrder = new TreeSet<>(new PriorityComparator());
+  private final long initialMaxSize;
+  private long maxSize;
+  private long currentSize;
+  private double inflation;
+  private long sequence;
+  private ResourceRemovedListener listener;
+
+  /**
+   * Constructor for GreedyDualSizeResourceCache.
+   *
+   * @param size The maximum size in bytes the in memory cache can use.
+   */
+  public GreedyDualSizeResourceCache(long size) {
+    this.initialMaxSize = size;
+    this.maxSize = size;
+  }
+
+  @Override
+  public synchronized long getCurrentSize() {
+    return currentSize;
+  }
+
+  @Override
+  public synchronized long getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public synchronized void setSizeMultiplier(float multiplier) {
+    if (multiplier < 0) {
+      throw new IllegalArgumentException("Multiplier must be >= 0");
+    }
+    maxSize = Math.round(initialMaxSize * multiplier);
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Returns true if there is a value for the given key in the cache.
+   *
+   * @param key The key to check.
+   */
+  public synchronized boolean contains(@NonNull Key key) {
+    return entries.containsKey(key);
+  }
+
+  @Nullable
+  @Override
+  public synchronized Resource<?> remove(@NonNull Key key) {
+    Entry removed = removeEntry(key);
+    return removed != null ? removed.resource : null;
+  }
+
+  @Nullable
+  @Override
+  public synchronized Resource<?> peek(@NonNull Key key) {
+    Entry entry = entries.get(key);
+    return entry != null ? entry.resource : null;
+  }
+
+  @Nullable
+  @Override
+  public synchronized Resource<?> put(@NonNull Key key, @Nullable Resource<?> resource) {
+    if (resource == null) {
+      Resource<?> old = remove(key);
+      onItemEvicted(old);
+      return old;
+    }
+
+    int size = resource.getSize();
+    if (size >= maxSize) {
+      onItemEvicted(resource);
+      return null;
+    }
+
+    Entry old = removeEntry(key);
+    if (old != null && !old.resource.equals(resource)) {
+      onItemEvicted(old.resource);
+    }
+
+    double priority = inflation + (double) Math.max(1, getCost(resource)) / Math.max(1, size);
+    Entry entry = new Entry(key, resource, size, priority, sequence++);
+    entries.put(key, entry);
+    evictionOrder.add(entry);
+    currentSize += size;
+    trimToSize(maxSize);
+
+    return old != null ? old.resource : null;
+  }
+
+  @Override
+  public synchronized void setResourceRemovedListener(@NonNull ResourceRemovedListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void clearMemory() {
+    trimToSize(0);
+  }
+
+  @SuppressLint("InlinedApi")
+  @Override
+  public void trimMemory(int level) {
+    if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      // Nearing middle of list of cached background apps
+      // Evict our entire bitmap cache
+      clearMemory();
+    } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      // Entering list of cached background apps
+      // Evict the cheapest half of our bitmap cache
+      trimToSize(getMaxSize() / 2);
+    }
+  }
+
+  /**
+   * Returns the cost of loading the given resource again, in milliseconds.
+   *
+   * @param resource The resource being put into the cache.
+   */
+  protected long getCost(@NonNull Resource<?> resource) {
+    if (resource instanceof LoadCost) {
+      LoadCost loadCost = (LoadCost) resource;
+      long loadTimeMillis = loadCost.getLoadTimeMillis();
+      if (loadTimeMillis > 0) {
+        return loadTimeMillis * getWeight(loadCost.getLoadDataSource());
+      }
+    }
+    return DEFAULT_COST_MILLIS;
+  }
+
+  private static int getWeight(@Nullable DataSource dataSource) {
+    if (dataSource == null) {
+      return 1;
+    }
+    switch (dataSource) {
+      case REMOTE:
+        return REMOTE_COST_WEIGHT;
+      case DATA_DISK_CACHE:
+        // The original data is cached, but the resource still has to be decoded again and the
+        // data may be evicted from the disk cache first.
+        return DATA_DISK_CACHE_COST_WEIGHT;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Removes the lowest priority items from the cache until the current size is less than or equal
+   * to the given size.
+   *
+   * @param size The size the cache should be less than.
+   */
+  protected synchronized void trimToSize(long size) {
+    while (currentSize > size) {
+      Entry evicted = evictionOrder.first();
+      removeEntry(evicted.key);
+      inflation = evicted.priority;
+      onItemEvicted(evicted.resource);
+    }
+  }
+
+  @Nullable
+  private Entry removeEntry(Key key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      evictionOrder.remove(removed);
+      currentSize -= removed.size;
+    }
+    return removed;
+  }
+
+  private void onItemEvicted(@Nullable Resource<?> item) {
+    if (listener != null && item != null) {
+      listener.onResourceRemoved(item);
+    }
+  }
+
+  private static final class Entry {
+    @Synthetic final Key key;
+    @Synthetic final Resource<?> resource;
+    @Synthetic final int size;
+    @Synthetic final double priority;
+    @Synthetic final long sequence;
+
+    Entry(Key key, Resource<?> resource, int size, double priority, long sequence) {
+      this.key = key;
+      this.resource = resource;
+      this.size = size;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+  }
+
+  private static final class PriorityComparator implements Comparator<Entry> {
+
+    @Synthetic
+    PriorityComparator() { }
+
+    @Override
+    public int compare(Entry lhs, Entry rhs) {
+      int result = Double.compare(lhs.priority, rhs.priority);
+      if (result != 0) {
+        return result;
+      }
+      // Long.compare isn't available until API 19.
+      return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+    }
+  }
+}
@@ -22,6 +22,22 @@ public final class InternalCacheDiskCacheFactory extends DiskLruCacheFactory {
 
   public InternalCacheDiskCacheFactory(final Context context, final String diskCacheName,
                                        long diskCacheSize) {
+    this(context, diskCacheName, diskCacheSize, 1);
+  }
+
+  /**
+   * @see DiskLruCacheFactory#DiskLruCacheFactory(CacheDirectoryGetter, long, int)
+   */
+  public InternalCacheDiskCacheFactory(final Context context, final String diskCacheName,
+      long diskCacheSize, int shardCount) {
+    this(context, diskCacheName, diskCacheSize, shardCount, KeyHasher.SHA_256);
+  }
+
+  /**
+   * @see DiskLruCacheFactory#DiskLruCacheFactory(CacheDirectoryGetter, long, int, KeyHasher)
+   */
+  public InternalCacheDiskCacheFactory(final Context context, final String diskCacheName,
+      long diskCacheSize, int shardCount, KeyHasher keyHasher) {
     super(new CacheDirectoryGetter() {
       @Override
       public File getCacheDirectory() {
@@ -34,6 +50,6 @@ public final class InternalCacheDiskCacheFactory extends DiskLruCacheFactory {
         }
         return cacheDirectory;
       }
-    }, diskCacheSize);
+    }, diskCacheSize, shardCount, keyHasher);
   }
 }
@@ -0,0 +1,103 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.util.Util;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Set of available hash functions used by {@link SafeKeyGenerator} to turn
+ * {@link com.bumptech.glide.load.Key}s into file names for the disk cache.
+ *
+ * <p>Changing the hash function used for an existing cache directory doesn't remove the entries
+ * that were written with the previous function, but they will no longer be found and will be
+ * evicted once the cache is full.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public abstract class KeyHasher {
+
+  /**
+   * Hashes keys with SHA-256 and hex encodes the result into a 64 character name.
+   *
+   * <p>This is the default and matches the names used by previous versions.
+   */
+  public static final KeyHasher SHA_256 = new KeyHasher() {
+    @NonNull
+    @Override
+    public MessageDigest newDigest() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @NonNull
+    @Override
+    public String toSafeKey(@NonNull byte[] digest) {
+      return Util.sha256BytesToHex(digest);
+    }
+  };
+
+  /**
+   * Hashes keys with the 128 bit variant of the non-cryptographic MurmurHash3 and base32 encodes
+   * the result into a 26 character name.
+   *
+   * <p>Substantially faster than {@link #SHA_256}. Accidental collisions are still vanishingly
+   * unlikely, but unlike with {@link #SHA_256} it's trivial to construct keys that collide
+   * deliberately, which only matters if keys are derived from untrusted input.
+   */
+  public static final KeyHasher MURMUR3_128 = new KeyHasher() {
+    @NonNull
+    @Override
+    public MessageDigest newDigest() {
+      return new Murmur3MessageDigest();
+    }
+
+    @NonNull
+    @Override
+    public String toSafeKey(@NonNull byte[] digest) {
+      return toBase32(digest);
+    }
+  };
+
+  private static final char[] BASE_32_CHARS = "abcdefghijklmnopqrstuvwxyz234567".toCharArray();
+
+  /**
+   * Returns a new {@link MessageDigest} for this hash function. Digests are pooled and reused by
+   * {@link SafeKeyGenerator}.
+   */
+  @NonNull
+  public abstract MessageDigest newDigest();
+
+  /**
+   * Returns a name containing only characters that are valid in file names and in
+   * {@link com.bumptech.glide.disklrucache.DiskLruCache} keys for the given digest.
+   */
+  @NonNull
+  public abstract String toSafeKey(@NonNull byte[] digest);
+
+  /**
+   * Returns the lower case, unpadded RFC 4648 base32 encoding of the given bytes.
+   */
+  @NonNull
+  static String toBase32(@NonNull byte[] bytes) {
+    char[] result = new char[(bytes.length * 8 + 4) / 5];
+    int buffer = 0;
+    int bits = 0;
+    int index = 0;
+    for (byte b : bytes) {
+      buffer = (buffer << 8) | (b & 0xFF);
+      bits += 8;
+      while (bits >= 5) {
+        bits -= 5;
+        result[index++] = BASE_32_CHARS[(buffer >>> bits) & 0x1F];
+      }
+    }
+    if (bits > 0) {
+      result[index] = BASE_32_CHARS[(buffer << (5 - bits)) & 0x1F];
+    }
+    return new String(result);
+  }
+}
@@ -10,8 +10,10 @@ import com.bumptech.glide.util.LruCache;
 /**
  * An LRU in memory cache for {@link com.bumptech.glide.load.engine.Resource}s.
  */
-public class LruResourceCache extends LruCache<Key, Resource<?>> implements MemoryCache {
+public class LruResourceCache extends LruCache<Key, Resource<?>> implements PeekableMemoryCache {
   private ResourceRemovedListener listener;
+  private long hitCount;
+  private long missCount;
 
   /**
    * Constructor for LruResourceCache.
@@ -22,6 +24,55 @@ public class LruResourceCache extends LruCache<Key, Resource<?>> implements Memo
     super(size);
   }
 
+  @Nullable
+  @Override
+  public synchronized Resource<?> remove(@NonNull Key key) {
+    Resource<?> removed = super.remove(key);
+    if (removed != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return removed;
+  }
+
+  @Nullable
+  @Override
+  public Resource<?> peek(@NonNull Key key) {
+    return get(key);
+  }
+
+  /**
+   * Returns the number of calls to {@link #remove(Key)} that returned a resource.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of calls to {@link #remove(Key)} that did not return a resource.
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the fraction of calls to {@link #remove(Key)} that returned a resource, or {@code 0}
+   * if the cache has never been queried.
+   */
+  public synchronized double getHitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+  }
+
+  /**
+   * Resets the hit and miss counts.
+   */
+  public synchronized void resetStats() {
+    hitCount = 0;
+    missCount = 0;
+  }
+
   @Override
   public void setResourceRemovedListener(@NonNull ResourceRemovedListener listener) {
     this.listener = listener;
@@ -0,0 +1,53 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the single low priority background thread that disk caches and their policies use for
+ * maintenance, like compacting or saving their files, that shouldn't block reads and writes.
+ */
+final class MaintenanceExecutor {
+  private static final long KEEP_ALIVE_SECONDS = 10;
+
+  // Guarded by the class lock.
+  private static Executor shared;
+
+  private MaintenanceExecutor() {
+    // Utility class.
+  }
+
+  static synchronized Executor get() {
+    if (shared == null) {
+      shared = newExecutor();
+    }
+    return shared;
+  }
+
+  private static Executor newExecutor() {
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, "glide-disk-cache-maintenance") {
+          @Override
+          public void run() {
+            android.os.Process.setThreadPriority(
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            super.run();
+          }
+        };
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    ThreadPoolExecutor result = new ThreadPoolExecutor(/*corePoolSize=*/ 1, /*maximumPoolSize=*/ 1,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+    // Maintenance is rare, so the thread isn't kept around between batches.
+    result.allowCoreThreadTimeOut(true);
+    return result;
+  }
+}
@@ -0,0 +1,625 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.util.Synthetic;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DiskCache} that keeps its index in a compact, fixed size binary file that's memory
+ * mapped, rather than in a text journal like {@link DiskLruCacheWrapper}.
+ *
+ * <p>The index is an open addressing hash table of fixed size records, each of which holds the
+ * SHA-256 digest of a key, the size of its file, the time the entry was last accessed and the slot
+ * that names its file. Opening the cache only maps the index and validates its header, so the
+ * cost of the first access after launch doesn't grow with the number of entries. Lookups probe
+ * the mapped table directly and reads update the access time of an entry in place instead of
+ * appending to a journal.
+ *
+ * <p>Evicting least recently used entries requires scanning the index, so it's done in batches on
+ * a background thread once the cache is over its size, along with removing deleted records from
+ * the table and, after an unclean shutdown, recounting sizes and deleting orphaned files.
+ *
+ * <p>There must be no more than one active instance for a given directory at a time, so
+ * {@link #create(File, long)} returns the existing instance for a directory if there is one. The
+ * directory must not be used for anything else. All instances share a single background thread.
+ */
+public final class MappedIndexDiskCache implements DiskCache {
+  private static final String TAG = "MappedIndexDiskCache";
+  @VisibleForTesting
+  static final String INDEX_FILE_NAME = "index";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int MAGIC = 0x474c4458;
+  private static final int VERSION = 1;
+  // Header layout.
+  private static final int HEADER_SIZE = 64;
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_VERSION = 4;
+  private static final int HEADER_CAPACITY = 8;
+  private static final int HEADER_COUNT = 12;
+  private static final int HEADER_TOMBSTONES = 16;
+  private static final int HEADER_NEXT_SLOT = 20;
+  private static final int HEADER_SIZE_BYTES = 24;
+  private static final int HEADER_CLOCK = 32;
+  private static final int HEADER_DIRTY = 40;
+  // Record layout.
+  private static final int DIGEST_SIZE = 32;
+  private static final int RECORD_SIZE = 48;
+  private static final int RECORD_SLOT = 32;
+  private static final int RECORD_SIZE_BYTES = 36;
+  private static final int RECORD_ACCESS_STAMP = 40;
+  private static final int EMPTY = 0;
+  private static final int TOMBSTONE = -1;
+
+  // Used to size the index, caches with larger entries will use less of it.
+  private static final int ASSUMED_AVERAGE_ENTRY_SIZE = 16 * 1024;
+  private static final int MIN_CAPACITY = 256;
+  private static final int MAX_CAPACITY = 1 << 20;
+
+  // Guarded by the class lock.
+  private static final Map<File, MappedIndexDiskCache> INSTANCES = new HashMap<>();
+
+  private static final Comparator<long[]> BY_ACCESS_STAMP = new Comparator<long[]>() {
+    @Override
+    public int compare(long[] lhs, long[] rhs) {
+      return lhs[0] < rhs[0] ? -1 : (lhs[0] == rhs[0] ? 0 : 1);
+    }
+  };
+
+  private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+  private final DiskCacheWriteLocker writeLocker = new DiskCacheWriteLocker();
+  // Slots of files that are being written and so must not be treated as orphans.
+  private final Set<Integer> inProgressSlots = new HashSet<>();
+  private final File directory;
+  private final long maxSize;
+  private final Executor compactionExecutor;
+  private final Runnable compactionRunnable = new Runnable() {
+    @Override
+    public void run() {
+      compact();
+    }
+  };
+
+  private MappedByteBuffer index;
+  private int capacity;
+  private boolean isCompactionScheduled;
+  private boolean isOrphanSweepRequired;
+
+  /**
+   * Returns the cache in the given directory with the given maximum size in bytes, creating it if
+   * it hasn't already been created.
+   *
+   * @throws IllegalArgumentException If the cache in the given directory was already created with
+   *                                  a different maximum size.
+   */
+  public static synchronized DiskCache create(@NonNull File directory, long maxSize) {
+    File key = directory.getAbsoluteFile();
+    MappedIndexDiskCache result = INSTANCES.get(key);
+    if (result == null) {
+      result = new MappedIndexDiskCache(key, maxSize, MaintenanceExecutor.get());
+      INSTANCES.put(key, result);
+    } else if (result.maxSize != maxSize) {
+      throw new IllegalArgumentException("The disk cache in " + directory + " was already created"
+          + " with a maximum size of " + result.maxSize + ", not " + maxSize);
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  MappedIndexDiskCache(File directory, long maxSize, Executor compactionExecutor) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.compactionExecutor = compactionExecutor;
+  }
+
+  @Nullable
+  @Override
+  public File get(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Get: Obtained: " + safeKey + " for for Key: " + key);
+    }
+    byte[] digest = toDigest(safeKey);
+    File result;
+    synchronized (this) {
+      if (!ensureOpen()) {
+        return null;
+      }
+      int record = find(digest);
+      if (record == -1) {
+        return null;
+      }
+      result = getFile(index.getInt(offset(record) + RECORD_SLOT));
+      if (!result.exists()) {
+        // Deleted by someone other than us, for example when the system clears the cache dir.
+        removeRecord(record);
+        return null;
+      }
+      index.putLong(offset(record) + RECORD_ACCESS_STAMP, nextAccessStamp());
+    }
+    return result;
+  }
+
+  @Override
+  public void put(Key key, Writer writer) {
+    // Like DiskLruCacheWrapper, puts for the same key block so that data is available when put
+    // completes and is only written once.
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    byte[] digest = toDigest(safeKey);
+    writeLocker.acquire(safeKey);
+    try {
+      if (Log.isLoggable(TAG, Log.VERBOSE)) {
+        Log.v(TAG, "Put: Obtained: " + safeKey + " for for Key: " + key);
+      }
+      int slot;
+      synchronized (this) {
+        if (!ensureOpen() || find(digest) != -1) {
+          return;
+        }
+        slot = allocateSlot();
+      }
+
+      File temp = new File(directory, slot + TEMP_FILE_SUFFIX);
+      File file = getFile(slot);
+      boolean isCommitted = false;
+      try {
+        if (writer.write(temp) && temp.exists()) {
+          if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename " + temp + " to " + file);
+          }
+          synchronized (this) {
+            if (ensureOpen()) {
+              insert(digest, slot, file.length());
+              isCommitted = true;
+            }
+          }
+        }
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Unable to put to disk cache", e);
+        }
+      } finally {
+        synchronized (this) {
+          inProgressSlots.remove(slot);
+        }
+        if (!isCommitted) {
+          deleteIfExists(temp);
+          deleteIfExists(file);
+        }
+      }
+    } finally {
+      writeLocker.release(safeKey);
+    }
+  }
+
+  @Override
+  public void delete(Key key) {
+    byte[] digest = toDigest(safeKeyGenerator.getSafeKey(key));
+    int slot;
+    synchronized (this) {
+      if (!ensureOpen()) {
+        return;
+      }
+      int record = find(digest);
+      if (record == -1) {
+        return;
+      }
+      slot = index.getInt(offset(record) + RECORD_SLOT);
+      removeRecord(record);
+    }
+    deleteIfExists(getFile(slot));
+  }
+
+  @Override
+  public synchronized void clear() {
+    if (index != null && !directory.exists()) {
+      // Deleted outside of Glide, re-create the index in a new directory on the next access.
+      index = null;
+    }
+    if (index != null) {
+      setDirty(true);
+      for (int i = HEADER_SIZE, limit = index.capacity(); i < limit; i += 8) {
+        index.putLong(i, 0);
+      }
+      index.putInt(HEADER_COUNT, 0);
+      index.putInt(HEADER_TOMBSTONES, 0);
+      index.putLong(HEADER_SIZE_BYTES, 0);
+      setDirty(false);
+    }
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!INDEX_FILE_NAME.equals(file.getName()) && !isInProgress(file)) {
+          deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getCurrentSize() {
+    return ensureOpen() ? index.getLong(HEADER_SIZE_BYTES) : 0;
+  }
+
+  @VisibleForTesting
+  synchronized int getEntryCount() {
+    return ensureOpen() ? index.getInt(HEADER_COUNT) : 0;
+  }
+
+  /**
+   * Maps the index if it isn't already and returns {@code true}, or returns {@code false} if the
+   * index can't be opened, in which case the cache behaves as if it were empty.
+   */
+  private boolean ensureOpen() {
+    if (index != null) {
+      return true;
+    }
+    try {
+      open();
+      return true;
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Unable to open disk cache", e);
+      }
+      return false;
+    }
+  }
+
+  private void open() throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Failed to create directory: " + directory);
+    }
+    File indexFile = new File(directory, INDEX_FILE_NAME);
+    RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+    try {
+      boolean isValid = file.length() >= HEADER_SIZE
+          && file.readInt() == MAGIC
+          && file.readInt() == VERSION;
+      int existingCapacity = isValid ? file.readInt() : 0;
+      isValid = isValid
+          && Integer.bitCount(existingCapacity) == 1
+          && file.length() == getIndexSize(existingCapacity);
+
+      if (isValid) {
+        capacity = existingCapacity;
+      } else {
+        // Entries without an index can't be found, so any existing files are garbage.
+        clearDirectory();
+        capacity = getCapacity(maxSize);
+        file.setLength(0);
+        file.setLength(getIndexSize(capacity));
+      }
+      index = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, getIndexSize(capacity));
+    } finally {
+      // The mapping remains valid after the file is closed.
+      file.close();
+    }
+
+    if (index.getInt(HEADER_MAGIC) != MAGIC) {
+      index.putInt(HEADER_MAGIC, MAGIC);
+      index.putInt(HEADER_VERSION, VERSION);
+      index.putInt(HEADER_CAPACITY, capacity);
+      index.putInt(HEADER_NEXT_SLOT, 1);
+    } else if (index.getInt(HEADER_DIRTY) != 0) {
+      // We were killed while updating the index, so the totals may be wrong and files may have
+      // been written or deleted without being recorded.
+      isOrphanSweepRequired = true;
+      scheduleCompaction();
+    }
+  }
+
+  private void clearDirectory() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!INDEX_FILE_NAME.equals(file.getName())) {
+          deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  private int find(byte[] digest) {
+    int mask = capacity - 1;
+    int record = hash(digest) & mask;
+    for (int i = 0; i < capacity; i++, record = (record + 1) & mask) {
+      int slot = index.getInt(offset(record) + RECORD_SLOT);
+      if (slot == EMPTY) {
+        return -1;
+      } else if (slot != TOMBSTONE && digestEquals(record, digest)) {
+        return record;
+      }
+    }
+    return -1;
+  }
+
+  private void insert(byte[] digest, int slot, long size) {
+    // Leave enough free records that probe sequences stay short.
+    if (getUsedRecords() >= capacity - capacity / 8) {
+      // Only happens if puts outpace background compaction, so it's fine to delete here.
+      List<File> evicted = compactIndex(/*isOrphanSweepRequired=*/ false);
+      for (int i = 0, count = evicted.size(); i < count; i++) {
+        deleteIfExists(evicted.get(i));
+      }
+    }
+    int mask = capacity - 1;
+    int record = hash(digest) & mask;
+    while (true) {
+      int current = index.getInt(offset(record) + RECORD_SLOT);
+      if (current == EMPTY || current == TOMBSTONE) {
+        break;
+      }
+      record = (record + 1) & mask;
+    }
+
+    setDirty(true);
+    int offset = offset(record);
+    if (index.getInt(offset + RECORD_SLOT) == TOMBSTONE) {
+      index.putInt(HEADER_TOMBSTONES, index.getInt(HEADER_TOMBSTONES) - 1);
+    }
+    for (int i = 0; i < DIGEST_SIZE; i++) {
+      index.put(offset + i, digest[i]);
+    }
+    index.putInt(offset + RECORD_SIZE_BYTES, (int) Math.min(size, Integer.MAX_VALUE));
+    index.putLong(offset + RECORD_ACCESS_STAMP, nextAccessStamp());
+    // Written last so that a record is only valid once the rest of it has been written.
+    index.putInt(offset + RECORD_SLOT, slot);
+    index.putInt(HEADER_COUNT, index.getInt(HEADER_COUNT) + 1);
+    index.putLong(HEADER_SIZE_BYTES, index.getLong(HEADER_SIZE_BYTES) + size);
+    setDirty(false);
+
+    if (index.getLong(HEADER_SIZE_BYTES) > maxSize
+        || index.getInt(HEADER_COUNT) > getMaxCount()
+        || index.getInt(HEADER_TOMBSTONES) > capacity / 8) {
+      scheduleCompaction();
+    }
+  }
+
+  private void removeRecord(int record) {
+    setDirty(true);
+    int offset = offset(record);
+    index.putInt(offset + RECORD_SLOT, TOMBSTONE);
+    index.putInt(HEADER_COUNT, index.getInt(HEADER_COUNT) - 1);
+    index.putInt(HEADER_TOMBSTONES, index.getInt(HEADER_TOMBSTONES) + 1);
+    index.putLong(HEADER_SIZE_BYTES,
+        index.getLong(HEADER_SIZE_BYTES) - index.getInt(offset + RECORD_SIZE_BYTES));
+    setDirty(false);
+  }
+
+  private int allocateSlot() {
+    int slot = index.getInt(HEADER_NEXT_SLOT);
+    int next = slot == Integer.MAX_VALUE ? 1 : slot + 1;
+    index.putInt(HEADER_NEXT_SLOT, next);
+    inProgressSlots.add(slot);
+    return slot;
+  }
+
+  private long nextAccessStamp() {
+    long stamp = index.getLong(HEADER_CLOCK) + 1;
+    index.putLong(HEADER_CLOCK, stamp);
+    return stamp;
+  }
+
+  private void setDirty(boolean isDirty) {
+    index.putInt(HEADER_DIRTY, isDirty ? 1 : 0);
+  }
+
+  private synchronized void scheduleCompaction() {
+    if (!isCompactionScheduled) {
+      isCompactionScheduled = true;
+      compactionExecutor.execute(compactionRunnable);
+    }
+  }
+
+  @Synthetic
+  void compact() {
+    List<File> toDelete;
+    synchronized (this) {
+      isCompactionScheduled = false;
+      if (!ensureOpen()) {
+        return;
+      }
+      toDelete = compactIndex(isOrphanSweepRequired);
+      isOrphanSweepRequired = false;
+    }
+    for (int i = 0, size = toDelete.size(); i < size; i++) {
+      deleteIfExists(toDelete.get(i));
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries until the cache is comfortably under its size and
+   * count limits, rebuilds the table without deleted records and returns the files that should be
+   * deleted.
+   */
+  @VisibleForTesting
+  synchronized List<File> compactIndex(boolean isOrphanSweepRequired) {
+    long startTime = System.currentTimeMillis();
+    // Each entry is {access stamp, record, slot, size}.
+    List<long[]> entries = new ArrayList<>(index.getInt(HEADER_COUNT));
+    long currentSize = 0;
+    for (int record = 0; record < capacity; record++) {
+      int offset = offset(record);
+      int slot = index.getInt(offset + RECORD_SLOT);
+      if (slot != EMPTY && slot != TOMBSTONE) {
+        int size = index.getInt(offset + RECORD_SIZE_BYTES);
+        entries.add(new long[] {index.getLong(offset + RECORD_ACCESS_STAMP), record, slot, size});
+        currentSize += size;
+      }
+    }
+
+    List<File> toDelete = new ArrayList<>();
+    // Evict to below the limits so that evictions happen in batches rather than on every put.
+    long targetSize = maxSize - maxSize / 8;
+    int targetCount = getMaxCount() - getMaxCount() / 8;
+    if (currentSize > maxSize || entries.size() > getMaxCount()) {
+      Collections.sort(entries, BY_ACCESS_STAMP);
+      int evicted = 0;
+      while (evicted < entries.size()
+          && (currentSize > targetSize || entries.size() - evicted > targetCount)) {
+        long[] entry = entries.get(evicted++);
+        currentSize -= entry[3];
+        toDelete.add(getFile((int) entry[2]));
+      }
+      entries = entries.subList(evicted, entries.size());
+    }
+
+    setDirty(true);
+    rebuild(entries);
+    index.putInt(HEADER_COUNT, entries.size());
+    index.putInt(HEADER_TOMBSTONES, 0);
+    index.putLong(HEADER_SIZE_BYTES, currentSize);
+    setDirty(false);
+
+    if (isOrphanSweepRequired) {
+      addOrphanedFiles(entries, toDelete);
+    }
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      Log.d(TAG, "Compacted index to " + entries.size() + " entries, " + currentSize
+          + " bytes, deleting " + toDelete.size() + " files in "
+          + (System.currentTimeMillis() - startTime) + "ms");
+    }
+    return toDelete;
+  }
+
+  /**
+   * Re-inserts the given entries into an otherwise empty table so that probe sequences no longer
+   * pass over deleted or evicted records.
+   */
+  private void rebuild(List<long[]> entries) {
+    byte[][] digests = new byte[entries.size()][];
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      int offset = offset((int) entries.get(i)[1]);
+      byte[] digest = new byte[DIGEST_SIZE];
+      for (int j = 0; j < DIGEST_SIZE; j++) {
+        digest[j] = index.get(offset + j);
+      }
+      digests[i] = digest;
+    }
+    for (int i = HEADER_SIZE, limit = index.capacity(); i < limit; i += 8) {
+      index.putLong(i, 0);
+    }
+    int mask = capacity - 1;
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      long[] entry = entries.get(i);
+      byte[] digest = digests[i];
+      int record = hash(digest) & mask;
+      while (index.getInt(offset(record) + RECORD_SLOT) != EMPTY) {
+        record = (record + 1) & mask;
+      }
+      int offset = offset(record);
+      for (int j = 0; j < DIGEST_SIZE; j++) {
+        index.put(offset + j, digest[j]);
+      }
+      index.putInt(offset + RECORD_SIZE_BYTES, (int) entry[3]);
+      index.putLong(offset + RECORD_ACCESS_STAMP, entry[0]);
+      index.putInt(offset + RECORD_SLOT, (int) entry[2]);
+    }
+  }
+
+  private void addOrphanedFiles(List<long[]> entries, List<File> toDelete) {
+    Set<String> liveNames = new HashSet<>(entries.size());
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      liveNames.add(Long.toString(entries.get(i)[2]));
+    }
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!INDEX_FILE_NAME.equals(name) && !liveNames.contains(name) && !isInProgress(file)) {
+        toDelete.add(file);
+      }
+    }
+  }
+
+  private boolean isInProgress(File file) {
+    String name = file.getName();
+    if (name.endsWith(TEMP_FILE_SUFFIX)) {
+      name = name.substring(0, name.length() - TEMP_FILE_SUFFIX.length());
+    }
+    try {
+      return inProgressSlots.contains(Integer.parseInt(name));
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private boolean digestEquals(int record, byte[] digest) {
+    int offset = offset(record);
+    for (int i = 0; i < DIGEST_SIZE; i++) {
+      if (index.get(offset + i) != digest[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int getUsedRecords() {
+    return index.getInt(HEADER_COUNT) + index.getInt(HEADER_TOMBSTONES);
+  }
+
+  private int getMaxCount() {
+    // Keep the table at most half full so that lookups for missing keys stay cheap.
+    return capacity / 2;
+  }
+
+  private File getFile(int slot) {
+    return new File(directory, Integer.toString(slot));
+  }
+
+  private static int offset(int record) {
+    return HEADER_SIZE + record * RECORD_SIZE;
+  }
+
+  private static long getIndexSize(int capacity) {
+    return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+  }
+
+  @VisibleForTesting
+  static int getCapacity(long maxSize) {
+    long entries = Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY,
+        2 * maxSize / ASSUMED_AVERAGE_ENTRY_SIZE));
+    int capacity = Integer.highestOneBit((int) entries);
+    return capacity < entries ? capacity << 1 : capacity;
+  }
+
+  private static int hash(byte[] digest) {
+    // The digest is already uniformly distributed.
+    return (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8
+        | (digest[3] & 0xff);
+  }
+
+  private static byte[] toDigest(String safeKey) {
+    byte[] result = new byte[DIGEST_SIZE];
+    for (int i = 0; i < DIGEST_SIZE; i++) {
+      result[i] = (byte) (Character.digit(safeKey.charAt(2 * i), 16) << 4
+          | Character.digit(safeKey.charAt(2 * i + 1), 16));
+    }
+    return result;
+  }
+
+  private static void deleteIfExists(File file) {
+    if (!file.delete() && file.exists() && Log.isLoggable(TAG, Log.WARN)) {
+      Log.w(TAG, "Failed to delete: " + file);
+    }
+  }
+}
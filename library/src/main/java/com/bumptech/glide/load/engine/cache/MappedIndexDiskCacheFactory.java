@@ -0,0 +1,67 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.content.Context;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheFactory.CacheDirectoryGetter;
+import java.io.File;
+
+/**
+ * Creates a {@link MappedIndexDiskCache} in the specified disk cache directory.
+ *
+ * <p>The directory must not be shared with a {@link DiskLruCacheWrapper}, so the directory used
+ * by default is different from the one used by {@link InternalCacheDiskCacheFactory}.
+ */
+// Public API.
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class MappedIndexDiskCacheFactory implements DiskCache.Factory {
+  public static final String DEFAULT_DISK_CACHE_DIR = "image_manager_mapped_disk_cache";
+
+  private final long diskCacheSize;
+  private final CacheDirectoryGetter cacheDirectoryGetter;
+
+  public MappedIndexDiskCacheFactory(Context context) {
+    this(context, DEFAULT_DISK_CACHE_DIR, DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE);
+  }
+
+  public MappedIndexDiskCacheFactory(Context context, long diskCacheSize) {
+    this(context, DEFAULT_DISK_CACHE_DIR, diskCacheSize);
+  }
+
+  public MappedIndexDiskCacheFactory(final Context context, final String diskCacheName,
+      long diskCacheSize) {
+    this(new CacheDirectoryGetter() {
+      @Override
+      public File getCacheDirectory() {
+        File cacheDirectory = context.getCacheDir();
+        if (cacheDirectory == null) {
+          return null;
+        }
+        return new File(cacheDirectory, diskCacheName);
+      }
+    }, diskCacheSize);
+  }
+
+  /**
+   * @param cacheDirectoryGetter Called on a background thread to get the cache directory.
+   * @param diskCacheSize        Desired max bytes size for the disk cache.
+   */
+  public MappedIndexDiskCacheFactory(CacheDirectoryGetter cacheDirectoryGetter,
+      long diskCacheSize) {
+    this.cacheDirectoryGetter = cacheDirectoryGetter;
+    this.diskCacheSize = diskCacheSize;
+  }
+
+  @Override
+  public DiskCache build() {
+    File cacheDir = cacheDirectoryGetter.getCacheDirectory();
+
+    if (cacheDir == null) {
+      return null;
+    }
+
+    if (!cacheDir.mkdirs() && (!cacheDir.exists() || !cacheDir.isDirectory())) {
+      return null;
+    }
+
+    return MappedIndexDiskCache.create(cacheDir, diskCacheSize);
+  }
+}
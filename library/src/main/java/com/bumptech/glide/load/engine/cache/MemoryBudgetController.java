@@ -0,0 +1,627 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.engine.EngineStatsListener;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruArrayPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.util.Preconditions;
+import com.bumptech.glide.util.Synthetic;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically moves bytes between the {@link MemoryCache}, the
+ * {@link com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool} and the
+ * {@link com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool} based on how often each one
+ * misses, without ever exceeding the sum of the sizes they started with.
+ *
+ * <p>{@link MemorySizeCalculator} picks each size once from the screen size and the device's
+ * memory class, but the best split depends on the app. An app that shows the same few images
+ * benefits most from a large memory cache, while an app that scrolls through many differently
+ * sized images benefits more from a large {@link LruBitmapPool}. Every sample, the controller
+ * compares the miss rates since the previous sample and moves a small step of bytes from the
+ * target with the lowest miss rate to the full target with the highest miss rate.
+ *
+ * <p>To avoid oscillating, bytes are only moved if the miss rates differ by at least
+ * {@link #MISS_RATE_MARGIN} for {@link #REQUIRED_SAMPLES} samples in a row, each target keeps at
+ * least a quarter of its initial size, and targets with too few requests in a sample are never
+ * given more bytes.
+ *
+ * <p>Before Android O, the controller also watches the Java heap. If the heap is nearly full, every
+ * target is shrunk proportionally and the sizes are restored once the heap is well below the limit
+ * again. From Android O, {@link android.graphics.Bitmap} pixels are allocated in native memory that
+ * the Java heap doesn't include, so the heap's usage doesn't reflect the memory used by the caches
+ * and pools and the controller only moves bytes between them. Glide still trims them when the
+ * system is low on memory.
+ *
+ * <p>The controller sets each target's size multiplier directly, so it should not be combined with
+ * {@link com.bumptech.glide.Glide#setMemoryCategory(com.bumptech.glide.MemoryCategory)}.
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class MemoryBudgetController {
+  private static final String TAG = "MemoryBudget";
+  /** The default time between samples in milliseconds. */
+  public static final long DEFAULT_SAMPLE_INTERVAL_MS = 30 * 1000;
+  /** The minimum difference in miss rates between two targets before bytes are moved. */
+  @VisibleForTesting
+  static final float MISS_RATE_MARGIN = 0.1f;
+  /** The number of samples in a row that must agree before bytes are moved. */
+  @VisibleForTesting
+  static final int REQUIRED_SAMPLES = 3;
+  /** The minimum number of requests in a sample before a target's miss rate is trusted. */
+  @VisibleForTesting
+  static final int MIN_REQUESTS_PER_SAMPLE = 32;
+  // Each decision moves 5% of the total initial size.
+  private static final float STEP_FRACTION = 0.05f;
+  // Targets always keep at least a quarter of their initial size when giving bytes to others.
+  private static final float MIN_SIZE_FRACTION = 0.25f;
+  // A target is considered full when it uses 90% of its current size.
+  private static final float FULL_FRACTION = 0.9f;
+  // The heap usage above which every target is shrunk and below which sizes are restored.
+  private static final float HIGH_HEAP_USAGE = 0.85f;
+  private static final float LOW_HEAP_USAGE = 0.6f;
+  // Each heap decision changes the total size by 10% of the total initial size...
+  private static final float HEAP_STEP_FRACTION = 0.1f;
+  // ...but never shrinks it below half of the total initial size.
+  private static final float MIN_TOTAL_FRACTION = 0.5f;
+
+  /**
+   * The caches and pools whose sizes are controlled.
+   */
+  public enum Target {
+    MEMORY_CACHE,
+    BITMAP_POOL,
+    ARRAY_POOL,
+  }
+
+  /**
+   * The reason the sizes were changed.
+   */
+  public enum Reason {
+    /** Bytes were moved from one target to another, the total size didn't change. */
+    REBALANCE,
+    /** The heap was nearly full, so every target was shrunk. */
+    HEAP_PRESSURE,
+    /** The heap has room again, so every target was grown back towards its previous size. */
+    HEAP_RELIEF,
+  }
+
+  /**
+   * A cache or pool whose size can be controlled.
+   *
+   * <p>Counts are totals since the target was created, the controller uses the difference between
+   * samples.
+   */
+  public interface Resizable {
+    long getHitCount();
+
+    long getMissCount();
+
+    long getCurrentSize();
+
+    long getMaxSize();
+
+    /**
+     * Sets the maximum size to the target's initial size multiplied by the given multiplier, which
+     * may be larger than 1.
+     */
+    void setSizeMultiplier(float multiplier);
+  }
+
+  /**
+   * Notified each time the controller changes the sizes.
+   */
+  public interface Listener {
+    /**
+     * Called on the main thread after the new sizes were applied.
+     */
+    void onBudgetChanged(@NonNull Decision decision);
+  }
+
+  /**
+   * Monitors how much of the heap is in use.
+   */
+  @VisibleForTesting
+  interface HeapMonitor {
+    long getUsedBytes();
+
+    long getMaxBytes();
+  }
+
+  private final Map<Target, State> states = new EnumMap<>(Target.class);
+  private final long initialTotalSize;
+  @Nullable private final Listener listener;
+  @Nullable private final HeapMonitor heapMonitor;
+  private final long sampleIntervalMillis;
+  private final Runnable sampleRunnable = new Runnable() {
+    @Override
+    public void run() {
+      sample();
+      scheduleSample();
+    }
+  };
+  private Handler handler;
+  private boolean isStarted;
+  private Target pendingDonor;
+  private Target pendingReceiver;
+  private int agreeingSamples;
+
+  /**
+   * @param targets  The caches and pools to control, at least two are required.
+   * @param listener Notified each time the sizes are changed, or {@code null}.
+   */
+  public MemoryBudgetController(
+      @NonNull Map<Target, ? extends Resizable> targets, @Nullable Listener listener) {
+    this(targets, listener, getDefaultHeapMonitor(), DEFAULT_SAMPLE_INTERVAL_MS);
+  }
+
+  @VisibleForTesting
+  MemoryBudgetController(
+      @NonNull Map<Target, ? extends Resizable> targets,
+      @Nullable Listener listener,
+      @Nullable HeapMonitor heapMonitor,
+      long sampleIntervalMillis) {
+    Preconditions.checkArgument(targets.size() >= 2, "At least two targets are required");
+    long totalSize = 0;
+    for (Map.Entry<Target, ? extends Resizable> entry : targets.entrySet()) {
+      State state = new State(Preconditions.checkNotNull(entry.getValue()));
+      states.put(entry.getKey(), state);
+      totalSize += state.initialSize;
+    }
+    this.initialTotalSize = totalSize;
+    this.listener = listener;
+    this.heapMonitor = heapMonitor;
+    this.sampleIntervalMillis = sampleIntervalMillis;
+  }
+
+  /**
+   * Starts sampling every {@link #DEFAULT_SAMPLE_INTERVAL_MS} milliseconds on the main thread.
+   */
+  public synchronized void start() {
+    if (isStarted) {
+      return;
+    }
+    isStarted = true;
+    if (handler == null) {
+      handler = new Handler(Looper.getMainLooper());
+    }
+    scheduleSample();
+  }
+
+  /**
+   * Stops sampling, the current sizes are kept.
+   */
+  public synchronized void stop() {
+    isStarted = false;
+    if (handler != null) {
+      handler.removeCallbacks(sampleRunnable);
+    }
+  }
+
+  @Synthetic
+  synchronized void scheduleSample() {
+    if (isStarted) {
+      handler.postDelayed(sampleRunnable, sampleIntervalMillis);
+    }
+  }
+
+  /**
+   * Returns the size in bytes the controller currently assigns to the given target.
+   */
+  public synchronized long getSize(@NonNull Target target) {
+    return Preconditions.checkNotNull(states.get(target), "Unknown target: " + target).size;
+  }
+
+  /**
+   * Returns the sum of the sizes of all targets in bytes.
+   */
+  public synchronized long getTotalSize() {
+    long result = 0;
+    for (State state : states.values()) {
+      result += state.size;
+    }
+    return result;
+  }
+
+  /**
+   * Reads the counts of every target and the heap usage, and changes the sizes if necessary.
+   */
+  @VisibleForTesting
+  synchronized void sample() {
+    for (State state : states.values()) {
+      state.sample();
+    }
+    if (heapMonitor == null) {
+      maybeRebalance();
+      return;
+    }
+
+    long maxHeap = heapMonitor.getMaxBytes();
+    float heapUsage = maxHeap > 0 ? heapMonitor.getUsedBytes() / (float) maxHeap : 0;
+    long totalSize = getTotalSize();
+    long minTotalSize = (long) (initialTotalSize * MIN_TOTAL_FRACTION);
+    long heapStep = (long) (initialTotalSize * HEAP_STEP_FRACTION);
+    if (heapUsage >= HIGH_HEAP_USAGE && totalSize > minTotalSize) {
+      resize(Math.max(minTotalSize, totalSize - heapStep), Reason.HEAP_PRESSURE);
+    } else if (heapUsage <= LOW_HEAP_USAGE && totalSize < initialTotalSize) {
+      resize(Math.min(initialTotalSize, totalSize + heapStep), Reason.HEAP_RELIEF);
+    } else {
+      maybeRebalance();
+    }
+  }
+
+  private void resize(long newTotalSize, Reason reason) {
+    long totalSize = getTotalSize();
+    for (State state : states.values()) {
+      state.setSize(state.size * newTotalSize / totalSize);
+    }
+    // A decision based on the old sizes must be confirmed again.
+    resetPending();
+    notifyListener(reason, null, null, Math.abs(newTotalSize - totalSize));
+  }
+
+  private void maybeRebalance() {
+    Target receiver = null;
+    for (Map.Entry<Target, State> entry : states.entrySet()) {
+      State state = entry.getValue();
+      if (state.missRate >= 0 && state.isFull
+          && (receiver == null || state.missRate > states.get(receiver).missRate)) {
+        receiver = entry.getKey();
+      }
+    }
+    long step = (long) (initialTotalSize * STEP_FRACTION);
+    Target donor = null;
+    for (Map.Entry<Target, State> entry : states.entrySet()) {
+      State state = entry.getValue();
+      if (entry.getKey() != receiver && state.getAvailableBytes() > 0
+          && (donor == null || state.getDonorMissRate() < states.get(donor).getDonorMissRate())) {
+        donor = entry.getKey();
+      }
+    }
+    if (receiver == null || donor == null
+        || states.get(receiver).missRate - states.get(donor).getDonorMissRate()
+            < MISS_RATE_MARGIN) {
+      resetPending();
+      return;
+    }
+
+    if (receiver == pendingReceiver && donor == pendingDonor) {
+      agreeingSamples++;
+    } else {
+      pendingReceiver = receiver;
+      pendingDonor = donor;
+      agreeingSamples = 1;
+    }
+    if (agreeingSamples < REQUIRED_SAMPLES) {
+      return;
+    }
+
+    State donorState = states.get(donor);
+    State receiverState = states.get(receiver);
+    long bytes = Math.min(step, donorState.getAvailableBytes());
+    // Shrink first so the total size is never exceeded, even briefly.
+    donorState.setSize(donorState.size - bytes);
+    receiverState.setSize(receiverState.size + bytes);
+    resetPending();
+    notifyListener(Reason.REBALANCE, donor, receiver, bytes);
+  }
+
+  private void resetPending() {
+    pendingDonor = null;
+    pendingReceiver = null;
+    agreeingSamples = 0;
+  }
+
+  private void notifyListener(
+      Reason reason, @Nullable Target donor, @Nullable Target receiver, long bytes) {
+    Map<Target, Long> sizes = new EnumMap<>(Target.class);
+    for (Map.Entry<Target, State> entry : states.entrySet()) {
+      sizes.put(entry.getKey(), entry.getValue().size);
+    }
+    Decision decision = new Decision(reason, donor, receiver, bytes, sizes);
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      Log.d(TAG, decision.toString());
+    }
+    if (listener != null) {
+      listener.onBudgetChanged(decision);
+    }
+  }
+
+  /**
+   * Returns a {@link Resizable} for the given pool.
+   */
+  @NonNull
+  public static Resizable forBitmapPool(@NonNull final LruBitmapPool pool) {
+    Preconditions.checkNotNull(pool);
+    return new Resizable() {
+      @Override
+      public long getHitCount() {
+        return pool.getHitCount();
+      }
+
+      @Override
+      public long getMissCount() {
+        return pool.getMissCount();
+      }
+
+      @Override
+      public long getCurrentSize() {
+        return pool.getCurrentSize();
+      }
+
+      @Override
+      public long getMaxSize() {
+        return pool.getMaxSize();
+      }
+
+      @Override
+      public void setSizeMultiplier(float multiplier) {
+        pool.setSizeMultiplier(multiplier);
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link Resizable} for the given pool.
+   */
+  @NonNull
+  public static Resizable forArrayPool(@NonNull final LruArrayPool pool) {
+    Preconditions.checkNotNull(pool);
+    return new Resizable() {
+      @Override
+      public long getHitCount() {
+        return pool.getHitCount();
+      }
+
+      @Override
+      public long getMissCount() {
+        return pool.getMissCount();
+      }
+
+      @Override
+      public long getCurrentSize() {
+        return pool.getCurrentSize();
+      }
+
+      @Override
+      public long getMaxSize() {
+        return pool.getMaxSize();
+      }
+
+      @Override
+      public void setSizeMultiplier(float multiplier) {
+        pool.setSizeMultiplier(multiplier);
+      }
+    };
+  }
+
+  /**
+   * A {@link Resizable} for a {@link MemoryCache} that counts hits and misses by listening to the
+   * {@link com.bumptech.glide.load.engine.Engine}'s events and forwards every event to another
+   * {@link EngineStatsListener}, if one is given.
+   *
+   * @see com.bumptech.glide.GlideBuilder#setEngineStatsListener(EngineStatsListener)
+   */
+  public static final class MemoryCacheResizable implements Resizable, EngineStatsListener {
+    private final MemoryCache memoryCache;
+    @Nullable private final EngineStatsListener delegate;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MemoryCacheResizable(
+        @NonNull MemoryCache memoryCache, @Nullable EngineStatsListener delegate) {
+      this.memoryCache = Preconditions.checkNotNull(memoryCache);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public long getHitCount() {
+      return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+      return misses.get();
+    }
+
+    @Override
+    public long getCurrentSize() {
+      return memoryCache.getCurrentSize();
+    }
+
+    @Override
+    public long getMaxSize() {
+      return memoryCache.getMaxSize();
+    }
+
+    @Override
+    public void setSizeMultiplier(float multiplier) {
+      memoryCache.setSizeMultiplier(multiplier);
+    }
+
+    @Override
+    public void onTierHit(@NonNull Tier tier, long bytes) {
+      if (tier == Tier.MEMORY_CACHE) {
+        hits.incrementAndGet();
+      }
+      if (delegate != null) {
+        delegate.onTierHit(tier, bytes);
+      }
+    }
+
+    @Override
+    public void onTierMiss(@NonNull Tier tier) {
+      if (tier == Tier.MEMORY_CACHE) {
+        misses.incrementAndGet();
+      }
+      if (delegate != null) {
+        delegate.onTierMiss(tier);
+      }
+    }
+
+    @Override
+    public void onPhaseCompleted(@NonNull Phase phase, double elapsedMillis) {
+      if (delegate != null) {
+        delegate.onPhaseCompleted(phase, elapsedMillis);
+      }
+    }
+
+    @Override
+    public void onDiskCacheWrite(@NonNull Tier tier, long bytes) {
+      if (delegate != null) {
+        delegate.onDiskCacheWrite(tier, bytes);
+      }
+    }
+
+    @Override
+    public void onDiskCacheWriteSkipped(@NonNull Tier tier) {
+      if (delegate != null) {
+        delegate.onDiskCacheWriteSkipped(tier);
+      }
+    }
+  }
+
+  /**
+   * A change to the sizes made by the controller.
+   */
+  public static final class Decision {
+    private final Reason reason;
+    @Nullable private final Target donor;
+    @Nullable private final Target receiver;
+    private final long bytes;
+    private final Map<Target, Long> sizes;
+
+    @Synthetic
+    Decision(Reason reason, @Nullable Target donor, @Nullable Target receiver, long bytes,
+        Map<Target, Long> sizes) {
+      this.reason = reason;
+      this.donor = donor;
+      this.receiver = receiver;
+      this.bytes = bytes;
+      this.sizes = sizes;
+    }
+
+    @NonNull
+    public Reason getReason() {
+      return reason;
+    }
+
+    /**
+     * Returns the target that was shrunk for a {@link Reason#REBALANCE}, or {@code null}.
+     */
+    @Nullable
+    public Target getDonor() {
+      return donor;
+    }
+
+    /**
+     * Returns the target that was grown for a {@link Reason#REBALANCE}, or {@code null}.
+     */
+    @Nullable
+    public Target getReceiver() {
+      return receiver;
+    }
+
+    /**
+     * Returns the number of bytes moved between targets, or the change in the total size for heap
+     * decisions.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the size of the given target in bytes after the decision was applied.
+     */
+    public long getSize(@NonNull Target target) {
+      Long result = sizes.get(target);
+      return result != null ? result : 0;
+    }
+
+    @Override
+    public String toString() {
+      return "Decision{reason=" + reason + ", donor=" + donor + ", receiver=" + receiver
+          + ", bytes=" + bytes + ", sizes=" + sizes + "}";
+    }
+  }
+
+  private static final class State {
+    private final Resizable resizable;
+    @Synthetic final long initialSize;
+    @Synthetic long size;
+    private long lastHits;
+    private long lastMisses;
+    // The miss rate in the last sample, or -1 if there weren't enough requests.
+    @Synthetic float missRate = -1;
+    @Synthetic boolean isFull;
+
+    @Synthetic
+    State(Resizable resizable) {
+      this.resizable = resizable;
+      initialSize = resizable.getMaxSize();
+      size = initialSize;
+      lastHits = resizable.getHitCount();
+      lastMisses = resizable.getMissCount();
+    }
+
+    void sample() {
+      long currentHits = resizable.getHitCount();
+      long currentMisses = resizable.getMissCount();
+      long hits = currentHits - lastHits;
+      long misses = currentMisses - lastMisses;
+      lastHits = currentHits;
+      lastMisses = currentMisses;
+      long requests = hits + misses;
+      missRate = requests >= MIN_REQUESTS_PER_SAMPLE ? misses / (float) requests : -1;
+      isFull = resizable.getCurrentSize() >= resizable.getMaxSize() * FULL_FRACTION;
+    }
+
+    /**
+     * Returns the miss rate used when choosing which target gives up bytes, targets that are
+     * barely used are the best donors.
+     */
+    float getDonorMissRate() {
+      return missRate >= 0 ? missRate : 0;
+    }
+
+    long getAvailableBytes() {
+      return Math.max(0, size - (long) (initialSize * MIN_SIZE_FRACTION));
+    }
+
+    void setSize(long newSize) {
+      size = newSize;
+      resizable.setSizeMultiplier(initialSize > 0 ? newSize / (float) initialSize : 0);
+    }
+  }
+
+  @Nullable
+  private static HeapMonitor getDefaultHeapMonitor() {
+    // Bitmap pixels aren't on the Java heap from O, see the class comment.
+    return Build.VERSION.SDK_INT < Build.VERSION_CODES.O ? new RuntimeHeapMonitor() : null;
+  }
+
+  private static final class RuntimeHeapMonitor implements HeapMonitor {
+
+    @Synthetic
+    RuntimeHeapMonitor() { }
+
+    @Override
+    public long getUsedBytes() {
+      Runtime runtime = Runtime.getRuntime();
+      return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Override
+    public long getMaxBytes() {
+      return Runtime.getRuntime().maxMemory();
+    }
+  }
+}
@@ -40,6 +40,9 @@ public interface MemoryCache {
   /**
    * Removes the value for the given key and returns it if present or null otherwise.
    *
+   * <p>The given key may be a temporary key that's reused for other lookups once this method
+   * returns, so implementations must not retain it.
+   *
    * @param key The key.
    */
   @Nullable
@@ -0,0 +1,159 @@
+package com.bumptech.glide.load.engine.cache;
+
+import java.security.MessageDigest;
+
+/**
+ * An incremental implementation of the x64 128 bit variant of MurmurHash3 with a seed of zero,
+ * exposed as a {@link MessageDigest} so that it can be passed to
+ * {@link com.bumptech.glide.load.Key#updateDiskCacheKey(MessageDigest)}.
+ *
+ * <p>The digest is the two 64 bit halves of the hash, each in little endian order, which matches
+ * the byte order used by other common implementations.
+ */
+final class Murmur3MessageDigest extends MessageDigest {
+  private static final int BLOCK_SIZE = 16;
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private final byte[] block = new byte[BLOCK_SIZE];
+  private int blockLength;
+  private long length;
+  private long h1;
+  private long h2;
+
+  Murmur3MessageDigest() {
+    super("MURMUR3-128");
+  }
+
+  @Override
+  protected int engineGetDigestLength() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  protected void engineUpdate(byte input) {
+    block[blockLength++] = input;
+    length++;
+    if (blockLength == BLOCK_SIZE) {
+      processBlock(block, 0);
+      blockLength = 0;
+    }
+  }
+
+  @Override
+  protected void engineUpdate(byte[] input, int offset, int len) {
+    int current = offset;
+    int end = offset + len;
+    length += len;
+    if (blockLength > 0) {
+      int toCopy = Math.min(BLOCK_SIZE - blockLength, len);
+      System.arraycopy(input, current, block, blockLength, toCopy);
+      blockLength += toCopy;
+      current += toCopy;
+      if (blockLength < BLOCK_SIZE) {
+        return;
+      }
+      processBlock(block, 0);
+      blockLength = 0;
+    }
+    while (end - current >= BLOCK_SIZE) {
+      processBlock(input, current);
+      current += BLOCK_SIZE;
+    }
+    blockLength = end - current;
+    System.arraycopy(input, current, block, 0, blockLength);
+  }
+
+  @Override
+  protected byte[] engineDigest() {
+    long k1 = 0;
+    long k2 = 0;
+    for (int i = blockLength - 1; i >= 8; i--) {
+      k2 = (k2 << 8) | (block[i] & 0xFFL);
+    }
+    for (int i = Math.min(blockLength, 8) - 1; i >= 0; i--) {
+      k1 = (k1 << 8) | (block[i] & 0xFFL);
+    }
+    if (blockLength > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (blockLength > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+
+    byte[] result = new byte[BLOCK_SIZE];
+    putLongLittleEndian(result, 0, h1);
+    putLongLittleEndian(result, 8, h2);
+    engineReset();
+    return result;
+  }
+
+  @Override
+  protected void engineReset() {
+    blockLength = 0;
+    length = 0;
+    h1 = 0;
+    h2 = 0;
+  }
+
+  private void processBlock(byte[] input, int offset) {
+    long k1 = getLongLittleEndian(input, offset);
+    long k2 = getLongLittleEndian(input, offset + 8);
+
+    h1 ^= mixK1(k1);
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    h1 = h1 * 5 + 0x52dce729;
+
+    h2 ^= mixK2(k2);
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    h2 = h2 * 5 + 0x38495ab5;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static long getLongLittleEndian(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 7; i >= 0; i--) {
+      result = (result << 8) | (bytes[offset + i] & 0xFFL);
+    }
+    return result;
+  }
+
+  private static void putLongLittleEndian(byte[] bytes, int offset, long value) {
+    for (int i = 0; i < 8; i++) {
+      bytes[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+}
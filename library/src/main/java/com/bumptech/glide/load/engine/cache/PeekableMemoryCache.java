@@ -0,0 +1,28 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+
+/**
+ * A {@link MemoryCache} that can return a resource without removing it.
+ *
+ * <p>Used by {@link com.bumptech.glide.load.engine.Engine} to read a resource that's used to
+ * derive another one, like a larger variant that's downscaled, without the read being treated as
+ * a request for the resource itself.
+ */
+public interface PeekableMemoryCache extends MemoryCache {
+
+  /**
+   * Returns the value for the given key if present or null otherwise, leaving it in the cache.
+   *
+   * <p>Unlike {@link #remove(Key)}, peeking is not counted as a hit or a miss and does not change
+   * how often the resource is considered to have been requested. Implementations may treat it as
+   * a use of the resource when deciding which resources were least recently used.
+   *
+   * @param key The key.
+   */
+  @Nullable
+  Resource<?> peek(@NonNull Key key);
+}
@@ -0,0 +1,120 @@
+package com.bumptech.glide.load.engine.cache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over the safe keys stored in a disk cache, used to answer most misses without
+ * locking or touching the cache.
+ *
+ * <p>{@link #mightContain(String)} never returns {@code false} for a key that was added, but may
+ * return {@code true} for keys that weren't. Keys can't be removed, so entries that are deleted or
+ * evicted only make false positives more likely until the filter is rebuilt. The filter reports
+ * that it's full once more keys have been added than it was sized for, at which point it should be
+ * replaced by a new filter built from the cache's current entries.
+ *
+ * <p>Thread safe, adding and checking keys never blocks.
+ */
+final class SafeKeyFilter {
+  private static final int MIN_EXPECTED_KEYS = 1024;
+  // About a 1% false positive rate with five hash functions.
+  private static final int BITS_PER_KEY = 10;
+  private static final int HASH_COUNT = 5;
+  // Entries in DiskLruCache with a single value are stored in files named "<safe key>.0".
+  private static final String CLEAN_FILE_SUFFIX = ".0";
+
+  private final AtomicLongArray bits;
+  private final int bitCount;
+  private final int expectedKeys;
+  private final AtomicInteger keyCount = new AtomicInteger();
+
+  /**
+   * Returns a filter containing the key of every entry file in the given {@link
+   * com.bumptech.glide.disklrucache.DiskLruCache} directory, sized to allow for the cache to grow
+   * to twice its current number of entries before the filter is full.
+   */
+  static SafeKeyFilter fromDirectory(File directory) {
+    String[] names = directory.list();
+    int count = names != null ? names.length : 0;
+    SafeKeyFilter result = new SafeKeyFilter(2 * count);
+    if (names != null) {
+      for (String name : names) {
+        if (name.endsWith(CLEAN_FILE_SUFFIX)) {
+          result.add(name.substring(0, name.length() - CLEAN_FILE_SUFFIX.length()));
+        }
+      }
+    }
+    return result;
+  }
+
+  SafeKeyFilter(int expectedKeys) {
+    this.expectedKeys = Math.max(MIN_EXPECTED_KEYS, expectedKeys);
+    int words = (int) (((long) this.expectedKeys * BITS_PER_KEY + 63) / Long.SIZE);
+    bits = new AtomicLongArray(words);
+    bitCount = words * Long.SIZE;
+  }
+
+  void add(String safeKey) {
+    long h1 = hash(safeKey);
+    long h2 = mix(h1) | 1;
+    long combined = h1;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      int bit = index(combined);
+      int word = bit >>> 6;
+      long mask = 1L << bit;
+      long current;
+      do {
+        current = bits.get(word);
+      } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+      combined += h2;
+    }
+    keyCount.incrementAndGet();
+  }
+
+  boolean mightContain(String safeKey) {
+    long h1 = hash(safeKey);
+    long h2 = mix(h1) | 1;
+    long combined = h1;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      int bit = index(combined);
+      if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+        return false;
+      }
+      combined += h2;
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if more keys have been added than the filter was sized for.
+   */
+  boolean isFull() {
+    return keyCount.get() > expectedKeys;
+  }
+
+  private int index(long combined) {
+    return (int) ((combined & Long.MAX_VALUE) % bitCount);
+  }
+
+  // 64 bit FNV-1a.
+  private static long hash(String safeKey) {
+    long result = 0xcbf29ce484222325L;
+    for (int i = 0, length = safeKey.length(); i < length; i++) {
+      result ^= safeKey.charAt(i);
+      result *= 0x100000001b3L;
+    }
+    return result;
+  }
+
+  // The MurmurHash3 finalizer.
+  private static long mix(long value) {
+    long result = value;
+    result ^= result >>> 33;
+    result *= 0xff51afd7ed558ccdL;
+    result ^= result >>> 33;
+    result *= 0xc4ceb9fe1a85ec53L;
+    result ^= result >>> 33;
+    return result;
+  }
+}
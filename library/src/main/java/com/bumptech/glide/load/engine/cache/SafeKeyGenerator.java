@@ -1,61 +1,100 @@
 package com.bumptech.glide.load.engine.cache;
 
+import android.support.annotation.NonNull;
 import android.support.v4.util.Pools;
 import com.bumptech.glide.load.Key;
-import com.bumptech.glide.util.LruCache;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Synthetic;
-import com.bumptech.glide.util.Util;
 import com.bumptech.glide.util.pool.FactoryPools;
 import com.bumptech.glide.util.pool.StateVerifier;
+import java.io.ByteArrayOutputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A class that generates and caches safe and unique string file names from {@link
  * com.bumptech.glide.load.Key}s.
+ *
+ * <p>Recently generated names are remembered in a fixed size table indexed by the hash code of
+ * the {@link Key}, so looking up a name never blocks and a key that's evicted by another key with
+ * the same index is simply hashed again.
  */
 // Public API.
 @SuppressWarnings("WeakerAccess")
 public class SafeKeyGenerator {
-  private final LruCache<Key, String> loadIdToSafeHash = new LruCache<>(1000);
-  private final Pools.Pool<PoolableDigestContainer> digestPool = FactoryPools.threadSafe(10,
-      new FactoryPools.Factory<PoolableDigestContainer>() {
-        @Override
-        public PoolableDigestContainer create() {
-          try {
-            return new PoolableDigestContainer(MessageDigest.getInstance("SHA-256"));
-          } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+  // Must be a power of two.
+  private static final int MEMO_SIZE = 4096;
+
+  private final AtomicReferenceArray<MemoEntry> memo = new AtomicReferenceArray<>(MEMO_SIZE);
+  private final KeyHasher keyHasher;
+  private final Pools.Pool<PoolableDigestContainer> digestPool;
+
+  public SafeKeyGenerator() {
+    this(KeyHasher.SHA_256);
+  }
+
+  public SafeKeyGenerator(@NonNull final KeyHasher keyHasher) {
+    this.keyHasher = Preconditions.checkNotNull(keyHasher);
+    digestPool = FactoryPools.threadSafe(10,
+        new FactoryPools.Factory<PoolableDigestContainer>() {
+          @Override
+          public PoolableDigestContainer create() {
+            return new PoolableDigestContainer(keyHasher.newDigest());
           }
-        }
-      });
+        });
+  }
 
   public String getSafeKey(Key key) {
-    String safeKey;
-    synchronized (loadIdToSafeHash) {
-      safeKey = loadIdToSafeHash.get(key);
-    }
-    if (safeKey == null) {
-      safeKey = calculateHexStringDigest(key);
-    }
-    synchronized (loadIdToSafeHash) {
-      loadIdToSafeHash.put(key, safeKey);
+    int index = getMemoIndex(key);
+    MemoEntry entry = memo.get(index);
+    if (entry != null && entry.key.equals(key)) {
+      return entry.safeKey;
     }
+    String safeKey = calculateSafeKey(key);
+    memo.lazySet(index, new MemoEntry(key, safeKey));
     return safeKey;
   }
 
-  private String calculateHexStringDigest(Key key) {
+  /**
+   * Returns the bytes the given key writes in
+   * {@link Key#updateDiskCacheKey(MessageDigest)}, which disk caches can store alongside entries
+   * to detect two keys whose safe keys collide.
+   */
+  @NonNull
+  static byte[] getKeyBytes(@NonNull Key key) {
+    KeyBytesDigest digest = new KeyBytesDigest();
+    key.updateDiskCacheKey(digest);
+    return digest.digest();
+  }
+
+  private String calculateSafeKey(Key key) {
     PoolableDigestContainer container = Preconditions.checkNotNull(digestPool.acquire());
     try {
       key.updateDiskCacheKey(container.messageDigest);
       // calling digest() will automatically reset()
-      return Util.sha256BytesToHex(container.messageDigest.digest());
+      return keyHasher.toSafeKey(container.messageDigest.digest());
     } finally {
       digestPool.release(container);
     }
   }
 
+  private static int getMemoIndex(Key key) {
+    int hash = key.hashCode();
+    // Spread the high bits, many keys combine hash codes by multiplying by 31.
+    hash ^= hash >>> 16;
+    return hash & (MEMO_SIZE - 1);
+  }
+
+  private static final class MemoEntry {
+    @Synthetic final Key key;
+    @Synthetic final String safeKey;
+
+    MemoEntry(Key key, String safeKey) {
+      this.key = key;
+      this.safeKey = safeKey;
+    }
+  }
+
   private static final class PoolableDigestContainer implements FactoryPools.Poolable {
 
     @Synthetic final MessageDigest messageDigest;
@@ -70,4 +109,37 @@ public class SafeKeyGenerator {
       return stateVerifier;
     }
   }
+
+  /**
+   * A {@link MessageDigest} whose digest is every byte it was updated with.
+   */
+  private static final class KeyBytesDigest extends MessageDigest {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+    KeyBytesDigest() {
+      super("KEY-BYTES");
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+      bytes.write(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+      bytes.write(input, offset, len);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+      byte[] result = bytes.toByteArray();
+      bytes.reset();
+      return result;
+    }
+
+    @Override
+    protected void engineReset() {
+      bytes.reset();
+    }
+  }
 }
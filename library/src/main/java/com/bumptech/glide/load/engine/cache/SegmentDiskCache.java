@@ -0,0 +1,1265 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.util.Synthetic;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link DiskCache} that appends small entries to large segment files rather than storing each
+ * entry in its own file, which avoids the per file open, close and directory lookup costs and the
+ * file system block rounding that dominate the cost of storing small thumbnails.
+ *
+ * <p>Each segment is a log of records that each contain a safe key, the full bytes of the
+ * {@link Key} it was generated from, the length and checksum of the entry's data and the data
+ * itself. The key bytes are compared when entries are read, so two keys with colliding safe keys
+ * are detected rather than returning the data for the wrong key, which allows a fast
+ * {@link KeyHasher} to be used safely. Deleting or evicting an entry appends a record that marks
+ * the key as deleted. The index of where each entry's data is stored is kept in memory and is
+ * rebuilt by reading the record headers of each segment when the cache is first accessed. Data is
+ * read with positional {@link FileChannel} reads as it's consumed from the stream returned by
+ * {@link #openStream(Key)}.
+ *
+ * <p>Once the cache grows beyond its maximum size, the least recently used entries are evicted.
+ * The space they used is reclaimed on a background thread by rewriting the segments with the most
+ * unused space so that they only contain their live entries.
+ *
+ * <p>Entries larger than a threshold are still stored in their own files and are the only entries
+ * for which {@link #get(Key)} returns a {@link File}.
+ *
+ * <p>There must be no more than one active instance for a given directory at a time and the
+ * directory must not be used for anything else.
+ */
+public final class SegmentDiskCache implements ByteBufferDiskCache {
+  private static final String TAG = "SegmentDiskCache";
+  private static final String SEGMENT_FILE_PREFIX = "segment-";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final Charset KEY_CHARSET = Charset.forName("US-ASCII");
+
+  private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+  private static final int DEFAULT_MAX_PACKED_ENTRY_SIZE = 64 * 1024;
+
+  private static final int MAGIC = 0x474c5348;
+  // Magic, safe key length, key bytes length, data length and checksum, followed by the safe key
+  // and the key bytes.
+  private static final int FIXED_HEADER_SIZE = 4 + 4 + 4 + 4 + 4;
+  private static final int MAX_SAFE_KEY_LENGTH = 128;
+  private static final int MAX_KEY_BYTES_LENGTH = 64 * 1024;
+  private static final int TOMBSTONE = -1;
+  // The offset of entries that have been removed from the index.
+  private static final long REMOVED = -1;
+  // Segments that are mostly garbage are compacted even if the cache isn't full.
+  private static final float MIN_LIVE_RATIO = 0.5f;
+
+  private static final Comparator<Segment> BY_GARBAGE = new Comparator<Segment>() {
+    @Override
+    public int compare(Segment lhs, Segment rhs) {
+      long lhsGarbage = lhs.length - lhs.liveBytes;
+      long rhsGarbage = rhs.length - rhs.liveBytes;
+      return lhsGarbage > rhsGarbage ? -1 : (lhsGarbage == rhsGarbage ? 0 : 1);
+    }
+  };
+
+  private final SafeKeyGenerator safeKeyGenerator;
+  private final DiskCacheWriteLocker writeLocker = new DiskCacheWriteLocker();
+  private final File directory;
+  private final long maxSize;
+  private final int segmentSize;
+  private final int maxPackedEntrySize;
+  private final Executor compactionExecutor;
+  private final Runnable compactionRunnable = new Runnable() {
+    @Override
+    public void run() {
+      compact();
+    }
+  };
+  // Held while the segments are replayed so that only one thread opens the cache. Acquired before,
+  // and never while holding, the lock on this object.
+  private final Object openLock = new Object();
+
+  // Ordered from least to most recently used.
+  private LinkedHashMap<String, Entry> entries = newEntries();
+  private TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private boolean isOpen;
+  private boolean isCompactionScheduled;
+  // Incremented by clear() so that an index read before the files were deleted isn't used.
+  private int clearCount;
+  // The total size of every segment and standalone file.
+  private long diskSize;
+  // The size of the records and files of entries that are in the index.
+  private long liveSize;
+  private int nextTempFile;
+
+  /**
+   * Creates a new cache in the given directory with the given maximum size in bytes.
+   */
+  public static DiskCache create(@NonNull File directory, long maxSize) {
+    return create(directory, maxSize, KeyHasher.SHA_256);
+  }
+
+  /**
+   * Creates a new cache in the given directory with the given maximum size in bytes that names
+   * entries using the given {@link KeyHasher}.
+   */
+  public static DiskCache create(@NonNull File directory, long maxSize,
+      @NonNull KeyHasher keyHasher) {
+    return new SegmentDiskCache(directory, maxSize, DEFAULT_SEGMENT_SIZE,
+        DEFAULT_MAX_PACKED_ENTRY_SIZE, new SafeKeyGenerator(keyHasher), MaintenanceExecutor.get());
+  }
+
+  @VisibleForTesting
+  SegmentDiskCache(File directory, long maxSize, int segmentSize, int maxPackedEntrySize,
+      SafeKeyGenerator safeKeyGenerator, Executor compactionExecutor) {
+    this.safeKeyGenerator = safeKeyGenerator;
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.segmentSize = segmentSize;
+    this.maxPackedEntrySize = maxPackedEntrySize;
+    this.compactionExecutor = compactionExecutor;
+  }
+
+  @Nullable
+  @Override
+  public File get(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    if (!ensureOpen()) {
+      return null;
+    }
+    synchronized (this) {
+      Entry entry = entries.get(safeKey);
+      if (entry == null || entry.segment != null) {
+        return null;
+      }
+      File file = getStandaloneFile(safeKey);
+      if (!file.exists()) {
+        // Deleted by someone other than us, for example when the system clears the cache dir.
+        removeEntry(safeKey, entry);
+        return null;
+      }
+      return file;
+    }
+  }
+
+  @Nullable
+  @Override
+  public ByteBuffer getBuffer(Key key) {
+    InputStream is = openStream(key);
+    if (is == null) {
+      return null;
+    }
+    try {
+      // Both kinds of stream we return know the remaining length of the entry.
+      byte[] data = new byte[is.available()];
+      readFully(is, data);
+      return ByteBuffer.wrap(data);
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Unable to read from disk cache", e);
+      }
+      return null;
+    } finally {
+      try {
+        is.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Get: Obtained: " + safeKey + " for for Key: " + key);
+    }
+    if (!ensureOpen()) {
+      return null;
+    }
+    byte[] keyBytes = null;
+    // Retry once in case the entry was moved by a compaction while we were reading it.
+    for (int attempt = 0; attempt < 2; attempt++) {
+      Entry entry;
+      Segment segment;
+      FileChannel channel;
+      long offset;
+      synchronized (this) {
+        entry = entries.get(safeKey);
+        if (entry == null) {
+          return null;
+        }
+        segment = entry.segment;
+        offset = entry.offset;
+        if (segment != null && !segment.channel.isOpen()) {
+          // Closed by an interrupt on another thread.
+          if (!reopen(segment)) {
+            removeEntry(safeKey, entry);
+            return null;
+          }
+        }
+        channel = segment != null ? segment.channel : null;
+      }
+      if (segment == null) {
+        return openStandalone(safeKey, entry);
+      }
+
+      if (keyBytes == null) {
+        keyBytes = SafeKeyGenerator.getKeyBytes(key);
+      }
+      // Only the key bytes stored at the end of the header are read up front, the data is read as
+      // it's consumed.
+      ByteBuffer storedKeyBytes = ByteBuffer.allocate(entry.keyBytesLength);
+      try {
+        readFully(channel, storedKeyBytes, offset + entry.headerSize - entry.keyBytesLength);
+      } catch (ClosedChannelException e) {
+        continue;
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Unable to read from disk cache", e);
+        }
+        removeIfUnchanged(safeKey, entry, segment, offset);
+        return null;
+      }
+      if (!equals(storedKeyBytes.array(), keyBytes, entry.keyBytesLength)) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+          Log.d(TAG, "Safe key collision, replacing entry: " + safeKey + " for Key: " + key);
+        }
+        // Removed so that the data for the requested key can be written in its place.
+        removeIfUnchanged(safeKey, entry, segment, offset);
+        return null;
+      }
+      return new EntryInputStream(safeKey, entry, segment, channel, offset);
+    }
+    return null;
+  }
+
+  @Override
+  public void put(Key key, Writer writer) {
+    // Like DiskLruCacheWrapper, puts for the same key block so that data is available when put
+    // completes and is only written once.
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    writeLocker.acquire(safeKey);
+    try {
+      if (Log.isLoggable(TAG, Log.VERBOSE)) {
+        Log.v(TAG, "Put: Obtained: " + safeKey + " for for Key: " + key);
+      }
+      if (!ensureOpen()) {
+        return;
+      }
+      File temp;
+      synchronized (this) {
+        if (!isOpen || entries.containsKey(safeKey)) {
+          return;
+        }
+        temp = new File(directory, (nextTempFile++) + TEMP_FILE_SUFFIX);
+      }
+
+      try {
+        if (!writer.write(temp) || !temp.exists()) {
+          return;
+        }
+        long length = temp.length();
+        if (length <= maxPackedEntrySize) {
+          byte[] data = readFile(temp, (int) length);
+          byte[] keyBytes = SafeKeyGenerator.getKeyBytes(key);
+          synchronized (this) {
+            if (isOpen) {
+              addEntry(safeKey, append(safeKey, keyBytes, data, (int) length));
+              trimToSize();
+            }
+          }
+        } else {
+          File file = getStandaloneFile(safeKey);
+          if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename " + temp + " to " + file);
+          }
+          synchronized (this) {
+            if (isOpen) {
+              diskSize += length;
+              addEntry(safeKey, Entry.standalone(length));
+              trimToSize();
+            }
+          }
+        }
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Unable to put to disk cache", e);
+        }
+      } finally {
+        deleteIfExists(temp);
+      }
+    } finally {
+      writeLocker.release(safeKey);
+    }
+  }
+
+  @Override
+  public void delete(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    if (!ensureOpen()) {
+      return;
+    }
+    synchronized (this) {
+      Entry entry = entries.get(safeKey);
+      if (entry != null) {
+        removeEntry(safeKey, entry);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    clearCount++;
+    closeSegments(segments);
+    entries.clear();
+    diskSize = 0;
+    liveSize = 0;
+    isOpen = false;
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        // Files for puts and compactions in progress are deleted by the put or compaction.
+        if (!file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+          deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  long getDiskSize() {
+    ensureOpen();
+    synchronized (this) {
+      return diskSize;
+    }
+  }
+
+  @VisibleForTesting
+  int getEntryCount() {
+    ensureOpen();
+    synchronized (this) {
+      return entries.size();
+    }
+  }
+
+  @VisibleForTesting
+  int getSegmentCount() {
+    ensureOpen();
+    synchronized (this) {
+      return segments.size();
+    }
+  }
+
+  /**
+   * Opens the cache if it isn't already and returns {@code true}, or returns {@code false} if the
+   * cache can't be opened, in which case the cache behaves as if it were empty.
+   *
+   * <p>The segments are replayed without holding the lock on this object, which is only held to
+   * install the index once it's been read. Must not be called while holding the lock on this
+   * object.
+   */
+  private boolean ensureOpen() {
+    synchronized (this) {
+      if (isOpen) {
+        return true;
+      }
+    }
+    synchronized (openLock) {
+      int openClearCount;
+      synchronized (this) {
+        if (isOpen) {
+          return true;
+        }
+        openClearCount = clearCount;
+      }
+      long startTime = System.currentTimeMillis();
+      LinkedHashMap<String, Entry> openedEntries = newEntries();
+      TreeMap<Integer, Segment> openedSegments = new TreeMap<>();
+      long openedDiskSize;
+      try {
+        openedDiskSize = open(openedEntries, openedSegments);
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Unable to open disk cache", e);
+        }
+        closeSegments(openedSegments);
+        return false;
+      }
+      long openedLiveSize = 0;
+      for (Entry entry : openedEntries.values()) {
+        openedLiveSize += entry.getSize();
+      }
+      synchronized (this) {
+        if (clearCount != openClearCount) {
+          // The files we read were deleted while we were reading them.
+          closeSegments(openedSegments);
+          return false;
+        }
+        entries = openedEntries;
+        segments = openedSegments;
+        diskSize = openedDiskSize;
+        liveSize = openedLiveSize;
+        isOpen = true;
+      }
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Opened disk cache with " + openedEntries.size() + " entries in "
+            + openedSegments.size() + " segments in " + (System.currentTimeMillis() - startTime)
+            + "ms");
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reads the index from the files in the cache's directory into the given maps and returns the
+   * total size of the files.
+   */
+  private long open(Map<String, Entry> openedEntries, TreeMap<Integer, Segment> openedSegments)
+      throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Failed to create directory: " + directory);
+    }
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Failed to list directory: " + directory);
+    }
+    List<File> standaloneFiles = new ArrayList<>();
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(TEMP_FILE_SUFFIX)) {
+        deleteIfExists(file);
+      } else if (name.startsWith(SEGMENT_FILE_PREFIX)) {
+        try {
+          int id = Integer.parseInt(name.substring(SEGMENT_FILE_PREFIX.length()));
+          openedSegments.put(id, new Segment(id, file));
+        } catch (NumberFormatException e) {
+          deleteIfExists(file);
+        }
+      } else if (isSafeKey(name)) {
+        standaloneFiles.add(file);
+      }
+    }
+
+    long result = 0;
+    // Later records for a key replace earlier ones, so segments must be replayed in order.
+    for (Segment segment : openedSegments.values()) {
+      segment.open();
+      replay(segment, openedEntries);
+      result += segment.length;
+    }
+    for (int i = 0, size = standaloneFiles.size(); i < size; i++) {
+      File file = standaloneFiles.get(i);
+      long length = file.length();
+      result += length;
+      replace(openedEntries, file.getName(), Entry.standalone(length));
+    }
+    return result;
+  }
+
+  /**
+   * Adds the entries recorded in the given segment to the given index, truncating the segment at
+   * the first incomplete or invalid record, which is left behind if we're killed while appending.
+   */
+  private static void replay(Segment segment, Map<String, Entry> openedEntries)
+      throws IOException {
+    RecordHeader header = new RecordHeader();
+    long position = 0;
+    while (position < segment.length) {
+      if (!header.read(segment.channel, segment.length, position)) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Truncating " + segment.file + " at invalid record, position: " + position);
+        }
+        segment.channel.truncate(position);
+        segment.length = position;
+        break;
+      }
+
+      if (header.dataLength != TOMBSTONE) {
+        segment.recordKeys.add(header.safeKey);
+      }
+      replace(openedEntries, header.safeKey, header.dataLength != TOMBSTONE
+          ? new Entry(segment, position, header.size, header.keyBytesLength, header.dataLength,
+              header.crc)
+          : null);
+      position += header.getRecordSize();
+    }
+  }
+
+  /**
+   * Replaces the entry for the given key in an index that's being opened, moving the key to the
+   * end of the access order, or removes it if the given entry is {@code null}.
+   */
+  private static void replace(
+      Map<String, Entry> openedEntries, String safeKey, @Nullable Entry entry) {
+    Entry previous = openedEntries.remove(safeKey);
+    if (previous != null && previous.segment != null) {
+      previous.segment.liveBytes -= previous.getSize();
+    }
+    if (entry != null) {
+      openedEntries.put(safeKey, entry);
+      if (entry.segment != null) {
+        entry.segment.liveBytes += entry.getSize();
+      }
+    }
+  }
+
+  private void addEntry(String safeKey, Entry entry) {
+    entries.put(safeKey, entry);
+    liveSize += entry.getSize();
+    if (entry.segment != null) {
+      entry.segment.liveBytes += entry.getSize();
+    }
+  }
+
+  private void removeEntry(String safeKey, Entry entry) {
+    entries.remove(safeKey);
+    liveSize -= entry.getSize();
+    if (entry.segment == null) {
+      diskSize -= entry.standaloneSize;
+      deleteIfExists(getStandaloneFile(safeKey));
+      return;
+    }
+    entry.segment.liveBytes -= entry.getSize();
+    // So that compactions in progress don't move the entry back into the index.
+    entry.offset = REMOVED;
+    try {
+      // Otherwise the entry would be found again the next time the segment is replayed.
+      appendTombstone(safeKey);
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Unable to record deletion of " + safeKey, e);
+      }
+    }
+  }
+
+  @Synthetic
+  synchronized void removeIfUnchanged(
+      String safeKey, Entry entry, @Nullable Segment segment, long offset) {
+    if (entries.get(safeKey) == entry && entry.segment == segment && entry.offset == offset) {
+      removeEntry(safeKey, entry);
+    }
+  }
+
+  private Entry append(String safeKey, byte[] keyBytes, byte[] data, int length)
+      throws IOException {
+    int crc = checksum(data, 0, length);
+    byte[] safeKeyBytes = safeKey.getBytes(KEY_CHARSET);
+    int headerSize = FIXED_HEADER_SIZE + safeKeyBytes.length + keyBytes.length;
+    ByteBuffer record = ByteBuffer.allocate(headerSize + length);
+    record.putInt(MAGIC)
+        .putInt(safeKeyBytes.length)
+        .putInt(keyBytes.length)
+        .putInt(length)
+        .putInt(crc)
+        .put(safeKeyBytes)
+        .put(keyBytes)
+        .put(data, 0, length);
+    record.flip();
+    long position = write(record);
+    Segment segment = segments.lastEntry().getValue();
+    segment.recordKeys.add(safeKey);
+    return new Entry(segment, position, headerSize, keyBytes.length, length, crc);
+  }
+
+  private void appendTombstone(String safeKey) throws IOException {
+    byte[] safeKeyBytes = safeKey.getBytes(KEY_CHARSET);
+    ByteBuffer record = ByteBuffer.allocate(FIXED_HEADER_SIZE + safeKeyBytes.length);
+    record.putInt(MAGIC)
+        .putInt(safeKeyBytes.length)
+        .putInt(0)
+        .putInt(TOMBSTONE)
+        .putInt(0)
+        .put(safeKeyBytes);
+    record.flip();
+    write(record);
+  }
+
+  /**
+   * Appends the given record to the current segment, starting a new segment first if the current
+   * segment is full, and returns the position in the segment the record was written to.
+   */
+  private long write(ByteBuffer record) throws IOException {
+    Map.Entry<Integer, Segment> last = segments.lastEntry();
+    Segment segment = last != null ? last.getValue() : null;
+    if (segment == null || segment.length + record.remaining() > segmentSize) {
+      int id = segment == null ? 0 : segment.id + 1;
+      segment = new Segment(id, new File(directory, SEGMENT_FILE_PREFIX + id));
+      segment.open();
+      segments.put(id, segment);
+    } else if (!segment.channel.isOpen() && !reopen(segment)) {
+      throw new IOException("Unable to reopen " + segment.file);
+    }
+    long position = segment.length;
+    int size = record.remaining();
+    long current = position;
+    while (record.hasRemaining()) {
+      current += segment.channel.write(record, current);
+    }
+    segment.length += size;
+    diskSize += size;
+    return position;
+  }
+
+  /**
+   * Evicts the least recently used entries if the cache is over its maximum size and schedules a
+   * compaction to reclaim the space they used.
+   */
+  private void trimToSize() {
+    if (diskSize > maxSize) {
+      long startTime = System.currentTimeMillis();
+      // Evict to below the maximum so that segments accumulate enough garbage to be worth
+      // compacting and so that evictions happen in batches rather than on every put.
+      long targetLiveSize = maxSize - maxSize / 4;
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      List<String> toEvict = new ArrayList<>();
+      long remaining = liveSize;
+      while (remaining > targetLiveSize && iterator.hasNext()) {
+        Map.Entry<String, Entry> next = iterator.next();
+        toEvict.add(next.getKey());
+        remaining -= next.getValue().getSize();
+      }
+      for (int i = 0, size = toEvict.size(); i < size; i++) {
+        String safeKey = toEvict.get(i);
+        removeEntry(safeKey, entries.get(safeKey));
+      }
+      if (!toEvict.isEmpty() && Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Evicted " + toEvict.size() + " entries in "
+            + (System.currentTimeMillis() - startTime) + "ms");
+      }
+    }
+
+    if (!isCompactionScheduled
+        && getCompactionCandidate(Collections.<Segment>emptySet()) != null) {
+      isCompactionScheduled = true;
+      compactionExecutor.execute(compactionRunnable);
+    }
+  }
+
+  /**
+   * Returns the sealed segment that should be compacted next, ignoring the given segments, or
+   * {@code null} if no segment needs to be compacted.
+   */
+  @Nullable
+  private Segment getCompactionCandidate(Set<Segment> ignored) {
+    if (!isOpen || segments.size() < 2) {
+      return null;
+    }
+    // Never compact the segment we're appending to.
+    List<Segment> candidates = new ArrayList<>(segments.headMap(segments.lastKey()).values());
+    Collections.sort(candidates, BY_GARBAGE);
+    for (int i = 0, size = candidates.size(); i < size; i++) {
+      Segment segment = candidates.get(i);
+      if (ignored.contains(segment)) {
+        continue;
+      }
+      if (segment.liveBytes == segment.length
+          || (diskSize <= maxSize && segment.liveBytes >= segment.length * MIN_LIVE_RATIO)) {
+        return null;
+      }
+      return segment;
+    }
+    return null;
+  }
+
+  @Synthetic
+  void compact() {
+    long startTime = System.currentTimeMillis();
+    int count = 0;
+    // Segments are only compacted once per pass so that deletions that have to be kept can't cause
+    // a segment to be compacted repeatedly. Another pass is made if the previous one reclaimed
+    // space, because dropping removed entries may have made deletions in other segments
+    // unnecessary.
+    Set<Segment> compacted = new HashSet<>();
+    long reclaimed = 0;
+    while (true) {
+      Segment segment;
+      synchronized (this) {
+        segment = getCompactionCandidate(compacted);
+        if (segment == null && reclaimed > 0) {
+          compacted.clear();
+          reclaimed = 0;
+          segment = getCompactionCandidate(compacted);
+        }
+        if (segment == null) {
+          isCompactionScheduled = false;
+          break;
+        }
+      }
+      compacted.add(segment);
+      try {
+        reclaimed += compact(segment);
+        count++;
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Unable to compact " + segment.file, e);
+        }
+        synchronized (this) {
+          isCompactionScheduled = false;
+        }
+        break;
+      }
+    }
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      synchronized (this) {
+        Log.d(TAG, "Compacted " + count + " segments to " + diskSize + " bytes in "
+            + (System.currentTimeMillis() - startTime) + "ms");
+      }
+    }
+  }
+
+  /**
+   * Rewrites the given sealed segment and any sealed segments after it whose live entries fit in
+   * the same segment as a single segment that only contains their live entries and any deletions
+   * that are still needed, and returns the number of bytes that were reclaimed.
+   *
+   * <p>Records are copied unchanged and in order to a temporary file without holding the lock on
+   * this object, so entries can be read, written and removed while the copy is made. The lock is
+   * only held to replace the segments with the copy and to update the locations of the entries
+   * that were copied. Because the copy takes the place of the given segment, replaying the
+   * segments in order still finds any records for the same keys written while the copy was made.
+   */
+  private long compact(Segment first) throws IOException {
+    List<Segment> run = new ArrayList<>();
+    List<FileChannel> channels = new ArrayList<>();
+    List<Long> lengths = new ArrayList<>();
+    Map<Segment, Map<Long, Entry>> liveEntries = new HashMap<>();
+    synchronized (this) {
+      if (segments.get(first.id) != first) {
+        return 0;
+      }
+      // Merging segments keeps the number of open files from growing as segments are compacted.
+      Segment last = segments.lastEntry().getValue();
+      long liveBytes = 0;
+      for (Segment segment : segments.tailMap(first.id).values()) {
+        if (segment == last || (!run.isEmpty() && liveBytes + segment.liveBytes > segmentSize)) {
+          break;
+        }
+        if (!segment.channel.isOpen() && !reopen(segment)) {
+          throw new IOException("Unable to reopen " + segment.file);
+        }
+        run.add(segment);
+        channels.add(segment.channel);
+        lengths.add(segment.length);
+        liveEntries.put(segment, new HashMap<Long, Entry>());
+        liveBytes += segment.liveBytes;
+      }
+      // Looked up here rather than with get() so that compacting doesn't change the access order.
+      for (Entry entry : entries.values()) {
+        Map<Long, Entry> segmentEntries = liveEntries.get(entry.segment);
+        if (segmentEntries != null) {
+          segmentEntries.put(entry.offset, entry);
+        }
+      }
+    }
+
+    List<Record> toCopy = new ArrayList<>();
+    RecordHeader header = new RecordHeader();
+    long oldLength = 0;
+    for (int i = 0, size = run.size(); i < size; i++) {
+      Segment segment = run.get(i);
+      FileChannel channel = channels.get(i);
+      long length = lengths.get(i);
+      Map<Long, Entry> segmentEntries = liveEntries.get(segment);
+      long position = 0;
+      while (position < length) {
+        if (!header.read(channel, length, position)) {
+          throw new IOException("Invalid record in " + segment.file + " at " + position);
+        }
+        int recordSize = header.getRecordSize();
+        Entry entry = segmentEntries.get(position);
+        if (header.dataLength == TOMBSTONE || entry != null) {
+          toCopy.add(new Record(segment, channel, position, recordSize, header.safeKey, entry));
+        }
+        position += recordSize;
+      }
+      oldLength += length;
+    }
+    synchronized (this) {
+      for (Iterator<Record> iterator = toCopy.iterator(); iterator.hasNext(); ) {
+        Record record = iterator.next();
+        // Deletions only matter if the key hasn't been written again since and an older segment
+        // still contains a record for the key.
+        if (record.entry == null && (entries.containsKey(record.safeKey)
+            || !hasRecordBefore(first.id, record.safeKey))) {
+          iterator.remove();
+        }
+      }
+    }
+
+    File temp = new File(directory, SEGMENT_FILE_PREFIX + first.id + TEMP_FILE_SUFFIX);
+    try {
+      long newLength = copy(toCopy, temp);
+      synchronized (this) {
+        for (int i = 0, size = run.size(); i < size; i++) {
+          Segment segment = run.get(i);
+          if (segments.get(segment.id) != segment) {
+            // Cleared while we were copying.
+            return 0;
+          }
+          segment.close();
+        }
+        if (newLength > 0 && !temp.renameTo(first.file)) {
+          for (int i = 0, size = run.size(); i < size; i++) {
+            reopen(run.get(i));
+          }
+          throw new IOException("Failed to rename " + temp + " to " + first.file);
+        }
+        // Deleted oldest first so that a deletion is never lost while the entry it deleted is kept.
+        for (int i = newLength > 0 ? 1 : 0, size = run.size(); i < size; i++) {
+          Segment segment = run.get(i);
+          segments.remove(segment.id);
+          deleteIfExists(segment.file);
+        }
+        first.recordKeys.clear();
+        for (int i = 0, size = toCopy.size(); i < size; i++) {
+          Record record = toCopy.get(i);
+          Entry entry = record.entry;
+          if (entry == null) {
+            continue;
+          }
+          first.recordKeys.add(record.safeKey);
+          // Otherwise the entry was removed while we were copying it.
+          if (entry.segment == record.segment && entry.offset == record.position) {
+            entry.segment.liveBytes -= entry.getSize();
+            first.liveBytes += entry.getSize();
+            // Updated in place so that the entry keeps its place in the access order.
+            entry.segment = first;
+            entry.offset = record.newPosition;
+          }
+        }
+        if (newLength > 0) {
+          // Reads still using the old files fail now that they're closed and retry at the new
+          // location.
+          reopen(first);
+        }
+        diskSize += newLength - oldLength;
+      }
+      return oldLength - newLength;
+    } finally {
+      deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Returns {@code true} if a segment before the segment with the given id contains a data record
+   * for the given key.
+   */
+  private boolean hasRecordBefore(int id, String safeKey) {
+    for (Segment segment : segments.headMap(id).values()) {
+      if (segment.recordKeys.contains(safeKey)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copies the given records to the given file and returns the length of the file.
+   */
+  private static long copy(List<Record> records, File file) throws IOException {
+    RandomAccessFile output = new RandomAccessFile(file, "rw");
+    try {
+      output.setLength(0);
+      FileChannel outputChannel = output.getChannel();
+      long length = 0;
+      for (int i = 0, size = records.size(); i < size; i++) {
+        Record record = records.get(i);
+        ByteBuffer buffer = ByteBuffer.allocate(record.size);
+        readFully(record.channel, buffer, record.position);
+        buffer.flip();
+        record.newPosition = length;
+        while (buffer.hasRemaining()) {
+          length += outputChannel.write(buffer, length);
+        }
+      }
+      return length;
+    } finally {
+      output.close();
+    }
+  }
+
+  private boolean reopen(Segment segment) {
+    try {
+      segment.open();
+      return true;
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Unable to reopen " + segment.file, e);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the channel to read the given entry in a segment from, or {@code null} if the entry has
+   * been removed or its segment can't be read.
+   */
+  @Nullable
+  @Synthetic
+  synchronized FileChannel getChannel(String safeKey, Entry entry) {
+    Segment segment = entry.segment;
+    if (entries.get(safeKey) != entry || segment == null) {
+      return null;
+    }
+    if (!segment.channel.isOpen() && !reopen(segment)) {
+      removeEntry(safeKey, entry);
+      return null;
+    }
+    return segment.channel;
+  }
+
+  @Nullable
+  private InputStream openStandalone(String safeKey, Entry entry) {
+    try {
+      return new FileInputStream(getStandaloneFile(safeKey));
+    } catch (FileNotFoundException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Unable to read from disk cache", e);
+      }
+      removeIfUnchanged(safeKey, entry, null, 0);
+      return null;
+    }
+  }
+
+  private File getStandaloneFile(String safeKey) {
+    return new File(directory, safeKey);
+  }
+
+  private static LinkedHashMap<String, Entry> newEntries() {
+    return new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  private static void closeSegments(Map<Integer, Segment> segments) {
+    for (Segment segment : segments.values()) {
+      segment.close();
+    }
+    segments.clear();
+  }
+
+  private static boolean isSafeKey(String name) {
+    int length = name.length();
+    if (length == 0 || length > MAX_SAFE_KEY_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equals(byte[] stored, byte[] expected, int length) {
+    if (length != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (stored[i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    long current = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, current);
+      if (read == -1) {
+        throw new IOException("Unexpected end of file at " + current);
+      }
+      current += read;
+    }
+  }
+
+  private static void readFully(InputStream is, byte[] data) throws IOException {
+    int read = 0;
+    while (read < data.length) {
+      int count = is.read(data, read, data.length - read);
+      if (count == -1) {
+        throw new IOException("Unexpected end of stream");
+      }
+      read += count;
+    }
+  }
+
+  private static byte[] readFile(File file, int length) throws IOException {
+    byte[] result = new byte[length];
+    InputStream is = new FileInputStream(file);
+    try {
+      readFully(is, result);
+    } finally {
+      is.close();
+    }
+    return result;
+  }
+
+  private static int checksum(byte[] data, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(data, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static void deleteIfExists(File file) {
+    if (!file.delete() && file.exists() && Log.isLoggable(TAG, Log.WARN)) {
+      Log.w(TAG, "Failed to delete: " + file);
+    }
+  }
+
+  /**
+   * Reads the data of an entry stored in a segment as it's consumed and verifies its checksum once
+   * all of the data has been read.
+   */
+  private final class EntryInputStream extends InputStream {
+    private final String safeKey;
+    private final Entry entry;
+    private final CRC32 crc = new CRC32();
+    private final byte[] singleByte = new byte[1];
+    private Segment segment;
+    private FileChannel channel;
+    // The position of the start of the entry's record in the channel.
+    private long offset;
+    // The number of bytes of data that have been read.
+    private int position;
+
+    @Synthetic
+    EntryInputStream(
+        String safeKey, Entry entry, Segment segment, FileChannel channel, long offset) {
+      this.safeKey = safeKey;
+      this.entry = entry;
+      this.segment = segment;
+      this.channel = channel;
+      this.offset = offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int byteOffset, int byteCount) throws IOException {
+      if (byteCount == 0) {
+        return 0;
+      }
+      int remaining = entry.length - position;
+      if (remaining == 0) {
+        return -1;
+      }
+      int read = readData(ByteBuffer.wrap(buffer, byteOffset, Math.min(byteCount, remaining)));
+      crc.update(buffer, byteOffset, read);
+      position += read;
+      if (position == entry.length && (int) crc.getValue() != entry.crc) {
+        if (Log.isLoggable(TAG, Log.WARN)) {
+          Log.w(TAG, "Checksum mismatch, removing entry: " + safeKey);
+        }
+        removeIfUnchanged(safeKey, entry, segment, offset);
+        throw new IOException("Checksum mismatch for entry: " + safeKey);
+      }
+      return read;
+    }
+
+    private int readData(ByteBuffer buffer) throws IOException {
+      // Retry once in case the entry was moved by a compaction while we were reading it.
+      for (int attempt = 0; ; attempt++) {
+        try {
+          int read = channel.read(buffer, offset + entry.headerSize + position);
+          if (read == -1) {
+            throw new IOException("Unexpected end of file: " + segment.file);
+          }
+          return read;
+        } catch (ClosedChannelException e) {
+          synchronized (SegmentDiskCache.this) {
+            FileChannel current = attempt == 0 ? getChannel(safeKey, entry) : null;
+            if (current == null) {
+              throw e;
+            }
+            channel = current;
+            segment = entry.segment;
+            offset = entry.offset;
+          }
+        }
+      }
+    }
+
+    @Override
+    public int available() {
+      return entry.length - position;
+    }
+  }
+
+  private static final class Entry {
+    // Null for entries stored in their own file. Both are updated when the segment is compacted.
+    @Nullable Segment segment;
+    // The position of the start of the entry's record in the segment, or REMOVED.
+    long offset;
+    final int headerSize;
+    final int keyBytesLength;
+    final int length;
+    final int crc;
+    final long standaloneSize;
+
+    Entry(@Nullable Segment segment, long offset, int headerSize, int keyBytesLength, int length,
+        int crc) {
+      this(segment, offset, headerSize, keyBytesLength, length, crc, 0);
+    }
+
+    private Entry(@Nullable Segment segment, long offset, int headerSize, int keyBytesLength,
+        int length, int crc, long standaloneSize) {
+      this.segment = segment;
+      this.offset = offset;
+      this.headerSize = headerSize;
+      this.keyBytesLength = keyBytesLength;
+      this.length = length;
+      this.crc = crc;
+      this.standaloneSize = standaloneSize;
+    }
+
+    static Entry standalone(long size) {
+      return new Entry(null, 0, 0, 0, 0, 0, size);
+    }
+
+    /** Returns the number of bytes on disk used by this entry. */
+    long getSize() {
+      return segment != null ? headerSize + length : standaloneSize;
+    }
+  }
+
+  /**
+   * A record that's copied when a segment is compacted.
+   */
+  private static final class Record {
+    final Segment segment;
+    final FileChannel channel;
+    final long position;
+    final int size;
+    final String safeKey;
+    // Null for deletions.
+    @Nullable final Entry entry;
+    // The position of the record in the compacted segment.
+    long newPosition;
+
+    Record(Segment segment, FileChannel channel, long position, int size, String safeKey,
+        @Nullable Entry entry) {
+      this.segment = segment;
+      this.channel = channel;
+      this.position = position;
+      this.size = size;
+      this.safeKey = safeKey;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * The parsed header of a record in a segment.
+   */
+  private static final class RecordHeader {
+    private final ByteBuffer buffer = ByteBuffer.allocate(FIXED_HEADER_SIZE + MAX_SAFE_KEY_LENGTH);
+    String safeKey;
+    int keyBytesLength;
+    int dataLength;
+    int crc;
+    // The size of the header, including the safe key and the key bytes.
+    int size;
+
+    /**
+     * Reads the header of the record at the given position and returns {@code true} if the
+     * header is valid and the entire record is within the given length of the segment.
+     */
+    boolean read(FileChannel channel, long length, long position) throws IOException {
+      long available = length - position;
+      if (available < FIXED_HEADER_SIZE) {
+        return false;
+      }
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), available));
+      readFully(channel, buffer, position);
+      buffer.flip();
+      if (buffer.getInt() != MAGIC) {
+        return false;
+      }
+      int safeKeyLength = buffer.getInt();
+      keyBytesLength = buffer.getInt();
+      dataLength = buffer.getInt();
+      crc = buffer.getInt();
+      if (safeKeyLength <= 0 || safeKeyLength > MAX_SAFE_KEY_LENGTH
+          || keyBytesLength < 0 || keyBytesLength > MAX_KEY_BYTES_LENGTH
+          || dataLength < TOMBSTONE || safeKeyLength > buffer.remaining()) {
+        return false;
+      }
+      size = FIXED_HEADER_SIZE + safeKeyLength + keyBytesLength;
+      if (size + (long) Math.max(0, dataLength) > available) {
+        return false;
+      }
+      safeKey = new String(buffer.array(), FIXED_HEADER_SIZE, safeKeyLength, KEY_CHARSET);
+      return true;
+    }
+
+    int getRecordSize() {
+      return size + Math.max(0, dataLength);
+    }
+  }
+
+  private static final class Segment {
+    final int id;
+    final File file;
+    FileChannel channel;
+    private RandomAccessFile randomAccessFile;
+    long length;
+    // The size of the records of entries in the index that are stored in this segment.
+    long liveBytes;
+    // The safe keys of the data records in this segment, including those of removed entries.
+    final Set<String> recordKeys = new HashSet<>();
+
+    Segment(int id, File file) {
+      this.id = id;
+      this.file = file;
+    }
+
+    void open() throws IOException {
+      close();
+      randomAccessFile = new RandomAccessFile(file, "rw");
+      channel = randomAccessFile.getChannel();
+      length = channel.size();
+    }
+
+    void close() {
+      if (randomAccessFile == null) {
+        return;
+      }
+      try {
+        randomAccessFile.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+      randomAccessFile = null;
+    }
+  }
+}
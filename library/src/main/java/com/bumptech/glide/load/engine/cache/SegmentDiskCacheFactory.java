@@ -0,0 +1,80 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.content.Context;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheFactory.CacheDirectoryGetter;
+import java.io.File;
+
+/**
+ * Creates a {@link SegmentDiskCache} in the specified disk cache directory.
+ *
+ * <p>The directory must not be shared with a {@link DiskLruCacheWrapper}, so the directory used
+ * by default is different from the one used by {@link InternalCacheDiskCacheFactory}.
+ */
+// Public API.
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SegmentDiskCacheFactory implements DiskCache.Factory {
+  public static final String DEFAULT_DISK_CACHE_DIR = "image_manager_segment_disk_cache";
+
+  private final long diskCacheSize;
+  private final CacheDirectoryGetter cacheDirectoryGetter;
+  private final KeyHasher keyHasher;
+
+  public SegmentDiskCacheFactory(Context context) {
+    this(context, DEFAULT_DISK_CACHE_DIR, DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE);
+  }
+
+  public SegmentDiskCacheFactory(Context context, long diskCacheSize) {
+    this(context, DEFAULT_DISK_CACHE_DIR, diskCacheSize);
+  }
+
+  public SegmentDiskCacheFactory(final Context context, final String diskCacheName,
+      long diskCacheSize) {
+    this(new CacheDirectoryGetter() {
+      @Override
+      public File getCacheDirectory() {
+        File cacheDirectory = context.getCacheDir();
+        if (cacheDirectory == null) {
+          return null;
+        }
+        return new File(cacheDirectory, diskCacheName);
+      }
+    }, diskCacheSize);
+  }
+
+  /**
+   * @param cacheDirectoryGetter Called on a background thread to get the cache directory.
+   * @param diskCacheSize        Desired max bytes size for the disk cache.
+   */
+  public SegmentDiskCacheFactory(CacheDirectoryGetter cacheDirectoryGetter,
+      long diskCacheSize) {
+    this(cacheDirectoryGetter, diskCacheSize, KeyHasher.SHA_256);
+  }
+
+  /**
+   * @param cacheDirectoryGetter Called on a background thread to get the cache directory.
+   * @param diskCacheSize        Desired max bytes size for the disk cache.
+   * @param keyHasher            The hash function used to name entries, collisions are detected
+   *                             so {@link KeyHasher#MURMUR3_128} is safe to use.
+   */
+  public SegmentDiskCacheFactory(CacheDirectoryGetter cacheDirectoryGetter,
+      long diskCacheSize, KeyHasher keyHasher) {
+    this.cacheDirectoryGetter = cacheDirectoryGetter;
+    this.diskCacheSize = diskCacheSize;
+    this.keyHasher = keyHasher;
+  }
+
+  @Override
+  public DiskCache build() {
+    File cacheDir = cacheDirectoryGetter.getCacheDirectory();
+
+    if (cacheDir == null) {
+      return null;
+    }
+
+    if (!cacheDir.mkdirs() && (!cacheDir.exists() || !cacheDir.isDirectory())) {
+      return null;
+    }
+
+    return SegmentDiskCache.create(cacheDir, diskCacheSize, keyHasher);
+  }
+}
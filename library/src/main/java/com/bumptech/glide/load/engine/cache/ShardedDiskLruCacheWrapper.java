@@ -0,0 +1,97 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.support.annotation.VisibleForTesting;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.util.Preconditions;
+import java.io.File;
+
+/**
+ * A {@link DiskCache} that splits entries across a fixed number of independent
+ * {@link DiskLruCacheWrapper}s, each with its own journal, write locks and an equal share of the
+ * total size, so that concurrent reads and writes only contend when they map to the same shard.
+ *
+ * <p>Entries are assigned to shards by the hash of their safe key, so the number of shards must
+ * not change for a given directory. Doing so leaves entries written by earlier instances
+ * unreachable until they are evicted or the cache is cleared. Like {@link DiskLruCacheWrapper},
+ * there must be no more than one active instance for a given directory at a time and the
+ * directory must not be shared with other disk caches.
+ */
+public final class ShardedDiskLruCacheWrapper implements DiskCache {
+  private final SafeKeyGenerator safeKeyGenerator;
+  private final DiskLruCacheWrapper[] shards;
+
+  /**
+   * Create a new DiskCache in the given directory with a specified max size split equally across
+   * the given number of shards.
+   *
+   * @param directory  The directory for the disk cache
+   * @param maxSize    The max size for the disk cache, shared between all shards
+   * @param shardCount The number of independent caches to use, must be at least 1
+   * @return The new disk cache with the given arguments
+   */
+  public static DiskCache create(File directory, long maxSize, int shardCount) {
+    return create(directory, maxSize, shardCount, KeyHasher.SHA_256);
+  }
+
+  /**
+   * Same as {@link #create(File, long, int)}, but names entries using the given
+   * {@link KeyHasher}.
+   */
+  public static DiskCache create(File directory, long maxSize, int shardCount,
+      KeyHasher keyHasher) {
+    return new ShardedDiskLruCacheWrapper(directory, maxSize, shardCount,
+        new SafeKeyGenerator(keyHasher));
+  }
+
+  @VisibleForTesting
+  ShardedDiskLruCacheWrapper(File directory, long maxSize, int shardCount) {
+    this(directory, maxSize, shardCount, new SafeKeyGenerator());
+  }
+
+  private ShardedDiskLruCacheWrapper(File directory, long maxSize, int shardCount,
+      SafeKeyGenerator safeKeyGenerator) {
+    Preconditions.checkArgument(shardCount > 0, "shardCount must be at least 1");
+    this.safeKeyGenerator = safeKeyGenerator;
+    shards = new DiskLruCacheWrapper[shardCount];
+    long shardSize = Math.max(1, maxSize / shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] =
+          new DiskLruCacheWrapper(new File(directory, String.valueOf(i)), shardSize,
+              safeKeyGenerator);
+    }
+  }
+
+  @Override
+  public File get(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    return getShard(safeKey).get(key, safeKey);
+  }
+
+  @Override
+  public void put(Key key, Writer writer) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    getShard(safeKey).put(key, safeKey, writer);
+  }
+
+  @Override
+  public void delete(Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+    getShard(safeKey).delete(safeKey);
+  }
+
+  @Override
+  public void clear() {
+    for (DiskLruCacheWrapper shard : shards) {
+      shard.clear();
+    }
+  }
+
+  @VisibleForTesting
+  int getShardIndex(String safeKey) {
+    return (safeKey.hashCode() & Integer.MAX_VALUE) % shards.length;
+  }
+
+  private DiskLruCacheWrapper getShard(String safeKey) {
+    return shards[getShardIndex(safeKey)];
+  }
+}
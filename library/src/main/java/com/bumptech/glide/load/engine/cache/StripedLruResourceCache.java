@@ -0,0 +1,329 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.annotation.SuppressLint;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.util.Synthetic;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU in memory cache for {@link com.bumptech.glide.load.engine.Resource}s that splits its
+ * entries across a number of independently locked segments so that puts and removes for different
+ * keys don't contend on a single monitor.
+ *
+ * <p>Each segment keeps its entries in a hash map and an intrusive linked list ordered from least
+ * to most recently put. Every put is stamped from a single counter, so evictions still remove the
+ * least recently used entry across the whole cache by comparing the eldest entry of each segment.
+ * The size in bytes is accounted for globally rather than per segment, so a single large
+ * {@link Resource} may use the entire budget, just as it can in {@link LruResourceCache}.
+ *
+ * <p>The {@link ResourceRemovedListener} is always called on the thread that caused the removal
+ * and never while a segment lock is held, so it's safe for the listener to put the removed
+ * {@link Resource} back into the cache.
+ */
+public class StripedLruResourceCache implements PeekableMemoryCache {
+  private static final int MAX_SEGMENTS = 16;
+
+  private final Segment[] segments;
+  private final int segmentMask;
+  private final long initialMaxSize;
+  private final AtomicLong currentSize = new AtomicLong();
+  private final AtomicLong clock = new AtomicLong();
+  private volatile long maxSize;
+  private volatile ResourceRemovedListener listener;
+
+  /**
+   * Constructor for StripedLruResourceCache that uses one segment per available processor.
+   *
+   * @param size The maximum size in bytes the in memory cache can use.
+   */
+  public StripedLruResourceCache(long size) {
+    this(size, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor for StripedLruResourceCache.
+   *
+   * @param size             The maximum size in bytes the in memory cache can use.
+   * @param concurrencyLevel The expected number of threads concurrently accessing the cache. The
+   *                         number of segments is rounded up to the next power of two, up to a
+   *                         maximum of 16.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public StripedLruResourceCache(long size, int concurrencyLevel) {
+    if (concurrencyLevel < 1) {
+      throw new IllegalArgumentException("Concurrency level must be >= 1");
+    }
+    int segmentCount = 1;
+    while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS) {
+      segmentCount <<= 1;
+    }
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment();
+    }
+    segmentMask = segmentCount - 1;
+    initialMaxSize = size;
+    maxSize = size;
+  }
+
+  @Override
+  public long getCurrentSize() {
+    return currentSize.get();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public void setSizeMultiplier(float multiplier) {
+    if (multiplier < 0) {
+      throw new IllegalArgumentException("Multiplier must be >= 0");
+    }
+    maxSize = Math.round(initialMaxSize * multiplier);
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Returns true if there is a value for the given key in the cache.
+   *
+   * @param key The key to check.
+   */
+  public boolean contains(@NonNull Key key) {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.entries.containsKey(key);
+    }
+  }
+
+  /**
+   * Returns the number of segments used by this cache.
+   */
+  int getSegmentCount() {
+    return segments.length;
+  }
+
+  @Nullable
+  @Override
+  public Resource<?> remove(@NonNull Key key) {
+    Segment segment = segmentFor(key);
+    Entry removed;
+    synchronized (segment) {
+      removed = segment.remove(key);
+    }
+    if (removed == null) {
+      return null;
+    }
+    currentSize.addAndGet(-removed.size);
+    return removed.resource;
+  }
+
+  @Nullable
+  @Override
+  public Resource<?> peek(@NonNull Key key) {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      Entry entry = segment.entries.get(key);
+      return entry != null ? entry.resource : null;
+    }
+  }
+
+  @Nullable
+  @Override
+  public Resource<?> put(@NonNull Key key, @Nullable Resource<?> resource) {
+    if (resource == null) {
+      Resource<?> old = remove(key);
+      notifyRemoved(old);
+      return old;
+    }
+
+    final int size = resource.getSize();
+    if (size >= maxSize) {
+      notifyRemoved(resource);
+      return null;
+    }
+
+    Segment segment = segmentFor(key);
+    Entry entry = new Entry(key, resource, size);
+    Entry old;
+    synchronized (segment) {
+      // Stamp while holding the lock so that stamps within a segment are always ordered the same
+      // way as the segment's list.
+      entry.stamp = clock.incrementAndGet();
+      old = segment.put(entry);
+    }
+    currentSize.addAndGet(old != null ? size - old.size : size);
+
+    if (old != null && !old.resource.equals(resource)) {
+      notifyRemoved(old.resource);
+    }
+    trimToSize(maxSize);
+
+    return old != null ? old.resource : null;
+  }
+
+  @Override
+  public void setResourceRemovedListener(@NonNull ResourceRemovedListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void clearMemory() {
+    trimToSize(0);
+  }
+
+  @SuppressLint("InlinedApi")
+  @Override
+  public void trimMemory(int level) {
+    if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      // Nearing middle of list of cached background apps
+      // Evict our entire bitmap cache
+      clearMemory();
+    } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      // Entering list of cached background apps
+      // Evict oldest half of our bitmap cache
+      trimToSize(getMaxSize() / 2);
+    }
+  }
+
+  /**
+   * Removes the least recently put items from the cache until the current size is less than or
+   * equal to the given size.
+   *
+   * @param size The size the cache should be less than.
+   */
+  protected void trimToSize(long size) {
+    while (currentSize.get() > size) {
+      Entry evicted = evictEldest();
+      if (evicted == null) {
+        // Another thread emptied the cache before its size was updated.
+        return;
+      }
+      notifyRemoved(evicted.resource);
+    }
+  }
+
+  @Nullable
+  private Entry evictEldest() {
+    while (true) {
+      Segment victim = null;
+      long victimStamp = Long.MAX_VALUE;
+      // Peek at each segment without locking, only the chosen segment is locked below.
+      for (Segment segment : segments) {
+        Entry head = segment.head;
+        long stamp = head != null ? head.stamp : Long.MAX_VALUE;
+        if (stamp < victimStamp) {
+          victim = segment;
+          victimStamp = stamp;
+        }
+      }
+      if (victim == null) {
+        return null;
+      }
+
+      Entry evicted;
+      synchronized (victim) {
+        evicted = victim.head != null ? victim.remove(victim.head.key) : null;
+      }
+      if (evicted != null) {
+        currentSize.addAndGet(-evicted.size);
+        return evicted;
+      }
+      // The victim segment was emptied concurrently, try again.
+    }
+  }
+
+  private void notifyRemoved(@Nullable Resource<?> removed) {
+    ResourceRemovedListener local = listener;
+    if (local != null && removed != null) {
+      local.onResourceRemoved(removed);
+    }
+  }
+
+  private Segment segmentFor(Key key) {
+    int hash = key.hashCode();
+    // Spread the higher bits so that keys with poorly distributed hash codes still use all
+    // segments.
+    hash ^= hash >>> 16;
+    return segments[hash & segmentMask];
+  }
+
+  private static final class Entry {
+    @Synthetic final Key key;
+    @Synthetic final Resource<?> resource;
+    @Synthetic final int size;
+    // Written once before the entry is linked into a segment.
+    @Synthetic long stamp;
+    @Synthetic Entry prev;
+    @Synthetic Entry next;
+
+    Entry(Key key, Resource<?> resource, int size) {
+      this.key = key;
+      this.resource = resource;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A single lock striped portion of the cache. All methods must be called while holding the
+   * segment's monitor, but {@link #head} may be read without it to pick an eviction victim.
+   */
+  private static final class Segment {
+    @Synthetic final Map<Key, Entry> entries = new HashMap<>();
+    // Least recently put.
+    @Synthetic volatile Entry head;
+    // Most recently put.
+    private Entry tail;
+
+    @Synthetic
+    Segment() { }
+
+    @Nullable
+    Entry put(Entry entry) {
+      Entry old = entries.put(entry.key, entry);
+      if (old != null) {
+        unlink(old);
+      }
+      entry.prev = tail;
+      entry.next = null;
+      if (tail != null) {
+        tail.next = entry;
+      } else {
+        head = entry;
+      }
+      tail = entry;
+      return old;
+    }
+
+    @Nullable
+    Entry remove(Key key) {
+      Entry removed = entries.remove(key);
+      if (removed != null) {
+        unlink(removed);
+      }
+      return removed;
+    }
+
+    private void unlink(Entry entry) {
+      if (entry.prev != null) {
+        entry.prev.next = entry.next;
+      } else {
+        head = entry.next;
+      }
+      if (entry.next != null) {
+        entry.next.prev = entry.prev;
+      } else {
+        tail = entry.prev;
+      }
+      entry.prev = null;
+      entry.next = null;
+    }
+  }
+}
@@ -0,0 +1,326 @@
+package com.bumptech.glide.load.engine.cache;
+
+import android.annotation.SuppressLint;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in memory cache for {@link com.bumptech.glide.load.engine.Resource}s that uses a frequency
+ * based admission filter (W-TinyLFU) to avoid evicting frequently used resources in favor of
+ * resources that are only used once.
+ *
+ * <p>Newly put resources first enter a small LRU window. Resources that fall out of the window
+ * are only admitted to the main LRU region if they've been requested more often recently than each
+ * of the resources they would replace. Otherwise the new resource is evicted instead. Request
+ * frequency is estimated with a {@link FrequencySketch} that's updated every time the cache is
+ * queried via {@link #remove(Key)}, which is how {@link com.bumptech.glide.load.engine.Engine}
+ * looks up resources. Resources read with {@link #peek(Key)} aren't counted as requested.
+ *
+ * <p>Hits and misses are counted so that hit rates can be compared with {@link LruResourceCache}
+ * for the same workload.
+ */
+public class TinyLfuResourceCache implements PeekableMemoryCache {
+  /** The default fraction of the total size used by the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+  /**
+   * The expected average size of a cached resource, used to size the {@link FrequencySketch} when
+   * no expected entry count is given.
+   */
+  private static final int EXPECTED_AVERAGE_RESOURCE_SIZE = 64 * 1024;
+
+  private final LinkedHashMap<Key, Resource<?>> window = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<Key, Resource<?>> main = new LinkedHashMap<>(100, 0.75f, true);
+  private final FrequencySketch sketch;
+  private final long initialMaxSize;
+  private final float windowFraction;
+  private long maxSize;
+  private long maxWindowSize;
+  private long windowSize;
+  private long mainSize;
+  private long hitCount;
+  private long missCount;
+  private long rejectedCount;
+  private ResourceRemovedListener listener;
+
+  /**
+   * Constructor for TinyLfuResourceCache.
+   *
+   * @param size The maximum size in bytes the in memory cache can use.
+   */
+  public TinyLfuResourceCache(long size) {
+    this(size, DEFAULT_WINDOW_FRACTION,
+        (int) Math.min(Integer.MAX_VALUE / 8, size / EXPECTED_AVERAGE_RESOURCE_SIZE));
+  }
+
+  /**
+   * Constructor for TinyLfuResourceCache.
+   *
+   * @param size            The maximum size in bytes the in memory cache can use.
+   * @param windowFraction  The fraction of the total size, between 0 and 1, used for the LRU
+   *                        admission window.
+   * @param expectedEntries The approximate number of resources the cache is expected to hold,
+   *                        used to size the frequency sketch.
+   */
+  // Public API.
+  @SuppressWarnings("WeakerAccess")
+  public TinyLfuResourceCache(long size, float windowFraction, int expectedEntries) {
+    if (windowFraction < 0 || windowFraction > 1) {
+      throw new IllegalArgumentException("Window fraction must be between 0 and 1");
+    }
+    this.initialMaxSize = size;
+    this.windowFraction = windowFraction;
+    this.sketch = new FrequencySketch(expectedEntries);
+    setMaxSize(size);
+  }
+
+  @Override
+  public synchronized long getCurrentSize() {
+    return windowSize + mainSize;
+  }
+
+  @Override
+  public synchronized long getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public synchronized void setSizeMultiplier(float multiplier) {
+    if (multiplier < 0) {
+      throw new IllegalArgumentException("Multiplier must be >= 0");
+    }
+    setMaxSize(Math.round(initialMaxSize * multiplier));
+    evict();
+  }
+
+  private void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    this.maxWindowSize = Math.round(maxSize * windowFraction);
+  }
+
+  /**
+   * Returns true if there is a value for the given key in the cache.
+   *
+   * @param key The key to check.
+   */
+  public synchronized boolean contains(@NonNull Key key) {
+    return window.containsKey(key) || main.containsKey(key);
+  }
+
+  /**
+   * Returns the number of calls to {@link #remove(Key)} that returned a resource.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of calls to {@link #remove(Key)} that did not return a resource.
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of resources that were evicted by the admission filter when they left the
+   * window, rather than being admitted to the main region of the cache.
+   */
+  public synchronized long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /**
+   * Returns the fraction of calls to {@link #remove(Key)} that returned a resource, or {@code 0}
+   * if the cache has never been queried.
+   */
+  public synchronized double getHitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+  }
+
+  /**
+   * Resets the hit, miss and rejection counts.
+   */
+  public synchronized void resetStats() {
+    hitCount = 0;
+    missCount = 0;
+    rejectedCount = 0;
+  }
+
+  @Nullable
+  @Override
+  public synchronized Resource<?> remove(@NonNull Key key) {
+    sketch.increment(key.hashCode());
+    Resource<?> removed = removeEntry(key);
+    if (removed != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return removed;
+  }
+
+  /**
+   * Returns the resource for the given key without updating its estimated request frequency, so
+   * the resource keeps its place in the region of the cache it's in.
+   */
+  @Nullable
+  @Override
+  public synchronized Resource<?> peek(@NonNull Key key) {
+    Resource<?> result = window.get(key);
+    return result != null ? result : main.get(key);
+  }
+
+  @Nullable
+  @Override
+  public synchronized Resource<?> put(@NonNull Key key, @Nullable Resource<?> resource) {
+    if (resource == null) {
+      Resource<?> old = removeEntry(key);
+      onItemEvicted(old);
+      return old;
+    }
+
+    int size = resource.getSize();
+    if (size >= maxSize) {
+      onItemEvicted(resource);
+      return null;
+    }
+
+    Resource<?> old = removeEntry(key);
+    if (old != null && !old.equals(resource)) {
+      onItemEvicted(old);
+    }
+    window.put(key, resource);
+    windowSize += size;
+    evict();
+    return old;
+  }
+
+  @Override
+  public synchronized void setResourceRemovedListener(@NonNull ResourceRemovedListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void clearMemory() {
+    trimToSize(0);
+  }
+
+  @SuppressLint("InlinedApi")
+  @Override
+  public void trimMemory(int level) {
+    if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      // Nearing middle of list of cached background apps
+      // Evict our entire bitmap cache
+      clearMemory();
+    } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      // Entering list of cached background apps
+      // Evict oldest half of our bitmap cache
+      trimToSize(getMaxSize() / 2);
+    }
+  }
+
+  /**
+   * Removes items from the cache without consulting the admission filter, least recently used
+   * first from the main region and then from the window, until the current size is less than or
+   * equal to the given size.
+   *
+   * @param size The size the cache should be less than.
+   */
+  protected synchronized void trimToSize(long size) {
+    while (windowSize + mainSize > size) {
+      LinkedHashMap<Key, Resource<?>> from = main.isEmpty() ? window : main;
+      Map.Entry<Key, Resource<?>> eldest = from.entrySet().iterator().next();
+      removeEntry(eldest.getKey());
+      onItemEvicted(eldest.getValue());
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getWindowSize() {
+    return windowSize;
+  }
+
+  private void evict() {
+    // Move resources that no longer fit in the window into the main region if they're requested
+    // more often than the resources they'd displace.
+    while (windowSize > maxWindowSize && !window.isEmpty()) {
+      Iterator<Map.Entry<Key, Resource<?>>> windowIterator = window.entrySet().iterator();
+      Map.Entry<Key, Resource<?>> candidate = windowIterator.next();
+      windowIterator.remove();
+      int candidateSize = candidate.getValue().getSize();
+      windowSize -= candidateSize;
+
+      long mainCapacity = maxSize - maxWindowSize;
+      if (candidateSize > mainCapacity
+          || !makeRoomInMain(candidate.getKey(), candidateSize, mainCapacity)) {
+        rejectedCount++;
+        onItemEvicted(candidate.getValue());
+        continue;
+      }
+      main.put(candidate.getKey(), candidate.getValue());
+      mainSize += candidateSize;
+    }
+    // The window may still be over its share if the main region is empty, so trim what's left.
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Evicts the least recently used resources from the main region until a candidate of the given
+   * size fits and returns {@code true}, or evicts nothing and returns {@code false} if any of the
+   * resources that would have to be evicted is requested at least as often as the candidate.
+   */
+  private boolean makeRoomInMain(Key candidate, int candidateSize, long mainCapacity) {
+    long excess = mainSize + candidateSize - mainCapacity;
+    if (excess <= 0) {
+      return true;
+    }
+    int candidateFrequency = sketch.frequency(candidate.hashCode());
+    int victimCount = 0;
+    long freed = 0;
+    for (Map.Entry<Key, Resource<?>> victim : main.entrySet()) {
+      if (freed >= excess) {
+        break;
+      }
+      if (candidateFrequency <= sketch.frequency(victim.getKey().hashCode())) {
+        return false;
+      }
+      victimCount++;
+      freed += victim.getValue().getSize();
+    }
+
+    Iterator<Map.Entry<Key, Resource<?>>> mainIterator = main.entrySet().iterator();
+    for (int i = 0; i < victimCount; i++) {
+      Resource<?> victim = mainIterator.next().getValue();
+      mainIterator.remove();
+      mainSize -= victim.getSize();
+      onItemEvicted(victim);
+    }
+    return true;
+  }
+
+  @Nullable
+  private Resource<?> removeEntry(Key key) {
+    Resource<?> removed = window.remove(key);
+    if (removed != null) {
+      windowSize -= removed.getSize();
+      return removed;
+    }
+    removed = main.remove(key);
+    if (removed != null) {
+      mainSize -= removed.getSize();
+    }
+    return removed;
+  }
+
+  private void onItemEvicted(@Nullable Resource<?> item) {
+    if (listener != null && item != null) {
+      listener.onResourceRemoved(item);
+    }
+  }
+}
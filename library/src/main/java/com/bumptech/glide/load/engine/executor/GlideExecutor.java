@@ -12,6 +12,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -51,6 +52,8 @@ public final class GlideExecutor implements ExecutorService {
 
   private static final String ANIMATION_EXECUTOR_NAME = "animation";
 
+  private static final String BACKGROUND_EXECUTOR_NAME = "background";
+
   /**
    * The default keep alive time for threads in our cached thread pools in milliseconds.
    */
@@ -258,6 +261,31 @@ public final class GlideExecutor implements ExecutorService {
                 true)));
   }
 
+  /**
+   * Returns a new single threaded executor with a first in, first out queue for background work
+   * that isn't part of a load, like compressing evicted resources or saving state to disk.
+   *
+   * <p>Unlike Glide's other executors, the queue doesn't order tasks by priority, so tasks don't
+   * need to be {@link Comparable}. The thread is stopped after {@link #KEEP_ALIVE_TIME_MS} without
+   * any work.
+   *
+   * <p>Background executors do not allow network operations on their threads.
+   */
+  public static GlideExecutor newBackgroundExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        1 /* corePoolSize */,
+        1 /* maximumPoolSize */,
+        KEEP_ALIVE_TIME_MS,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new DefaultThreadFactory(
+            BACKGROUND_EXECUTOR_NAME,
+            UncaughtThrowableStrategy.DEFAULT,
+            true));
+    executor.allowCoreThreadTimeOut(true);
+    return new GlideExecutor(executor);
+  }
+
   @VisibleForTesting
   GlideExecutor(ExecutorService delegate) {
     this.delegate = delegate;
@@ -60,6 +60,7 @@ final class BitmapPreFillRunner implements Runnable {
   private final Clock clock;
   private final Set<PreFillType> seenTypes = new HashSet<>();
   private final Handler handler;
+  private final boolean isMemoryCacheFilled;
 
   private long currentDelay = INITIAL_BACKOFF_MS;
   private boolean isCancelled;
@@ -83,11 +84,28 @@ final class BitmapPreFillRunner implements Runnable {
       PreFillQueue allocationOrder,
       Clock clock,
       Handler handler) {
+    this(bitmapPool, memoryCache, allocationOrder, clock, handler,
+        /*isMemoryCacheFilled=*/ true);
+  }
+
+  /**
+   * @param isMemoryCacheFilled {@code true} to put allocated {@link Bitmap}s in the memory cache
+   *                            while it has room and in the pool afterwards, or {@code false} to
+   *                            only put them in the pool, where decoders can reuse them right away.
+   */
+  BitmapPreFillRunner(
+      BitmapPool bitmapPool,
+      MemoryCache memoryCache,
+      PreFillQueue allocationOrder,
+      Clock clock,
+      Handler handler,
+      boolean isMemoryCacheFilled) {
     this.bitmapPool = bitmapPool;
     this.memoryCache = memoryCache;
     this.toPrefill = allocationOrder;
     this.clock = clock;
     this.handler = handler;
+    this.isMemoryCacheFilled = isMemoryCacheFilled;
   }
 
   public void cancel() {
@@ -121,7 +139,7 @@ final class BitmapPreFillRunner implements Runnable {
 
       // Don't over fill the memory cache to avoid evicting useful resources, but make sure it's
       // not empty so that we use all available space.
-      if (getFreeMemoryCacheBytes() >= bitmapSize) {
+      if (isMemoryCacheFilled && getFreeMemoryCacheBytes() >= bitmapSize) {
         memoryCache.put(new UniqueKey(), BitmapResource.obtain(bitmap, bitmapPool));
       } else {
         bitmapPool.put(bitmap);
@@ -3,12 +3,16 @@ package com.bumptech.glide.load.engine.prefill;
 import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import com.bumptech.glide.load.DecodeFormat;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
+import com.bumptech.glide.util.Synthetic;
 import com.bumptech.glide.util.Util;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -16,6 +20,8 @@ import java.util.Map;
  * {@link com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool}.
  */
 public final class BitmapPreFiller {
+  // Recorded sizes fill at most half of the pool so there's still room for released Bitmaps.
+  private static final float RECORDED_SIZES_POOL_FRACTION = 0.5f;
 
   private final MemoryCache memoryCache;
   private final BitmapPool bitmapPool;
@@ -31,12 +37,68 @@ public final class BitmapPreFiller {
     this.defaultFormat = defaultFormat;
   }
 
-  @SuppressWarnings("deprecation")
   public void preFill(PreFillType.Builder... bitmapAttributeBuilders) {
     if (current != null) {
       current.cancel();
     }
 
+    PreFillQueue allocationOrder = generateAllocationOrder(build(bitmapAttributeBuilders));
+    current = new BitmapPreFillRunner(bitmapPool, memoryCache, allocationOrder);
+    handler.post(current);
+  }
+
+  /**
+   * Reads the sizes saved by the given {@link BitmapSizeHistogram} in the background and then
+   * pre-fills the {@link BitmapPool} with them once the main thread is first idle.
+   *
+   * <p>Unlike {@link #preFill(PreFillType.Builder...)}, the allocated
+   * {@link android.graphics.Bitmap Bitmaps} are only put in the pool, where decoders can reuse them
+   * right away, and they use at most half of the pool's maximum size.
+   */
+  public void preFillRecordedSizes(@NonNull final BitmapSizeHistogram histogram) {
+    histogram.getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final List<PreFillType.Builder> builders = histogram.read();
+        if (builders.isEmpty()) {
+          return;
+        }
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            preFillWhenIdle(builders);
+          }
+        });
+      }
+    });
+  }
+
+  @Synthetic
+  void preFillWhenIdle(List<PreFillType.Builder> builders) {
+    if (current != null) {
+      current.cancel();
+    }
+
+    PreFillType[] bitmapAttributes =
+        build(builders.toArray(new PreFillType.Builder[builders.size()]));
+    PreFillQueue allocationOrder = generateAllocationOrder(
+        (long) (bitmapPool.getMaxSize() * RECORDED_SIZES_POOL_FRACTION), bitmapAttributes);
+    final BitmapPreFillRunner runner = new BitmapPreFillRunner(bitmapPool, memoryCache,
+        allocationOrder, new BitmapPreFillRunner.Clock(), handler,
+        /*isMemoryCacheFilled=*/ false);
+    current = runner;
+    // Called on the main thread, so this is the main thread's queue.
+    Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+      @Override
+      public boolean queueIdle() {
+        runner.run();
+        return false;
+      }
+    });
+  }
+
+  @SuppressWarnings("deprecation")
+  private PreFillType[] build(PreFillType.Builder... bitmapAttributeBuilders) {
     PreFillType[] bitmapAttributes = new PreFillType[bitmapAttributeBuilders.length];
     for (int i = 0; i < bitmapAttributeBuilders.length; i++) {
       PreFillType.Builder builder = bitmapAttributeBuilders[i];
@@ -48,17 +110,18 @@ public final class BitmapPreFiller {
       }
       bitmapAttributes[i] = builder.build();
     }
-
-    PreFillQueue allocationOrder = generateAllocationOrder(bitmapAttributes);
-    current = new BitmapPreFillRunner(bitmapPool, memoryCache, allocationOrder);
-    handler.post(current);
+    return bitmapAttributes;
   }
 
   @VisibleForTesting
   PreFillQueue generateAllocationOrder(PreFillType... preFillSizes) {
-    final long maxSize =
-        memoryCache.getMaxSize() - memoryCache.getCurrentSize() + bitmapPool.getMaxSize();
+    return generateAllocationOrder(
+        memoryCache.getMaxSize() - memoryCache.getCurrentSize() + bitmapPool.getMaxSize(),
+        preFillSizes);
+  }
 
+  @VisibleForTesting
+  PreFillQueue generateAllocationOrder(long maxSize, PreFillType... preFillSizes) {
     int totalWeight = 0;
     for (PreFillType size : preFillSizes) {
       totalWeight += size.getWeight();
@@ -0,0 +1,364 @@
+package com.bumptech.glide.load.engine.prefill;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.util.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Counts how often {@link Bitmap}s of each size and {@link Bitmap.Config} are requested from an
+ * {@link LruBitmapPool} and saves the most frequently requested sizes to a file so that the pool
+ * can be pre-filled with them when the app next starts.
+ *
+ * <p>Counts are carried over between runs, but halved each time the file is read, so sizes the
+ * app stops using, for example after a layout change, drop out after a few runs.
+ *
+ * <p>Thread safe.
+ *
+ * @see com.bumptech.glide.GlideBuilder#setIsBitmapPoolPreFillEnabled(boolean)
+ */
+// Public API.
+@SuppressWarnings("WeakerAccess")
+public final class BitmapSizeHistogram implements LruBitmapPool.RequestListener {
+  private static final String TAG = "BitmapSizeHistogram";
+  // Must be incremented whenever the format changes.
+  private static final int VERSION = 1;
+  @VisibleForTesting
+  static final int MAX_SAVED_SIZES = 8;
+  @VisibleForTesting
+  static final int MAX_TRACKED_SIZES = 8 * MAX_SAVED_SIZES;
+  // The number of recorded requests after which the histogram is saved again.
+  @VisibleForTesting
+  static final int SAVE_INTERVAL = 500;
+  // Limits the sum of the weights of the saved sizes when they're pre-filled.
+  private static final int MAX_WEIGHT = 1 << 20;
+  private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+  private final File file;
+  private final Executor executor;
+  private final Object saveLock = new Object();
+  private final Runnable saveRunnable = new Runnable() {
+    @Override
+    public void run() {
+      save();
+    }
+  };
+  // Each size is packed into a long, see pack(), so recording a request doesn't allocate.
+  private final long[] sizes = new long[MAX_TRACKED_SIZES];
+  private final int[] counts = new int[MAX_TRACKED_SIZES];
+  private int sizeCount;
+  private int recordsSinceSave;
+  private boolean isRead;
+
+  /**
+   * @param file     The file the most frequently requested sizes are saved to.
+   * @param executor The executor used to save the file in the background.
+   */
+  public BitmapSizeHistogram(@NonNull File file, @NonNull Executor executor) {
+    this.file = Preconditions.checkNotNull(file);
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  @Override
+  public void onBitmapRequested(int width, int height, @NonNull Bitmap.Config config) {
+    record(width, height, config);
+  }
+
+  /**
+   * Records a request for a {@link Bitmap} with the given size and config and periodically
+   * schedules the histogram to be saved.
+   */
+  public void record(int width, int height, @NonNull Bitmap.Config config) {
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    boolean shouldSave;
+    synchronized (this) {
+      add(pack(width, height, config), 1);
+      shouldSave = ++recordsSinceSave >= SAVE_INTERVAL;
+      if (shouldSave) {
+        recordsSinceSave = 0;
+      }
+    }
+    if (shouldSave) {
+      saveAsync();
+    }
+  }
+
+  /**
+   * Schedules the histogram to be saved in the background, unless the executor has been shut down.
+   */
+  public void saveAsync() {
+    try {
+      executor.execute(saveRunnable);
+    } catch (RejectedExecutionException e) {
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Save rejected, the executor was shut down", e);
+      }
+    }
+  }
+
+  /**
+   * Synchronously writes the most frequently requested sizes to the file and returns the number of
+   * sizes written.
+   *
+   * <p>Does nothing if no sizes were recorded, so that the previous file isn't replaced if Glide is
+   * torn down before any requests are made, unless the previous file was read and none of its
+   * sizes are left, in which case the file is deleted.
+   */
+  public int save() {
+    synchronized (saveLock) {
+      return saveLocked();
+    }
+  }
+
+  private int saveLocked() {
+    long[] topSizes;
+    int[] topCounts;
+    boolean deleteIfEmpty;
+    synchronized (this) {
+      deleteIfEmpty = isRead;
+      int written = Math.min(sizeCount, MAX_SAVED_SIZES);
+      sortByCountDescending();
+      topSizes = new long[written];
+      topCounts = new int[written];
+      System.arraycopy(sizes, 0, topSizes, 0, written);
+      System.arraycopy(counts, 0, topCounts, 0, written);
+    }
+    if (topSizes.length == 0) {
+      if (deleteIfEmpty) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+      return 0;
+    }
+
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream os = null;
+    try {
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      os.writeInt(VERSION);
+      os.writeInt(topSizes.length);
+      for (int i = 0; i < topSizes.length; i++) {
+        os.writeInt(getWidth(topSizes[i]));
+        os.writeInt(getHeight(topSizes[i]));
+        os.writeUTF(getConfig(topSizes[i]).name());
+        os.writeInt(topCounts[i]);
+      }
+      os.close();
+      os = null;
+      if (!temp.renameTo(file)) {
+        throw new IOException("Failed to rename " + temp + " to " + file);
+      }
+    } catch (IOException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Failed to save bitmap sizes", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return 0;
+    } finally {
+      close(os);
+    }
+    if (Log.isLoggable(TAG, Log.DEBUG)) {
+      Log.d(TAG, "Saved " + topSizes.length + " bitmap sizes to " + file);
+    }
+    return topSizes.length;
+  }
+
+  /**
+   * Synchronously reads the sizes saved in the file, most frequently requested first, with the
+   * number of requests as their weight, or returns an empty list if there is no valid file.
+   *
+   * <p>Half of each saved count is added to the current counts, so that sizes are still known when
+   * the file is next saved, even if they aren't requested again until then.
+   */
+  @NonNull
+  public List<PreFillType.Builder> read() {
+    synchronized (this) {
+      isRead = true;
+    }
+    if (!file.exists()) {
+      return Collections.emptyList();
+    }
+    DataInputStream is = null;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (is.readInt() != VERSION) {
+        throw new IOException("Unsupported version");
+      }
+      int count = is.readInt();
+      List<PreFillType.Builder> result = new ArrayList<>(Math.min(count, MAX_SAVED_SIZES));
+      for (int i = 0; i < count; i++) {
+        int width = is.readInt();
+        int height = is.readInt();
+        Bitmap.Config config = readConfig(is.readUTF());
+        int requests = is.readInt();
+        if (config == null || width <= 0 || height <= 0 || requests <= 0) {
+          continue;
+        }
+        result.add(new PreFillType.Builder(width, height)
+            .setConfig(config)
+            .setWeight(Math.min(requests, MAX_WEIGHT)));
+        synchronized (this) {
+          add(pack(width, height, config), requests / 2);
+        }
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Ignoring invalid bitmap sizes", e);
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+      return Collections.emptyList();
+    } finally {
+      close(is);
+    }
+  }
+
+  /**
+   * Returns the number of requests recorded for the given size and config.
+   */
+  @VisibleForTesting
+  synchronized int getCount(int width, int height, @NonNull Bitmap.Config config) {
+    int index = indexOf(pack(width, height, config));
+    return index >= 0 ? counts[index] : 0;
+  }
+
+  Executor getExecutor() {
+    return executor;
+  }
+
+  public synchronized void clear() {
+    sizeCount = 0;
+    recordsSinceSave = 0;
+    isRead = false;
+  }
+
+  private void add(long size, int count) {
+    if (count <= 0) {
+      return;
+    }
+    int index = indexOf(size);
+    if (index < 0) {
+      if (sizeCount == MAX_TRACKED_SIZES) {
+        age();
+      }
+      if (sizeCount == MAX_TRACKED_SIZES) {
+        // Every tracked size is still requested more often than this one.
+        return;
+      }
+      index = sizeCount++;
+      sizes[index] = size;
+      counts[index] = 0;
+    }
+    counts[index] = (int) Math.min(Integer.MAX_VALUE, (long) counts[index] + count);
+  }
+
+  private int indexOf(long size) {
+    for (int i = 0; i < sizeCount; i++) {
+      if (sizes[i] == size) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Halves every count and forgets sizes whose count reaches zero, so that sizes that were
+   * requested a long time ago don't stay in the histogram forever.
+   */
+  private void age() {
+    int kept = 0;
+    for (int i = 0; i < sizeCount; i++) {
+      int count = counts[i] / 2;
+      if (count > 0) {
+        sizes[kept] = sizes[i];
+        counts[kept] = count;
+        kept++;
+      }
+    }
+    sizeCount = kept;
+  }
+
+  // Insertion sort, there are only a few sizes and they're usually nearly sorted already.
+  private void sortByCountDescending() {
+    for (int i = 1; i < sizeCount; i++) {
+      long size = sizes[i];
+      int count = counts[i];
+      int j = i - 1;
+      while (j >= 0 && counts[j] < count) {
+        sizes[j + 1] = sizes[j];
+        counts[j + 1] = counts[j];
+        j--;
+      }
+      sizes[j + 1] = size;
+      counts[j + 1] = count;
+    }
+  }
+
+  private static long pack(int width, int height, Bitmap.Config config) {
+    return ((long) width << 36) | ((long) (height & 0xFFFFFFF) << 8) | config.ordinal();
+  }
+
+  private static int getWidth(long size) {
+    return (int) (size >>> 36);
+  }
+
+  private static int getHeight(long size) {
+    return (int) ((size >>> 8) & 0xFFFFFFF);
+  }
+
+  private static Bitmap.Config getConfig(long size) {
+    return CONFIGS[(int) (size & 0xFF)];
+  }
+
+  @Nullable
+  private static Bitmap.Config readConfig(String name) {
+    for (Bitmap.Config config : CONFIGS) {
+      if (config.name().equals(name)) {
+        return config;
+      }
+    }
+    return null;
+  }
+
+  private static void close(@Nullable InputStream is) {
+    if (is != null) {
+      try {
+        is.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  private static void close(@Nullable OutputStream os) {
+    if (os != null) {
+      try {
+        os.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+}
@@ -5,6 +5,7 @@ import android.support.annotation.Nullable;
 import com.bumptech.glide.load.Option;
 import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.data.HttpUrlFetcher;
+import com.bumptech.glide.load.data.PartialDownloadStore;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.load.model.ModelCache;
 import com.bumptech.glide.load.model.ModelLoader;
@@ -29,13 +30,20 @@ public class HttpGlideUrlLoader implements ModelLoader<GlideUrl, InputStream> {
       "com.bumptech.glide.load.model.stream.HttpGlideUrlLoader.Timeout", 2500);
 
   @Nullable private final ModelCache<GlideUrl, GlideUrl> modelCache;
+  @Nullable private final PartialDownloadStore partialDownloadStore;
 
   public HttpGlideUrlLoader() {
     this(null);
   }
 
   public HttpGlideUrlLoader(@Nullable ModelCache<GlideUrl, GlideUrl> modelCache) {
+    this(modelCache, /*partialDownloadStore=*/ null);
+  }
+
+  public HttpGlideUrlLoader(@Nullable ModelCache<GlideUrl, GlideUrl> modelCache,
+      @Nullable PartialDownloadStore partialDownloadStore) {
     this.modelCache = modelCache;
+    this.partialDownloadStore = partialDownloadStore;
   }
 
   @Override
@@ -52,7 +60,7 @@ public class HttpGlideUrlLoader implements ModelLoader<GlideUrl, InputStream> {
       }
     }
     int timeout = options.get(TIMEOUT);
-    return new LoadData<>(url, new HttpUrlFetcher(url, timeout));
+    return new LoadData<>(url, new HttpUrlFetcher(url, timeout, partialDownloadStore));
   }
 
   @Override
@@ -62,13 +70,30 @@ public class HttpGlideUrlLoader implements ModelLoader<GlideUrl, InputStream> {
 
   /**
    * The default factory for {@link HttpGlideUrlLoader}s.
+   *
+   * <p>To resume interrupted downloads, replace the default factory with one that has a
+   * {@link PartialDownloadStore}:
+   * <pre>
+   *   registry.replace(GlideUrl.class, InputStream.class, new HttpGlideUrlLoader.Factory(
+   *       new PartialDownloadStore(new File(context.getCacheDir(),
+   *           PartialDownloadStore.DEFAULT_DIRECTORY_NAME))));
+   * </pre>
    */
   public static class Factory implements ModelLoaderFactory<GlideUrl, InputStream> {
     private final ModelCache<GlideUrl, GlideUrl> modelCache = new ModelCache<>(500);
+    @Nullable private final PartialDownloadStore partialDownloadStore;
+
+    public Factory() {
+      this(/*partialDownloadStore=*/ null);
+    }
+
+    public Factory(@Nullable PartialDownloadStore partialDownloadStore) {
+      this.partialDownloadStore = partialDownloadStore;
+    }
 
     @Override
     public ModelLoader<GlideUrl, InputStream> build(MultiModelLoaderFactory multiFactory) {
-      return new HttpGlideUrlLoader(modelCache);
+      return new HttpGlideUrlLoader(modelCache, partialDownloadStore);
     }
 
     @Override
@@ -32,9 +32,9 @@ import com.bumptech.glide.load.resource.gif.GifDrawable;
 import com.bumptech.glide.load.resource.gif.GifDrawableTransformation;
 import com.bumptech.glide.load.resource.gif.GifOptions;
 import com.bumptech.glide.signature.EmptySignature;
+import com.bumptech.glide.util.CachedHashCodeArrayMap;
 import com.bumptech.glide.util.Preconditions;
 import com.bumptech.glide.util.Util;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -106,7 +106,7 @@ public class RequestOptions implements Cloneable {
   @NonNull
   private Options options = new Options();
   @NonNull
-  private Map<Class<?>, Transformation<?>> transformations = new HashMap<>();
+  private Map<Class<?>, Transformation<?>> transformations = new CachedHashCodeArrayMap<>();
   @NonNull
   private Class<?> resourceClass = Object.class;
   private boolean isLocked;
@@ -117,6 +117,8 @@ public class RequestOptions implements Cloneable {
   private boolean onlyRetrieveFromCache;
   private boolean isScaleOnlyOrNoTransform = true;
   private boolean useAnimationPool;
+  // Only cached while locked.
+  private int hashCode;
 
   /**
    * Returns a {@link RequestOptions} object with {@link #sizeMultiplier(float)} set.
@@ -775,9 +777,10 @@ public class RequestOptions implements Cloneable {
       RequestOptions result = (RequestOptions) super.clone();
       result.options = new Options();
       result.options.putAll(options);
-      result.transformations = new HashMap<>();
+      result.transformations = new CachedHashCodeArrayMap<>();
       result.transformations.putAll(transformations);
       result.isLocked = false;
+      result.hashCode = 0;
       result.isAutoCloneEnabled = false;
       return result;
     } catch (CloneNotSupportedException e) {
@@ -1390,6 +1393,10 @@ public class RequestOptions implements Cloneable {
 
   @Override
   public int hashCode() {
+    // Locked options can't change, so their hash code only needs to be calculated once.
+    if (isLocked && hashCode != 0) {
+      return hashCode;
+    }
     int hashCode = Util.hashCode(sizeMultiplier);
     hashCode = Util.hashCode(errorId, hashCode);
     hashCode = Util.hashCode(errorPlaceholder, hashCode);
@@ -1411,6 +1418,9 @@ public class RequestOptions implements Cloneable {
     hashCode = Util.hashCode(resourceClass, hashCode);
     hashCode = Util.hashCode(signature, hashCode);
     hashCode = Util.hashCode(theme, hashCode);
+    if (isLocked) {
+      this.hashCode = hashCode;
+    }
     return hashCode;
   }
 
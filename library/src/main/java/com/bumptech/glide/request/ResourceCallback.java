@@ -7,6 +7,10 @@ import com.bumptech.glide.load.engine.Resource;
 /**
  * A callback that listens for when a resource load completes successfully or fails due to an
  * exception.
+ *
+ * <p>Results of loads that didn't complete from memory are delivered while holding the callback's
+ * own lock, so callbacks that synchronize on themselves when they cancel a load are never notified
+ * of its result afterwards.
  */
 public interface ResourceCallback {
 
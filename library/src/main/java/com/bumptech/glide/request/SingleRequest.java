@@ -24,11 +24,15 @@ import com.bumptech.glide.util.Synthetic;
 import com.bumptech.glide.util.Util;
 import com.bumptech.glide.util.pool.FactoryPools;
 import com.bumptech.glide.util.pool.StateVerifier;
+import java.util.concurrent.Executor;
 
 /**
  * A {@link Request} that loads a {@link com.bumptech.glide.load.engine.Resource} into a given
  * {@link Target}.
  *
+ * <p>Thread safe, so that requests whose results are delivered with an {@link Executor} other than
+ * the main thread can be started, completed and cleared on any thread.
+ *
  * @param <R> The type of the resource that will be transcoded from the loaded resource.
  */
 public final class SingleRequest<R> implements Request,
@@ -106,6 +110,7 @@ public final class SingleRequest<R> implements Request,
   private RequestListener<R> requestListener;
   private Engine engine;
   private TransitionFactory<? super R> animationFactory;
+  private Executor callbackExecutor;
   private Resource<R> resource;
   private Engine.LoadStatus loadStatus;
   private long startTime;
@@ -130,7 +135,8 @@ public final class SingleRequest<R> implements Request,
       RequestListener<R> requestListener,
       RequestCoordinator requestCoordinator,
       Engine engine,
-      TransitionFactory<? super R> animationFactory) {
+      TransitionFactory<? super R> animationFactory,
+      Executor callbackExecutor) {
     @SuppressWarnings("unchecked") SingleRequest<R> request =
         (SingleRequest<R>) POOL.acquire();
     if (request == null) {
@@ -150,7 +156,8 @@ public final class SingleRequest<R> implements Request,
         requestListener,
         requestCoordinator,
         engine,
-        animationFactory);
+        animationFactory,
+        callbackExecutor);
     return request;
   }
 
@@ -174,7 +181,8 @@ public final class SingleRequest<R> implements Request,
       RequestListener<R> requestListener,
       RequestCoordinator requestCoordinator,
       Engine engine,
-      TransitionFactory<? super R> animationFactory) {
+      TransitionFactory<? super R> animationFactory,
+      Executor callbackExecutor) {
     this.context = context;
     this.glideContext = glideContext;
     this.model = model;
@@ -189,6 +197,7 @@ public final class SingleRequest<R> implements Request,
     this.requestCoordinator = requestCoordinator;
     this.engine = engine;
     this.animationFactory = animationFactory;
+    this.callbackExecutor = callbackExecutor;
     status = Status.PENDING;
   }
 
@@ -198,7 +207,7 @@ public final class SingleRequest<R> implements Request,
   }
 
   @Override
-  public void recycle() {
+  public synchronized void recycle() {
     assertNotCallingCallbacks();
     context = null;
     glideContext = null;
@@ -212,6 +221,7 @@ public final class SingleRequest<R> implements Request,
     targetListener = null;
     requestCoordinator = null;
     animationFactory = null;
+    callbackExecutor = null;
     loadStatus = null;
     errorDrawable = null;
     placeholderDrawable = null;
@@ -222,7 +232,7 @@ public final class SingleRequest<R> implements Request,
   }
 
   @Override
-  public void begin() {
+  public synchronized void begin() {
     assertNotCallingCallbacks();
     stateVerifier.throwIfRecycled();
     startTime = LogTime.getLogTime();
@@ -297,7 +307,7 @@ public final class SingleRequest<R> implements Request,
    *
    * @see #clear()
    */
-  void cancel() {
+  synchronized void cancel() {
     assertNotCallingCallbacks();
     stateVerifier.throwIfRecycled();
     target.removeCallback(this);
@@ -327,8 +337,7 @@ public final class SingleRequest<R> implements Request,
    * @see #cancel()
    */
   @Override
-  public void clear() {
-    Util.assertMainThread();
+  public synchronized void clear() {
     assertNotCallingCallbacks();
     stateVerifier.throwIfRecycled();
     if (status == Status.CLEARED) {
@@ -347,12 +356,12 @@ public final class SingleRequest<R> implements Request,
   }
 
   @Override
-  public boolean isPaused() {
+  public synchronized boolean isPaused() {
     return status == Status.PAUSED;
   }
 
   @Override
-  public void pause() {
+  public synchronized void pause() {
     clear();
     status = Status.PAUSED;
   }
@@ -363,27 +372,27 @@ public final class SingleRequest<R> implements Request,
   }
 
   @Override
-  public boolean isRunning() {
+  public synchronized boolean isRunning() {
     return status == Status.RUNNING || status == Status.WAITING_FOR_SIZE;
   }
 
   @Override
-  public boolean isComplete() {
+  public synchronized boolean isComplete() {
     return status == Status.COMPLETE;
   }
 
   @Override
-  public boolean isResourceSet() {
+  public synchronized boolean isResourceSet() {
     return isComplete();
   }
 
   @Override
-  public boolean isCancelled() {
+  public synchronized boolean isCancelled() {
     return status == Status.CANCELLED || status == Status.CLEARED;
   }
 
   @Override
-  public boolean isFailed() {
+  public synchronized boolean isFailed() {
     return status == Status.FAILED;
   }
 
@@ -447,7 +456,7 @@ public final class SingleRequest<R> implements Request,
    * A callback method that should never be invoked directly.
    */
   @Override
-  public void onSizeReady(int width, int height) {
+  public synchronized void onSizeReady(int width, int height) {
     /**
      * 如果对象可回收(即当前在对象池中)，则抛出一个异常。
      */
@@ -486,7 +495,8 @@ public final class SingleRequest<R> implements Request,
         requestOptions.getUseUnlimitedSourceGeneratorsPool(),
         requestOptions.getUseAnimationPool(),
         requestOptions.getOnlyRetrieveFromCache(),
-        this);
+        this,
+        callbackExecutor);
 
     // This is a hack that's only useful for testing right now where loads complete synchronously
     // even though under any executor running on any thread but the main thread, the load would
@@ -536,7 +546,7 @@ public final class SingleRequest<R> implements Request,
    */
   @SuppressWarnings("unchecked")
   @Override
-  public void onResourceReady(Resource<?> resource, DataSource dataSource) {
+  public synchronized void onResourceReady(Resource<?> resource, DataSource dataSource) {
     stateVerifier.throwIfRecycled();
     loadStatus = null;
     if (resource == null) {
@@ -618,7 +628,7 @@ public final class SingleRequest<R> implements Request,
    * A callback method that should never be invoked directly.
    */
   @Override
-  public void onLoadFailed(GlideException e) {
+  public synchronized void onLoadFailed(GlideException e) {
     onLoadFailed(e, Log.WARN);
   }
 
@@ -652,7 +662,7 @@ public final class SingleRequest<R> implements Request,
   }
 
   @Override
-  public boolean isEquivalentTo(Request o) {
+  public synchronized boolean isEquivalentTo(Request o) {
     if (o instanceof SingleRequest) {
       SingleRequest<?> that = (SingleRequest<?>) o;
       return overrideWidth == that.overrideWidth
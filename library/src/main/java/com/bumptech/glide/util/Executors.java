@@ -0,0 +1,67 @@
+package com.bumptech.glide.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generally useful {@link Executor}s.
+ */
+public final class Executors {
+  private static final Executor MAIN_THREAD_EXECUTOR =
+      new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+          handler.post(command);
+        }
+      };
+  private static final Executor DIRECT_EXECUTOR =
+      new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+          command.run();
+        }
+      };
+
+  private Executors() {
+    // Utility class.
+  }
+
+  /**
+   * Posts executions to the main thread.
+   */
+  public static Executor mainThreadExecutor() {
+    return MAIN_THREAD_EXECUTOR;
+  }
+
+  /**
+   * Immediately calls {@link Runnable#run()} on the current thread.
+   */
+  public static Executor directExecutor() {
+    return DIRECT_EXECUTOR;
+  }
+
+  /**
+   * Shuts down the given {@link ExecutorService} and waits for the tasks already submitted to it
+   * to complete, interrupting them if they take too long.
+   */
+  public static void shutdownAndAwaitTermination(ExecutorService pool) {
+    long shutdownSeconds = 5;
+    pool.shutdown();
+    try {
+      if (!pool.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
+        pool.shutdownNow();
+        if (!pool.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
+          throw new RuntimeException("Failed to shutdown");
+        }
+      }
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+  }
+}
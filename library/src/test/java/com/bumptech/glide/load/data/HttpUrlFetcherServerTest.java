@@ -22,7 +22,9 @@ import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -41,6 +43,7 @@ public class HttpUrlFetcherServerTest {
   private static final String DEFAULT_PATH = "/fakepath";
   private static final int TIMEOUT_TIME_MS = 300;
 
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
   @Mock private DataFetcher.DataCallback<InputStream> callback;
 
   private MockWebServer mockWebServer;
@@ -241,6 +244,87 @@ public class HttpUrlFetcherServerTest {
     assertThat(mockWebServer.takeRequest().getHeader(headerField)).isEqualTo(headerValue);
   }
 
+  @Test
+  public void testResumesInterruptedDownloadWithRangeRequest() throws Exception {
+    PartialDownloadStore store = getPartialDownloadStore();
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789")
+        .setHeader("ETag", "\"v1\""));
+    HttpUrlFetcher first = getFetcher(store);
+    first.loadData(Priority.HIGH, callback);
+    verify(callback).onDataReady(streamCaptor.capture());
+    assertThat(streamCaptor.getValue().read(new byte[4])).isEqualTo(4);
+    first.cleanup();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(206).setBody("456789")
+        .setHeader("ETag", "\"v1\"").setHeader("Content-Range", "bytes 4-9/10"));
+    @SuppressWarnings("unchecked") DataFetcher.DataCallback<InputStream> secondCallback =
+        mock(DataFetcher.DataCallback.class);
+    getFetcher(store).loadData(Priority.HIGH, secondCallback);
+    verify(secondCallback).onDataReady(streamCaptor.capture());
+    TestUtil.assertStreamOf("0123456789", streamCaptor.getValue());
+
+    assertThat(mockWebServer.takeRequest().getHeader("Range")).isNull();
+    RecordedRequest resumed = mockWebServer.takeRequest();
+    assertThat(resumed.getHeader("Range")).isEqualTo("bytes=4-");
+    assertThat(resumed.getHeader("If-Range")).isEqualTo("\"v1\"");
+  }
+
+  @Test
+  public void testRetriesWithoutRangeIfRangeIsNotSatisfiable() throws Exception {
+    PartialDownloadStore store = getPartialDownloadStore();
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789")
+        .setHeader("ETag", "\"v1\""));
+    HttpUrlFetcher first = getFetcher(store);
+    first.loadData(Priority.HIGH, callback);
+    verify(callback).onDataReady(streamCaptor.capture());
+    assertThat(streamCaptor.getValue().read(new byte[4])).isEqualTo(4);
+    first.cleanup();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(416));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("abcdefghij")
+        .setHeader("ETag", "\"v2\""));
+    @SuppressWarnings("unchecked") DataFetcher.DataCallback<InputStream> secondCallback =
+        mock(DataFetcher.DataCallback.class);
+    getFetcher(store).loadData(Priority.HIGH, secondCallback);
+    verify(secondCallback).onDataReady(streamCaptor.capture());
+    TestUtil.assertStreamOf("abcdefghij", streamCaptor.getValue());
+
+    mockWebServer.takeRequest();
+    assertThat(mockWebServer.takeRequest().getHeader("Range")).isEqualTo("bytes=4-");
+    assertThat(mockWebServer.takeRequest().getHeader("Range")).isNull();
+  }
+
+  @Test
+  public void testReturnsFullResponseIfServerIgnoresRange() throws Exception {
+    PartialDownloadStore store = getPartialDownloadStore();
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789")
+        .setHeader("ETag", "\"v1\""));
+    HttpUrlFetcher first = getFetcher(store);
+    first.loadData(Priority.HIGH, callback);
+    verify(callback).onDataReady(streamCaptor.capture());
+    assertThat(streamCaptor.getValue().read(new byte[4])).isEqualTo(4);
+    first.cleanup();
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("abcdefghij")
+        .setHeader("ETag", "\"v2\""));
+    @SuppressWarnings("unchecked") DataFetcher.DataCallback<InputStream> secondCallback =
+        mock(DataFetcher.DataCallback.class);
+    getFetcher(store).loadData(Priority.HIGH, secondCallback);
+    verify(secondCallback).onDataReady(streamCaptor.capture());
+    TestUtil.assertStreamOf("abcdefghij", streamCaptor.getValue());
+  }
+
+  private PartialDownloadStore getPartialDownloadStore() {
+    return new PartialDownloadStore(temporaryFolder.getRoot(), /*maxSize=*/ 1024,
+        /*minDownloadSize=*/ 1);
+  }
+
+  private HttpUrlFetcher getFetcher(PartialDownloadStore store) {
+    URL url = mockWebServer.url(DEFAULT_PATH).url();
+    return new HttpUrlFetcher(new GlideUrl(url), TIMEOUT_TIME_MS,
+        HttpUrlFetcher.DEFAULT_CONNECTION_FACTORY, store);
+  }
+
   private HttpUrlFetcher getFetcher() {
     return getFetcher(Headers.DEFAULT);
   }
@@ -0,0 +1,235 @@
+package com.bumptech.glide.load.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.testutil.TestUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class PartialDownloadStoreTest {
+  private static final String DATA = "0123456789";
+  private static final String ETAG = "\"v1\"";
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final GlideUrl url = new GlideUrl("http://www.example.com/image.jpg");
+  private PartialDownloadStore store;
+
+  @Before
+  public void setUp() {
+    store = new PartialDownloadStore(temporaryFolder.getRoot(), /*maxSize=*/ 1024,
+        /*minDownloadSize=*/ 1);
+  }
+
+  @Test
+  public void start_withNothingSaved_hasNoRequestHeaders() {
+    PartialDownloadStore.Download download = store.start(url);
+
+    assertThat(download.getResumeOffset()).isEqualTo(0);
+    assertThat(download.getRequestHeaders()).isEmpty();
+  }
+
+  @Test
+  public void start_afterInterruptedDownload_requestsRemainingBytes() throws IOException {
+    interruptDownload(4);
+
+    PartialDownloadStore.Download download = store.start(url);
+
+    assertThat(download.getResumeOffset()).isEqualTo(4);
+    assertThat(download.getRequestHeaders()).containsEntry("Range", "bytes=4-");
+    assertThat(download.getRequestHeaders()).containsEntry("If-Range", ETAG);
+  }
+
+  @Test
+  public void onResponse_withMatchingPartialContent_returnsWholeResponse() throws IOException {
+    interruptDownload(4);
+
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(206, stream(DATA.substring(4)), 6,
+        /*contentEncoding=*/ null, ETAG, /*lastModified=*/ null, "bytes 4-9/10");
+
+    TestUtil.assertStreamOf(DATA, result);
+  }
+
+  @Test
+  public void onResponse_afterReadingWholeResponse_deletesSavedData() throws IOException {
+    interruptDownload(4);
+
+    PartialDownloadStore.Download download = store.start(url);
+    TestUtil.assertStreamOf(DATA, download.onResponse(206, stream(DATA.substring(4)), 6,
+        /*contentEncoding=*/ null, ETAG, /*lastModified=*/ null, "bytes 4-9/10"));
+    download.release();
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+  }
+
+  @Test
+  public void onResponse_afterReadingWholeResponseWithoutEnd_deletesSavedDataOnClose()
+      throws IOException {
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(200, stream(DATA), DATA.length(),
+        /*contentEncoding=*/ null, ETAG, /*lastModified=*/ null, /*contentRange=*/ null);
+    assertThat(result.read(new byte[DATA.length()])).isEqualTo(DATA.length());
+    result.close();
+    download.release();
+
+    assertThat(temporaryFolder.getRoot().list()).isEmpty();
+  }
+
+  @Test
+  public void onResponse_withBodyEndingEarly_keepsSavedData() throws IOException {
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(200, stream(DATA.substring(0, 3)), DATA.length(),
+        /*contentEncoding=*/ null, ETAG, /*lastModified=*/ null, /*contentRange=*/ null);
+    readFully(result);
+    result.close();
+    download.release();
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(3);
+  }
+
+  @Test
+  public void onResponse_withMismatchedRange_returnsNullAndDiscardsSavedData() throws IOException {
+    interruptDownload(4);
+
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(206, stream(DATA.substring(2)), 8,
+        /*contentEncoding=*/ null, ETAG, /*lastModified=*/ null, "bytes 2-9/10");
+
+    assertThat(result).isNull();
+    assertThat(download.getRequestHeaders()).isEmpty();
+  }
+
+  @Test
+  public void onResponse_withFullResponseToRangeRequest_returnsFullResponse() throws IOException {
+    interruptDownload(4);
+    String changed = "abcdefghij";
+
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(200, stream(changed), changed.length(),
+        /*contentEncoding=*/ null, "\"v2\"", /*lastModified=*/ null, /*contentRange=*/ null);
+
+    TestUtil.assertStreamOf(changed, result);
+  }
+
+  @Test
+  public void onResponse_withWeakEtagOnly_doesNotSave() throws IOException {
+    interruptDownload(4, "W/" + ETAG, /*lastModified=*/ null);
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+  }
+
+  @Test
+  public void onResponse_withLastModifiedOnly_resumesWithLastModified() throws IOException {
+    String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+    interruptDownload(4, /*etag=*/ null, lastModified);
+
+    PartialDownloadStore.Download download = store.start(url);
+
+    assertThat(download.getRequestHeaders()).containsEntry("If-Range", lastModified);
+  }
+
+  @Test
+  public void onResponse_withContentEncoding_doesNotSave() throws IOException {
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(200, stream(DATA), DATA.length(), "gzip", ETAG,
+        /*lastModified=*/ null, /*contentRange=*/ null);
+    result.read(new byte[4]);
+    result.close();
+    download.release();
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+  }
+
+  @Test
+  public void onResponse_belowMinimumSize_doesNotSave() throws IOException {
+    store = new PartialDownloadStore(temporaryFolder.getRoot(), /*maxSize=*/ 1024,
+        /*minDownloadSize=*/ DATA.length() + 1);
+    interruptDownload(4);
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+  }
+
+  @Test
+  public void start_whileSameUrlIsInProgress_doesNotResume() throws IOException {
+    interruptDownload(4);
+    PartialDownloadStore.Download first = store.start(url);
+
+    PartialDownloadStore.Download second = store.start(url);
+
+    assertThat(first.getResumeOffset()).isEqualTo(4);
+    assertThat(second.getResumeOffset()).isEqualTo(0);
+  }
+
+  @Test
+  public void onResponse_overMaxSize_deletesOldestSavedDownload() throws IOException {
+    store = new PartialDownloadStore(temporaryFolder.getRoot(), /*maxSize=*/ 110,
+        /*minDownloadSize=*/ 1);
+    GlideUrl otherUrl = new GlideUrl("http://www.example.com/other.jpg");
+    interruptDownload(url, 4, ETAG, /*lastModified=*/ null);
+
+    PartialDownloadStore.Download download = store.start(otherUrl);
+    InputStream result = download.onResponse(200, stream(DATA), 100, /*contentEncoding=*/ null,
+        ETAG, /*lastModified=*/ null, /*contentRange=*/ null);
+    result.read(new byte[4]);
+    result.close();
+    download.release();
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+    assertThat(store.start(otherUrl).getResumeOffset()).isEqualTo(4);
+  }
+
+  @Test
+  public void clear_deletesSavedDownloads() throws IOException {
+    interruptDownload(4);
+
+    store.clear();
+
+    assertThat(store.start(url).getResumeOffset()).isEqualTo(0);
+  }
+
+  private void interruptDownload(int bytesRead) throws IOException {
+    interruptDownload(bytesRead, ETAG, /*lastModified=*/ null);
+  }
+
+  private void interruptDownload(int bytesRead, String etag, String lastModified)
+      throws IOException {
+    interruptDownload(url, bytesRead, etag, lastModified);
+  }
+
+  private void interruptDownload(GlideUrl url, int bytesRead, String etag, String lastModified)
+      throws IOException {
+    PartialDownloadStore.Download download = store.start(url);
+    InputStream result = download.onResponse(200, stream(DATA), DATA.length(),
+        /*contentEncoding=*/ null, etag, lastModified, /*contentRange=*/ null);
+    assertThat(result.read(new byte[bytesRead])).isEqualTo(bytesRead);
+    result.close();
+    download.release();
+  }
+
+  private static InputStream stream(String data) {
+    return new ByteArrayInputStream(data.getBytes());
+  }
+
+  private static void readFully(InputStream is) throws IOException {
+    byte[] buffer = new byte[16];
+    try {
+      while (is.read(buffer) != -1) {
+        // Keep reading.
+      }
+    } catch (IOException e) {
+      // Expected when the body ends before the content length.
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruArrayPool;
+import com.bumptech.glide.signature.ObjectKey;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class CompressedBitmapCacheTest {
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private BitmapPool bitmapPool;
+  private LruArrayPool arrayPool;
+  private ResourceRecycler resourceRecycler;
+  private Resources resources;
+  private CompressedBitmapCache cache;
+
+  @Before
+  public void setUp() {
+    bitmapPool = mock(BitmapPool.class);
+    when(bitmapPool.getDirty(anyInt(), anyInt(), any(Bitmap.Config.class)))
+        .thenAnswer(new Answer<Bitmap>() {
+          @Override
+          public Bitmap answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            return Bitmap.createBitmap((Integer) args[0], (Integer) args[1],
+                (Bitmap.Config) args[2]);
+          }
+        });
+    arrayPool = new LruArrayPool();
+    resourceRecycler = mock(ResourceRecycler.class);
+    resources = RuntimeEnvironment.application.getResources();
+    cache = new CompressedBitmapCache(bitmapPool, arrayPool, DIRECT_EXECUTOR, 1024 * 1024);
+  }
+
+  @Test
+  public void offer_withBitmap_compressesAndRecyclesResource() {
+    Resource<?> resource = mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+
+    assertThat(cache.offer(new ObjectKey("key"), resource, resourceRecycler)).isTrue();
+
+    assertThat(cache.getCurrentSize()).isGreaterThan(0L);
+    verify(resourceRecycler).recycle(resource);
+  }
+
+  @Test
+  public void offer_withBitmap_returnsBuffersToArrayPool() {
+    cache.offer(new ObjectKey("key"),
+        mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)), resourceRecycler);
+
+    assertThat(arrayPool.getCurrentSize()).isGreaterThan(0);
+  }
+
+  @Test
+  public void contains_afterOffer_returnsTrue() {
+    Key key = new ObjectKey("key");
+    cache.offer(key, mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)),
+        resourceRecycler);
+
+    assertThat(cache.contains(key)).isTrue();
+    assertThat(cache.contains(new ObjectKey("other"))).isFalse();
+  }
+
+  @Test
+  public void offer_withNonBitmapResource_returnsFalse() {
+    Resource<?> resource = mockResource(new Object());
+
+    assertThat(cache.offer(new ObjectKey("key"), resource, resourceRecycler)).isFalse();
+    verify(resourceRecycler, never()).recycle(resource);
+  }
+
+  @Test
+  public void offer_withRecycledBitmap_returnsFalse() {
+    Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    bitmap.recycle();
+
+    assertThat(cache.offer(new ObjectKey("key"), mockResource(bitmap), resourceRecycler)).isFalse();
+  }
+
+  @Test
+  public void remove_afterOfferWithBitmap_returnsBitmapWithSameSizeAndConfig() {
+    Key key = new ObjectKey("key");
+    cache.offer(key, mockResource(Bitmap.createBitmap(100, 50, Bitmap.Config.RGB_565)),
+        resourceRecycler);
+
+    Resource<?> restored = cache.remove(resources, key);
+
+    Bitmap bitmap = (Bitmap) restored.get();
+    assertThat(bitmap.getWidth()).isEqualTo(100);
+    assertThat(bitmap.getHeight()).isEqualTo(50);
+    assertThat(bitmap.getConfig()).isEqualTo(Bitmap.Config.RGB_565);
+    assertThat(cache.getCurrentSize()).isEqualTo(0L);
+  }
+
+  @Test
+  public void remove_afterOfferWithBitmapDrawable_returnsBitmapDrawable() {
+    Key key = new ObjectKey("key");
+    Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    cache.offer(key, mockResource(new BitmapDrawable(resources, bitmap)), resourceRecycler);
+
+    assertThat(cache.remove(resources, key).get()).isInstanceOf(BitmapDrawable.class);
+  }
+
+  @Test
+  public void remove_removesEntry() {
+    Key key = new ObjectKey("key");
+    cache.offer(key, mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)),
+        resourceRecycler);
+    cache.remove(resources, key);
+
+    assertThat(cache.remove(resources, key)).isNull();
+  }
+
+  @Test
+  public void remove_withMissingKey_returnsNull() {
+    assertThat(cache.remove(resources, new ObjectKey("key"))).isNull();
+  }
+
+  @Test
+  public void offer_overMaxSize_evictsLeastRecentlyUsedEntries() {
+    cache = new CompressedBitmapCache(bitmapPool, arrayPool, DIRECT_EXECUTOR, 1);
+    Key key = new ObjectKey("key");
+    cache.offer(key, mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)),
+        resourceRecycler);
+
+    assertThat(cache.getCurrentSize()).isAtMost(1L);
+    assertThat(cache.remove(resources, key)).isNull();
+  }
+
+  @Test
+  public void clearMemory_removesAllEntries() {
+    Key key = new ObjectKey("key");
+    cache.offer(key, mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)),
+        resourceRecycler);
+
+    cache.clearMemory();
+
+    assertThat(cache.getCurrentSize()).isEqualTo(0L);
+    assertThat(cache.remove(resources, key)).isNull();
+  }
+
+  @Test
+  public void trimMemory_withBackgroundLevel_removesAllEntries() {
+    cache.offer(new ObjectKey("key"),
+        mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)), resourceRecycler);
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+    assertThat(cache.getCurrentSize()).isEqualTo(0L);
+  }
+
+  @Test
+  public void offer_scheduledBeforeClearMemory_isNotStored() {
+    final Runnable[] pending = new Runnable[1];
+    cache = new CompressedBitmapCache(bitmapPool, arrayPool, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        pending[0] = command;
+      }
+    }, 1024 * 1024);
+    Key key = new ObjectKey("key");
+    Resource<?> resource = mockResource(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+    cache.offer(key, resource, resourceRecycler);
+
+    cache.clearMemory();
+    pending[0].run();
+
+    assertThat(cache.remove(resources, key)).isNull();
+    verify(resourceRecycler).recycle(resource);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Resource<?> mockResource(Object value) {
+    Resource<Object> resource = mock(Resource.class);
+    when(resource.get()).thenReturn(value);
+    return resource;
+  }
+}
@@ -0,0 +1,71 @@
+package com.bumptech.glide.load.engine;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceEncoder;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.signature.ObjectKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class DecodeJobTest {
+  private final Key key = new ObjectKey("key");
+  private DecodeJob.DiskCacheProvider diskCacheProvider;
+  private DiskCache diskCache;
+  private DiskCache resourceDiskCache;
+  private ResourceEncoder<Object> encoder;
+  private Resource<Object> resource;
+  private DecodeJob.DeferredEncodeManager<Object> deferredEncodeManager;
+
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setUp() {
+    diskCache = mock(DiskCache.class);
+    resourceDiskCache = mock(DiskCache.class);
+    diskCacheProvider = mock(DecodeJob.DiskCacheProvider.class);
+    when(diskCacheProvider.getDiskCache()).thenReturn(diskCache);
+    when(diskCacheProvider.getResourceDiskCache()).thenReturn(resourceDiskCache);
+    encoder = mock(ResourceEncoder.class);
+    resource = mock(Resource.class);
+    deferredEncodeManager = new DecodeJob.DeferredEncodeManager<>();
+  }
+
+  @Test
+  public void encode_withSourceResource_writesToDataDiskCache() {
+    deferredEncodeManager.init(
+        key, encoder, LockedResource.obtain(resource), /*isResource=*/ false);
+
+    encode();
+
+    verify(diskCache).put(eq(key), any(DiskCache.Writer.class));
+    verify(resourceDiskCache, never()).put(any(Key.class), any(DiskCache.Writer.class));
+  }
+
+  @Test
+  public void encode_withTransformedResource_writesToResourceDiskCache() {
+    deferredEncodeManager.init(
+        key, encoder, LockedResource.obtain(resource), /*isResource=*/ true);
+
+    encode();
+
+    verify(resourceDiskCache).put(eq(key), any(DiskCache.Writer.class));
+    verify(diskCache, never()).put(any(Key.class), any(DiskCache.Writer.class));
+  }
+
+  private void encode() {
+    deferredEncodeManager.encode(
+        diskCacheProvider, new Options(), new DiskCacheAdmission(null, null));
+  }
+}
@@ -6,6 +6,7 @@ import static com.bumptech.glide.tests.Util.mockResource;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doAnswer;
@@ -16,15 +17,16 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import android.os.Handler;
 import android.support.v4.util.Pools;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.engine.executor.GlideExecutor;
 import com.bumptech.glide.load.engine.executor.MockGlideExecutor;
 import com.bumptech.glide.request.ResourceCallback;
+import com.bumptech.glide.util.Executors;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -32,7 +34,6 @@ import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
-import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLooper;
 
@@ -50,17 +51,28 @@ public class EngineJobTest {
   public void testOnResourceReadyPassedToCallbacks() throws Exception {
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     ShadowLooper.runUiThreadTasks();
     verify(harness.cb).onResourceReady(eq(harness.engineResource), eq(harness.dataSource));
   }
 
+  @Test
+  public void testOnResourceReady_recordsLoadCostOnEngineResource() {
+    EngineJob<Object> job = harness.getJob();
+    job.start(harness.decodeJob);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    ShadowLooper.runUiThreadTasks();
+
+    verify(harness.engineResource).setLoadCost(harness.dataSource, harness.loadTimeMillis);
+  }
+
   @Test
   public void testListenerNotifiedJobCompleteOnOnResourceReady() {
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     ShadowLooper.runUiThreadTasks();
 
@@ -72,7 +84,7 @@ public class EngineJobTest {
   public void testNotifiesAllCallbacksOnReady() {
     MultiCbHarness harness = new MultiCbHarness();
     harness.job.start(harness.decodeJob);
-    harness.job.onResourceReady(harness.resource, harness.dataSource);
+    harness.job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
     for (ResourceCallback cb : harness.cbs) {
       verify(cb).onResourceReady(eq(harness.engineResource), eq(harness.dataSource));
     }
@@ -93,7 +105,7 @@ public class EngineJobTest {
   public void testAcquiresResourceOncePerCallback() {
     MultiCbHarness harness = new MultiCbHarness();
     harness.job.start(harness.decodeJob);
-    harness.job.onResourceReady(harness.resource, harness.dataSource);
+    harness.job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     // Acquired once and then released while notifying.
     InOrder order = inOrder(harness.engineResource);
@@ -117,7 +129,7 @@ public class EngineJobTest {
     harness.isCacheable = true;
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     ShadowLooper.runUiThreadTasks();
     verify(harness.factory).build(anyResource(), eq(harness.isCacheable));
@@ -128,7 +140,7 @@ public class EngineJobTest {
     harness.isCacheable = false;
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     ShadowLooper.runUiThreadTasks();
     verify(harness.factory).build(anyResource(), eq(harness.isCacheable));
@@ -149,7 +161,7 @@ public class EngineJobTest {
     job.start(harness.decodeJob);
     job.cancel();
 
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     ShadowLooper.runUiThreadTasks();
     verify(harness.cb, never()).onResourceReady(anyResource(), isADataSource());
@@ -181,7 +193,7 @@ public class EngineJobTest {
   @Test
   public void removingSomeCallbacksDoesNotCancelRunner() {
     EngineJob<Object> job = harness.getJob();
-    job.addCallback(mock(ResourceCallback.class));
+    job.addCallback(mock(ResourceCallback.class), Executors.directExecutor());
     job.removeCallback(harness.cb);
 
     assertFalse(job.isCancelled());
@@ -191,7 +203,7 @@ public class EngineJobTest {
   public void testResourceIsAcquiredOncePerConsumerAndOnceForCache() {
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     // Once while notifying and once for single callback.
     verify(harness.engineResource, times(2)).acquire();
@@ -201,7 +213,7 @@ public class EngineJobTest {
   public void testDoesNotNotifyCancelledIfCompletes() {
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     verify(harness.listener, never()).onEngineJobCancelled(eq(job), eq(harness.key));
   }
@@ -228,25 +240,141 @@ public class EngineJobTest {
   }
 
   @Test
-  public void testReleasesResourceIfCancelledOnReady() {
-    ShadowLooper shadowLooper = Shadows.shadowOf(harness.mainHandler.getLooper());
-    shadowLooper.pause();
+  public void testReleasesResourceIfCancelledBeforeReady() {
+    EngineJob<Object> job = harness.getJob();
+    job.start(harness.decodeJob);
+    job.cancel();
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    verify(harness.resource).recycle();
+  }
 
+  @Test
+  public void cancel_beforeResultIsReceived_doesNotReleaseJob() {
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
     job.cancel();
-    shadowLooper.runOneTask();
 
+    verify(harness.decodeJob, never()).release(anyBoolean());
+
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    verify(harness.decodeJob).release(false /*isRemovedFromQueue*/);
+  }
+
+  @Test
+  public void cancel_withResourceReceivedWhileCancelling_releasesJobAfterCancelCompletes() {
+    final EngineJob<Object> job = harness.getJob();
+    job.start(harness.decodeJob);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+        job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+        return null;
+      }
+    }).when(harness.decodeJob).cancel();
+
+    job.cancel();
+
+    InOrder order = inOrder(harness.listener, harness.decodeJob);
+    order.verify(harness.listener).onEngineJobCancelled(eq(job), eq(harness.key));
+    order.verify(harness.decodeJob).release(false /*isRemovedFromQueue*/);
     verify(harness.resource).recycle();
   }
 
+  @Test
+  public void cancel_withExceptionReceivedWhileCancelling_releasesJobAfterCancelCompletes() {
+    final EngineJob<Object> job = harness.getJob();
+    job.start(harness.decodeJob);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+        job.onLoadFailed(new GlideException("test"));
+        return null;
+      }
+    }).when(harness.decodeJob).cancel();
+
+    job.cancel();
+
+    InOrder order = inOrder(harness.listener, harness.decodeJob);
+    order.verify(harness.listener).onEngineJobCancelled(eq(job), eq(harness.key));
+    order.verify(harness.decodeJob).release(false /*isRemovedFromQueue*/);
+    verify(harness.cb, never()).onLoadFailed(any(GlideException.class));
+  }
+
+  @Test
+  public void addCallback_afterCancel_returnsFalse() {
+    EngineJob<Object> job = harness.getJob();
+    job.start(harness.decodeJob);
+    job.cancel();
+
+    assertFalse(job.addCallback(mock(ResourceCallback.class), Executors.directExecutor()));
+  }
+
+  @Test
+  public void onResourceReady_notifiesCallbackWithItsExecutor() {
+    QueueExecutor executor = new QueueExecutor();
+    ResourceCallback cb = mock(ResourceCallback.class);
+    EngineJob<Object> job = harness.getJob();
+    job.addCallback(cb, executor);
+    job.start(harness.decodeJob);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    verify(cb, never()).onResourceReady(anyResource(), isADataSource());
+    executor.runAll();
+    verify(cb).onResourceReady(eq(harness.engineResource), eq(harness.dataSource));
+  }
+
+  @Test
+  public void onResourceReady_releasesResourceOnlyOnceAllCallbacksAreNotified() {
+    QueueExecutor executor = new QueueExecutor();
+    EngineJob<Object> job = harness.getJob();
+    job.addCallback(mock(ResourceCallback.class), executor);
+    job.start(harness.decodeJob);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    verify(harness.engineResource, never()).release();
+    executor.runAll();
+    verify(harness.engineResource).release();
+  }
+
+  @Test
+  public void removeCallback_beforeExecutorRuns_preventsCallbackFromBeingCalled() {
+    QueueExecutor executor = new QueueExecutor();
+    ResourceCallback cb = mock(ResourceCallback.class);
+    EngineJob<Object> job = harness.getJob();
+    job.addCallback(cb, executor);
+    job.start(harness.decodeJob);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+    job.removeCallback(cb);
+    executor.runAll();
+
+    verify(cb, never()).onResourceReady(anyResource(), isADataSource());
+    // Once for notifying and once for the callback that's still added.
+    verify(harness.engineResource, times(2)).acquire();
+  }
+
+  @Test
+  public void onLoadFailed_notifiesCallbackWithItsExecutor() {
+    QueueExecutor executor = new QueueExecutor();
+    ResourceCallback cb = mock(ResourceCallback.class);
+    GlideException exception = new GlideException("test");
+    EngineJob<Object> job = harness.getJob();
+    job.addCallback(cb, executor);
+    job.start(harness.decodeJob);
+    job.onLoadFailed(exception);
+
+    verify(cb, never()).onLoadFailed(any(GlideException.class));
+    executor.runAll();
+    verify(cb).onLoadFailed(eq(exception));
+  }
+
   @Test
   public void testDoesNotAcquireOnceForMemoryCacheIfNotCacheable() {
     harness.isCacheable = false;
     EngineJob<Object> job = harness.getJob();
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     verify(harness.engineResource, times(2)).acquire();
   }
@@ -260,18 +388,40 @@ public class EngineJobTest {
     doAnswer(new Answer<Void>() {
       @Override
       public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
-        job.addCallback(newCallback);
+        job.addCallback(newCallback, Executors.directExecutor());
         return null;
       }
     }).when(existingCallback).onResourceReady(anyResource(), isADataSource());
 
-    job.addCallback(existingCallback);
+    job.addCallback(existingCallback, Executors.directExecutor());
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     verify(newCallback).onResourceReady(eq(harness.engineResource), eq(harness.dataSource));
   }
 
+  @Test
+  public void testAcquiresResourceForCallbackAddedDuringOnResourceReady() {
+    final EngineJob<Object> job = harness.getJob();
+    final ResourceCallback existingCallback = mock(ResourceCallback.class);
+    final ResourceCallback newCallback = mock(ResourceCallback.class);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+        job.addCallback(newCallback, Executors.directExecutor());
+        return null;
+      }
+    }).when(existingCallback).onResourceReady(anyResource(), isADataSource());
+
+    job.addCallback(existingCallback, Executors.directExecutor());
+    job.start(harness.decodeJob);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
+
+    // Once for notifying and once for each of the harness', the existing and the new callbacks.
+    verify(harness.engineResource, times(4)).acquire();
+  }
+
   @Test
   public void testNotifiesNewCallbackOfExceptionIfCallbackIsAddedDuringOnException() {
     harness = new EngineJobHarness();
@@ -282,13 +432,13 @@ public class EngineJobTest {
     doAnswer(new Answer<Void>() {
       @Override
       public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
-        job.addCallback(newCallback);
+        job.addCallback(newCallback, Executors.directExecutor());
         return null;
       }
     }).when(existingCallback).onLoadFailed(any(GlideException.class));
 
     GlideException exception = new GlideException("test");
-    job.addCallback(existingCallback);
+    job.addCallback(existingCallback, Executors.directExecutor());
     job.start(harness.decodeJob);
     job.onLoadFailed(exception);
 
@@ -308,9 +458,9 @@ public class EngineJobTest {
       }
     }).when(cb).onResourceReady(anyResource(), isADataSource());
 
-    job.addCallback(cb);
+    job.addCallback(cb, Executors.directExecutor());
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     verify(cb, times(1)).onResourceReady(anyResource(), isADataSource());
   }
@@ -330,7 +480,7 @@ public class EngineJobTest {
     }).when(cb).onLoadFailed(any(GlideException.class));
 
     GlideException exception = new GlideException("test");
-    job.addCallback(cb);
+    job.addCallback(cb, Executors.directExecutor());
     job.start(harness.decodeJob);
     job.onLoadFailed(exception);
 
@@ -351,9 +501,9 @@ public class EngineJobTest {
       }
     }).when(harness.cb).onResourceReady(anyResource(), isADataSource());
 
-    job.addCallback(notYetCalled);
+    job.addCallback(notYetCalled, Executors.directExecutor());
     job.start(harness.decodeJob);
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     verify(notYetCalled, never()).onResourceReady(anyResource(), isADataSource());
   }
@@ -372,10 +522,10 @@ public class EngineJobTest {
       }
     }).when(harness.cb).onResourceReady(anyResource(), isADataSource());
 
-    job.addCallback(notYetCalled);
+    job.addCallback(notYetCalled, Executors.directExecutor());
     job.start(harness.decodeJob);
 
-    job.onResourceReady(harness.resource, harness.dataSource);
+    job.onResourceReady(harness.resource, harness.dataSource, harness.loadTimeMillis);
 
     // Once for notifying, once for called.
     verify(harness.engineResource, times(2)).acquire();
@@ -396,8 +546,8 @@ public class EngineJobTest {
       }
     }).when(called).onLoadFailed(any(GlideException.class));
 
-    job.addCallback(called);
-    job.addCallback(notYetCalled);
+    job.addCallback(called, Executors.directExecutor());
+    job.addCallback(notYetCalled, Executors.directExecutor());
     job.start(harness.decodeJob);
     job.onLoadFailed(new GlideException("test"));
 
@@ -454,6 +604,22 @@ public class EngineJobTest {
     verify(harness.decodeJob).run();
   }
 
+  private static final class QueueExecutor implements Executor {
+    private final List<Runnable> queued = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      queued.add(command);
+    }
+
+    void runAll() {
+      for (Runnable runnable : queued) {
+        runnable.run();
+      }
+      queued.clear();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private static class MultiCbHarness {
     final Key key = mock(Key.class);
@@ -475,6 +641,7 @@ public class EngineJobTest {
     final Pools.Pool<EngineJob<?>> pool = new Pools.SimplePool<>(1);
     final DecodeJob<Object> decodeJob = mock(DecodeJob.class);
     final DataSource dataSource = DataSource.LOCAL;
+    final long loadTimeMillis = 100;
 
     public MultiCbHarness() {
       when(factory.build(eq(resource), eq(isCacheable))).thenReturn(engineResource);
@@ -497,7 +664,7 @@ public class EngineJobTest {
         cbs.add(mock(ResourceCallback.class));
       }
       for (ResourceCallback cb : cbs) {
-        job.addCallback(cb);
+        job.addCallback(cb, Executors.directExecutor());
       }
     }
   }
@@ -506,7 +673,6 @@ public class EngineJobTest {
   private static class EngineJobHarness {
     final EngineJob.EngineResourceFactory factory = mock(EngineJob.EngineResourceFactory.class);
     final Key key = mock(Key.class);
-    final Handler mainHandler = new Handler();
     final ResourceCallback cb = mock(ResourceCallback.class);
     final Resource<Object> resource = mockResource();
     final EngineResource<Object> engineResource = mock(EngineResource.class);
@@ -522,6 +688,7 @@ public class EngineJobTest {
     final DecodeJob<Object> decodeJob = mock(DecodeJob.class);
     final Pools.Pool<EngineJob<?>> pool = new Pools.SimplePool<>(1);
     final DataSource dataSource = DataSource.DATA_DISK_CACHE;
+    final long loadTimeMillis = 100;
 
     EngineJob<Object> getJob() {
       when(factory.build(eq(resource), eq(isCacheable))).thenReturn(engineResource);
@@ -540,7 +707,7 @@ public class EngineJobTest {
           useUnlimitedSourceGeneratorPool,
           useAnimationPool,
           onlyRetrieveFromCache);
-      result.addCallback(cb);
+      result.addCallback(cb, Executors.directExecutor());
       return result;
     }
   }
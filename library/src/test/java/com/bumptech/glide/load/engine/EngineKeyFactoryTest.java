@@ -0,0 +1,111 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.util.CachedHashCodeArrayMap;
+import java.security.MessageDigest;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EngineKeyFactoryTest {
+  private EngineKeyFactory factory;
+  private Map<Class<?>, Transformation<?>> transformations;
+  private Options options;
+  private Key signature;
+
+  @Before
+  public void setUp() {
+    factory = new EngineKeyFactory();
+    transformations = new CachedHashCodeArrayMap<>();
+    transformations.put(Object.class, new FakeTransformation());
+    options = new Options().set(Option.memory("option", Boolean.FALSE), Boolean.TRUE);
+    signature = new ObjectKey("signature");
+  }
+
+  @Test
+  public void obtainProbe_isEqualToBuiltKey() {
+    EngineKey built = buildKey("model");
+    EngineKey probe = obtainProbe("model");
+
+    assertThat(probe).isNotSameAs(built);
+    assertThat(probe).isEqualTo(built);
+    assertThat(built).isEqualTo(probe);
+    assertThat(probe.hashCode()).isEqualTo(built.hashCode());
+  }
+
+  @Test
+  public void obtainProbe_afterRelease_reusesProbe() {
+    EngineKey first = obtainProbe("model");
+    factory.releaseProbe(first);
+
+    EngineKey second = obtainProbe("other");
+
+    assertThat(second).isSameAs(first);
+    assertThat(second).isEqualTo(buildKey("other"));
+    assertThat(second).isNotEqualTo(buildKey("model"));
+  }
+
+  @Test
+  public void obtainProbe_whileProbeIsInUse_returnsNewProbe() {
+    EngineKey first = obtainProbe("model");
+    EngineKey second = obtainProbe("other");
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(first).isEqualTo(buildKey("model"));
+  }
+
+  @Test
+  public void releaseProbe_clearsProbe() {
+    EngineKey probe = obtainProbe("retainedModel");
+    factory.releaseProbe(probe);
+
+    assertThat(probe.hashCode()).isEqualTo(0);
+    assertThat(probe.toString()).doesNotContain("retainedModel");
+  }
+
+  private EngineKey buildKey(Object model) {
+    return factory.buildKey(model, signature, 100, 100, transformations, Object.class,
+        Object.class, options);
+  }
+
+  private EngineKey obtainProbe(Object model) {
+    return factory.obtainProbe(model, signature, 100, 100, transformations, Object.class,
+        Object.class, options);
+  }
+
+  private static final class FakeTransformation implements Transformation<Object> {
+
+    @NonNull
+    @Override
+    public Resource<Object> transform(@NonNull Context context, @NonNull Resource<Object> resource,
+        int outWidth, int outHeight) {
+      return resource;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof FakeTransformation;
+    }
+
+    @Override
+    public int hashCode() {
+      return FakeTransformation.class.hashCode();
+    }
+
+    @Override
+    public void updateDiskCacheKey(@NonNull MessageDigest messageDigest) {
+      messageDigest.update("FakeTransformation".getBytes(CHARSET));
+    }
+  }
+}
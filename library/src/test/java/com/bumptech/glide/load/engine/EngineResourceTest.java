@@ -3,15 +3,17 @@ package com.bumptech.glide.load.engine;
 import static com.bumptech.glide.tests.Util.mockResource;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.Key;
+import com.bumptech.glide.tests.BackgroundUtil;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -100,38 +102,56 @@ public class EngineResourceTest {
   }
 
   @Test
-  public void testThrowsIfAcquiredOnBackgroundThread() throws InterruptedException {
-    Thread otherThread = new Thread(new Runnable() {
+  public void testCanAcquireOnBackgroundThread() throws InterruptedException {
+    BackgroundUtil.testInBackground(new BackgroundUtil.BackgroundTester() {
       @Override
-      public void run() {
-        try {
-          engineResource.acquire();
-        } catch (IllegalThreadStateException e) {
-          return;
-        }
-        fail("Failed to receive expected IllegalThreadStateException");
+      public void runTest() {
+        engineResource.acquire();
       }
     });
-    otherThread.start();
-    otherThread.join();
+    engineResource.release();
+
+    verify(listener).onResourceReleased(cacheKey, engineResource);
   }
 
   @Test
-  public void testThrowsIfReleasedOnBackgroundThread() throws InterruptedException {
+  public void testCanReleaseOnBackgroundThread() throws InterruptedException {
     engineResource.acquire();
-    Thread otherThread = new Thread(new Runnable() {
+    BackgroundUtil.testInBackground(new BackgroundUtil.BackgroundTester() {
       @Override
-      public void run() {
-        try {
-          engineResource.release();
-        } catch (IllegalThreadStateException e) {
-          return;
-        }
-        fail("Failed to receive expected IllegalThreadStateException");
+      public void runTest() {
+        engineResource.release();
       }
     });
-    otherThread.start();
-    otherThread.join();
+
+    verify(listener).onResourceReleased(cacheKey, engineResource);
+  }
+
+  @Test
+  public void testAcquiresAndReleasesConcurrently() throws InterruptedException {
+    final int threadCount = 4;
+    final int iterations = 1000;
+    engineResource.acquire();
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < iterations; j++) {
+            engineResource.acquire();
+            engineResource.release();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    verify(listener, never()).onResourceReleased(any(Key.class), any(EngineResource.class));
+
+    engineResource.release();
+    verify(listener).onResourceReleased(cacheKey, engineResource);
   }
 
   @Test(expected = IllegalStateException.class)
@@ -166,4 +186,15 @@ public class EngineResourceTest {
     verify(listener, never()).onResourceReleased(any(Key.class), any(EngineResource.class));
     verify(resource, never()).recycle();
   }
+
+  @Test
+  public void testCanSetAndGetLoadCost() {
+    assertNull(engineResource.getLoadDataSource());
+    assertEquals(0, engineResource.getLoadTimeMillis());
+
+    engineResource.setLoadCost(DataSource.REMOTE, 250);
+
+    assertEquals(DataSource.REMOTE, engineResource.getLoadDataSource());
+    assertEquals(250, engineResource.getLoadTimeMillis());
+  }
 }
@@ -0,0 +1,139 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.bumptech.glide.load.engine.EngineStatsListener.Phase;
+import com.bumptech.glide.load.engine.EngineStatsListener.Tier;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EngineStatsTest {
+  private EngineStats stats;
+
+  @Before
+  public void setUp() {
+    stats = new EngineStats();
+  }
+
+  @Test
+  public void onTierHit_incrementsHitsAndBytesForTier() {
+    stats.onTierHit(Tier.MEMORY_CACHE, 100);
+    stats.onTierHit(Tier.MEMORY_CACHE, 50);
+
+    assertThat(stats.getHitCount(Tier.MEMORY_CACHE)).isEqualTo(2);
+    assertThat(stats.getBytes(Tier.MEMORY_CACHE)).isEqualTo(150);
+    assertThat(stats.getHitCount(Tier.ACTIVE_RESOURCES)).isEqualTo(0);
+    assertThat(stats.getBytes(Tier.SOURCE)).isEqualTo(0);
+  }
+
+  @Test
+  public void onTierMiss_incrementsMissesForTier() {
+    stats.onTierMiss(Tier.DATA_DISK_CACHE);
+
+    assertThat(stats.getMissCount(Tier.DATA_DISK_CACHE)).isEqualTo(1);
+    assertThat(stats.getMissCount(Tier.RESOURCE_DISK_CACHE)).isEqualTo(0);
+  }
+
+  @Test
+  public void getHitRate_returnsFractionOfHits() {
+    assertThat(stats.getHitRate(Tier.SOURCE)).isEqualTo(0d);
+
+    stats.onTierHit(Tier.SOURCE, 1);
+    stats.onTierMiss(Tier.SOURCE);
+    stats.onTierMiss(Tier.SOURCE);
+    stats.onTierMiss(Tier.SOURCE);
+
+    assertThat(stats.getHitRate(Tier.SOURCE)).isEqualTo(0.25d);
+  }
+
+  @Test
+  public void onPhaseCompleted_recordsCountAndAverage() {
+    stats.onPhaseCompleted(Phase.DECODE, 10);
+    stats.onPhaseCompleted(Phase.DECODE, 20);
+
+    assertThat(stats.getCount(Phase.DECODE)).isEqualTo(2);
+    assertThat(stats.getAverageMillis(Phase.DECODE)).isWithin(0.001).of(15);
+    assertThat(stats.getCount(Phase.ENCODE)).isEqualTo(0);
+    assertThat(stats.getAverageMillis(Phase.ENCODE)).isEqualTo(0d);
+  }
+
+  @Test
+  public void onPhaseCompleted_recordsTimeInPowerOfTwoBuckets() {
+    stats.onPhaseCompleted(Phase.FETCH, 0.5);
+    stats.onPhaseCompleted(Phase.FETCH, 1);
+    stats.onPhaseCompleted(Phase.FETCH, 3.9);
+    stats.onPhaseCompleted(Phase.FETCH, 4);
+    stats.onPhaseCompleted(Phase.FETCH, 1_000_000);
+
+    assertThat(stats.getBucketCount(Phase.FETCH, 0)).isEqualTo(1);
+    assertThat(stats.getBucketCount(Phase.FETCH, 1)).isEqualTo(1);
+    assertThat(stats.getBucketCount(Phase.FETCH, 2)).isEqualTo(1);
+    assertThat(stats.getBucketCount(Phase.FETCH, 3)).isEqualTo(1);
+    assertThat(stats.getBucketCount(Phase.FETCH, EngineStats.BUCKET_COUNT - 1)).isEqualTo(1);
+  }
+
+  @Test
+  public void getPercentileMillis_returnsUpperBoundOfBucket() {
+    assertThat(stats.getPercentileMillis(Phase.TRANSFORM, 50)).isEqualTo(0);
+
+    for (int i = 0; i < 99; i++) {
+      stats.onPhaseCompleted(Phase.TRANSFORM, 5);
+    }
+    stats.onPhaseCompleted(Phase.TRANSFORM, 100);
+
+    assertThat(stats.getPercentileMillis(Phase.TRANSFORM, 50)).isEqualTo(8);
+    assertThat(stats.getPercentileMillis(Phase.TRANSFORM, 99)).isEqualTo(8);
+    assertThat(stats.getPercentileMillis(Phase.TRANSFORM, 100)).isEqualTo(128);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getBucketCount_withInvalidBucket_throws() {
+    stats.getBucketCount(Phase.FETCH, EngineStats.BUCKET_COUNT);
+  }
+
+  @Test
+  public void onDiskCacheWrite_recordsCountAndBytesForTier() {
+    stats.onDiskCacheWrite(Tier.DATA_DISK_CACHE, 100);
+    stats.onDiskCacheWrite(Tier.DATA_DISK_CACHE, 300);
+
+    assertThat(stats.getWriteCount(Tier.DATA_DISK_CACHE)).isEqualTo(2);
+    assertThat(stats.getWrittenBytes(Tier.DATA_DISK_CACHE)).isEqualTo(400);
+    assertThat(stats.getWriteCount(Tier.RESOURCE_DISK_CACHE)).isEqualTo(0);
+  }
+
+  @Test
+  public void getEstimatedSkippedBytes_usesAverageWrittenSize() {
+    stats.onDiskCacheWriteSkipped(Tier.RESOURCE_DISK_CACHE);
+    assertThat(stats.getEstimatedSkippedBytes(Tier.RESOURCE_DISK_CACHE)).isEqualTo(0);
+
+    stats.onDiskCacheWrite(Tier.RESOURCE_DISK_CACHE, 100);
+    stats.onDiskCacheWrite(Tier.RESOURCE_DISK_CACHE, 300);
+    stats.onDiskCacheWriteSkipped(Tier.RESOURCE_DISK_CACHE);
+    stats.onDiskCacheWriteSkipped(Tier.RESOURCE_DISK_CACHE);
+
+    assertThat(stats.getSkippedWriteCount(Tier.RESOURCE_DISK_CACHE)).isEqualTo(3);
+    assertThat(stats.getEstimatedSkippedBytes(Tier.RESOURCE_DISK_CACHE)).isEqualTo(600);
+  }
+
+  @Test
+  public void reset_clearsAllCounters() {
+    stats.onTierHit(Tier.MEMORY_CACHE, 100);
+    stats.onTierMiss(Tier.SOURCE);
+    stats.onPhaseCompleted(Phase.ENCODE, 10);
+    stats.onDiskCacheWrite(Tier.DATA_DISK_CACHE, 10);
+    stats.onDiskCacheWriteSkipped(Tier.DATA_DISK_CACHE);
+
+    stats.reset();
+
+    assertThat(stats.getHitCount(Tier.MEMORY_CACHE)).isEqualTo(0);
+    assertThat(stats.getBytes(Tier.MEMORY_CACHE)).isEqualTo(0);
+    assertThat(stats.getMissCount(Tier.SOURCE)).isEqualTo(0);
+    assertThat(stats.getCount(Phase.ENCODE)).isEqualTo(0);
+    assertThat(stats.getBucketCount(Phase.ENCODE, 4)).isEqualTo(0);
+    assertThat(stats.getWrittenBytes(Tier.DATA_DISK_CACHE)).isEqualTo(0);
+    assertThat(stats.getSkippedWriteCount(Tier.DATA_DISK_CACHE)).isEqualTo(0);
+  }
+}
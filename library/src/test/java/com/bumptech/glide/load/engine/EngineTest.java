@@ -7,17 +7,24 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import com.bumptech.glide.GlideContext;
 import com.bumptech.glide.Priority;
 import com.bumptech.glide.load.DataSource;
@@ -27,13 +34,24 @@ import com.bumptech.glide.load.Transformation;
 import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.engine.cache.LruResourceCache;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
+import com.bumptech.glide.load.engine.cache.PeekableMemoryCache;
 import com.bumptech.glide.load.engine.executor.GlideExecutor;
 import com.bumptech.glide.load.engine.executor.MockGlideExecutor;
+import com.bumptech.glide.load.resource.SimpleResource;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.load.resource.bitmap.FitCenter;
+import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.ResourceCallback;
+import com.bumptech.glide.signature.ObjectKey;
 import com.bumptech.glide.tests.BackgroundUtil;
 import com.bumptech.glide.tests.GlideShadowLooper;
+import com.bumptech.glide.util.Executors;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +64,12 @@ import org.robolectric.annotation.Config;
 @Config(manifest = Config.NONE, sdk = 18, shadows = { GlideShadowLooper.class })
 @SuppressWarnings("unchecked")
 public class EngineTest {
+  private static final int ALLOCATION_ITERATIONS = 10_000;
+  // Allocations are measured in several rounds after the code has warmed up, so that class
+  // loading and compilation aren't counted.
+  private static final int ALLOCATION_WARM_UP_ROUNDS = 2;
+  private static final int ALLOCATION_ROUNDS = 6;
+
   private EngineTestHarness harness;
 
   @Before
@@ -64,7 +88,7 @@ public class EngineTest {
   public void testCallbackIsAddedToNewEngineJobWithNoExistingLoad() {
     harness.doLoad();
 
-    verify(harness.job).addCallback(eq(harness.cb));
+    verify(harness.job).addCallback(eq(harness.cb), eq(harness.callbackExecutor));
   }
 
   @Test
@@ -103,7 +127,21 @@ public class EngineTest {
     harness.cb = newCallback;
     harness.doLoad();
 
-    verify(harness.job).addCallback(eq(newCallback));
+    verify(harness.job).addCallback(eq(newCallback), eq(harness.callbackExecutor));
+  }
+
+  @Test
+  public void load_withExistingJobThatWasCancelled_startsNewJob() {
+    harness.doLoad();
+    EngineJob<?> cancelled = harness.job;
+    when(cancelled.addCallback(any(ResourceCallback.class), any(Executor.class)))
+        .thenReturn(false);
+    harness.job = harness.newJob();
+    harness.doLoad();
+
+    verify(harness.job).addCallback(eq(harness.cb), eq(harness.callbackExecutor));
+    verify(harness.job).start(any(DecodeJob.class));
+    assertThat(harness.jobs.getAll()).containsEntry(harness.cacheKey, harness.job);
   }
 
   @Test
@@ -197,6 +235,359 @@ public class EngineTest {
     verify(harness.cb).onResourceReady(eq(harness.resource), eq(DataSource.MEMORY_CACHE));
   }
 
+  @Test
+  public void load_withResourceInActiveResources_notifiesStatsListenerOfActiveHit() {
+    when(harness.resource.getSize()).thenReturn(123);
+    harness.activeResources.activate(harness.cacheKey, harness.resource);
+
+    harness.doLoad();
+
+    verify(harness.statsListener).onTierHit(EngineStatsListener.Tier.ACTIVE_RESOURCES, 123);
+    verify(harness.statsListener, never())
+        .onTierHit(eq(EngineStatsListener.Tier.MEMORY_CACHE), anyLong());
+    verify(harness.statsListener, never())
+        .onTierMiss(any(EngineStatsListener.Tier.class));
+  }
+
+  @Test
+  public void load_withResourceInMemoryCache_notifiesStatsListenerOfActiveMissAndCacheHit() {
+    when(harness.resource.getSize()).thenReturn(123);
+    when(harness.cache.remove(eq(harness.cacheKey))).thenReturn(harness.resource);
+
+    harness.doLoad();
+
+    verify(harness.statsListener).onTierMiss(EngineStatsListener.Tier.ACTIVE_RESOURCES);
+    verify(harness.statsListener).onTierHit(EngineStatsListener.Tier.MEMORY_CACHE, 123);
+  }
+
+  @Test
+  public void load_withNewLoad_notifiesStatsListenerOfMemoryMisses() {
+    harness.doLoad();
+
+    verify(harness.statsListener).onTierMiss(EngineStatsListener.Tier.ACTIVE_RESOURCES);
+    verify(harness.statsListener).onTierMiss(EngineStatsListener.Tier.MEMORY_CACHE);
+  }
+
+  @Test
+  public void load_withNotMemoryCacheable_doesNotNotifyStatsListener() {
+    harness.isMemoryCacheable = false;
+    harness.doLoad();
+
+    verify(harness.statsListener, never())
+        .onTierMiss(any(EngineStatsListener.Tier.class));
+    verify(harness.statsListener, never())
+        .onTierHit(any(EngineStatsListener.Tier.class), anyLong());
+  }
+
+  @Test
+  public void load_withLargerVariant_startsDerivableLoad() {
+    harness.withLargerVariant();
+
+    harness.doLoad();
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), anyBoolean(),
+        anyBoolean(), eq(true), any(Options.class), any(DecodeJob.Callback.class));
+    verify(harness.job).start(any(DecodeJob.class));
+    verify(harness.cb, never()).onResourceReady(anyResource(), isADataSource());
+  }
+
+  @Test
+  public void load_withLargerVariantAndNotScaleOnly_startsLoadThatIsNotDerivable() {
+    harness.withLargerVariant();
+    harness.isScaleOnlyOrNoTransform = false;
+
+    harness.doLoad();
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), anyBoolean(),
+        anyBoolean(), eq(false), any(Options.class), any(DecodeJob.Callback.class));
+  }
+
+  @Test
+  public void load_withoutLargerVariant_startsLoadThatIsNotDerivable() {
+    harness.residentVariants = mock(ResidentVariants.class);
+    when(harness.residentVariants.getLargerVariants(harness.cacheKey))
+        .thenReturn(Collections.<EngineKey>emptyList());
+
+    harness.doLoad();
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), anyBoolean(),
+        anyBoolean(), eq(false), any(Options.class), any(DecodeJob.Callback.class));
+  }
+
+  @Test
+  public void loadDerivedResource_withLargerActiveVariant_downscalesAndReleasesVariant() {
+    EngineKey variantKey = harness.withLargerVariant();
+    harness.activeResources.activate(variantKey, harness.resource);
+    Resource<?> downscaled = mockResource();
+    when(harness.residentVariants.downscale(any(Resources.class), eq(harness.resource),
+        eq(variantKey), eq(harness.cacheKey))).thenReturn((Resource) downscaled);
+
+    Resource<?> result = harness.getEngine().loadDerivedResource(harness.glideContext,
+        harness.cacheKey);
+
+    assertEquals(downscaled, result);
+    verify(harness.resource).acquire();
+    verify(harness.resource).release();
+  }
+
+  @Test
+  public void loadDerivedResource_withLargerCachedVariant_leavesVariantInCache() {
+    PeekableMemoryCache cache = mock(PeekableMemoryCache.class);
+    harness.cache = cache;
+    EngineKey variantKey = harness.withLargerVariant();
+    when(cache.peek(variantKey)).thenReturn(harness.resource);
+    Resource<?> downscaled = mockResource();
+    when(harness.residentVariants.downscale(any(Resources.class), eq(harness.resource),
+        eq(variantKey), eq(harness.cacheKey))).thenReturn((Resource) downscaled);
+    when(harness.residentVariants.unpin(variantKey))
+        .thenReturn(Collections.<Resource<?>>emptyList());
+
+    Resource<?> result = harness.getEngine().loadDerivedResource(harness.glideContext,
+        harness.cacheKey);
+
+    assertEquals(downscaled, result);
+    verify(harness.residentVariants).pin(variantKey);
+    verify(harness.residentVariants).unpin(variantKey);
+    verify(cache, never()).remove(any(Key.class));
+    verify(cache, never()).put(any(Key.class), anyResource());
+  }
+
+  @Test
+  public void loadDerivedResource_withVariantEvictedWhileDownscaling_recyclesVariantAfterwards() {
+    PeekableMemoryCache cache = mock(PeekableMemoryCache.class);
+    harness.cache = cache;
+    EngineKey variantKey = harness.withLargerVariant();
+    when(cache.peek(variantKey)).thenReturn(harness.resource);
+    when(harness.residentVariants.unpin(variantKey))
+        .thenReturn(Collections.<Resource<?>>singletonList(harness.resource));
+
+    harness.getEngine().loadDerivedResource(harness.glideContext, harness.cacheKey);
+
+    verify(harness.resourceRecycler).recycle(harness.resource);
+  }
+
+  @Test
+  public void loadDerivedResource_withLargerVariantNoLongerInMemory_removesVariant() {
+    harness.cache = mock(PeekableMemoryCache.class);
+    EngineKey variantKey = harness.withLargerVariant();
+    when(harness.residentVariants.unpin(variantKey))
+        .thenReturn(Collections.<Resource<?>>emptyList());
+
+    assertNull(harness.getEngine().loadDerivedResource(harness.glideContext, harness.cacheKey));
+    verify(harness.residentVariants).remove(variantKey);
+  }
+
+  @Test
+  public void loadDerivedResource_withLargerVariantThatCannotBeScaled_returnsNull() {
+    EngineKey variantKey = harness.withLargerVariant();
+    harness.activeResources.activate(variantKey, harness.resource);
+
+    assertNull(harness.getEngine().loadDerivedResource(harness.glideContext, harness.cacheKey));
+  }
+
+  @Test
+  public void onEngineJobComplete_withDownscalingEnabled_addsResidentVariant() {
+    harness.residentVariants = mock(ResidentVariants.class);
+    when(harness.resource.isCacheable()).thenReturn(true);
+
+    harness.callOnEngineJobComplete();
+
+    verify(harness.residentVariants).add(harness.cacheKey);
+  }
+
+  @Test
+  public void onResourceRemoved_withDownscalingEnabled_removesResidentVariant() {
+    harness.residentVariants = mock(ResidentVariants.class);
+    when(harness.resource.getKey()).thenReturn(harness.cacheKey);
+
+    harness.getEngine().onResourceRemoved(harness.resource);
+
+    verify(harness.residentVariants).remove(harness.cacheKey);
+  }
+
+  @Test
+  public void load_withCompressedResource_startsDerivableLoadWithoutDecompressing() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+    when(harness.compressedCache.contains(harness.cacheKey)).thenReturn(true);
+
+    harness.doLoad();
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), anyBoolean(),
+        anyBoolean(), eq(true), any(Options.class), any(DecodeJob.Callback.class));
+    verify(harness.job).start(any(DecodeJob.class));
+    verify(harness.compressedCache, never()).remove(any(Resources.class), any(Key.class));
+    verify(harness.cb, never()).onResourceReady(anyResource(), isADataSource());
+  }
+
+  @Test
+  public void load_withCompressedCacheMiss_startsLoad() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+
+    harness.doLoad();
+
+    verify(harness.statsListener).onTierMiss(EngineStatsListener.Tier.COMPRESSED_MEMORY_CACHE);
+    verify(harness.job).start(any(DecodeJob.class));
+  }
+
+  @Test
+  public void load_withCompressedCacheAndNotMemoryCacheable_doesNotCheckCompressedCache() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+    harness.isMemoryCacheable = false;
+
+    harness.doLoad();
+
+    verify(harness.compressedCache, never()).contains(any(Key.class));
+    verify(harness.job).start(any(DecodeJob.class));
+  }
+
+  @Test
+  public void loadDerivedResource_withCompressedResource_returnsDecompressedResource() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+    Resource<?> decompressed = mockResource();
+    when(harness.compressedCache.remove(any(Resources.class), eq(harness.cacheKey)))
+        .thenReturn((Resource) decompressed);
+
+    Resource<?> result = harness.getEngine().loadDerivedResource(harness.glideContext,
+        harness.cacheKey);
+
+    assertEquals(decompressed, result);
+    verify(harness.statsListener)
+        .onTierHit(eq(EngineStatsListener.Tier.COMPRESSED_MEMORY_CACHE), anyLong());
+  }
+
+  @Test
+  public void loadDerivedResource_withCompressedCacheMissAndNoVariants_returnsNull() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+
+    assertNull(harness.getEngine().loadDerivedResource(harness.glideContext, harness.cacheKey));
+  }
+
+  @Test
+  public void onResourceRemoved_withPinnedVariant_doesNotRecycleResource() {
+    harness.residentVariants = mock(ResidentVariants.class);
+    when(harness.resource.getKey()).thenReturn(harness.cacheKey);
+    when(harness.residentVariants.deferIfPinned(harness.cacheKey, harness.resource))
+        .thenReturn(true);
+
+    harness.getEngine().onResourceRemoved(harness.resource);
+
+    verify(harness.resourceRecycler, never()).recycle(any(Resource.class));
+  }
+
+  @Test
+  public void onResourceRemoved_withCompressedCacheAcceptingResource_doesNotRecycleResource() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+    when(harness.resource.getKey()).thenReturn(harness.cacheKey);
+    when(harness.compressedCache.offer(
+        harness.cacheKey, harness.resource, harness.resourceRecycler)).thenReturn(true);
+
+    harness.getEngine().onResourceRemoved(harness.resource);
+
+    verify(harness.resourceRecycler, never()).recycle(any(Resource.class));
+  }
+
+  @Test
+  public void onResourceRemoved_withCompressedCacheRejectingResource_recyclesResource() {
+    harness.compressedCache = mock(CompressedBitmapCache.class);
+    when(harness.resource.getKey()).thenReturn(harness.cacheKey);
+
+    harness.getEngine().onResourceRemoved(harness.resource);
+
+    verify(harness.resourceRecycler).recycle(harness.resource);
+  }
+
+  @Test
+  public void load_withHotKeysEnabled_recordsKeyOfNewLoad() {
+    harness.hotKeys = mock(HotKeySnapshot.class);
+
+    harness.doLoad();
+
+    verify(harness.hotKeys).record(harness.cacheKey);
+  }
+
+  @Test
+  public void load_withHotKeysEnabledAndActiveResource_recordsKeyOfActiveResource() {
+    harness.hotKeys = mock(HotKeySnapshot.class);
+    when(harness.resource.getKey()).thenReturn(harness.cacheKey);
+    harness.activeResources.activate(harness.cacheKey, harness.resource);
+
+    harness.doLoad();
+
+    verify(harness.hotKeys).record(harness.cacheKey);
+  }
+
+  @Test
+  public void load_withHotKeysEnabledAndNotMemoryCacheable_doesNotRecordKey() {
+    harness.hotKeys = mock(HotKeySnapshot.class);
+    harness.isMemoryCacheable = false;
+
+    harness.doLoad();
+
+    verify(harness.hotKeys, never()).record(any(EngineKey.class));
+  }
+
+  @Test
+  public void warmUpHotKeys_doesNotRecordWarmedUpKeys() {
+    harness.withHotKey();
+
+    harness.getEngine().warmUpHotKeys(harness.glideContext);
+
+    verify(harness.job).start(any(DecodeJob.class));
+    verify(harness.hotKeys, never()).record(any(EngineKey.class));
+  }
+
+  @Test
+  public void warmUpHotKeys_withFitCenterKey_startsScaleOnlyLoad() {
+    harness.transformations.put(Bitmap.class, new FitCenter());
+    harness.withHotKey();
+
+    harness.getEngine().warmUpHotKeys(harness.glideContext);
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), eq(true),
+        anyBoolean(), anyBoolean(), any(Options.class), any(DecodeJob.Callback.class));
+  }
+
+  @Test
+  public void warmUpHotKeys_withCenterCropKey_startsLoadThatIsNotScaleOnly() {
+    harness.transformations.put(Bitmap.class, new CenterCrop());
+    harness.withHotKey();
+
+    harness.getEngine().warmUpHotKeys(harness.glideContext);
+
+    verify(harness.decodeJobFactory).build(any(GlideContext.class), any(), any(EngineKey.class),
+        any(Key.class), anyInt(), anyInt(), any(Class.class), any(Class.class),
+        any(Priority.class), any(DiskCacheStrategy.class), anyMap(), anyBoolean(), eq(false),
+        anyBoolean(), anyBoolean(), any(Options.class), any(DecodeJob.Callback.class));
+  }
+
+  @Test
+  public void trimMemory_withUiHiddenAndHotKeysEnabled_savesHotKeys() {
+    harness.hotKeys = mock(HotKeySnapshot.class);
+
+    harness.getEngine().trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    verify(harness.hotKeys).saveAsync();
+  }
+
+  @Test
+  public void shutdown_withHotKeysEnabled_savesHotKeys() {
+    harness.hotKeys = mock(HotKeySnapshot.class);
+
+    harness.getEngine().shutdown();
+
+    verify(harness.hotKeys).save();
+  }
+
   @Test
   public void testHandlesNonEngineResourcesFromCacheIfPresent() {
     final Object expected = new Object();
@@ -389,6 +780,42 @@ public class EngineTest {
             eq(harness.transformations), eq(Object.class), eq(Object.class), eq(harness.options));
   }
 
+  @Test
+  public void load_withActiveResource_doesNotBuildKey() {
+    harness.activeResources.activate(harness.cacheKey, harness.resource);
+
+    harness.doLoad();
+
+    verify(harness.keyFactory, never()).buildKey(eq(harness.model), eq(harness.signature),
+        anyInt(), anyInt(), eq(harness.transformations), eq(Object.class), eq(Object.class),
+        eq(harness.options));
+    verify(harness.keyFactory).releaseProbe(harness.cacheKey);
+  }
+
+  @Test
+  public void load_withMemoryCacheHit_activatesResourceWithItsOwnKeyWithoutBuildingKey() {
+    EngineKey retainedKey = mock(EngineKey.class);
+    when(harness.resource.getKey()).thenReturn(retainedKey);
+    when(harness.cache.remove(eq(harness.cacheKey))).thenReturn(harness.resource);
+
+    harness.doLoad();
+
+    verify(harness.keyFactory, never()).buildKey(eq(harness.model), eq(harness.signature),
+        anyInt(), anyInt(), eq(harness.transformations), eq(Object.class), eq(Object.class),
+        eq(harness.options));
+    verify(harness.keyFactory).releaseProbe(harness.cacheKey);
+    assertThat(harness.activeResources.get(retainedKey)).isEqualTo(harness.resource);
+  }
+
+  @Test
+  public void load_withMemoryCacheMiss_releasesProbeAndStartsJobWithBuiltKey() {
+    harness.doLoad();
+
+    verify(harness.keyFactory).releaseProbe(harness.cacheKey);
+    verify(harness.engineJobFactory)
+        .build(eq(harness.cacheKey), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean());
+  }
+
   @Test
   public void testFactoryIsGivenNecessaryArguments() {
     harness.doLoad();
@@ -426,14 +853,31 @@ public class EngineTest {
     harness.getEngine().release(mockResource());
   }
 
-  @Test(expected = RuntimeException.class)
-  public void testThrowsIfLoadCalledOnBackgroundThread() throws InterruptedException {
+  @Test
+  public void load_onBackgroundThread_startsNewJob() throws InterruptedException {
+    BackgroundUtil.testInBackground(new BackgroundUtil.BackgroundTester() {
+      @Override
+      public void runTest() {
+        harness.doLoad();
+      }
+    });
+
+    verify(harness.job).start(any(DecodeJob.class));
+  }
+
+  @Test
+  public void load_onBackgroundThread_withActiveResource_returnsActiveResource()
+      throws InterruptedException {
+    harness.activeResources.activate(harness.cacheKey, harness.resource);
     BackgroundUtil.testInBackground(new BackgroundUtil.BackgroundTester() {
       @Override
       public void runTest() {
         harness.doLoad();
       }
     });
+
+    verify(harness.resource).acquire();
+    verify(harness.cb).onResourceReady(eq(harness.resource), eq(DataSource.MEMORY_CACHE));
   }
 
   @Test
@@ -622,6 +1066,201 @@ public class EngineTest {
     verify(harness.job, never()).start(any(DecodeJob.class));
   }
 
+  @Test
+  public void clearDiskCache_withResourceDiskCache_clearsBothCaches() {
+    DiskCache diskCache = mock(DiskCache.class);
+    DiskCache resourceDiskCache = mock(DiskCache.class);
+    when(harness.diskCacheFactory.build()).thenReturn(diskCache);
+    harness.resourceDiskCacheFactory = mock(DiskCache.Factory.class);
+    when(harness.resourceDiskCacheFactory.build()).thenReturn(resourceDiskCache);
+
+    harness.getEngine().clearDiskCache();
+
+    verify(diskCache).clear();
+    verify(resourceDiskCache).clear();
+  }
+
+  @Test
+  public void clearDiskCache_withoutResourceDiskCache_clearsSharedCacheOnce() {
+    DiskCache diskCache = mock(DiskCache.class);
+    when(harness.diskCacheFactory.build()).thenReturn(diskCache);
+
+    harness.getEngine().clearDiskCache();
+
+    verify(diskCache, times(1)).clear();
+  }
+
+  @Test
+  public void load_withActiveResource_doesNotAllocate() {
+    com.sun.management.ThreadMXBean threadBean = getAllocationCountingBean();
+    AllocationTestHarness allocations = new AllocationTestHarness(/*numModels=*/ 1);
+    try {
+      // Moves the resource from the memory cache to active resources.
+      allocations.loadFromMemory(0);
+
+      long threadId = Thread.currentThread().getId();
+      long fewestAllocated = Long.MAX_VALUE;
+      for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+          allocations.loadFromMemory(0);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        if (round >= ALLOCATION_WARM_UP_ROUNDS) {
+          fewestAllocated = Math.min(fewestAllocated, allocated);
+        }
+      }
+
+      // Allow for the bookkeeping of the measurement itself, but not for an object per load.
+      assertThat(fewestAllocated).isLessThan((long) ALLOCATION_ITERATIONS);
+    } finally {
+      allocations.activeResources.shutdown();
+    }
+  }
+
+  @Test
+  public void load_withCachedResources_onlyAllocatesToActivateResources() {
+    com.sun.management.ThreadMXBean threadBean = getAllocationCountingBean();
+    // Each model is only in the memory cache until it's loaded once.
+    AllocationTestHarness allocations =
+        new AllocationTestHarness(/*numModels=*/ ALLOCATION_ROUNDS * ALLOCATION_ITERATIONS);
+    ActiveResources expected = new ActiveResources(/*isActiveResourceRetentionAllowed=*/ true);
+    try {
+      long threadId = Thread.currentThread().getId();
+      long fewestExtraAllocated = Long.MAX_VALUE;
+      for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+        int start = round * ALLOCATION_ITERATIONS;
+        int end = start + ALLOCATION_ITERATIONS;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = start; i < end; i++) {
+          allocations.loadFromMemory(i);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Both maps of active resources grow at the same time, so they're resized together.
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = start; i < end; i++) {
+          expected.activate(allocations.keys[i], allocations.resources[i]);
+        }
+        long allocatedToActivate = threadBean.getThreadAllocatedBytes(threadId) - before;
+        if (round >= ALLOCATION_WARM_UP_ROUNDS) {
+          fewestExtraAllocated = Math.min(fewestExtraAllocated, allocated - allocatedToActivate);
+        }
+      }
+
+      // Moving a resource from the memory cache to active resources allocates a weak reference
+      // and a map entry, but nothing else is allocated per load.
+      assertThat(fewestExtraAllocated).isLessThan((long) ALLOCATION_ITERATIONS);
+    } finally {
+      allocations.activeResources.shutdown();
+      expected.shutdown();
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean getAllocationCountingBean() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    return threadBean;
+  }
+
+  /**
+   * Loads from a real {@link Engine}, {@link MemoryCache} and {@link EngineKeyFactory}, since
+   * mocks allocate when they're called.
+   */
+  private static final class AllocationTestHarness {
+    final ActiveResources activeResources =
+        new ActiveResources(/*isActiveResourceRetentionAllowed=*/ true);
+    final Object[] models;
+    final EngineKey[] keys;
+    final EngineResource<?>[] resources;
+    private final Key signature = new ObjectKey("signature");
+    private final Map<Class<?>, Transformation<?>> transformations = Collections.emptyMap();
+    private final Options options = new Options();
+    private final GlideContext glideContext = mock(GlideContext.class);
+    private final Executor callbackExecutor = Executors.directExecutor();
+    private final ResourceCallback cb = new ResourceCallback() {
+      @Override
+      public void onResourceReady(Resource<?> resource, DataSource dataSource) {
+        // Do nothing.
+      }
+
+      @Override
+      public void onLoadFailed(GlideException e) {
+        // Do nothing.
+      }
+    };
+    private final Engine engine;
+
+    AllocationTestHarness(int numModels) {
+      MemoryCache cache = new LruResourceCache(Integer.MAX_VALUE);
+      engine =
+          new Engine(
+              cache,
+              mock(DiskCache.Factory.class),
+              /*resourceDiskCacheFactory=*/ null,
+              MockGlideExecutor.newMainThreadExecutor(),
+              MockGlideExecutor.newMainThreadExecutor(),
+              MockGlideExecutor.newMainThreadExecutor(),
+              MockGlideExecutor.newMainThreadExecutor(),
+              MockGlideExecutor.newMainThreadExecutor(),
+              /*jobs=*/ null,
+              /*keyFactory=*/ null,
+              activeResources,
+              /*engineJobFactory=*/ null,
+              /*decodeJobFactory=*/ null,
+              /*resourceRecycler=*/ null,
+              /*isActiveResourceRetentionAllowed=*/ true,
+              /*statsListener=*/ null,
+              /*residentVariants=*/ null,
+              /*compressedCache=*/ null,
+              /*hotKeys=*/ null,
+              /*sourceCacheWriter=*/ null,
+              /*admissionPolicy=*/ null);
+
+      EngineKeyFactory keyFactory = new EngineKeyFactory();
+      models = new Object[numModels];
+      keys = new EngineKey[numModels];
+      resources = new EngineResource<?>[numModels];
+      for (int i = 0; i < numModels; i++) {
+        models[i] = "model" + i;
+        keys[i] = keyFactory.buildKey(models[i], signature, /*width=*/ 100, /*height=*/ 100,
+            transformations, Object.class, Object.class, options);
+        resources[i] = new EngineResource<>(new SimpleResource<>(new Object()),
+            /*isCacheable=*/ true, /*isRecyclable=*/ true);
+        resources[i].setResourceListener(keys[i], engine);
+        cache.put(keys[i], resources[i]);
+      }
+    }
+
+    void loadFromMemory(int model) {
+      Engine.LoadStatus status = engine.load(glideContext,
+          models[model],
+          signature,
+          /*width=*/ 100,
+          /*height=*/ 100,
+          Object.class /*resourceClass*/,
+          Object.class /*transcodeClass*/,
+          Priority.NORMAL,
+          DiskCacheStrategy.ALL,
+          transformations,
+          /*isTransformationRequired=*/ false,
+          /*isScaleOnlyOrNoTransform=*/ true,
+          options,
+          /*isMemoryCacheable=*/ true,
+          /*useUnlimitedSourceExecutorPool=*/ false,
+          /*useAnimationPool=*/ false,
+          /*onlyRetrieveFromCache=*/ false,
+          cb,
+          callbackExecutor);
+      if (status != null) {
+        throw new AssertionError("Expected a memory cache hit for model: " + model);
+      }
+    }
+  }
+
   private static class EngineTestHarness {
     final EngineKey cacheKey = mock(EngineKey.class);
     final EngineKeyFactory keyFactory = mock(EngineKeyFactory.class);
@@ -637,11 +1276,18 @@ public class EngineTest {
 
     final Object model = new Object();
     MemoryCache cache = mock(MemoryCache.class);
+    final DiskCache.Factory diskCacheFactory = mock(DiskCache.Factory.class);
+    DiskCache.Factory resourceDiskCacheFactory = null;
     EngineJob<?> job;
+    final Executor callbackExecutor = Executors.directExecutor();
     private Engine engine;
     final Engine.EngineJobFactory engineJobFactory = mock(Engine.EngineJobFactory.class);
     final Engine.DecodeJobFactory decodeJobFactory = mock(Engine.DecodeJobFactory.class);
     final ResourceRecycler resourceRecycler = mock(ResourceRecycler.class);
+    final EngineStatsListener statsListener = mock(EngineStatsListener.class);
+    ResidentVariants residentVariants = null;
+    CompressedBitmapCache compressedCache = null;
+    HotKeySnapshot hotKeys = null;
     final Key signature = mock(Key.class);
     final Map<Class<?>, Transformation<?>> transformations = new HashMap<>();
     final Options options = new Options();
@@ -649,14 +1295,51 @@ public class EngineTest {
     boolean isMemoryCacheable = true;
     boolean useUnlimitedSourceGeneratorPool = false;
     boolean onlyRetrieveFromCache = false;
-    final boolean isScaleOnlyOrNoTransform = true;
+    boolean isScaleOnlyOrNoTransform = true;
 
     EngineTestHarness() {
       when(keyFactory.buildKey(eq(model), eq(signature), anyInt(), anyInt(), eq(transformations),
           eq(Object.class), eq(Object.class), eq(options))).thenReturn(cacheKey);
+      when(keyFactory.obtainProbe(eq(model), eq(signature), anyInt(), anyInt(),
+          eq(transformations), eq(Object.class), eq(Object.class), eq(options)))
+          .thenReturn(cacheKey);
       when(resource.getResource()).thenReturn(mock(Resource.class));
 
-      job = mock(EngineJob.class);
+      job = newJob();
+    }
+
+    EngineJob<?> newJob() {
+      EngineJob<?> result = mock(EngineJob.class);
+      when(result.addCallback(any(ResourceCallback.class), any(Executor.class))).thenReturn(true);
+      return result;
+    }
+
+    EngineKey withLargerVariant() {
+      residentVariants = mock(ResidentVariants.class);
+      EngineKey variantKey = mock(EngineKey.class);
+      when(residentVariants.getLargerVariants(cacheKey))
+          .thenReturn(Collections.singletonList(variantKey));
+      return variantKey;
+    }
+
+    /** Makes the cache key the only key in the hot key snapshot. */
+    @SuppressWarnings("unchecked")
+    void withHotKey() {
+      hotKeys = mock(HotKeySnapshot.class);
+      when(hotKeys.read()).thenReturn(Collections.singletonList(cacheKey));
+      when(cacheKey.getModel()).thenReturn(model);
+      when(cacheKey.getSignature()).thenReturn(signature);
+      when(cacheKey.getWidth()).thenReturn(width);
+      when(cacheKey.getHeight()).thenReturn(height);
+      doReturn(Object.class).when(cacheKey).getResourceClass();
+      doReturn(Object.class).when(cacheKey).getTranscodeClass();
+      when(cacheKey.getTransformations()).thenReturn(transformations);
+      when(cacheKey.getOptions()).thenReturn(options);
+      when(glideContext.getDefaultRequestOptions()).thenReturn(new RequestOptions());
+      when(
+          engineJobFactory.build(
+              eq(cacheKey), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean()))
+          .thenReturn((EngineJob<Object>) job);
     }
 
     void callOnEngineJobComplete() {
@@ -687,7 +1370,8 @@ public class EngineTest {
           useUnlimitedSourceGeneratorPool,
           /*useAnimationPool=*/ false,
           onlyRetrieveFromCache,
-          cb);
+          cb,
+          callbackExecutor);
     }
 
     Engine getEngine() {
@@ -695,18 +1379,26 @@ public class EngineTest {
         engine =
             new Engine(
                 cache,
-                mock(DiskCache.Factory.class),
+                diskCacheFactory,
+                resourceDiskCacheFactory,
                 GlideExecutor.newDiskCacheExecutor(),
                 MockGlideExecutor.newMainThreadExecutor(),
                 MockGlideExecutor.newMainThreadExecutor(),
                 MockGlideExecutor.newMainThreadExecutor(),
+                MockGlideExecutor.newMainThreadExecutor(),
                 jobs,
                 keyFactory,
                 activeResources,
                 engineJobFactory,
                 decodeJobFactory,
                 resourceRecycler,
-                /*isActiveResourceRetentionAllowed=*/ true);
+                /*isActiveResourceRetentionAllowed=*/ true,
+                statsListener,
+                residentVariants,
+                compressedCache,
+                hotKeys,
+                /*sourceCacheWriter=*/ null,
+                /*admissionPolicy=*/ null);
       }
       return engine;
     }
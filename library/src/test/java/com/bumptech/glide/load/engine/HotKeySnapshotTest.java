@@ -0,0 +1,249 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.load.resource.bitmap.Downsampler;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.signature.EmptySignature;
+import com.bumptech.glide.signature.ObjectKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class HotKeySnapshotTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File file;
+  private Executor executor;
+  private HotKeySnapshot snapshot;
+
+  @Before
+  public void setUp() throws IOException {
+    file = new File(temporaryFolder.getRoot(), "hot_keys");
+    executor = mock(Executor.class);
+    snapshot = new HotKeySnapshot(file, executor);
+  }
+
+  @Test
+  public void read_withNoFile_returnsEmptyList() {
+    assertThat(snapshot.read()).isEmpty();
+  }
+
+  @Test
+  public void read_afterSave_returnsEqualKeys() {
+    EngineKey key = newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+    snapshot.record(key);
+
+    assertThat(snapshot.save()).isEqualTo(1);
+
+    assertThat(new HotKeySnapshot(file, executor).read()).containsExactly(key);
+  }
+
+  @Test
+  public void read_afterSaveWithTransformationAndOptions_returnsEqualKeys() {
+    RequestOptions requestOptions = new RequestOptions()
+        .optionalCenterCrop()
+        .format(DecodeFormat.PREFER_RGB_565);
+    EngineKey key = newKey(
+        "model", requestOptions.getTransformations(), requestOptions.getOptions());
+    snapshot.record(key);
+
+    snapshot.save();
+
+    assertThat(snapshot.read()).containsExactly(key);
+  }
+
+  @Test
+  public void save_withUnknownModel_skipsKey() {
+    snapshot.record(newKey(new Object(), Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options()));
+
+    assertThat(snapshot.save()).isEqualTo(0);
+  }
+
+  @Test
+  public void save_withCustomSignature_skipsKey() {
+    snapshot.record(new EngineKey("model", new ObjectKey("signature"), 100, 100,
+        Collections.<Class<?>, Transformation<?>>emptyMap(), Object.class, Object.class,
+        new Options()));
+
+    assertThat(snapshot.save()).isEqualTo(0);
+  }
+
+  @Test
+  public void save_withUnknownOption_skipsKey() {
+    Options options = new Options().set(Option.memory("unknown", "default"), "value");
+    snapshot.record(newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(), options));
+
+    assertThat(snapshot.save()).isEqualTo(0);
+  }
+
+  @Test
+  public void save_withUnknownTransformation_skipsKey() {
+    @SuppressWarnings("unchecked") Transformation<Object> transformation =
+        mock(Transformation.class);
+    snapshot.record(newKey("model",
+        Collections.<Class<?>, Transformation<?>>singletonMap(Object.class, transformation),
+        new Options()));
+
+    assertThat(snapshot.save()).isEqualTo(0);
+  }
+
+  @Test
+  public void save_withNoSavableKeys_keepsPreviousSnapshot() {
+    EngineKey key = newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+    snapshot.record(key);
+    snapshot.save();
+
+    HotKeySnapshot next = new HotKeySnapshot(file, executor);
+    next.save();
+
+    assertThat(next.read()).containsExactly(key);
+  }
+
+  @Test
+  public void read_returnsMostFrequentlyRecordedKeysFirst() {
+    EngineKey rare = newKey("rare", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+    EngineKey frequent = newKey("frequent", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+    snapshot.record(rare);
+    snapshot.record(frequent);
+    snapshot.record(frequent);
+
+    snapshot.save();
+
+    assertThat(snapshot.read()).containsExactly(frequent, rare).inOrder();
+  }
+
+  @Test
+  public void save_withMoreThanMaxKeys_savesMaxKeys() {
+    for (int i = 0; i < HotKeySnapshot.MAX_SAVED_KEYS + 10; i++) {
+      snapshot.record(newKey("model" + i, Collections.<Class<?>, Transformation<?>>emptyMap(),
+          new Options()));
+    }
+
+    assertThat(snapshot.save()).isEqualTo(HotKeySnapshot.MAX_SAVED_KEYS);
+    assertThat(snapshot.read()).hasSize(HotKeySnapshot.MAX_SAVED_KEYS);
+  }
+
+  @Test
+  public void record_afterSaveInterval_schedulesSave() {
+    EngineKey key = newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+    for (int i = 0; i < HotKeySnapshot.SAVE_INTERVAL - 1; i++) {
+      snapshot.record(key);
+    }
+    verify(executor, never()).execute(any(Runnable.class));
+
+    snapshot.record(key);
+    verify(executor, times(1)).execute(any(Runnable.class));
+  }
+
+  @Test
+  public void record_withUnsavableModel_isNotCounted() {
+    EngineKey key = newKey(new byte[] { 1, 2, 3 },
+        Collections.<Class<?>, Transformation<?>>emptyMap(), new Options());
+    for (int i = 0; i < HotKeySnapshot.SAVE_INTERVAL; i++) {
+      snapshot.record(key);
+    }
+
+    verify(executor, never()).execute(any(Runnable.class));
+  }
+
+  @Test
+  public void read_withInvalidFile_returnsEmptyListAndDeletesFile() throws IOException {
+    FileOutputStream os = new FileOutputStream(file);
+    try {
+      os.write(new byte[] { 1, 2, 3 });
+    } finally {
+      os.close();
+    }
+
+    assertThat(snapshot.read()).isEmpty();
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void read_afterClear_keepsSavedKeys() {
+    EngineKey key = newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options().set(Downsampler.DOWNSAMPLE_STRATEGY, DownsampleStrategy.AT_MOST));
+    snapshot.record(key);
+    snapshot.save();
+
+    snapshot.clear();
+
+    assertThat(snapshot.read()).containsExactly(key);
+  }
+
+  @Test
+  public void isScaleOnlyOrNoTransform_withNoTransformation_returnsTrue() {
+    EngineKey key = newKey("model", Collections.<Class<?>, Transformation<?>>emptyMap(),
+        new Options());
+
+    assertThat(HotKeySnapshot.isScaleOnlyOrNoTransform(key)).isTrue();
+  }
+
+  @Test
+  public void isScaleOnlyOrNoTransform_withReadFitCenterOrCenterInside_returnsTrue() {
+    snapshot.record(newKey("fitCenter", new RequestOptions().fitCenter()));
+    snapshot.record(newKey("centerInside", new RequestOptions().optionalCenterInside()));
+    snapshot.save();
+
+    List<EngineKey> keys = snapshot.read();
+
+    assertThat(keys).hasSize(2);
+    for (EngineKey key : keys) {
+      assertThat(HotKeySnapshot.isScaleOnlyOrNoTransform(key)).isTrue();
+    }
+  }
+
+  @Test
+  public void isScaleOnlyOrNoTransform_withReadCenterCropOrCircleCrop_returnsFalse() {
+    snapshot.record(newKey("centerCrop", new RequestOptions().centerCrop()));
+    snapshot.record(newKey("circleCrop", new RequestOptions().optionalCircleCrop()));
+    snapshot.save();
+
+    List<EngineKey> keys = snapshot.read();
+
+    assertThat(keys).hasSize(2);
+    for (EngineKey key : keys) {
+      assertThat(HotKeySnapshot.isScaleOnlyOrNoTransform(key)).isFalse();
+    }
+  }
+
+  private static EngineKey newKey(Object model, RequestOptions requestOptions) {
+    return newKey(model, requestOptions.getTransformations(), requestOptions.getOptions());
+  }
+
+  private static EngineKey newKey(
+      Object model, Map<Class<?>, Transformation<?>> transformations, Options options) {
+    return new EngineKey(model, EmptySignature.obtain(), 100, 100, transformations,
+        Object.class, Object.class, options);
+  }
+}
@@ -0,0 +1,268 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.load.resource.bitmap.CenterInside;
+import com.bumptech.glide.load.resource.bitmap.FitCenter;
+import com.bumptech.glide.load.resource.bitmap.RoundedCorners;
+import com.bumptech.glide.signature.ObjectKey;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class ResidentVariantsTest {
+  private BitmapPool bitmapPool;
+  private ResidentVariants variants;
+  private Resources resources;
+
+  @Before
+  public void setUp() {
+    bitmapPool = mock(BitmapPool.class);
+    when(bitmapPool.get(anyInt(), anyInt(), any(Bitmap.Config.class)))
+        .thenAnswer(new Answer<Bitmap>() {
+          @Override
+          public Bitmap answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            return Bitmap.createBitmap((Integer) args[0], (Integer) args[1],
+                (Bitmap.Config) args[2]);
+          }
+        });
+    variants = new ResidentVariants(bitmapPool);
+    resources = RuntimeEnvironment.application.getResources();
+  }
+
+  @Test
+  public void getLargerVariants_withNoVariants_returnsEmptyList() {
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100))).isEmpty();
+  }
+
+  @Test
+  public void getLargerVariants_returnsLargerVariantsWithSameAspectRatioSmallestFirst() {
+    EngineKey largest = newKey("model", 1000, 500);
+    EngineKey larger = newKey("model", 400, 200);
+    variants.add(largest);
+    variants.add(larger);
+    variants.add(newKey("model", 400, 400));
+    variants.add(newKey("model", 100, 50));
+    variants.add(newKey("other", 400, 200));
+
+    assertThat(variants.getLargerVariants(newKey("model", 200, 100)))
+        .containsExactly(larger, largest)
+        .inOrder();
+  }
+
+  @Test
+  public void getLargerVariants_doesNotReturnVariantOfSameSize() {
+    variants.add(newKey("model", 100, 100));
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100))).isEmpty();
+  }
+
+  @Test
+  public void getLargerVariants_withOriginalSize_returnsEmptyList() {
+    variants.add(newKey("model", 100, 100));
+
+    assertThat(variants.getLargerVariants(newKey("model", -1, -1))).isEmpty();
+  }
+
+  @Test
+  public void getLargerVariants_withFitCenter_returnsLargerVariants() {
+    EngineKey larger = newKey("model", 400, 400, new FitCenter());
+    variants.add(larger);
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100, new FitCenter())))
+        .containsExactly(larger);
+  }
+
+  @Test
+  public void getLargerVariants_withRoundedCorners_returnsEmptyList() {
+    Transformation<Bitmap> roundedCorners = new RoundedCorners(10);
+    variants.add(newKey("model", 400, 400, roundedCorners));
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100, roundedCorners))).isEmpty();
+  }
+
+  @Test
+  public void getLargerVariants_withCenterInside_returnsEmptyList() {
+    Transformation<Bitmap> centerInside = new CenterInside();
+    variants.add(newKey("model", 400, 400, centerInside));
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100, centerInside))).isEmpty();
+  }
+
+  @Test
+  public void getLargerVariants_withoutTransformation_returnsEmptyList() {
+    variants.add(newKey("model", 400, 400, /*transformation=*/ null));
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100, /*transformation=*/ null)))
+        .isEmpty();
+  }
+
+  @Test
+  public void remove_removesVariant() {
+    EngineKey key = newKey("model", 400, 400);
+    variants.add(key);
+    variants.remove(key);
+
+    assertThat(variants.getLargerVariants(newKey("model", 100, 100))).isEmpty();
+  }
+
+  @Test
+  public void deferIfPinned_withUnpinnedVariant_returnsFalse() {
+    assertThat(variants.deferIfPinned(newKey("model", 400, 400), mock(Resource.class))).isFalse();
+  }
+
+  @Test
+  public void unpin_returnsResourcesRemovedWhilePinned() {
+    EngineKey key = newKey("model", 400, 400);
+    Resource<?> removed = mock(Resource.class);
+    variants.pin(key);
+
+    assertThat(variants.deferIfPinned(key, removed)).isTrue();
+    assertThat(variants.unpin(key)).containsExactly(removed);
+    assertThat(variants.deferIfPinned(key, removed)).isFalse();
+  }
+
+  @Test
+  public void unpin_whilePinnedByOthers_returnsNothing() {
+    EngineKey key = newKey("model", 400, 400);
+    Resource<?> removed = mock(Resource.class);
+    variants.pin(key);
+    variants.pin(key);
+    variants.deferIfPinned(key, removed);
+
+    assertThat(variants.unpin(key)).isEmpty();
+    assertThat(variants.unpin(key)).containsExactly(removed);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unpin_withUnpinnedVariant_throws() {
+    variants.unpin(newKey("model", 400, 400));
+  }
+
+  @Test
+  public void downscale_withBitmap_returnsScaledBitmapResource() {
+    Bitmap bitmap = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888);
+
+    Resource<?> result = variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400), newKey("model", 100, 100));
+
+    Bitmap scaled = (Bitmap) result.get();
+    assertThat(scaled).isNotSameAs(bitmap);
+    assertThat(scaled.getWidth()).isEqualTo(100);
+    assertThat(scaled.getHeight()).isEqualTo(100);
+  }
+
+  @Test
+  public void downscale_withFitCenter_scalesBitmapToFitWithinRequestedSize() {
+    // Smaller than the size it was requested at, as FitCenter results may be.
+    Bitmap bitmap = Bitmap.createBitmap(200, 150, Bitmap.Config.ARGB_8888);
+
+    Resource<?> result = variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400, new FitCenter()), newKey("model", 100, 100, new FitCenter()));
+
+    Bitmap scaled = (Bitmap) result.get();
+    assertThat(scaled.getWidth()).isEqualTo(100);
+    assertThat(scaled.getHeight()).isEqualTo(75);
+  }
+
+  @Test
+  public void downscale_withRoundedCorners_returnsNull() {
+    Transformation<Bitmap> roundedCorners = new RoundedCorners(10);
+    Bitmap bitmap = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888);
+
+    assertThat(variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400, roundedCorners), newKey("model", 100, 100, roundedCorners)))
+        .isNull();
+  }
+
+  @Test
+  public void downscale_withCenterInside_returnsNull() {
+    Transformation<Bitmap> centerInside = new CenterInside();
+    Bitmap bitmap = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888);
+
+    assertThat(variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400, centerInside), newKey("model", 100, 100, centerInside)))
+        .isNull();
+  }
+
+  @Test
+  public void downscale_withBitmapNoLargerThanRequestedSize_returnsNull() {
+    Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+
+    assertThat(variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400), newKey("model", 200, 200))).isNull();
+  }
+
+  @Test
+  public void downscale_withBitmapDrawable_returnsScaledBitmapDrawable() {
+    Bitmap bitmap = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888);
+    Resource<?> resource = mockResource(new BitmapDrawable(resources, bitmap));
+
+    Resource<?> result = variants.downscale(
+        resources, resource, newKey("model", 400, 400), newKey("model", 200, 200));
+
+    Bitmap scaled = ((BitmapDrawable) result.get()).getBitmap();
+    assertThat(scaled.getWidth()).isEqualTo(200);
+    assertThat(scaled.getHeight()).isEqualTo(200);
+  }
+
+  @Test
+  public void downscale_withNonBitmapResource_returnsNull() {
+    Resource<?> resource = mockResource(new Object());
+
+    assertThat(variants.downscale(
+        resources, resource, newKey("model", 400, 400), newKey("model", 200, 200))).isNull();
+  }
+
+  @Test
+  public void downscale_withRecycledBitmap_returnsNull() {
+    Bitmap bitmap = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888);
+    bitmap.recycle();
+
+    assertThat(variants.downscale(resources, new BitmapResource(bitmap, bitmapPool),
+        newKey("model", 400, 400), newKey("model", 200, 200))).isNull();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Resource<?> mockResource(Object value) {
+    Resource<Object> resource = mock(Resource.class);
+    when(resource.get()).thenReturn(value);
+    return resource;
+  }
+
+  private static EngineKey newKey(Object model, int width, int height) {
+    return newKey(model, width, height, new CenterCrop());
+  }
+
+  private static EngineKey newKey(Object model, int width, int height,
+      @Nullable Transformation<Bitmap> transformation) {
+    Map<Class<?>, Transformation<?>> transformations = transformation == null
+        ? Collections.<Class<?>, Transformation<?>>emptyMap()
+        : Collections.<Class<?>, Transformation<?>>singletonMap(Bitmap.class, transformation);
+    return new EngineKey(model, new ObjectKey("signature"), width, height, transformations,
+        Object.class, Object.class, new Options());
+  }
+}
@@ -0,0 +1,245 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.model.StreamEncoder;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class SourceCacheWriterTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Key key = new ObjectKey("key");
+  private final byte[] data = new byte[] { 1, 2, 3, 4, 5, 6 };
+  private ArrayPool arrayPool;
+  private ExecutorService executor;
+  private DiskCache diskCache;
+  private SourceCacheWriter.Callback callback;
+  private StreamEncoder encoder;
+  private File written;
+
+  @Before
+  public void setUp() throws IOException {
+    arrayPool = newArrayPool();
+    executor = mock(ExecutorService.class);
+    callback = mock(SourceCacheWriter.Callback.class);
+    encoder = new StreamEncoder(newArrayPool());
+    written = temporaryFolder.newFile();
+    diskCache = mock(DiskCache.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        DiskCache.Writer writer = (DiskCache.Writer) invocation.getArguments()[1];
+        writer.write(written);
+        return null;
+      }
+    }).when(diskCache).put(eq(key), any(DiskCache.Writer.class));
+  }
+
+  @Test
+  public void read_withSmallStream_returnsCompleteBuffer() throws IOException {
+    SourceCacheWriter.Buffer buffer =
+        SourceCacheWriter.read(new ByteArrayInputStream(data), arrayPool);
+
+    assertThat(buffer.isComplete()).isTrue();
+    assertThat(readAll(buffer.newInputStream())).isEqualTo(data);
+  }
+
+  @Test
+  public void read_withStreamLargerThanMaxBufferSize_returnsIncompleteBuffer()
+      throws IOException {
+    byte[] large = new byte[SourceCacheWriter.MAX_BUFFER_SIZE + 10];
+    Arrays.fill(large, (byte) 7);
+    InputStream is = new ByteArrayInputStream(large);
+
+    SourceCacheWriter.Buffer buffer = SourceCacheWriter.read(is, arrayPool);
+
+    assertThat(buffer.isComplete()).isFalse();
+    assertThat(buffer.length).isEqualTo(SourceCacheWriter.MAX_BUFFER_SIZE);
+    assertThat(is.available()).isEqualTo(10);
+  }
+
+  @Test
+  public void read_whenStreamThrows_returnsArrayToPool() {
+    InputStream is = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("test");
+      }
+    };
+
+    try {
+      SourceCacheWriter.read(is, arrayPool);
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    verify(arrayPool).put(any(byte[].class));
+  }
+
+  @Test
+  public void write_withRoomInBacklog_writesOnExecutor() throws IOException {
+    SourceCacheWriter writer = new SourceCacheWriter(executor, 100);
+    SourceCacheWriter.Buffer buffer = read();
+
+    writer.write(diskCache, key, encoder, buffer, new Options(), callback);
+
+    verify(diskCache, never()).put(any(Key.class), any(DiskCache.Writer.class));
+    assertThat(writer.getPendingBytes()).isEqualTo(data.length);
+
+    runQueuedWrite();
+
+    assertThat(Util.readFile(written, data.length)).isEqualTo(data);
+    verify(callback).onWriteComplete(true);
+    assertThat(writer.getPendingBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void write_withFullBacklog_writesSynchronously() throws IOException {
+    SourceCacheWriter writer = new SourceCacheWriter(executor, data.length - 1);
+
+    writer.write(diskCache, key, encoder, read(), new Options(), callback);
+
+    verify(executor, never()).execute(any(Runnable.class));
+    assertThat(Util.readFile(written, data.length)).isEqualTo(data);
+    verify(callback).onWriteComplete(true);
+    assertThat(writer.getPendingBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void write_whenExecutorRejects_writesSynchronously() throws IOException {
+    doThrow(new RejectedExecutionException()).when(executor).execute(any(Runnable.class));
+    SourceCacheWriter writer = new SourceCacheWriter(executor, 100);
+
+    writer.write(diskCache, key, encoder, read(), new Options(), callback);
+
+    assertThat(Util.readFile(written, data.length)).isEqualTo(data);
+    verify(callback).onWriteComplete(true);
+    assertThat(writer.getPendingBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void write_whenDiskCacheThrows_notifiesNotCached() throws IOException {
+    doThrow(new RuntimeException("test"))
+        .when(diskCache).put(any(Key.class), any(DiskCache.Writer.class));
+    SourceCacheWriter writer = new SourceCacheWriter(executor, 100);
+    writer.write(diskCache, key, encoder, read(), new Options(), callback);
+
+    try {
+      runQueuedWrite();
+    } catch (RuntimeException e) {
+      // Expected.
+    }
+
+    verify(callback).onWriteComplete(false);
+    assertThat(writer.getPendingBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void buffer_releasedByFetcherAndWrite_returnsArrayToPoolOnce() throws IOException {
+    SourceCacheWriter writer = new SourceCacheWriter(executor, 100);
+    SourceCacheWriter.Buffer buffer = read();
+    DataFetcher<InputStream> fetcher = buffer.asFetcher(DataSource.REMOTE);
+    writer.write(diskCache, key, encoder, buffer, new Options(), callback);
+
+    fetcher.cleanup();
+    fetcher.cleanup();
+    verify(arrayPool, never()).put(any(byte[].class));
+
+    runQueuedWrite();
+    verify(arrayPool, times(1)).put(any(byte[].class));
+  }
+
+  @Test
+  public void asFetcher_returnsOriginalDataSource() throws IOException {
+    DataFetcher<InputStream> fetcher = read().asFetcher(DataSource.REMOTE);
+
+    assertThat(fetcher.getDataSource()).isEqualTo(DataSource.REMOTE);
+    assertThat(fetcher.getDataClass()).isEqualTo(InputStream.class);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void buffer_releasedTwice_throws() throws IOException {
+    SourceCacheWriter.Buffer buffer = read();
+    buffer.release();
+    buffer.release();
+  }
+
+  @Test
+  public void shutdown_waitsForQueuedWritesToComplete() throws InterruptedException {
+    when(executor.awaitTermination(anyLong(), any(TimeUnit.class))).thenReturn(true);
+
+    new SourceCacheWriter(executor).shutdown();
+
+    InOrder inOrder = inOrder(executor);
+    inOrder.verify(executor).shutdown();
+    inOrder.verify(executor).awaitTermination(anyLong(), any(TimeUnit.class));
+    verify(executor, never()).shutdownNow();
+  }
+
+  private static ArrayPool newArrayPool() {
+    ArrayPool result = mock(ArrayPool.class);
+    when(result.get(anyInt(), eq(byte[].class))).thenAnswer(new Answer<byte[]>() {
+      @Override
+      public byte[] answer(InvocationOnMock invocation) {
+        return new byte[(Integer) invocation.getArguments()[0]];
+      }
+    });
+    return result;
+  }
+
+  private SourceCacheWriter.Buffer read() throws IOException {
+    return SourceCacheWriter.read(new ByteArrayInputStream(data), arrayPool);
+  }
+
+  private void runQueuedWrite() {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).execute(captor.capture());
+    captor.getValue().run();
+  }
+
+  private static byte[] readAll(InputStream is) throws IOException {
+    byte[] result = new byte[is.available()];
+    assertThat(is.read(result)).isEqualTo(result.length);
+    return result;
+  }
+}
@@ -0,0 +1,106 @@
+package com.bumptech.glide.load.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SourceFetchCoalescerTest {
+  private final Key key = new DataCacheKey(new ObjectKey("source"), new ObjectKey("signature"));
+  private SourceFetchCoalescer coalescer;
+  private SourceFetchCoalescer.Waiter owner;
+  private SourceFetchCoalescer.Waiter waiter;
+
+  @Before
+  public void setUp() {
+    coalescer = new SourceFetchCoalescer();
+    owner = mock(SourceFetchCoalescer.Waiter.class);
+    waiter = mock(SourceFetchCoalescer.Waiter.class);
+  }
+
+  @Test
+  public void startOrAwait_withNoFetchInProgress_startsFetch() {
+    assertThat(coalescer.startOrAwait(key, owner)).isTrue();
+    assertThat(coalescer.isInProgress(key)).isTrue();
+  }
+
+  @Test
+  public void startOrAwait_withFetchInProgress_waits() {
+    coalescer.startOrAwait(key, owner);
+
+    assertThat(coalescer.startOrAwait(key, waiter)).isFalse();
+  }
+
+  @Test
+  public void startOrAwait_withFetchInProgressForOtherKey_startsFetch() {
+    coalescer.startOrAwait(key, owner);
+
+    Key otherKey = new DataCacheKey(new ObjectKey("source"), new ObjectKey("otherSignature"));
+    assertThat(coalescer.startOrAwait(otherKey, waiter)).isTrue();
+  }
+
+  @Test
+  public void complete_notifiesWaitersAndNotOwner() {
+    coalescer.startOrAwait(key, owner);
+    coalescer.startOrAwait(key, waiter);
+
+    coalescer.complete(key, owner, /*isDataCached=*/ true);
+
+    verify(waiter).onSourceFetchComplete(true);
+    verify(owner, never()).onSourceFetchComplete(anyBoolean());
+    assertThat(coalescer.isInProgress(key)).isFalse();
+  }
+
+  @Test
+  public void complete_withFailedFetch_notifiesWaitersThatDataIsNotCached() {
+    coalescer.startOrAwait(key, owner);
+    coalescer.startOrAwait(key, waiter);
+
+    coalescer.complete(key, owner, /*isDataCached=*/ false);
+
+    verify(waiter).onSourceFetchComplete(false);
+  }
+
+  @Test
+  public void complete_calledTwice_doesNotCompleteNewFetch() {
+    coalescer.startOrAwait(key, owner);
+    coalescer.complete(key, owner, /*isDataCached=*/ false);
+    coalescer.startOrAwait(key, waiter);
+    SourceFetchCoalescer.Waiter newWaiter = mock(SourceFetchCoalescer.Waiter.class);
+    coalescer.startOrAwait(key, newWaiter);
+
+    coalescer.complete(key, owner, /*isDataCached=*/ false);
+
+    assertThat(coalescer.isInProgress(key)).isTrue();
+    verify(newWaiter, never()).onSourceFetchComplete(anyBoolean());
+  }
+
+  @Test
+  public void stopWaiting_withWaitingWaiter_preventsNotification() {
+    coalescer.startOrAwait(key, owner);
+    coalescer.startOrAwait(key, waiter);
+
+    assertThat(coalescer.stopWaiting(key, waiter)).isTrue();
+    coalescer.complete(key, owner, /*isDataCached=*/ true);
+
+    verify(waiter, never()).onSourceFetchComplete(anyBoolean());
+  }
+
+  @Test
+  public void stopWaiting_afterComplete_returnsFalse() {
+    coalescer.startOrAwait(key, owner);
+    coalescer.startOrAwait(key, waiter);
+    coalescer.complete(key, owner, /*isDataCached=*/ true);
+
+    assertThat(coalescer.stopWaiting(key, waiter)).isFalse();
+  }
+}
@@ -0,0 +1,150 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.tests.ContentionRunner;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the get and put pattern of several decoder threads that each decode a {@link Bitmap} into a
+ * pooled {@link Bitmap}, transform it into a second pooled {@link Bitmap} and then release both
+ * against {@link LruBitmapPool} and {@link MagazineBitmapPool}, and verifies that neither hands out
+ * a {@link Bitmap} that's still in use or holds more than its maximum size.
+ *
+ * <p>Also compares how long each pool takes to run the workload when benchmarks are enabled, see
+ * {@link ContentionRunner#isBenchmarkEnabled()}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class BitmapPoolContentionTest {
+  private static final int THREAD_COUNT = 4;
+  private static final int DECODES_PER_THREAD = 2_000;
+  // The pool's sizes are checked after this many decodes on each thread.
+  private static final int CHECK_INTERVAL = 50;
+  private static final int BENCHMARK_ROUNDS = 5;
+  private static final int[] SIZES = new int[] { 8, 12, 16, 24 };
+  // Room for a few Bitmaps of each size for each thread.
+  private static final long POOL_SIZE = 4L * THREAD_COUNT * SIZES.length * 24 * 24 * 4;
+
+  @Test
+  public void lruBitmapPool_underContention_neverReturnsBitmapInUse()
+      throws InterruptedException {
+    LruBitmapPool pool = new LruBitmapPool(POOL_SIZE);
+
+    runAndVerify(pool, pool, /*magazinePool=*/ null);
+
+    assertThat(pool.getHitCount()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void magazineBitmapPool_underContention_neverReturnsBitmapInUse()
+      throws InterruptedException {
+    LruBitmapPool lruPool = new LruBitmapPool(MagazineBitmapPool.getSharedPoolSize(POOL_SIZE));
+    MagazineBitmapPool magazinePool = new MagazineBitmapPool(lruPool);
+
+    runAndVerify(magazinePool, lruPool, magazinePool);
+
+    assertThat(magazinePool.getHitCount()).isGreaterThan(0L);
+    // Every request is either a magazine hit or is passed on to the shared pool.
+    assertThat(magazinePool.getHitCount() + magazinePool.getMissCount())
+        .isEqualTo(2L * THREAD_COUNT * DECODES_PER_THREAD);
+    // The shared pool counts the magazines' hits as its own.
+    assertThat(lruPool.getHitCount()).isAtLeast(magazinePool.getHitCount());
+  }
+
+  @Test
+  public void magazineBitmapPool_underContention_isFasterThanLruBitmapPool()
+      throws InterruptedException {
+    assumeTrue(ContentionRunner.isBenchmarkEnabled());
+    assumeTrue(ContentionRunner.canRunInParallel(THREAD_COUNT));
+    ContentionRunner.Result lru = null;
+    ContentionRunner.Result magazine = null;
+    for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+      LruBitmapPool pool = new LruBitmapPool(POOL_SIZE);
+      ContentionRunner.Result lruRound = runAndVerify(pool, pool, /*magazinePool=*/ null);
+      LruBitmapPool lruPool = new LruBitmapPool(MagazineBitmapPool.getSharedPoolSize(POOL_SIZE));
+      MagazineBitmapPool magazinePool = new MagazineBitmapPool(lruPool);
+      ContentionRunner.Result magazineRound = runAndVerify(magazinePool, lruPool, magazinePool);
+      lru = lru == null ? lruRound : lru.fastest(lruRound);
+      magazine = magazine == null ? magazineRound : magazine.fastest(magazineRound);
+    }
+
+    assertWithMessage("magazine: %s, lru: %s", magazine, lru)
+        .that(magazine.getElapsedNanos())
+        .isLessThan(lru.getElapsedNanos());
+  }
+
+  /**
+   * Runs the decoder threads against the given pool while checking that the given shared pool and
+   * magazines, if any, never hold more than their combined maximum size.
+   */
+  private static ContentionRunner.Result runAndVerify(final BitmapPool pool,
+      final LruBitmapPool lruPool, @Nullable final MagazineBitmapPool magazinePool)
+      throws InterruptedException {
+    final Set<Bitmap> inUse = Collections.synchronizedSet(
+        Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>()));
+    ContentionRunner.Result result =
+        ContentionRunner.run(THREAD_COUNT, /*timeoutSeconds=*/ 60, new ContentionRunner.Task() {
+          @Override
+          public void run(int thread) {
+            Random random = new Random(thread);
+            for (int i = 0; i < DECODES_PER_THREAD; i++) {
+              int sourceSize = SIZES[random.nextInt(SIZES.length)];
+              int targetSize = SIZES[random.nextInt(SIZES.length)];
+              // Downsampler decodes into a dirty Bitmap from the pool.
+              Bitmap decoded = pool.getDirty(sourceSize, sourceSize, Bitmap.Config.ARGB_8888);
+              acquire(decoded);
+              // A transformation draws the decoded Bitmap onto a cleared Bitmap from the pool.
+              Bitmap transformed = pool.get(targetSize, targetSize, Bitmap.Config.ARGB_8888);
+              acquire(transformed);
+              // The decoded Bitmap is released as soon as it's transformed, the transformed
+              // Bitmap is released later when the resource is recycled.
+              release(decoded);
+              release(transformed);
+              if (i % CHECK_INTERVAL == 0) {
+                checkSize();
+              }
+            }
+          }
+
+          private void acquire(Bitmap bitmap) {
+            if (!inUse.add(bitmap)) {
+              throw new AssertionError("Bitmap returned while still in use: " + bitmap);
+            }
+          }
+
+          private void release(Bitmap bitmap) {
+            inUse.remove(bitmap);
+            pool.put(bitmap);
+          }
+
+          private void checkSize() {
+            // Each part stays within its own share, so their sum can be checked without a lock.
+            long size = lruPool.getCurrentSize()
+                + (magazinePool != null ? magazinePool.getCurrentSize() : 0);
+            if (size > pool.getMaxSize()) {
+              throw new AssertionError(
+                  "Pool size: " + size + " exceeds max size: " + pool.getMaxSize());
+            }
+          }
+        });
+
+    pool.clearMemory();
+    assertThat(lruPool.getCurrentSize()).isEqualTo(0);
+    if (magazinePool != null) {
+      assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+    }
+    return result;
+  }
+}
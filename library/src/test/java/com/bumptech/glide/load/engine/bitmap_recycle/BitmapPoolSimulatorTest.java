@@ -0,0 +1,98 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class BitmapPoolSimulatorTest {
+  private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+  private static final int BYTES = 100 * 100 * 4;
+
+  private BitmapPoolTrace trace;
+
+  @Before
+  public void setUp() {
+    trace = new BitmapPoolTrace(100);
+  }
+
+  @Test
+  public void simulate_withMatchingPutAndGet_countsHit() {
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordGet(100, 100, CONFIG);
+
+    BitmapPoolStats stats =
+        BitmapPoolSimulator.simulate(trace, BitmapPoolSimulator.Strategy.ATTRIBUTE, 10 * BYTES);
+
+    assertThat(stats.getHitCount()).isEqualTo(1);
+    assertThat(stats.getMissCount()).isEqualTo(0);
+    assertThat(stats.getPutCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void simulate_withDifferentSize_countsMiss() {
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordGet(50, 50, CONFIG);
+
+    BitmapPoolStats stats =
+        BitmapPoolSimulator.simulate(trace, BitmapPoolSimulator.Strategy.ATTRIBUTE, 10 * BYTES);
+
+    assertThat(stats.getHitCount()).isEqualTo(0);
+    assertThat(stats.getMissCount()).isEqualTo(1);
+    assertThat(stats.getSizeClasses()).hasSize(1);
+  }
+
+  @Test
+  public void simulate_withSmallPool_evictsBitmaps() {
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordPut(100, 100, CONFIG);
+
+    BitmapPoolStats stats =
+        BitmapPoolSimulator.simulate(trace, BitmapPoolSimulator.Strategy.ATTRIBUTE, 2 * BYTES);
+
+    assertThat(stats.getEvictionCount(BitmapPoolStats.EvictionReason.MAX_SIZE)).isEqualTo(1);
+    assertThat(stats.getCurrentSize()).isEqualTo(2 * BYTES);
+  }
+
+  @Test
+  public void simulate_replaysTrimsAndSizeMultipliers() {
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordSizeMultiplier(0.5f);
+    trace.recordPut(100, 100, CONFIG);
+    trace.recordClearMemory();
+
+    BitmapPoolStats stats =
+        BitmapPoolSimulator.simulate(trace, BitmapPoolSimulator.Strategy.ATTRIBUTE, 2 * BYTES);
+
+    assertThat(stats.getEvictionCount(BitmapPoolStats.EvictionReason.SIZE_MULTIPLIER))
+        .isEqualTo(1);
+    assertThat(stats.getEvictionCount(BitmapPoolStats.EvictionReason.MAX_SIZE)).isEqualTo(1);
+    assertThat(stats.getEvictionCount(BitmapPoolStats.EvictionReason.CLEAR_MEMORY))
+        .isEqualTo(1);
+    assertThat(stats.getMaxSize()).isEqualTo(BYTES);
+  }
+
+  @Test
+  public void simulateAll_belowKitKat_onlySimulatesAttributeStrategy() {
+    trace.recordPut(100, 100, CONFIG);
+
+    Map<BitmapPoolSimulator.Strategy, BitmapPoolStats> result =
+        BitmapPoolSimulator.simulateAll(trace, 10 * BYTES);
+
+    assertThat(result.keySet()).containsExactly(BitmapPoolSimulator.Strategy.ATTRIBUTE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void simulate_withUnsupportedStrategy_throws() {
+    BitmapPoolSimulator.simulate(trace, BitmapPoolSimulator.Strategy.SIZE_CONFIG, BYTES);
+  }
+}
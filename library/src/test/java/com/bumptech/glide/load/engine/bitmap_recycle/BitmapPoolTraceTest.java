@@ -0,0 +1,105 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class BitmapPoolTraceTest {
+  private BitmapPoolTrace trace;
+
+  @Before
+  public void setUp() {
+    trace = new BitmapPoolTrace(10);
+  }
+
+  @Test
+  public void record_storesRequestsInOrder() {
+    trace.recordGet(100, 200, Bitmap.Config.RGB_565);
+    trace.recordPut(300, 400, null);
+    trace.recordTrimMemory(40);
+    trace.recordClearMemory();
+    trace.recordSizeMultiplier(0.5f);
+
+    assertThat(trace.size()).isEqualTo(5);
+    assertThat(trace.getType(0)).isEqualTo(BitmapPoolTrace.GET);
+    assertThat(trace.getWidth(0)).isEqualTo(100);
+    assertThat(trace.getHeight(0)).isEqualTo(200);
+    assertThat(trace.getConfig(0)).isEqualTo(Bitmap.Config.RGB_565);
+    assertThat(trace.getType(1)).isEqualTo(BitmapPoolTrace.PUT);
+    assertThat(trace.getConfig(1)).isNull();
+    assertThat(trace.getType(2)).isEqualTo(BitmapPoolTrace.TRIM_MEMORY);
+    assertThat(trace.getLevel(2)).isEqualTo(40);
+    assertThat(trace.getType(3)).isEqualTo(BitmapPoolTrace.CLEAR_MEMORY);
+    assertThat(trace.getType(4)).isEqualTo(BitmapPoolTrace.SIZE_MULTIPLIER);
+    assertThat(trace.getSizeMultiplier(4)).isEqualTo(0.5f);
+  }
+
+  @Test
+  public void record_whenFull_ignoresRequests() {
+    for (int i = 0; i < trace.getCapacity() + 5; i++) {
+      trace.recordGet(i + 1, 1, Bitmap.Config.ARGB_8888);
+    }
+
+    assertThat(trace.isFull()).isTrue();
+    assertThat(trace.size()).isEqualTo(trace.getCapacity());
+    assertThat(trace.getWidth(trace.size() - 1)).isEqualTo(trace.getCapacity());
+  }
+
+  @Test
+  public void clear_removesRequests() {
+    trace.recordClearMemory();
+
+    trace.clear();
+
+    assertThat(trace.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void writeTo_thenReadFrom_returnsSameRequests() throws IOException {
+    trace.recordGet(100, 200, Bitmap.Config.ARGB_8888);
+    trace.recordPut(100, 200, null);
+    trace.recordSizeMultiplier(2f);
+
+    BitmapPoolTrace result = writeAndRead(trace);
+
+    assertThat(result.size()).isEqualTo(3);
+    assertThat(result.getType(0)).isEqualTo(BitmapPoolTrace.GET);
+    assertThat(result.getWidth(0)).isEqualTo(100);
+    assertThat(result.getHeight(0)).isEqualTo(200);
+    assertThat(result.getConfig(0)).isEqualTo(Bitmap.Config.ARGB_8888);
+    assertThat(result.getType(1)).isEqualTo(BitmapPoolTrace.PUT);
+    assertThat(result.getConfig(1)).isNull();
+    assertThat(result.getSizeMultiplier(2)).isEqualTo(2f);
+  }
+
+  @Test
+  public void writeTo_thenReadFrom_withEmptyTrace_returnsEmptyTrace() throws IOException {
+    assertThat(writeAndRead(trace).size()).isEqualTo(0);
+  }
+
+  @Test(expected = IOException.class)
+  public void readFrom_withInvalidStream_throws() throws IOException {
+    BitmapPoolTrace.readFrom(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_withZeroCapacity_throws() {
+    new BitmapPoolTrace(0);
+  }
+
+  private static BitmapPoolTrace writeAndRead(BitmapPoolTrace trace) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    trace.writeTo(os);
+    return BitmapPoolTrace.readFrom(new ByteArrayInputStream(os.toByteArray()));
+  }
+}
@@ -171,6 +171,36 @@ public class LruArrayPoolTest {
     assertThat(pool.get(targetSize, byte[].class)).isNotSameAs(toPut);
   }
 
+  @Test
+  public void get_countsHitsAndMisses() {
+    pool.put(new byte[MAX_PUT_SIZE]);
+
+    pool.get(MAX_PUT_SIZE, byte[].class);
+    pool.get(MAX_PUT_SIZE, byte[].class);
+
+    assertThat(pool.getHitCount()).isEqualTo(1);
+    assertThat(pool.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void setSizeMultiplier_withSmallerMultiplier_evictsArrays() {
+    fillPool(pool, MAX_SIZE / ADAPTER.getElementSizeInBytes(), 1);
+
+    pool.setSizeMultiplier(0.5f);
+
+    assertThat(pool.getMaxSize()).isEqualTo(MAX_SIZE / 2);
+    assertThat(pool.getCurrentSize()).isEqualTo(MAX_SIZE / 2);
+  }
+
+  @Test
+  public void setSizeMultiplier_withLargerMultiplier_retainsMoreArrays() {
+    pool.setSizeMultiplier(2);
+
+    fillPool(pool, 2 * MAX_SIZE / ADAPTER.getElementSizeInBytes(), 1);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(2 * MAX_SIZE);
+  }
+
   private void testTrimMemory(int fillSize, int trimLevel, int expectedSize) {
     pool = new LruArrayPool(MAX_SIZE);
     fillPool(pool, fillSize / ADAPTER.getElementSizeInBytes(), 1);
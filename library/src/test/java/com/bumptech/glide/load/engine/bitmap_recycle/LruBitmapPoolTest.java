@@ -10,6 +10,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.graphics.Bitmap;
@@ -114,6 +115,115 @@ public class LruBitmapPoolTest {
     }
   }
 
+  @Test
+  public void testCountsHitsMissesAndEvictions() {
+    fillPool(pool, MAX_SIZE + 2);
+    pool.get(100, 100, Bitmap.Config.ARGB_8888);
+    pool.setSizeMultiplier(0);
+    pool.get(100, 100, Bitmap.Config.ARGB_8888);
+
+    assertEquals(1, pool.getHitCount());
+    assertEquals(1, pool.getMissCount());
+    assertEquals(MAX_SIZE + 1, pool.getEvictionCount());
+    assertEquals(0, pool.getCurrentSize());
+  }
+
+  @Test
+  public void testNotifiesRequestListenerOfEachRequest() {
+    LruBitmapPool.RequestListener listener = mock(LruBitmapPool.RequestListener.class);
+    pool.setRequestListener(listener);
+    fillPool(pool, 2);
+
+    pool.get(100, 100, Bitmap.Config.ARGB_8888);
+    pool.getDirty(50, 50, null);
+
+    verify(listener).onBitmapRequested(100, 100, Bitmap.Config.ARGB_8888);
+    verify(listener).onBitmapRequested(50, 50, Bitmap.Config.ARGB_8888);
+  }
+
+  @Test
+  public void testStatsCountEvictionsByReason() {
+    fillPool(pool, MAX_SIZE + 2);
+    pool.setSizeMultiplier(0.5f);
+    pool.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+    pool.clearMemory();
+
+    BitmapPoolStats stats = pool.getStats();
+    assertEquals(2, stats.getEvictionCount(BitmapPoolStats.EvictionReason.MAX_SIZE));
+    assertEquals(MAX_SIZE / 2,
+        stats.getEvictionCount(BitmapPoolStats.EvictionReason.SIZE_MULTIPLIER));
+    assertEquals(3, stats.getEvictionCount(BitmapPoolStats.EvictionReason.TRIM_MEMORY));
+    assertEquals(2, stats.getEvictionCount(BitmapPoolStats.EvictionReason.CLEAR_MEMORY));
+    assertEquals(MAX_SIZE + 2, stats.getEvictionCount());
+    assertEquals(MAX_SIZE + 2, stats.getPutCount());
+  }
+
+  @Test
+  public void testStatsTrackSizeClassesAndWastedBytes() {
+    strategy = new MockStrategy() {
+      @Override
+      public int getSize(Bitmap bitmap) {
+        return 50_000;
+      }
+    };
+    pool = new LruBitmapPool(1_000_000, strategy, ALLOWED_CONFIGS);
+    fillPool(pool, 2);
+
+    // 100x100 ARGB_8888 is 40,000 bytes.
+    pool.get(100, 100, Bitmap.Config.ARGB_8888);
+
+    BitmapPoolStats stats = pool.getStats();
+    assertEquals(1, stats.getOversizedHitCount());
+    assertEquals(10_000, stats.getWastedBytes());
+    assertThat(stats.getSizeClasses()).hasSize(1);
+    BitmapPoolStats.SizeClass sizeClass = stats.getSizeClasses().get(0);
+    assertEquals(32_768, sizeClass.getMinBytes());
+    assertEquals(1, sizeClass.getBitmapCount());
+    assertEquals(50_000, sizeClass.getBytes());
+  }
+
+  @Test
+  public void testStatsCountRejectedBitmaps() {
+    Bitmap bitmap = createMutableBitmap();
+    Shadows.shadowOf(bitmap).setMutable(false);
+    pool.put(bitmap);
+
+    assertEquals(1, pool.getStats().getRejectedCount());
+    assertEquals(0, pool.getStats().getPutCount());
+  }
+
+  @Test
+  public void testRecordsRequestsInTrace() {
+    BitmapPoolTrace trace = new BitmapPoolTrace(10);
+    pool.setTrace(trace);
+
+    pool.put(createMutableBitmap());
+    pool.getDirty(50, 50, null);
+    pool.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+    pool.clearMemory();
+
+    assertEquals(4, trace.size());
+    assertEquals(BitmapPoolTrace.PUT, trace.getType(0));
+    assertEquals(BitmapPoolTrace.GET, trace.getType(1));
+    assertEquals(50, trace.getWidth(1));
+    assertEquals(Bitmap.Config.ARGB_8888, trace.getConfig(1));
+    assertEquals(BitmapPoolTrace.TRIM_MEMORY, trace.getType(2));
+    assertEquals(TRIM_MEMORY_UI_HIDDEN, trace.getLevel(2));
+    assertEquals(BitmapPoolTrace.CLEAR_MEMORY, trace.getType(3));
+  }
+
+  @Test
+  public void testDoesNotRecordRejectedPutsInTrace() {
+    BitmapPoolTrace trace = new BitmapPoolTrace(10);
+    pool.setTrace(trace);
+    Bitmap bitmap = createMutableBitmap();
+    Shadows.shadowOf(bitmap).setMutable(false);
+
+    pool.put(bitmap);
+
+    assertEquals(0, trace.size());
+  }
+
   @Test
   public void testPassesArgb888ToStrategyAsConfigForRequestsWithNullConfigsOnGet() {
     LruPoolStrategy strategy = mock(LruPoolStrategy.class);
@@ -240,7 +350,7 @@ public class LruBitmapPoolTest {
 
     @Override
     public Bitmap get(int width, int height, Bitmap.Config config) {
-      return bitmaps.removeLast();
+      return bitmaps.isEmpty() ? null : bitmaps.removeLast();
     }
 
     @Override
@@ -0,0 +1,279 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class MagazineBitmapPoolTest {
+  private static final int WIDTH = 100;
+  private static final int HEIGHT = 200;
+  private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+
+  private final FakeClock clock = new FakeClock();
+  private BitmapPool pool;
+  private MagazineBitmapPool magazinePool;
+  private ExecutorService background;
+
+  @Before
+  public void setUp() {
+    pool = mock(BitmapPool.class);
+    when(pool.getMaxSize()).thenReturn(Long.MAX_VALUE);
+    magazinePool = new MagazineBitmapPool(pool, /*magazineSize=*/ 2, clock);
+    background = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    background.shutdown();
+  }
+
+  @Test
+  public void getDirty_afterPutOnSameThread_returnsBitmapFromMagazine() throws Exception {
+    final Bitmap bitmap = createBitmap();
+
+    Bitmap result = onBackground(new Callable<Bitmap>() {
+      @Override
+      public Bitmap call() {
+        magazinePool.put(bitmap);
+        return magazinePool.getDirty(WIDTH, HEIGHT, CONFIG);
+      }
+    });
+
+    assertThat(result).isSameAs(bitmap);
+    verify(pool, never()).put(any(Bitmap.class));
+    assertThat(magazinePool.getHitCount()).isEqualTo(1);
+    assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void getDirty_withDifferentSize_usesPool() throws Exception {
+    final Bitmap expected = createBitmap();
+    when(pool.getDirty(WIDTH + 1, HEIGHT, CONFIG)).thenReturn(expected);
+
+    Bitmap result = onBackground(new Callable<Bitmap>() {
+      @Override
+      public Bitmap call() {
+        magazinePool.put(createBitmap());
+        return magazinePool.getDirty(WIDTH + 1, HEIGHT, CONFIG);
+      }
+    });
+
+    assertThat(result).isSameAs(expected);
+    assertThat(magazinePool.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getDirty_onOtherThread_usesPool() throws Exception {
+    final Bitmap expected = createBitmap();
+    when(pool.getDirty(WIDTH, HEIGHT, CONFIG)).thenReturn(expected);
+    onBackground(new Callable<Void>() {
+      @Override
+      public Void call() {
+        magazinePool.put(createBitmap());
+        return null;
+      }
+    });
+
+    assertThat(magazinePool.getDirty(WIDTH, HEIGHT, CONFIG)).isSameAs(expected);
+  }
+
+  @Test
+  public void put_onMainThread_putsInPool() {
+    Bitmap bitmap = createBitmap();
+
+    magazinePool.put(bitmap);
+
+    verify(pool).put(bitmap);
+    assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_withImmutableBitmap_putsInPool() throws Exception {
+    final Bitmap bitmap = createBitmap();
+    Shadows.shadowOf(bitmap).setMutable(false);
+
+    putOnBackground(bitmap);
+
+    verify(pool).put(bitmap);
+  }
+
+  @Test
+  public void put_withFullMagazine_putsOldestInPool() throws Exception {
+    Bitmap first = createBitmap();
+    Bitmap second = createBitmap();
+    Bitmap third = createBitmap();
+
+    putOnBackground(first, second, third);
+
+    verify(pool).put(first);
+    verify(pool, never()).put(second);
+    verify(pool, never()).put(third);
+  }
+
+  @Test
+  public void put_overMaxSize_putsInPool() throws Exception {
+    Bitmap bitmap = createBitmap();
+    // The magazines get an eighth of the total, 1/7th of the shared pool's maximum size.
+    when(pool.getMaxSize()).thenReturn(7L * WIDTH * HEIGHT * 4 - 1);
+
+    putOnBackground(bitmap);
+
+    verify(pool).put(bitmap);
+  }
+
+  @Test
+  public void getMaxSize_includesMagazines() {
+    when(pool.getMaxSize()).thenReturn(MagazineBitmapPool.getSharedPoolSize(800));
+
+    assertThat(magazinePool.getMaxSize()).isEqualTo(800);
+  }
+
+  @Test
+  public void put_afterIdleTimeout_returnsIdleMagazinesToPool() throws Exception {
+    Bitmap bitmap = createBitmap();
+    putOnBackground(bitmap);
+    clock.time += MagazineBitmapPool.IDLE_TIMEOUT_MILLIS + 1;
+
+    magazinePool.put(createBitmap());
+
+    verify(pool).put(bitmap);
+    assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_beforeIdleTimeout_keepsMagazines() throws Exception {
+    Bitmap bitmap = createBitmap();
+    putOnBackground(bitmap);
+    clock.time += MagazineBitmapPool.IDLE_TIMEOUT_MILLIS - 1;
+
+    magazinePool.put(createBitmap());
+
+    verify(pool, never()).put(bitmap);
+  }
+
+  @Test
+  public void getDirty_afterThreadDies_returnsMagazineToPoolAndForgetsIt() throws Exception {
+    final Bitmap bitmap = createBitmap();
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        magazinePool.put(bitmap);
+      }
+    });
+    thread.start();
+    thread.join();
+    clock.time += MagazineBitmapPool.IDLE_TIMEOUT_MILLIS;
+
+    magazinePool.getDirty(WIDTH, HEIGHT, CONFIG);
+
+    verify(pool).put(bitmap);
+    assertThat(magazinePool.getMagazineCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void getDirty_fromMagazine_countsHitInLruPool() throws Exception {
+    LruBitmapPool.RequestListener listener = mock(LruBitmapPool.RequestListener.class);
+    final LruBitmapPool lruPool = new LruBitmapPool(10L * WIDTH * HEIGHT * 4);
+    lruPool.setRequestListener(listener);
+    magazinePool = new MagazineBitmapPool(lruPool, /*magazineSize=*/ 2, clock);
+    final Bitmap bitmap = createBitmap();
+
+    Bitmap result = onBackground(new Callable<Bitmap>() {
+      @Override
+      public Bitmap call() {
+        magazinePool.put(bitmap);
+        return magazinePool.getDirty(WIDTH, HEIGHT, CONFIG);
+      }
+    });
+
+    assertThat(result).isSameAs(bitmap);
+    assertThat(lruPool.getHitCount()).isEqualTo(1);
+    assertThat(lruPool.getStats().getHitCount()).isEqualTo(1);
+    verify(listener).onBitmapRequested(WIDTH, HEIGHT, CONFIG);
+  }
+
+  @Test
+  public void trimMemory_returnsBitmapsToPool() throws Exception {
+    Bitmap bitmap = createBitmap();
+    putOnBackground(bitmap);
+
+    magazinePool.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+
+    verify(pool).put(bitmap);
+    verify(pool).trimMemory(TRIM_MEMORY_UI_HIDDEN);
+    assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void setSizeMultiplier_returnsBitmapsToPool() throws Exception {
+    Bitmap bitmap = createBitmap();
+    putOnBackground(bitmap);
+
+    magazinePool.setSizeMultiplier(0.5f);
+
+    verify(pool).put(bitmap);
+    verify(pool).setSizeMultiplier(0.5f);
+  }
+
+  @Test
+  public void clearMemory_recyclesBitmaps() throws Exception {
+    Bitmap bitmap = createBitmap();
+    putOnBackground(bitmap);
+
+    magazinePool.clearMemory();
+
+    assertThat(bitmap.isRecycled()).isTrue();
+    verify(pool, never()).put(bitmap);
+    verify(pool).clearMemory();
+    assertThat(magazinePool.getCurrentSize()).isEqualTo(0);
+  }
+
+  private void putOnBackground(final Bitmap... bitmaps) throws Exception {
+    onBackground(new Callable<Void>() {
+      @Override
+      public Void call() {
+        for (Bitmap bitmap : bitmaps) {
+          magazinePool.put(bitmap);
+        }
+        return null;
+      }
+    });
+  }
+
+  private <T> T onBackground(Callable<T> callable)
+      throws ExecutionException, InterruptedException {
+    return background.submit(callable).get();
+  }
+
+  private static Bitmap createBitmap() {
+    return Bitmap.createBitmap(WIDTH, HEIGHT, CONFIG);
+  }
+
+  private static final class FakeClock implements MagazineBitmapPool.Clock {
+    long time = 1000;
+
+    @Override
+    public long uptimeMillis() {
+      return time;
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package com.bumptech.glide.load.engine.bitmap_recycle;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class SizeClassArrayPoolTest {
+  private static final int MAX_SIZE = 1024;
+
+  private SizeClassArrayPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new SizeClassArrayPool(MAX_SIZE);
+  }
+
+  @Test
+  public void getSizeClass_roundsUpByAtMostAQuarter() {
+    for (int length = 1; length < 100_000; length++) {
+      long classSize = SizeClassArrayPool.getClassSize(SizeClassArrayPool.getSizeClass(length));
+      assertThat(classSize).isAtLeast((long) length);
+      if (length > SizeClassArrayPool.MIN_CLASS_SIZE) {
+        assertThat(classSize).isAtMost((long) (length + length / 4));
+      }
+    }
+  }
+
+  @Test
+  public void getSizeClass_withClassSize_returnsSameClass() {
+    for (int sizeClass = 0; sizeClass < 80; sizeClass++) {
+      int classSize = (int) SizeClassArrayPool.getClassSize(sizeClass);
+      assertThat(SizeClassArrayPool.getSizeClass(classSize)).isEqualTo(sizeClass);
+      assertThat(SizeClassArrayPool.getSizeClass(classSize + 1)).isEqualTo(sizeClass + 1);
+    }
+  }
+
+  @Test
+  public void getSizeClass_withStandardBufferSize_isNotRounded() {
+    int sizeClass = SizeClassArrayPool.getSizeClass(ArrayPool.STANDARD_BUFFER_SIZE_BYTES);
+    assertThat(SizeClassArrayPool.getClassSize(sizeClass))
+        .isEqualTo((long) ArrayPool.STANDARD_BUFFER_SIZE_BYTES);
+  }
+
+  @Test
+  public void get_withEmptyPool_returnsArrayOfClassSize() {
+    byte[] result = pool.get(17, byte[].class);
+
+    assertThat(result.length).isEqualTo(20);
+  }
+
+  @Test
+  public void get_afterPut_returnsPutArray() {
+    byte[] array = pool.get(100, byte[].class);
+    pool.put(array);
+
+    assertThat(pool.get(100, byte[].class)).isSameAs(array);
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void get_withSmallerSizeInSameClass_returnsPutArray() {
+    byte[] array = pool.get(112, byte[].class);
+    pool.put(array);
+
+    assertThat(pool.get(100, byte[].class)).isSameAs(array);
+  }
+
+  @Test
+  public void get_withOtherArrayType_doesNotReturnPutArray() {
+    pool.put(new byte[64]);
+
+    int[] result = pool.get(16, int[].class);
+
+    assertThat(result.length).isEqualTo(16);
+    assertThat(pool.getCurrentSize()).isEqualTo(64);
+  }
+
+  @Test
+  public void put_withLengthBetweenClasses_canFillSmallerClass() {
+    byte[] array = new byte[70];
+    pool.put(array);
+
+    assertThat(pool.get(64, byte[].class)).isSameAs(array);
+  }
+
+  @Test
+  public void put_withLengthSmallerThanSmallestClass_isIgnored() {
+    pool.put(new byte[SizeClassArrayPool.MIN_CLASS_SIZE - 1]);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_withArrayLargerThanHalfPool_isIgnored() {
+    pool.put(new byte[MAX_SIZE / 2 + 1]);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_countsIntArraysInBytes() {
+    pool.put(new int[16]);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(64);
+  }
+
+  @Test
+  public void put_overMaxSize_evictsLeastRecentlyUsedClass() {
+    byte[] oldest = new byte[256];
+    pool.put(oldest);
+    pool.put(new byte[512]);
+    pool.put(new byte[320]);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(832L);
+    assertThat(pool.get(256, byte[].class)).isNotSameAs(oldest);
+  }
+
+  @Test
+  public void getExact_withClassSize_returnsPutArray() {
+    byte[] array = new byte[8];
+    pool.put(array);
+
+    assertThat(pool.getExact(8, byte[].class)).isSameAs(array);
+  }
+
+  @Test
+  public void getExact_withLongerArrayInClass_allocatesArray() {
+    byte[] array = new byte[70];
+    pool.put(array);
+
+    byte[] result = pool.getExact(64, byte[].class);
+
+    assertThat(result.length).isEqualTo(64);
+    assertThat(pool.getCurrentSize()).isEqualTo(70);
+  }
+
+  @Test
+  public void getExact_withSizeBetweenClasses_returnsExactSize() {
+    assertThat(pool.getExact(17, byte[].class).length).isEqualTo(17);
+  }
+
+  @Test
+  public void clearMemory_removesAllArrays() {
+    pool.put(new byte[64]);
+    pool.put(new int[16]);
+
+    pool.clearMemory();
+
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void trimMemory_uiHidden_trimsToHalfMaxSize() {
+    for (int i = 0; i < 4; i++) {
+      pool.put(new byte[256]);
+    }
+
+    pool.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+
+    assertThat(pool.getCurrentSize()).isAtMost((long) MAX_SIZE / 2);
+  }
+
+  @Test
+  public void trimMemory_background_removesAllArrays() {
+    pool.put(new byte[256]);
+
+    pool.trimMemory(TRIM_MEMORY_BACKGROUND);
+
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void getAndPut_fromManyThreads_keepsSizeWithinMaxSize() throws InterruptedException {
+    final int threadCount = 4;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threadCount);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final Random random = new Random(t);
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < 20_000; i++) {
+              byte[] bytes = pool.get(8 + random.nextInt(200), byte[].class);
+              int[] ints = pool.get(8 + random.nextInt(50), int[].class);
+              pool.put(bytes);
+              pool.put(ints);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(pool.getCurrentSize()).isAtMost((long) MAX_SIZE);
+    pool.clearMemory();
+    assertThat(pool.getCurrentSize()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,160 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.ContentionRunner;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the same multi-threaded read and write workload that the disk cache executor generates
+ * against {@link DiskLruCacheWrapper} and {@link ShardedDiskLruCacheWrapper} and verifies that
+ * every entry that is read back has the expected contents.
+ *
+ * <p>Also compares how long each cache takes to run the workload when benchmarks are enabled, see
+ * {@link ContentionRunner#isBenchmarkEnabled()}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class DiskCacheContentionTest {
+  private static final int THREAD_COUNT = 4;
+  private static final int OPERATIONS_PER_THREAD = 2_000;
+  private static final int KEY_COUNT = 256;
+  private static final int SHARD_COUNT = 4;
+  private static final int BENCHMARK_ROUNDS = 5;
+  private static final long CACHE_SIZE = 10 * 1024 * 1024;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void diskLruCacheWrapper_underContention_returnsWrittenData()
+      throws InterruptedException {
+    runAndVerify(DiskLruCacheWrapper.create(newDirectory(), CACHE_SIZE));
+  }
+
+  @Test
+  public void shardedDiskLruCacheWrapper_underContention_returnsWrittenData()
+      throws InterruptedException {
+    runAndVerify(ShardedDiskLruCacheWrapper.create(newDirectory(), CACHE_SIZE, SHARD_COUNT));
+  }
+
+  @Test
+  public void shardedDiskLruCacheWrapper_underContention_spreadsEntriesAcrossShards()
+      throws InterruptedException {
+    File directory = newDirectory();
+    DiskCache cache = ShardedDiskLruCacheWrapper.create(directory, CACHE_SIZE, SHARD_COUNT);
+
+    runAndVerify(cache);
+
+    int total = 0;
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      int entries = countEntries(new File(directory, String.valueOf(i)));
+      // Each shard only contends with the threads whose keys it holds, so no shard should hold
+      // most of the keys.
+      assertThat(entries).isGreaterThan(0);
+      assertThat(entries).isAtMost(KEY_COUNT / 2);
+      total += entries;
+    }
+    assertThat(total).isEqualTo(KEY_COUNT);
+  }
+
+  @Test
+  public void shardedDiskLruCacheWrapper_underContention_isFasterThanDiskLruCacheWrapper()
+      throws InterruptedException {
+    assumeTrue(ContentionRunner.isBenchmarkEnabled());
+    assumeTrue(ContentionRunner.canRunInParallel(THREAD_COUNT));
+    ContentionRunner.Result single = null;
+    ContentionRunner.Result sharded = null;
+    for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+      ContentionRunner.Result singleRound =
+          runAndVerify(DiskLruCacheWrapper.create(newDirectory(), CACHE_SIZE));
+      ContentionRunner.Result shardedRound =
+          runAndVerify(ShardedDiskLruCacheWrapper.create(newDirectory(), CACHE_SIZE, SHARD_COUNT));
+      single = single == null ? singleRound : single.fastest(singleRound);
+      sharded = sharded == null ? shardedRound : sharded.fastest(shardedRound);
+    }
+
+    assertWithMessage("sharded: %s, single: %s", sharded, single)
+        .that(sharded.getElapsedNanos())
+        .isLessThan(single.getElapsedNanos());
+  }
+
+  private File newDirectory() {
+    try {
+      return temporaryFolder.newFolder();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static int countEntries(File shardDirectory) {
+    File[] files = shardDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return !name.startsWith("journal");
+      }
+    });
+    return files != null ? files.length : 0;
+  }
+
+  private static ContentionRunner.Result runAndVerify(final DiskCache cache)
+      throws InterruptedException {
+    final AtomicReference<String> error = new AtomicReference<>();
+    final Key[] keys = new Key[KEY_COUNT];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new ObjectKey(i);
+    }
+
+    ContentionRunner.Result result =
+        ContentionRunner.run(THREAD_COUNT, /*timeoutSeconds=*/ 60, new ContentionRunner.Task() {
+          @Override
+          public void run(int thread) throws IOException {
+            Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+              final int index = random.nextInt(KEY_COUNT);
+              Key key = keys[index];
+              // Mirrors DataCacheGenerator followed by SourceGenerator on a miss.
+              File file = cache.get(key);
+              if (file == null) {
+                cache.put(key, new DiskCache.Writer() {
+                  @Override
+                  public boolean write(@NonNull File file) {
+                    try {
+                      Util.writeFile(file, dataFor(index));
+                    } catch (IOException e) {
+                      error.set(e.toString());
+                      return false;
+                    }
+                    return true;
+                  }
+                });
+              } else if (Util.readFile(file, 4)[3] != (byte) index) {
+                throw new AssertionError("Unexpected contents for key: " + key);
+              }
+            }
+          }
+        });
+
+    assertThat(error.get()).isNull();
+    return result;
+  }
+
+  private static byte[] dataFor(int index) {
+    return new byte[] { 1, 2, 3, (byte) index };
+  }
+}
@@ -0,0 +1,136 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.ContentionRunner;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks that opening a {@link MappedIndexDiskCache} that already holds many entries only maps its
+ * index, so that the cost of the first access after launch doesn't grow with the number of
+ * entries.
+ *
+ * <p>Also compares the time to the first lookup after opening with the time {@link
+ * DiskLruCacheWrapper} takes to read its journal when benchmarks are enabled, see {@link
+ * ContentionRunner#isBenchmarkEnabled()}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class DiskCacheOpenTimeTest {
+  private static final int ENTRY_COUNT = 500;
+  private static final int BENCHMARK_ENTRY_COUNT = 5_000;
+  private static final int BENCHMARK_ROUNDS = 5;
+  private static final long MAX_SIZE = 250 * 1024 * 1024;
+  private static final byte[] DATA = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final List<Runnable> scheduled = new ArrayList<>();
+  private final Executor recordingExecutor = new Executor() {
+    @Override
+    public void execute(@NonNull Runnable command) {
+      scheduled.add(command);
+    }
+  };
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = new File(temporaryFolder.getRoot(), "mapped");
+  }
+
+  @Test
+  public void open_withManyEntries_findsEntriesWithoutScanningIndex() {
+    fill(new MappedIndexDiskCache(dir, MAX_SIZE, recordingExecutor), ENTRY_COUNT);
+    scheduled.clear();
+
+    MappedIndexDiskCache reopened = new MappedIndexDiskCache(dir, MAX_SIZE, recordingExecutor);
+
+    assertThat(reopened.get(keyFor(0))).isNotNull();
+    assertThat(scheduled).isEmpty();
+    assertThat(reopened.getEntryCount()).isEqualTo(ENTRY_COUNT);
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      assertThat(reopened.get(keyFor(i))).isNotNull();
+    }
+    assertThat(scheduled).isEmpty();
+  }
+
+  @Test
+  public void open_indexSizeDoesNotDependOnEntryCount() {
+    File fewDir = new File(temporaryFolder.getRoot(), "few");
+    fill(new MappedIndexDiskCache(fewDir, MAX_SIZE, recordingExecutor), 1);
+    fill(new MappedIndexDiskCache(dir, MAX_SIZE, recordingExecutor), ENTRY_COUNT);
+
+    assertThat(new File(dir, MappedIndexDiskCache.INDEX_FILE_NAME).length())
+        .isEqualTo(new File(fewDir, MappedIndexDiskCache.INDEX_FILE_NAME).length());
+  }
+
+  @Test
+  public void open_withManyEntries_isFasterThanReadingJournal() {
+    assumeTrue(ContentionRunner.isBenchmarkEnabled());
+    File journalDir = new File(temporaryFolder.getRoot(), "journal");
+    fill(new MappedIndexDiskCache(dir, MAX_SIZE, recordingExecutor), BENCHMARK_ENTRY_COUNT);
+    fill(DiskLruCacheWrapper.create(journalDir, MAX_SIZE), BENCHMARK_ENTRY_COUNT);
+
+    long mappedNanos = Long.MAX_VALUE;
+    long journalNanos = Long.MAX_VALUE;
+    for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+      mappedNanos = Math.min(mappedNanos,
+          timeFirstGet(new MappedIndexDiskCache(dir, MAX_SIZE, recordingExecutor)));
+      // DiskLruCacheWrapper reads its journal the first time it's used.
+      journalNanos = Math.min(journalNanos,
+          timeFirstGet(DiskLruCacheWrapper.create(journalDir, MAX_SIZE)));
+    }
+
+    assertWithMessage("mapped: %sus, journal: %sus",
+        TimeUnit.NANOSECONDS.toMicros(mappedNanos), TimeUnit.NANOSECONDS.toMicros(journalNanos))
+        .that(mappedNanos)
+        .isLessThan(journalNanos);
+  }
+
+  private static long timeFirstGet(DiskCache cache) {
+    long startTime = System.nanoTime();
+    File file = cache.get(keyFor(0));
+    long elapsedNanos = System.nanoTime() - startTime;
+    assertThat(file).isNotNull();
+    return elapsedNanos;
+  }
+
+  private static void fill(DiskCache cache, int count) {
+    for (int i = 0; i < count; i++) {
+      cache.put(keyFor(i), new DiskCache.Writer() {
+        @Override
+        public boolean write(@NonNull File file) {
+          try {
+            Util.writeFile(file, DATA);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          return true;
+        }
+      });
+    }
+  }
+
+  private static Key keyFor(int i) {
+    return new ObjectKey("key" + i);
+  }
+}
@@ -136,6 +136,52 @@ public class DiskLruCacheWrapperTest {
     assertArrayEquals(data, received);
   }
 
+  @Test
+  public void get_withNewWrapperForSameDirectory_returnsExistingEntry() throws IOException {
+    putData(cache, key);
+
+    DiskCache reopened = DiskLruCacheWrapper.create(dir, 10 * 1024 * 1024);
+
+    assertArrayEquals(data, Util.readFile(reopened.get(key), data.length));
+  }
+
+  @Test
+  public void get_afterClearAndPut_returnsEntry() throws IOException {
+    putData(cache, key);
+    cache.clear();
+    assertNull(cache.get(key));
+
+    putData(cache, key);
+
+    assertArrayEquals(data, Util.readFile(cache.get(key), data.length));
+  }
+
+  @Test
+  public void get_afterManyPuts_returnsEveryEntry() throws IOException {
+    // More entries than the initial key filter is sized for, so that it's rebuilt.
+    for (int i = 0; i < 1100; i++) {
+      putData(cache, new ObjectKey(i));
+    }
+
+    for (int i = 0; i < 1100; i++) {
+      assertArrayEquals(data, Util.readFile(cache.get(new ObjectKey(i)), data.length));
+    }
+  }
+
+  private void putData(DiskCache cache, Key key) {
+    cache.put(key, new DiskCache.Writer() {
+      @Override
+      public boolean write(@NonNull File file) {
+        try {
+          Util.writeFile(file, data);
+        } catch (IOException e) {
+          fail(e.toString());
+        }
+        return true;
+      }
+    });
+  }
+
   // Tests #2465.
   @Test
   public void clearDiskCache_afterOpeningDiskCache_andDeleteDirectoryOutsideGlide_doesNotThrow() {
@@ -0,0 +1,141 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class DoorkeeperAdmissionPolicyTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Key key = new ObjectKey("key");
+  private final List<Runnable> scheduled = new ArrayList<>();
+  private final Executor recordingExecutor = new Executor() {
+    @Override
+    public void execute(@NonNull Runnable command) {
+      scheduled.add(command);
+    }
+  };
+  private File file;
+  private DoorkeeperAdmissionPolicy policy;
+
+  @Before
+  public void setUp() {
+    file = new File(temporaryFolder.getRoot(), "doorkeeper");
+    policy = newPolicy(100);
+  }
+
+  @Test
+  public void shouldAdmit_onFirstWrite_returnsFalse() {
+    assertThat(shouldAdmit(key)).isFalse();
+  }
+
+  @Test
+  public void shouldAdmit_onSecondWrite_returnsTrue() {
+    shouldAdmit(key);
+
+    assertThat(shouldAdmit(key)).isTrue();
+    assertThat(shouldAdmit(new ObjectKey("other"))).isFalse();
+  }
+
+  @Test
+  public void shouldAdmit_afterClear_returnsFalse() {
+    shouldAdmit(key);
+
+    policy.clear();
+
+    assertThat(shouldAdmit(key)).isFalse();
+  }
+
+  @Test
+  public void shouldAdmit_afterExpectedEntries_remembersRecentKeys() {
+    shouldAdmit(key);
+    // Fill the first filter and then more than the second, so that the first filter is dropped
+    // even if a few keys are false positives that aren't added.
+    for (int i = 0; i < 250; i++) {
+      shouldAdmit(new ObjectKey(i));
+    }
+
+    assertThat(shouldAdmit(key)).isFalse();
+    assertThat(shouldAdmit(new ObjectKey(249))).isTrue();
+  }
+
+  @Test
+  public void shouldAdmit_afterSaveAndReopen_remembersKeys() {
+    shouldAdmit(key);
+    policy.save();
+
+    policy = newPolicy(100);
+
+    assertThat(shouldAdmit(key)).isTrue();
+  }
+
+  @Test
+  public void shouldAdmit_afterSaveInterval_savesInBackground() {
+    for (int i = 0; i < DoorkeeperAdmissionPolicy.SAVE_INTERVAL; i++) {
+      shouldAdmit(new ObjectKey(i));
+    }
+    assertThat(file.exists()).isFalse();
+    assertThat(scheduled).hasSize(1);
+
+    scheduled.remove(0).run();
+    policy = newPolicy(100);
+
+    assertThat(shouldAdmit(new ObjectKey(0))).isTrue();
+  }
+
+  @Test
+  public void shouldAdmit_afterSaveIntervalWhileSaveIsScheduled_doesNotScheduleAnotherSave() {
+    for (int i = 0; i < 2 * DoorkeeperAdmissionPolicy.SAVE_INTERVAL; i++) {
+      shouldAdmit(new ObjectKey(i));
+    }
+
+    assertThat(scheduled).hasSize(1);
+  }
+
+  @Test
+  public void clear_afterScheduledSave_deletesFile() {
+    for (int i = 0; i < DoorkeeperAdmissionPolicy.SAVE_INTERVAL; i++) {
+      shouldAdmit(new ObjectKey(i));
+    }
+
+    policy.clear();
+    scheduled.remove(0).run();
+
+    policy = newPolicy(100);
+    assertThat(shouldAdmit(new ObjectKey(0))).isFalse();
+  }
+
+  @Test
+  public void shouldAdmit_withFileForDifferentSize_ignoresFile() {
+    shouldAdmit(key);
+    policy.save();
+
+    policy = newPolicy(1000);
+
+    assertThat(shouldAdmit(key)).isFalse();
+  }
+
+  private DoorkeeperAdmissionPolicy newPolicy(int expectedEntries) {
+    return new DoorkeeperAdmissionPolicy(expectedEntries, file, recordingExecutor);
+  }
+
+  private boolean shouldAdmit(Key key) {
+    return policy.shouldAdmit(key, DataSource.REMOTE, /*isResource=*/ false, /*size=*/ -1);
+  }
+}
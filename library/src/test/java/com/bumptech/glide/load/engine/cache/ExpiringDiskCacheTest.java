@@ -0,0 +1,252 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class ExpiringDiskCacheTest {
+  private static final long TIME_TO_LIVE = 1000;
+  private static final int MAX_ENTRIES = 100;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Key key = new ObjectKey("key");
+  private final FakeClock clock = new FakeClock();
+  private final QueueExecutor executor = new QueueExecutor();
+  private File indexFile;
+  private DiskCache wrapped;
+  private ExpiringDiskCache cache;
+
+  @Before
+  public void setUp() {
+    indexFile = new File(temporaryFolder.getRoot(), "index");
+    wrapped =
+        DiskLruCacheWrapper.create(new File(temporaryFolder.getRoot(), "cache"), 1024 * 1024);
+    cache = newCache(MAX_ENTRIES);
+  }
+
+  @Test
+  public void get_beforeExpiration_returnsEntry() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    clock.time += TIME_TO_LIVE - 1;
+
+    assertThat(cache.get(key)).isNotNull();
+  }
+
+  @Test
+  public void get_afterExpiration_returnsNullWithoutDeleting() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    executor.runAll();
+    clock.time += TIME_TO_LIVE;
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(wrapped.get(key)).isNotNull();
+  }
+
+  @Test
+  public void get_afterExpirationAndSweep_deletesEntry() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    clock.time += TIME_TO_LIVE;
+
+    cache.get(key);
+    executor.runAll();
+
+    assertThat(wrapped.get(key)).isNull();
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void get_withoutTimeToLive_neverExpires() {
+    cache.put(key, new DataWriter(0));
+    clock.time += 100 * TIME_TO_LIVE;
+
+    assertThat(cache.get(key)).isNotNull();
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_afterExpiration_writesNewEntry() throws IOException {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    clock.time += TIME_TO_LIVE;
+
+    cache.put(key, new DataWriter(TIME_TO_LIVE, new byte[] { 9 }));
+
+    assertThat(Util.readFile(cache.get(key), 1)).isEqualTo(new byte[] { 9 });
+  }
+
+  @Test
+  public void sweep_deletesExpiredEntriesInBatches() {
+    int count = ExpiringDiskCache.SWEEP_BATCH_SIZE + 5;
+    for (int i = 0; i < count; i++) {
+      cache.put(new ObjectKey(i), new DataWriter(TIME_TO_LIVE));
+    }
+    cache.put(key, new DataWriter(10 * TIME_TO_LIVE));
+    executor.runAll();
+    clock.time += TIME_TO_LIVE;
+
+    cache.sweep();
+
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(6);
+    assertThat(executor.tasks).hasSize(1);
+    executor.runAll();
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(1);
+    assertThat(wrapped.get(new ObjectKey(0))).isNull();
+    assertThat(cache.get(key)).isNotNull();
+  }
+
+  @Test
+  public void get_afterReopen_expiresEntry() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    for (int i = 1; i < ExpiringDiskCache.SAVE_INTERVAL; i++) {
+      cache.put(new ObjectKey(i), new DataWriter(TIME_TO_LIVE));
+    }
+    executor.runAll();
+
+    cache = newCache(MAX_ENTRIES);
+    clock.time += TIME_TO_LIVE;
+
+    assertThat(cache.get(key)).isNull();
+    executor.runAll();
+    assertThat(wrapped.get(key)).isNull();
+  }
+
+  @Test
+  public void put_afterSaveInterval_savesInBackground() {
+    for (int i = 0; i < ExpiringDiskCache.SAVE_INTERVAL; i++) {
+      cache.put(new ObjectKey(i), new DataWriter(TIME_TO_LIVE));
+    }
+
+    assertThat(indexFile.exists()).isFalse();
+    executor.runAll();
+    assertThat(indexFile.exists()).isTrue();
+  }
+
+  @Test
+  public void put_afterSaveIntervalWhileSaveIsScheduled_doesNotScheduleAnotherSave() {
+    for (int i = 0; i < 2 * ExpiringDiskCache.SAVE_INTERVAL; i++) {
+      cache.put(new ObjectKey(i), new DataWriter(TIME_TO_LIVE));
+    }
+
+    // The initial sweep and a single save.
+    assertThat(executor.tasks).hasSize(2);
+  }
+
+  @Test
+  public void put_overMaxEntries_deletesEntriesClosestToExpiring() {
+    cache = newCache(/*maxEntries=*/ 2);
+    cache.put(new ObjectKey(1), new DataWriter(3 * TIME_TO_LIVE));
+    cache.put(new ObjectKey(2), new DataWriter(TIME_TO_LIVE));
+    cache.put(new ObjectKey(3), new DataWriter(2 * TIME_TO_LIVE));
+
+    executor.runAll();
+
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(2);
+    assertThat(wrapped.get(new ObjectKey(2))).isNull();
+    assertThat(cache.get(new ObjectKey(1))).isNotNull();
+    assertThat(cache.get(new ObjectKey(3))).isNotNull();
+  }
+
+  @Test
+  public void get_afterWrappedCacheEvictsEntry_removesExpirationTime() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+    wrapped.delete(key);
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void delete_removesExpirationTime() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+
+    cache.delete(key);
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void clear_removesEntriesAndIndex() {
+    cache.put(key, new DataWriter(TIME_TO_LIVE));
+
+    cache.clear();
+
+    assertThat(cache.getExpiringEntryCount()).isEqualTo(0);
+    assertThat(indexFile.exists()).isFalse();
+  }
+
+  private ExpiringDiskCache newCache(int maxEntries) {
+    return new ExpiringDiskCache(wrapped, indexFile, maxEntries, executor, clock);
+  }
+
+  private static final class FakeClock implements ExpiringDiskCache.Clock {
+    long time = 1000;
+
+    @Override
+    public long currentTimeMillis() {
+      return time;
+    }
+  }
+
+  private static final class QueueExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove(0).run();
+      }
+    }
+  }
+
+  private static final class DataWriter implements ExpiringDiskCache.TimeToLiveWriter {
+    private final long timeToLiveMillis;
+    private final byte[] data;
+
+    DataWriter(long timeToLiveMillis) {
+      this(timeToLiveMillis, new byte[] { 1, 2, 3 });
+    }
+
+    DataWriter(long timeToLiveMillis, byte[] data) {
+      this.timeToLiveMillis = timeToLiveMillis;
+      this.data = data;
+    }
+
+    @Override
+    public long getTimeToLiveMillis() {
+      return timeToLiveMillis;
+    }
+
+    @Override
+    public boolean write(@NonNull File file) {
+      try {
+        Util.writeFile(file, data);
+      } catch (IOException e) {
+        fail(e.toString());
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FrequencySketchTest {
+  private FrequencySketch sketch;
+
+  @Before
+  public void setUp() {
+    sketch = new FrequencySketch(512);
+  }
+
+  @Test
+  public void frequency_withUnseenKey_isZero() {
+    assertThat(sketch.frequency(1)).isEqualTo(0);
+  }
+
+  @Test
+  public void increment_once_isOnlyRecordedInDoorkeeper() {
+    sketch.increment(1);
+
+    assertThat(sketch.frequency(1)).isEqualTo(1);
+  }
+
+  @Test
+  public void increment_manyTimes_increasesFrequency() {
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(1);
+    }
+
+    assertThat(sketch.frequency(1)).isEqualTo(5);
+  }
+
+  @Test
+  public void increment_manyTimes_saturatesFrequency() {
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(1);
+    }
+
+    assertThat(sketch.frequency(1)).isEqualTo(16);
+  }
+
+  @Test
+  public void increment_doesNotAffectOtherKeysMuch() {
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(1);
+    }
+    for (int i = 2; i < 100; i++) {
+      sketch.increment(i);
+    }
+
+    assertThat(sketch.frequency(1)).isEqualTo(10);
+    assertThat(sketch.frequency(50)).isAtMost(2);
+  }
+
+  @Test
+  public void increment_afterSampleSize_halvesFrequencies() {
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(1);
+    }
+    // Enough distinct keys, each seen twice, to trigger an aging reset.
+    for (int i = 2; i < 10 * 512; i++) {
+      sketch.increment(i);
+      sketch.increment(i);
+    }
+
+    assertThat(sketch.frequency(1)).isLessThan(10);
+  }
+
+  @Test
+  public void clear_forgetsKeys() {
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(1);
+    }
+
+    sketch.clear();
+
+    assertThat(sketch.frequency(1)).isEqualTo(0);
+  }
+}
@@ -0,0 +1,272 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.bumptech.glide.load.engine.cache.MemoryCache.ResourceRemovedListener;
+import static com.bumptech.glide.tests.Util.anyResource;
+import static com.bumptech.glide.tests.Util.mockResource;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.LoadCost;
+import com.bumptech.glide.load.engine.Resource;
+import java.security.MessageDigest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GreedyDualSizeResourceCacheTest {
+  private GreedyDualSizeResourceCache cache;
+  private ResourceRemovedListener listener;
+
+  @Before
+  public void setUp() {
+    cache = new GreedyDualSizeResourceCache(100);
+    listener = mock(ResourceRemovedListener.class);
+    cache.setResourceRemovedListener(listener);
+  }
+
+  @Test
+  public void put_withEqualCosts_evictsLeastRecentlyPut() {
+    Key[] keys = putAll(5, 20, 10);
+
+    cache.put(keys[0], cache.remove(keys[0]));
+    Key extra = new MockKey();
+    cache.put(extra, getCostedResource(20, 10));
+
+    assertTrue(cache.contains(keys[0]));
+    assertFalse(cache.contains(keys[1]));
+    assertTrue(cache.contains(extra));
+    assertThat(cache.getCurrentSize()).isEqualTo(100);
+  }
+
+  @Test
+  public void put_evictsCheapestResourcePerByteFirst() {
+    Key expensive = new MockKey();
+    cache.put(expensive, getCostedResource(40, 400));
+    Key cheap = new MockKey();
+    Resource<?> cheapResource = getCostedResource(40, 4);
+    cache.put(cheap, cheapResource);
+
+    cache.put(new MockKey(), getCostedResource(40, 40));
+
+    assertTrue(cache.contains(expensive));
+    assertFalse(cache.contains(cheap));
+    verify(listener).onResourceRemoved(cheapResource);
+  }
+
+  @Test
+  public void put_prefersSmallResourcesWithTheSameCost() {
+    Key large = new MockKey();
+    cache.put(large, getCostedResource(60, 100));
+    Key small = new MockKey();
+    cache.put(small, getCostedResource(30, 100));
+
+    cache.put(new MockKey(), getCostedResource(30, 100));
+
+    assertFalse(cache.contains(large));
+    assertTrue(cache.contains(small));
+  }
+
+  @Test
+  public void put_eventuallyEvictsExpensiveResourcesThatAreNotReused() {
+    Key expensive = new MockKey();
+    cache.put(expensive, getCostedResource(50, 1000));
+
+    // Each eviction raises the priority of newly put resources, so the expensive resource is
+    // evicted once enough cheaper resources have been put after it.
+    for (int i = 0; i < 100; i++) {
+      cache.put(new MockKey(), getCostedResource(50, 50));
+    }
+
+    assertFalse(cache.contains(expensive));
+  }
+
+  @Test
+  public void put_withResourceWithoutLoadCost_usesDefaultCost() {
+    Resource<?> resource = mockResource();
+    when(resource.getSize()).thenReturn(10);
+
+    assertThat(cache.getCost(resource))
+        .isEqualTo(GreedyDualSizeResourceCache.DEFAULT_COST_MILLIS);
+    assertThat(cache.getCost(getCostedResource(10, 0)))
+        .isEqualTo(GreedyDualSizeResourceCache.DEFAULT_COST_MILLIS);
+    assertThat(cache.getCost(getCostedResource(10, 123))).isEqualTo(123);
+  }
+
+  @Test
+  public void getCost_weightsLoadTimeByDataSource() {
+    assertThat(cache.getCost(getCostedResource(10, 100, DataSource.REMOTE)))
+        .isGreaterThan(cache.getCost(getCostedResource(10, 100, DataSource.DATA_DISK_CACHE)));
+    assertThat(cache.getCost(getCostedResource(10, 100, DataSource.DATA_DISK_CACHE)))
+        .isGreaterThan(cache.getCost(getCostedResource(10, 100, DataSource.RESOURCE_DISK_CACHE)));
+    assertThat(cache.getCost(getCostedResource(10, 100, DataSource.LOCAL))).isEqualTo(100);
+  }
+
+  @Test
+  public void put_withExistingItem_evictsExistingItemAndUpdatesSize() {
+    Key key = new MockKey();
+    Resource<?> first = getCostedResource(50, 10);
+    Resource<?> second = getCostedResource(30, 10);
+    cache.put(key, first);
+
+    assertThat(cache.put(key, second)).isEqualTo(first);
+    verify(listener).onResourceRemoved(first);
+    assertThat(cache.getCurrentSize()).isEqualTo(30);
+  }
+
+  @Test
+  public void put_withSameItem_doesNotNotifyListener() {
+    Key key = new MockKey();
+    Resource<?> resource = getCostedResource(50, 10);
+    cache.put(key, resource);
+    cache.put(key, resource);
+
+    verify(listener, never()).onResourceRemoved(anyResource());
+    assertThat(cache.getCurrentSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void put_withNullItem_removesAndNotifiesExistingItem() {
+    Key key = new MockKey();
+    Resource<?> resource = getCostedResource(50, 10);
+    cache.put(key, resource);
+
+    assertThat(cache.put(key, null)).isEqualTo(resource);
+    verify(listener).onResourceRemoved(resource);
+    assertFalse(cache.contains(key));
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_withResourceLargerThanCache_notifiesListener() {
+    Resource<?> resource = getCostedResource(200, 10);
+    cache.put(new MockKey(), resource);
+
+    verify(listener).onResourceRemoved(resource);
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void remove_returnsResourceAndUpdatesSize() {
+    Key key = new MockKey();
+    Resource<?> resource = getCostedResource(50, 10);
+    cache.put(key, resource);
+
+    assertThat(cache.remove(key)).isEqualTo(resource);
+    assertThat(cache.remove(key)).isNull();
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+    verify(listener, never()).onResourceRemoved(anyResource());
+  }
+
+  @Test
+  public void peek_returnsResourceWithoutRemovingIt() {
+    Key key = new MockKey();
+    Resource<?> resource = getCostedResource(50, 10);
+    cache.put(key, resource);
+
+    assertThat(cache.peek(key)).isEqualTo(resource);
+    assertThat(cache.peek(new MockKey())).isNull();
+    assertThat(cache.contains(key)).isTrue();
+    assertThat(cache.getCurrentSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void trimMemory_uiHidden_evictsCheapestHalf() {
+    Key expensive = new MockKey();
+    Resource<?> expensiveResource = getCostedResource(50, 500);
+    cache.put(expensive, expensiveResource);
+    Resource<?> cheapResource = getCostedResource(50, 5);
+    cache.put(new MockKey(), cheapResource);
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    verify(listener).onResourceRemoved(cheapResource);
+    verify(listener, never()).onResourceRemoved(expensiveResource);
+    assertTrue(cache.contains(expensive));
+  }
+
+  @Test
+  public void trimMemory_background_evictsEverything() {
+    putAll(5, 20, 10);
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void setSizeMultiplier_evictsUntilBelowNewSize() {
+    putAll(10, 10, 10);
+
+    cache.setSizeMultiplier(0.5f);
+
+    assertThat(cache.getMaxSize()).isEqualTo(50);
+    assertThat(cache.getCurrentSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void testPreventEviction() {
+    final Resource<?> first = getCostedResource(30, 10);
+    final Key firstKey = new MockKey();
+    cache.put(firstKey, first);
+    Key secondKey = new MockKey();
+    cache.put(secondKey, getCostedResource(30, 10));
+    Key thirdKey = new MockKey();
+    cache.put(thirdKey, getCostedResource(30, 10));
+    cache.setResourceRemovedListener(new ResourceRemovedListener() {
+      @Override
+      public void onResourceRemoved(@NonNull Resource<?> removed) {
+        if (removed == first) {
+          cache.put(firstKey, first);
+        }
+      }
+    });
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    assertTrue(cache.contains(firstKey));
+    assertFalse(cache.contains(secondKey));
+    assertFalse(cache.contains(thirdKey));
+  }
+
+  private Key[] putAll(int count, int size, long cost) {
+    Key[] keys = new Key[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new MockKey();
+      cache.put(keys[i], getCostedResource(size, cost));
+    }
+    return keys;
+  }
+
+  private static Resource<?> getCostedResource(int size, long loadTimeMillis) {
+    return getCostedResource(size, loadTimeMillis, /*dataSource=*/ null);
+  }
+
+  private static Resource<?> getCostedResource(
+      int size, long loadTimeMillis, DataSource dataSource) {
+    CostedResource resource = mock(CostedResource.class);
+    when(resource.getSize()).thenReturn(size);
+    when(resource.getLoadTimeMillis()).thenReturn(loadTimeMillis);
+    when(resource.getLoadDataSource()).thenReturn(dataSource);
+    return resource;
+  }
+
+  interface CostedResource extends Resource<Object>, LoadCost { }
+
+  private static class MockKey implements Key {
+    @Override
+    public void updateDiskCacheKey(MessageDigest messageDigest) {
+      messageDigest.update(toString().getBytes(CHARSET));
+    }
+  }
+}
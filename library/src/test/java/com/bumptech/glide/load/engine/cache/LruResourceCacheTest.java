@@ -53,6 +53,17 @@ public class LruResourceCacheTest {
     assertThat(harness.cache.get(harness.key)).isEqualTo(harness.second);
   }
 
+  @Test
+  public void peek_returnsItemWithoutCountingHitsOrMisses() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+
+    assertThat(harness.cache.peek(harness.key)).isEqualTo(harness.first);
+    assertThat(harness.cache.contains(harness.key)).isTrue();
+    assertThat(harness.cache.getHitCount()).isEqualTo(0);
+    assertThat(harness.cache.getMissCount()).isEqualTo(0);
+  }
+
   @Test
   public void onItemEvicted_withNullValue_doesNotNotifyListener() {
     PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
@@ -0,0 +1,268 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class MappedIndexDiskCacheTest {
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    @Override
+    public void execute(@NonNull Runnable command) {
+      command.run();
+    }
+  };
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final byte[] data = new byte[] { 1, 2, 3, 4, 5, 6 };
+  private final Key key = new ObjectKey("key");
+  private File dir;
+  private MappedIndexDiskCache cache;
+
+  @Before
+  public void setUp() {
+    dir = new File(temporaryFolder.getRoot(), "cache");
+    cache = newCache(10 * 1024 * 1024);
+  }
+
+  @Test
+  public void get_afterPut_returnsFileWithData() throws IOException {
+    cache.put(key, new DataWriter(data));
+
+    assertArrayEquals(data, Util.readFile(cache.get(key), data.length));
+    assertThat(cache.getEntryCount()).isEqualTo(1);
+    assertThat(cache.getCurrentSize()).isEqualTo(data.length);
+  }
+
+  @Test
+  public void get_withMissingKey_returnsNull() {
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  public void put_withWriterReturningFalse_doesNotCommit() {
+    cache.put(key, new DiskCache.Writer() {
+      @Override
+      public boolean write(@NonNull File file) {
+        try {
+          Util.writeFile(file, data);
+        } catch (IOException e) {
+          fail(e.toString());
+        }
+        return false;
+      }
+    });
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(dataFiles()).isEmpty();
+  }
+
+  @Test
+  public void put_afterWriterThrows_commits() throws IOException {
+    try {
+      cache.put(key, new DiskCache.Writer() {
+        @Override
+        public boolean write(@NonNull File file) {
+          throw new RuntimeException("test");
+        }
+      });
+    } catch (RuntimeException e) {
+      // Expected.
+    }
+
+    cache.put(key, new DataWriter(data));
+
+    assertArrayEquals(data, Util.readFile(cache.get(key), data.length));
+  }
+
+  @Test
+  public void put_withExistingEntry_doesNotWriteAgain() {
+    cache.put(key, new DataWriter(data));
+    cache.put(key, new DiskCache.Writer() {
+      @Override
+      public boolean write(@NonNull File file) {
+        fail("Should not write existing entry");
+        return false;
+      }
+    });
+
+    assertThat(cache.getEntryCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void delete_removesEntryAndFile() {
+    cache.put(key, new DataWriter(data));
+
+    cache.delete(key);
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+    assertThat(dataFiles()).isEmpty();
+  }
+
+  @Test
+  public void clear_removesAllEntriesAndFiles() {
+    cache.put(key, new DataWriter(data));
+    cache.put(new ObjectKey("other"), new DataWriter(data));
+
+    cache.clear();
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+    assertThat(dataFiles()).isEmpty();
+  }
+
+  @Test
+  public void get_afterReopening_returnsPreviouslyPutEntry() throws IOException {
+    cache.put(key, new DataWriter(data));
+
+    MappedIndexDiskCache reopened = newCache(10 * 1024 * 1024);
+
+    assertArrayEquals(data, Util.readFile(reopened.get(key), data.length));
+    assertThat(reopened.getCurrentSize()).isEqualTo(data.length);
+  }
+
+  @Test
+  public void get_afterFileDeletedExternally_returnsNullAndRemovesEntry() {
+    cache.put(key, new DataWriter(data));
+    File file = cache.get(key);
+    assertThat(file.delete()).isTrue();
+
+    assertThat(cache.get(key)).isNull();
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_overMaxSize_evictsLeastRecentlyUsedEntries() {
+    cache = newCache(3 * data.length);
+    Key first = new ObjectKey("first");
+    Key second = new ObjectKey("second");
+    Key third = new ObjectKey("third");
+    cache.put(first, new DataWriter(data));
+    cache.put(second, new DataWriter(data));
+    cache.put(third, new DataWriter(data));
+    // Makes second the least recently used entry.
+    cache.get(first);
+
+    cache.put(new ObjectKey("fourth"), new DataWriter(data));
+
+    assertThat(cache.get(second)).isNull();
+    assertThat(cache.get(first)).isNotNull();
+    assertThat(cache.getCurrentSize()).isAtMost(3L * data.length);
+    assertThat(dataFiles()).hasLength(cache.getEntryCount());
+  }
+
+  @Test
+  public void put_withMoreEntriesThanIndexCanHold_evictsEntries() {
+    cache = newCache(1024 * 1024);
+    int capacity = MappedIndexDiskCache.getCapacity(1024 * 1024);
+    for (int i = 0; i < capacity; i++) {
+      cache.put(new ObjectKey("key" + i), new DataWriter(data));
+    }
+
+    assertThat(cache.getEntryCount()).isAtMost(capacity / 2);
+    assertThat(cache.get(new ObjectKey("key" + (capacity - 1)))).isNotNull();
+    assertThat(dataFiles()).hasLength(cache.getEntryCount());
+  }
+
+  @Test
+  public void get_withCorruptIndex_returnsNullAndDeletesFiles() throws IOException {
+    cache.put(key, new DataWriter(data));
+    RandomAccessFile index =
+        new RandomAccessFile(new File(dir, MappedIndexDiskCache.INDEX_FILE_NAME), "rw");
+    try {
+      index.writeInt(0);
+    } finally {
+      index.close();
+    }
+
+    MappedIndexDiskCache reopened = newCache(10 * 1024 * 1024);
+
+    assertThat(reopened.get(key)).isNull();
+    assertThat(dataFiles()).isEmpty();
+  }
+
+  @Test
+  public void open_afterUncleanShutdown_deletesOrphanedFiles() throws IOException {
+    cache.put(key, new DataWriter(data));
+    File orphan = new File(dir, "12345");
+    Util.writeFile(orphan, data);
+    RandomAccessFile index =
+        new RandomAccessFile(new File(dir, MappedIndexDiskCache.INDEX_FILE_NAME), "rw");
+    try {
+      // Marks the index as dirty, as if we were killed while updating it.
+      index.seek(40);
+      index.writeInt(1);
+    } finally {
+      index.close();
+    }
+
+    MappedIndexDiskCache reopened = newCache(10 * 1024 * 1024);
+
+    assertArrayEquals(data, Util.readFile(reopened.get(key), data.length));
+    assertThat(orphan.exists()).isFalse();
+  }
+
+  @Test
+  public void create_withSameDirectory_returnsSameInstance() {
+    assertThat(MappedIndexDiskCache.create(dir, 1024))
+        .isSameAs(MappedIndexDiskCache.create(dir, 1024));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_withSameDirectoryAndDifferentSize_throws() {
+    MappedIndexDiskCache.create(dir, 1024);
+    MappedIndexDiskCache.create(dir, 2048);
+  }
+
+  private MappedIndexDiskCache newCache(long maxSize) {
+    return new MappedIndexDiskCache(dir, maxSize, DIRECT_EXECUTOR);
+  }
+
+  private File[] dataFiles() {
+    return dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return !MappedIndexDiskCache.INDEX_FILE_NAME.equals(name);
+      }
+    });
+  }
+
+  private static final class DataWriter implements DiskCache.Writer {
+    private final byte[] data;
+
+    DataWriter(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public boolean write(@NonNull File file) {
+      try {
+        Util.writeFile(file, data);
+      } catch (IOException e) {
+        fail(e.toString());
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,320 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.support.annotation.Nullable;
+import com.bumptech.glide.load.engine.EngineStatsListener;
+import com.bumptech.glide.load.engine.cache.MemoryBudgetController.Decision;
+import com.bumptech.glide.load.engine.cache.MemoryBudgetController.Reason;
+import com.bumptech.glide.load.engine.cache.MemoryBudgetController.Target;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class MemoryBudgetControllerTest {
+  private static final long SIZE = 1000;
+  private static final int REQUESTS = MemoryBudgetController.MIN_REQUESTS_PER_SAMPLE * 10;
+
+  private FakeResizable memoryCache;
+  private FakeResizable bitmapPool;
+  private FakeResizable arrayPool;
+  private FakeHeapMonitor heapMonitor;
+  private List<Decision> decisions;
+  private MemoryBudgetController controller;
+
+  @Before
+  public void setUp() {
+    memoryCache = new FakeResizable(SIZE);
+    bitmapPool = new FakeResizable(SIZE);
+    arrayPool = new FakeResizable(SIZE);
+    heapMonitor = new FakeHeapMonitor();
+    decisions = new ArrayList<>();
+    controller = newController(heapMonitor);
+  }
+
+  @Test
+  public void sample_withFullTargetMissingMoreOften_movesBytesAfterRequiredSamples() {
+    for (int i = 0; i < MemoryBudgetController.REQUIRED_SAMPLES - 1; i++) {
+      sampleWithMissRates(0.5f, 0.3f, 0f);
+    }
+    assertThat(decisions).isEmpty();
+
+    sampleWithMissRates(0.5f, 0.3f, 0f);
+
+    assertThat(decisions).hasSize(1);
+    Decision decision = decisions.get(0);
+    assertThat(decision.getReason()).isEqualTo(Reason.REBALANCE);
+    assertThat(decision.getDonor()).isEqualTo(Target.ARRAY_POOL);
+    assertThat(decision.getReceiver()).isEqualTo(Target.MEMORY_CACHE);
+    assertThat(decision.getSize(Target.MEMORY_CACHE)).isEqualTo(SIZE + decision.getBytes());
+    assertThat(decision.getSize(Target.ARRAY_POOL)).isEqualTo(SIZE - decision.getBytes());
+    assertThat(memoryCache.getMaxSize()).isEqualTo(SIZE + decision.getBytes());
+    assertThat(arrayPool.getMaxSize()).isEqualTo(SIZE - decision.getBytes());
+    assertThat(controller.getTotalSize()).isEqualTo(3 * SIZE);
+  }
+
+  @Test
+  public void sample_afterMove_requiresNewSamplesBeforeNextMove() {
+    for (int i = 0; i < MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      sampleWithMissRates(0.5f, 0f, 0f);
+    }
+    assertThat(decisions).hasSize(1);
+
+    for (int i = 0; i < MemoryBudgetController.REQUIRED_SAMPLES - 1; i++) {
+      sampleWithMissRates(0.5f, 0f, 0f);
+    }
+
+    assertThat(decisions).hasSize(1);
+  }
+
+  @Test
+  public void sample_withMissRatesWithinMargin_doesNotMoveBytes() {
+    float missRate = MemoryBudgetController.MISS_RATE_MARGIN / 2;
+    for (int i = 0; i < 10 * MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      sampleWithMissRates(missRate, 0f, 0f);
+    }
+
+    assertThat(decisions).isEmpty();
+    assertThat(controller.getSize(Target.MEMORY_CACHE)).isEqualTo(SIZE);
+  }
+
+  @Test
+  public void sample_withAlternatingReceivers_doesNotMoveBytes() {
+    for (int i = 0; i < 10 * MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      if (i % 2 == 0) {
+        sampleWithMissRates(0.5f, 0f, 0f);
+      } else {
+        sampleWithMissRates(0f, 0.5f, 0f);
+      }
+    }
+
+    assertThat(decisions).isEmpty();
+  }
+
+  @Test
+  public void sample_withReceiverNotFull_doesNotMoveBytes() {
+    memoryCache.currentSize = SIZE / 2;
+    for (int i = 0; i < 10 * MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      sampleWithMissRates(0.5f, 0f, 0f);
+    }
+
+    assertThat(decisions).isEmpty();
+  }
+
+  @Test
+  public void sample_withTooFewRequests_doesNotGiveBytes() {
+    for (int i = 0; i < 10 * MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      memoryCache.addRequests(MemoryBudgetController.MIN_REQUESTS_PER_SAMPLE - 1, 1f);
+      controller.sample();
+    }
+
+    assertThat(decisions).isEmpty();
+  }
+
+  @Test
+  public void sample_withIdleTarget_usesIdleTargetAsDonor() {
+    for (int i = 0; i < MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      memoryCache.addRequests(REQUESTS, 0.5f);
+      bitmapPool.addRequests(REQUESTS, 0.1f);
+      controller.sample();
+    }
+
+    assertThat(decisions).hasSize(1);
+    assertThat(decisions.get(0).getDonor()).isEqualTo(Target.ARRAY_POOL);
+  }
+
+  @Test
+  public void sample_repeatedly_keepsAQuarterOfEachDonorAndTotalSize() {
+    for (int i = 0; i < 200; i++) {
+      sampleWithMissRates(0.9f, 0f, 0f);
+    }
+
+    assertThat(controller.getSize(Target.BITMAP_POOL)).isEqualTo(SIZE / 4);
+    assertThat(controller.getSize(Target.ARRAY_POOL)).isEqualTo(SIZE / 4);
+    assertThat(controller.getTotalSize()).isEqualTo(3 * SIZE);
+    assertThat(memoryCache.getMaxSize()).isEqualTo(3 * SIZE - SIZE / 2);
+  }
+
+  @Test
+  public void sample_withHighHeapUsage_shrinksEveryTarget() {
+    heapMonitor.usedBytes = 90;
+
+    controller.sample();
+
+    assertThat(decisions).hasSize(1);
+    assertThat(decisions.get(0).getReason()).isEqualTo(Reason.HEAP_PRESSURE);
+    assertThat(controller.getTotalSize()).isLessThan(3 * SIZE);
+    assertThat(memoryCache.getMaxSize()).isLessThan(SIZE);
+    assertThat(bitmapPool.getMaxSize()).isLessThan(SIZE);
+    assertThat(arrayPool.getMaxSize()).isLessThan(SIZE);
+  }
+
+  @Test
+  public void sample_withHighHeapUsage_neverShrinksBelowHalfTotalSize() {
+    heapMonitor.usedBytes = 90;
+
+    for (int i = 0; i < 100; i++) {
+      controller.sample();
+    }
+
+    assertThat(controller.getTotalSize()).isAtLeast(3 * SIZE / 2);
+  }
+
+  @Test
+  public void sample_withoutHeapMonitor_onlyMovesBytesBetweenTargets() {
+    controller = newController(/*heapMonitor=*/ null);
+    heapMonitor.usedBytes = 90;
+
+    for (int i = 0; i < MemoryBudgetController.REQUIRED_SAMPLES; i++) {
+      sampleWithMissRates(0.5f, 0f, 0f);
+    }
+
+    assertThat(decisions).hasSize(1);
+    assertThat(decisions.get(0).getReason()).isEqualTo(Reason.REBALANCE);
+    assertThat(controller.getTotalSize()).isEqualTo(3 * SIZE);
+  }
+
+  @Test
+  public void sample_withHeapUsageBetweenThresholds_doesNotRestoreSizes() {
+    heapMonitor.usedBytes = 90;
+    controller.sample();
+    long shrunk = controller.getTotalSize();
+
+    heapMonitor.usedBytes = 70;
+    for (int i = 0; i < 10; i++) {
+      controller.sample();
+    }
+
+    assertThat(controller.getTotalSize()).isEqualTo(shrunk);
+  }
+
+  @Test
+  public void sample_withLowHeapUsageAfterPressure_restoresTotalSize() {
+    heapMonitor.usedBytes = 90;
+    for (int i = 0; i < 3; i++) {
+      controller.sample();
+    }
+
+    heapMonitor.usedBytes = 10;
+    for (int i = 0; i < 10; i++) {
+      controller.sample();
+    }
+
+    assertThat(decisions.get(decisions.size() - 1).getReason()).isEqualTo(Reason.HEAP_RELIEF);
+    assertThat(controller.getTotalSize()).isAtMost(3 * SIZE);
+    assertThat(controller.getTotalSize()).isAtLeast(3 * SIZE - 3);
+  }
+
+  @Test
+  public void memoryCacheResizable_countsMemoryCacheEventsAndForwardsAll() {
+    MemoryCache cache = mock(MemoryCache.class);
+    when(cache.getMaxSize()).thenReturn(SIZE);
+    EngineStatsListener delegate = mock(EngineStatsListener.class);
+    MemoryBudgetController.MemoryCacheResizable resizable =
+        new MemoryBudgetController.MemoryCacheResizable(cache, delegate);
+
+    resizable.onTierHit(EngineStatsListener.Tier.MEMORY_CACHE, 10);
+    resizable.onTierMiss(EngineStatsListener.Tier.MEMORY_CACHE);
+    resizable.onTierMiss(EngineStatsListener.Tier.SOURCE);
+    resizable.setSizeMultiplier(1.5f);
+
+    assertThat(resizable.getHitCount()).isEqualTo(1);
+    assertThat(resizable.getMissCount()).isEqualTo(1);
+    assertThat(resizable.getMaxSize()).isEqualTo(SIZE);
+    verify(delegate).onTierHit(EngineStatsListener.Tier.MEMORY_CACHE, 10);
+    verify(delegate).onTierMiss(EngineStatsListener.Tier.SOURCE);
+    verify(cache).setSizeMultiplier(1.5f);
+  }
+
+  private void sampleWithMissRates(
+      float memoryCacheMissRate, float bitmapPoolMissRate, float arrayPoolMissRate) {
+    memoryCache.addRequests(REQUESTS, memoryCacheMissRate);
+    bitmapPool.addRequests(REQUESTS, bitmapPoolMissRate);
+    arrayPool.addRequests(REQUESTS, arrayPoolMissRate);
+    controller.sample();
+  }
+
+  private static final class FakeResizable implements MemoryBudgetController.Resizable {
+    private final long initialSize;
+    private long maxSize;
+    private long hits;
+    private long misses;
+    // Full unless set otherwise.
+    long currentSize = -1;
+
+    FakeResizable(long initialSize) {
+      this.initialSize = initialSize;
+      this.maxSize = initialSize;
+    }
+
+    void addRequests(int requests, float missRate) {
+      long newMisses = Math.round(requests * missRate);
+      misses += newMisses;
+      hits += requests - newMisses;
+    }
+
+    @Override
+    public long getHitCount() {
+      return hits;
+    }
+
+    @Override
+    public long getMissCount() {
+      return misses;
+    }
+
+    @Override
+    public long getCurrentSize() {
+      return currentSize >= 0 ? currentSize : maxSize;
+    }
+
+    @Override
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    @Override
+    public void setSizeMultiplier(float multiplier) {
+      maxSize = Math.round(initialSize * multiplier);
+    }
+  }
+
+  private MemoryBudgetController newController(
+      @Nullable MemoryBudgetController.HeapMonitor heapMonitor) {
+    Map<Target, FakeResizable> targets = new EnumMap<>(Target.class);
+    targets.put(Target.MEMORY_CACHE, memoryCache);
+    targets.put(Target.BITMAP_POOL, bitmapPool);
+    targets.put(Target.ARRAY_POOL, arrayPool);
+    return new MemoryBudgetController(targets, new MemoryBudgetController.Listener() {
+      @Override
+      public void onBudgetChanged(Decision decision) {
+        decisions.add(decision);
+      }
+    }, heapMonitor, MemoryBudgetController.DEFAULT_SAMPLE_INTERVAL_MS);
+  }
+
+  private static final class FakeHeapMonitor implements MemoryBudgetController.HeapMonitor {
+    long usedBytes = 50;
+
+    @Override
+    public long getUsedBytes() {
+      return usedBytes;
+    }
+
+    @Override
+    public long getMaxBytes() {
+      return 100;
+    }
+  }
+}
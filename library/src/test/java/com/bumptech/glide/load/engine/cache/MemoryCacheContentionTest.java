@@ -0,0 +1,149 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.ContentionRunner;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Runs the same multi-threaded remove/put workload that {@link
+ * com.bumptech.glide.load.engine.Engine} generates while scrolling against {@link LruResourceCache}
+ * and {@link StripedLruResourceCache} and verifies that neither loses or double removes a
+ * {@link Resource}.
+ *
+ * <p>Also compares how long each cache takes to run the workload when benchmarks are enabled, see
+ * {@link ContentionRunner#isBenchmarkEnabled()}.
+ */
+@RunWith(JUnit4.class)
+public class MemoryCacheContentionTest {
+  private static final int THREAD_COUNT = 4;
+  private static final int OPERATIONS_PER_THREAD = 5_000;
+  private static final int BENCHMARK_OPERATIONS_PER_THREAD = 100_000;
+  private static final int BENCHMARK_ROUNDS = 5;
+  private static final int KEY_COUNT = 512;
+  private static final int RESOURCE_SIZE = 10;
+  // Only about half of the keys fit at once, so the workload includes evictions.
+  private static final long CACHE_SIZE = KEY_COUNT * RESOURCE_SIZE / 2;
+
+  @Test
+  public void lruResourceCache_underContention_removesEachResourceExactlyOnce()
+      throws InterruptedException {
+    runAndVerify(new LruResourceCache(CACHE_SIZE), OPERATIONS_PER_THREAD);
+  }
+
+  @Test
+  public void stripedLruResourceCache_underContention_removesEachResourceExactlyOnce()
+      throws InterruptedException {
+    runAndVerify(new StripedLruResourceCache(CACHE_SIZE, THREAD_COUNT), OPERATIONS_PER_THREAD);
+  }
+
+  @Test
+  public void stripedLruResourceCache_underContention_isFasterThanLruResourceCache()
+      throws InterruptedException {
+    assumeTrue(ContentionRunner.isBenchmarkEnabled());
+    assumeTrue(ContentionRunner.canRunInParallel(THREAD_COUNT));
+    ContentionRunner.Result lru = null;
+    ContentionRunner.Result striped = null;
+    for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+      ContentionRunner.Result lruRound =
+          runAndVerify(new LruResourceCache(CACHE_SIZE), BENCHMARK_OPERATIONS_PER_THREAD);
+      ContentionRunner.Result stripedRound = runAndVerify(
+          new StripedLruResourceCache(CACHE_SIZE, THREAD_COUNT), BENCHMARK_OPERATIONS_PER_THREAD);
+      lru = lru == null ? lruRound : lru.fastest(lruRound);
+      striped = striped == null ? stripedRound : striped.fastest(stripedRound);
+    }
+
+    assertWithMessage("striped: %s, lru: %s", striped, lru)
+        .that(striped.getElapsedNanos())
+        .isLessThan(lru.getElapsedNanos());
+  }
+
+  private static ContentionRunner.Result runAndVerify(
+      final MemoryCache cache, final int operationsPerThread) throws InterruptedException {
+    final AtomicInteger created = new AtomicInteger();
+    final AtomicInteger removed = new AtomicInteger();
+    final AtomicReference<String> error = new AtomicReference<>();
+    cache.setResourceRemovedListener(new MemoryCache.ResourceRemovedListener() {
+      @Override
+      public void onResourceRemoved(@NonNull Resource<?> resource) {
+        if (!((SizedResource) resource).isRemoved.compareAndSet(false, true)) {
+          error.set("Resource removed twice: " + resource);
+        }
+        removed.incrementAndGet();
+      }
+    });
+
+    final Key[] keys = new Key[KEY_COUNT];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new ObjectKey(i);
+    }
+
+    ContentionRunner.Result result =
+        ContentionRunner.run(THREAD_COUNT, /*timeoutSeconds=*/ 60, new ContentionRunner.Task() {
+          @Override
+          public void run(int thread) {
+            Random random = new Random(thread);
+            for (int i = 0; i < operationsPerThread; i++) {
+              // Skew the accesses towards a hot set of keys.
+              int index = (int) (Math.abs(random.nextGaussian()) * KEY_COUNT / 4) % KEY_COUNT;
+              Key key = keys[index];
+              // Engine removes entries from the cache on hits and puts them back on release.
+              Resource<?> hit = cache.remove(key);
+              if (hit != null) {
+                cache.put(key, hit);
+              } else {
+                created.incrementAndGet();
+                cache.put(key, new SizedResource());
+              }
+            }
+          }
+        });
+
+    assertThat(cache.getCurrentSize()).isAtMost(CACHE_SIZE);
+    cache.clearMemory();
+
+    assertThat(error.get()).isNull();
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+    assertThat(removed.get()).isEqualTo(created.get());
+    return result;
+  }
+
+  private static final class SizedResource implements Resource<Object> {
+    final AtomicBoolean isRemoved = new AtomicBoolean();
+    private final Object object = new Object();
+
+    @NonNull
+    @Override
+    public Class<Object> getResourceClass() {
+      return Object.class;
+    }
+
+    @NonNull
+    @Override
+    public Object get() {
+      return object;
+    }
+
+    @Override
+    public int getSize() {
+      return RESOURCE_SIZE;
+    }
+
+    @Override
+    public void recycle() {
+      // Do nothing.
+    }
+  }
+}
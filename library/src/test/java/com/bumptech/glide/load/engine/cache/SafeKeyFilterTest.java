@@ -0,0 +1,86 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SafeKeyFilterTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+
+  @Test
+  public void mightContain_withAddedKeys_returnsTrue() {
+    SafeKeyFilter filter = new SafeKeyFilter(100);
+    for (int i = 0; i < 1000; i++) {
+      filter.add(safeKey(i));
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(filter.mightContain(safeKey(i))).isTrue();
+    }
+  }
+
+  @Test
+  public void mightContain_withMissingKeys_returnsMostlyFalse() {
+    SafeKeyFilter filter = new SafeKeyFilter(1000);
+    for (int i = 0; i < 1000; i++) {
+      filter.add(safeKey(i));
+    }
+
+    int falsePositives = 0;
+    for (int i = 1000; i < 11000; i++) {
+      if (filter.mightContain(safeKey(i))) {
+        falsePositives++;
+      }
+    }
+    // The expected rate is about 1%.
+    assertThat(falsePositives).isLessThan(300);
+  }
+
+  @Test
+  public void isFull_afterMoreThanExpectedKeys_returnsTrue() {
+    SafeKeyFilter filter = new SafeKeyFilter(2000);
+    for (int i = 0; i < 2000; i++) {
+      filter.add(safeKey(i));
+    }
+    assertThat(filter.isFull()).isFalse();
+
+    filter.add(safeKey(2000));
+
+    assertThat(filter.isFull()).isTrue();
+  }
+
+  @Test
+  public void fromDirectory_containsKeysOfEntryFiles() throws IOException {
+    File dir = temporaryFolder.getRoot();
+    Util.writeFile(new File(dir, safeKey(1) + ".0"), new byte[] { 1 });
+    Util.writeFile(new File(dir, safeKey(2) + ".0.tmp"), new byte[] { 1 });
+    Util.writeFile(new File(dir, "journal"), new byte[] { 1 });
+
+    SafeKeyFilter filter = SafeKeyFilter.fromDirectory(dir);
+
+    assertThat(filter.mightContain(safeKey(1))).isTrue();
+    assertThat(filter.mightContain(safeKey(2))).isFalse();
+  }
+
+  @Test
+  public void fromDirectory_withMissingDirectory_returnsEmptyFilter() {
+    SafeKeyFilter filter = SafeKeyFilter.fromDirectory(new File(temporaryFolder.getRoot(), "a"));
+
+    assertThat(filter.mightContain(safeKey(1))).isFalse();
+  }
+
+  private String safeKey(int i) {
+    return safeKeyGenerator.getSafeKey(new ObjectKey(i));
+  }
+}
@@ -1,5 +1,6 @@
 package com.bumptech.glide.load.engine.cache;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.bumptech.glide.load.Key;
@@ -34,6 +35,57 @@ public class SafeKeyGeneratorTest {
     }
   }
 
+  @Test
+  public void testMurmurKeysAreValidForDiskCache() {
+    keyGenerator = new SafeKeyGenerator(KeyHasher.MURMUR3_128);
+    final Pattern diskCacheRegex = Pattern.compile("[a-z2-7]{26}");
+    for (int i = 0; i < 1000; i++) {
+      String key = getRandomKeyFromGenerator();
+      Matcher matcher = diskCacheRegex.matcher(key);
+      assertTrue(key, matcher.matches());
+    }
+  }
+
+  @Test
+  public void testReturnsSameKeyForEqualKeys() {
+    for (int i = 0; i < 10000; i++) {
+      String id = String.valueOf(i);
+      assertEquals(keyGenerator.getSafeKey(new MockKey(id)),
+          keyGenerator.getSafeKey(new MockKey(id)));
+    }
+    assertEquals(keyGenerator.getSafeKey(new MockKey("0")),
+        new SafeKeyGenerator().getSafeKey(new MockKey("0")));
+  }
+
+  @Test
+  public void testMurmurMatchesReferenceImplementation() {
+    MessageDigest digest = KeyHasher.MURMUR3_128.newDigest();
+    byte[] input = "The quick brown fox jumps over the lazy dog".getBytes(Key.CHARSET);
+
+    assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", toHex(digest.digest(input)));
+
+    // Updating in pieces must not change the result.
+    for (byte b : input) {
+      digest.update(b);
+    }
+    assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", toHex(digest.digest()));
+    assertEquals("00000000000000000000000000000000", toHex(digest.digest()));
+  }
+
+  @Test
+  public void testBase32() {
+    assertEquals("my", KeyHasher.toBase32(new byte[] { 'f' }));
+    assertEquals("mzxw6ytboi", KeyHasher.toBase32("foobar".getBytes(Key.CHARSET)));
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
   private String getRandomKeyFromGenerator() {
     return keyGenerator.getSafeKey(new MockKey(getNextId()));
   }
@@ -49,6 +101,16 @@ public class SafeKeyGeneratorTest {
       this.id = id;
     }
 
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MockKey && ((MockKey) o).id.equals(id);
+    }
+
+    @Override
+    public int hashCode() {
+      return id.hashCode();
+    }
+
     @Override
     public void updateDiskCacheKey(MessageDigest messageDigest) {
       messageDigest.update(id.getBytes(CHARSET));
@@ -0,0 +1,382 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class SegmentDiskCacheTest {
+  private static final int SEGMENT_SIZE = 1024;
+  private static final int MAX_PACKED_ENTRY_SIZE = 100;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final byte[] data = new byte[] { 1, 2, 3, 4, 5, 6 };
+  private final Key key = new ObjectKey("key");
+  private final List<Runnable> scheduled = new ArrayList<>();
+  private final Executor recordingExecutor = new Executor() {
+    @Override
+    public void execute(@NonNull Runnable command) {
+      scheduled.add(command);
+    }
+  };
+  private File dir;
+  private SegmentDiskCache cache;
+
+  @Before
+  public void setUp() {
+    dir = new File(temporaryFolder.getRoot(), "cache");
+    cache = newCache(10 * 1024 * 1024);
+  }
+
+  @Test
+  public void getBuffer_afterPutSmallEntry_returnsData() {
+    cache.put(key, new DataWriter(data));
+
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(data);
+    assertThat(cache.getSegmentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_afterPutSmallEntry_returnsNull() {
+    cache.put(key, new DataWriter(data));
+
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  public void get_afterPutLargeEntry_returnsFileWithData() throws IOException {
+    byte[] large = newData(MAX_PACKED_ENTRY_SIZE + 1, (byte) 3);
+    cache.put(key, new DataWriter(large));
+
+    assertArrayEquals(large, Util.readFile(cache.get(key), large.length));
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(large);
+    assertThat(cache.getSegmentCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void getBuffer_withMissingKey_returnsNull() {
+    assertThat(cache.getBuffer(key)).isNull();
+  }
+
+  @Test
+  public void put_withWriterReturningFalse_doesNotCommit() {
+    cache.put(key, new DiskCache.Writer() {
+      @Override
+      public boolean write(@NonNull File file) {
+        try {
+          Util.writeFile(file, data);
+        } catch (IOException e) {
+          fail(e.toString());
+        }
+        return false;
+      }
+    });
+
+    assertThat(cache.getBuffer(key)).isNull();
+    assertThat(cache.getDiskSize()).isEqualTo(0);
+    assertThat(dir.list()).isEmpty();
+  }
+
+  @Test
+  public void delete_removesEntry() {
+    cache.put(key, new DataWriter(data));
+
+    cache.delete(key);
+
+    assertThat(cache.getBuffer(key)).isNull();
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void getBuffer_afterReopen_returnsData() {
+    byte[] large = newData(MAX_PACKED_ENTRY_SIZE + 1, (byte) 3);
+    Key largeKey = new ObjectKey("large");
+    cache.put(key, new DataWriter(data));
+    cache.put(largeKey, new DataWriter(large));
+
+    cache = newCache(10 * 1024 * 1024);
+
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(data);
+    assertThat(toArray(cache.getBuffer(largeKey))).isEqualTo(large);
+  }
+
+  @Test
+  public void getBuffer_afterDeleteAndReopen_returnsNull() {
+    cache.put(key, new DataWriter(data));
+    cache.delete(key);
+
+    cache = newCache(10 * 1024 * 1024);
+
+    assertThat(cache.getBuffer(key)).isNull();
+  }
+
+  @Test
+  public void open_withPartiallyWrittenRecord_truncatesSegment() throws IOException {
+    cache.put(key, new DataWriter(data));
+    long size = cache.getDiskSize();
+    File segment = new File(dir, "segment-0");
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    try {
+      file.seek(size);
+      file.write(new byte[] { 1, 2, 3 });
+    } finally {
+      file.close();
+    }
+
+    cache = newCache(10 * 1024 * 1024);
+
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(data);
+    assertThat(segment.length()).isEqualTo(size);
+  }
+
+  @Test
+  public void getBuffer_withCorruptData_returnsNullAndRemovesEntry() throws IOException {
+    cache.put(key, new DataWriter(data));
+    corruptLastByte();
+
+    assertThat(cache.getBuffer(key)).isNull();
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_startsNewSegmentWhenFull() {
+    putEntries(20, 50);
+
+    assertThat(cache.getSegmentCount()).isGreaterThan(1);
+    for (int i = 0; i < 20; i++) {
+      assertThat(toArray(cache.getBuffer(new ObjectKey(i)))).isEqualTo(newData(50, (byte) i));
+    }
+  }
+
+  @Test
+  public void put_overMaxSize_evictsLeastRecentlyUsedAndCompacts() {
+    long maxSize = 4 * SEGMENT_SIZE;
+    cache = newCache(maxSize);
+    putEntries(10, 50);
+    // Make the first entry the most recently used.
+    assertThat(cache.getBuffer(new ObjectKey(0))).isNotNull();
+
+    putEntries(100, 50);
+    runScheduled();
+
+    assertThat(cache.getDiskSize()).isAtMost(maxSize);
+    assertThat(cache.getEntryCount()).isLessThan(100);
+    // Entries are about 150 bytes each including their headers.
+    assertThat(cache.getEntryCount()).isGreaterThan(8);
+    assertThat(cache.getBuffer(new ObjectKey(1))).isNull();
+  }
+
+  @Test
+  public void put_overMaxSize_compactsOnExecutor() {
+    long maxSize = 4 * SEGMENT_SIZE;
+    cache = newCache(maxSize);
+    putEntries(100, 50);
+
+    assertThat(scheduled).hasSize(1);
+    assertThat(cache.getDiskSize()).isGreaterThan(maxSize);
+
+    runScheduled();
+
+    assertThat(cache.getDiskSize()).isAtMost(maxSize);
+  }
+
+  @Test
+  public void openStream_whileEntryIsMovedByCompaction_readsEntry() throws IOException {
+    Key first = new ObjectKey(-1);
+    byte[] expected = newData(50, (byte) 3);
+    cache.put(first, new DataWriter(newData(50, (byte) 1)));
+    cache.put(key, new DataWriter(expected));
+    putEntries(10, 50);
+    cache.delete(first);
+    for (int i = 0; i < 10; i++) {
+      cache.delete(new ObjectKey(i));
+    }
+
+    InputStream is = cache.openStream(key);
+    byte[] result = new byte[expected.length];
+    assertThat(is.read(result, 0, 10)).isEqualTo(10);
+    // Triggers a compaction of the first segment, which moves the entry to the start of it.
+    cache.put(new ObjectKey("other"), new DataWriter(data));
+    runScheduled();
+    int read = 10;
+    while (read < result.length) {
+      read += is.read(result, read, result.length - read);
+    }
+
+    assertThat(result).isEqualTo(expected);
+    assertThat(is.read()).isEqualTo(-1);
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(expected);
+  }
+
+  @Test
+  public void openStream_withCorruptData_throwsOnceReadAndRemovesEntry() throws IOException {
+    cache.put(key, new DataWriter(data));
+    corruptLastByte();
+
+    InputStream is = cache.openStream(key);
+    assertThat(is.read()).isEqualTo(data[0]);
+    try {
+      while (is.read() != -1) {
+        // Keep reading.
+      }
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertThat(cache.getEntryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void getBuffer_afterCompactionAndReopen_returnsLiveEntries() {
+    cache = newCache(4 * SEGMENT_SIZE);
+    putEntries(100, 50);
+    runScheduled();
+    int count = cache.getEntryCount();
+
+    cache = newCache(4 * SEGMENT_SIZE);
+
+    assertThat(cache.getEntryCount()).isEqualTo(count);
+    assertThat(toArray(cache.getBuffer(new ObjectKey(99)))).isEqualTo(newData(50, (byte) 99));
+    assertThat(cache.getBuffer(new ObjectKey(0))).isNull();
+  }
+
+  @Test
+  public void getBuffer_withCollidingSafeKey_returnsNull() {
+    cache = newCache(10 * 1024 * 1024, new SafeKeyGenerator(new CollidingKeyHasher()));
+    Key other = new ObjectKey("other");
+    cache.put(key, new DataWriter(data));
+
+    assertThat(cache.getBuffer(other)).isNull();
+
+    cache.put(other, new DataWriter(new byte[] { 9 }));
+    assertThat(toArray(cache.getBuffer(other))).isEqualTo(new byte[] { 9 });
+    assertThat(cache.getBuffer(key)).isNull();
+  }
+
+  @Test
+  public void getBuffer_withMurmurHasherAfterReopen_returnsData() {
+    SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator(KeyHasher.MURMUR3_128);
+    cache = newCache(10 * 1024 * 1024, safeKeyGenerator);
+    Key largeKey = new ObjectKey("large");
+    byte[] large = newData(MAX_PACKED_ENTRY_SIZE + 1, (byte) 3);
+    cache.put(key, new DataWriter(data));
+    cache.put(largeKey, new DataWriter(large));
+
+    cache = newCache(10 * 1024 * 1024, safeKeyGenerator);
+
+    assertThat(toArray(cache.getBuffer(key))).isEqualTo(data);
+    assertThat(toArray(cache.getBuffer(largeKey))).isEqualTo(large);
+  }
+
+  @Test
+  public void clear_removesAllEntries() {
+    cache.put(key, new DataWriter(data));
+    cache.put(new ObjectKey("large"), new DataWriter(newData(MAX_PACKED_ENTRY_SIZE + 1, (byte) 1)));
+
+    cache.clear();
+
+    assertThat(cache.getBuffer(key)).isNull();
+    assertThat(cache.getDiskSize()).isEqualTo(0);
+    assertThat(dir.list()).isEmpty();
+  }
+
+  private void corruptLastByte() throws IOException {
+    RandomAccessFile file = new RandomAccessFile(new File(dir, "segment-0"), "rw");
+    try {
+      // The data is at the end of the record.
+      file.seek(file.length() - 1);
+      file.write(9);
+    } finally {
+      file.close();
+    }
+  }
+
+  private void runScheduled() {
+    while (!scheduled.isEmpty()) {
+      scheduled.remove(0).run();
+    }
+  }
+
+  private void putEntries(int count, int size) {
+    for (int i = 0; i < count; i++) {
+      cache.put(new ObjectKey(i), new DataWriter(newData(size, (byte) i)));
+    }
+  }
+
+  private SegmentDiskCache newCache(long maxSize) {
+    return newCache(maxSize, new SafeKeyGenerator());
+  }
+
+  private SegmentDiskCache newCache(long maxSize, SafeKeyGenerator safeKeyGenerator) {
+    return new SegmentDiskCache(dir, maxSize, SEGMENT_SIZE, MAX_PACKED_ENTRY_SIZE,
+        safeKeyGenerator, recordingExecutor);
+  }
+
+  private static byte[] newData(int size, byte value) {
+    byte[] result = new byte[size];
+    Arrays.fill(result, value);
+    return result;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] result = new byte[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+
+  private static final class CollidingKeyHasher extends KeyHasher {
+    @NonNull
+    @Override
+    public MessageDigest newDigest() {
+      return KeyHasher.SHA_256.newDigest();
+    }
+
+    @NonNull
+    @Override
+    public String toSafeKey(@NonNull byte[] digest) {
+      return "collision";
+    }
+  }
+
+  private static final class DataWriter implements DiskCache.Writer {
+    private final byte[] data;
+
+    DataWriter(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public boolean write(@NonNull File file) {
+      try {
+        Util.writeFile(file, data);
+      } catch (IOException e) {
+        fail(e.toString());
+      }
+      return true;
+    }
+  }
+}
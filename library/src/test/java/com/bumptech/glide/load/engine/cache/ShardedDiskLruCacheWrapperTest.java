@@ -0,0 +1,134 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.tests.Util;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class ShardedDiskLruCacheWrapperTest {
+  private static final int SHARD_COUNT = 4;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final byte[] data = new byte[] { 1, 2, 3, 4, 5, 6 };
+  private final Key key = new ObjectKey("key");
+  private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+  private File dir;
+  private ShardedDiskLruCacheWrapper cache;
+
+  @Before
+  public void setUp() {
+    dir = temporaryFolder.getRoot();
+    cache = new ShardedDiskLruCacheWrapper(dir, 10 * 1024 * 1024, SHARD_COUNT);
+  }
+
+  @Test
+  public void get_afterPut_returnsFileWithData() throws IOException {
+    cache.put(key, new DataWriter(data));
+
+    assertArrayEquals(data, Util.readFile(cache.get(key), data.length));
+  }
+
+  @Test
+  public void put_writesFileToShardDirectoryForKey() {
+    cache.put(key, new DataWriter(data));
+
+    int shard = cache.getShardIndex(safeKeyGenerator.getSafeKey(key));
+    assertThat(cache.get(key).getParentFile()).isEqualTo(new File(dir, String.valueOf(shard)));
+  }
+
+  @Test
+  public void put_withManyKeys_usesAllShards() {
+    boolean[] isShardUsed = new boolean[SHARD_COUNT];
+    for (int i = 0; i < 100; i++) {
+      Key current = new ObjectKey("key" + i);
+      cache.put(current, new DataWriter(data));
+      isShardUsed[cache.getShardIndex(safeKeyGenerator.getSafeKey(current))] = true;
+    }
+
+    for (boolean isUsed : isShardUsed) {
+      assertThat(isUsed).isTrue();
+    }
+  }
+
+  @Test
+  public void get_afterReopening_returnsPreviouslyPutEntry() throws IOException {
+    cache.put(key, new DataWriter(data));
+
+    DiskCache reopened = ShardedDiskLruCacheWrapper.create(dir, 10 * 1024 * 1024, SHARD_COUNT);
+
+    assertArrayEquals(data, Util.readFile(reopened.get(key), data.length));
+  }
+
+  @Test
+  public void delete_removesEntry() {
+    cache.put(key, new DataWriter(data));
+
+    cache.delete(key);
+
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  public void clear_removesEntriesFromAllShards() {
+    for (int i = 0; i < 20; i++) {
+      cache.put(new ObjectKey("key" + i), new DataWriter(data));
+    }
+
+    cache.clear();
+
+    for (int i = 0; i < 20; i++) {
+      assertThat(cache.get(new ObjectKey("key" + i))).isNull();
+    }
+  }
+
+  @Test
+  public void put_withExistingEntry_doesNotWriteAgain() {
+    cache.put(key, new DataWriter(data));
+    cache.put(key, new DiskCache.Writer() {
+      @Override
+      public boolean write(@NonNull File file) {
+        fail("Should not write existing entry");
+        return false;
+      }
+    });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_withZeroShards_throws() {
+    new ShardedDiskLruCacheWrapper(dir, 10 * 1024 * 1024, 0);
+  }
+
+  private static final class DataWriter implements DiskCache.Writer {
+    private final byte[] data;
+
+    DataWriter(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public boolean write(@NonNull File file) {
+      try {
+        Util.writeFile(file, data);
+      } catch (IOException e) {
+        fail(e.toString());
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.bumptech.glide.load.engine.cache.MemoryCache.ResourceRemovedListener;
+import static com.bumptech.glide.tests.Util.anyResource;
+import static com.bumptech.glide.tests.Util.mockResource;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import java.security.MessageDigest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StripedLruResourceCacheTest {
+
+  @Test
+  public void constructor_roundsSegmentCountUpToPowerOfTwo() {
+    assertThat(new StripedLruResourceCache(100, 3).getSegmentCount()).isEqualTo(4);
+    assertThat(new StripedLruResourceCache(100, 1).getSegmentCount()).isEqualTo(1);
+    assertThat(new StripedLruResourceCache(100, 1000).getSegmentCount()).isEqualTo(16);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_withZeroConcurrencyLevel_throws() {
+    new StripedLruResourceCache(100, 0);
+  }
+
+  @Test
+  public void put_withExistingItem_updatesSizeCorrectly() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+    harness.cache.put(harness.key, harness.second);
+
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(harness.second.getSize());
+  }
+
+  @Test
+  public void put_withExistingItem_evictsExistingItem() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+    harness.cache.put(harness.key, harness.second);
+
+    verify(harness.listener).onResourceRemoved(harness.first);
+  }
+
+  @Test
+  public void remove_afterPutWithExistingItem_returnsNewItem() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+    harness.cache.put(harness.key, harness.second);
+
+    assertThat(harness.cache.remove(harness.key)).isEqualTo(harness.second);
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void peek_returnsItemWithoutRemovingIt() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+
+    assertThat(harness.cache.peek(harness.key)).isEqualTo(harness.first);
+    assertThat(harness.cache.contains(harness.key)).isTrue();
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(harness.first.getSize());
+  }
+
+  @Test
+  public void put_withSameItem_doesNotNotifyListener() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+    harness.cache.put(harness.key, harness.first);
+
+    verify(harness.listener, never()).onResourceRemoved(anyResource());
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(harness.first.getSize());
+  }
+
+  @Test
+  public void put_withNullItem_removesAndNotifiesExistingItem() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+
+    assertThat(harness.cache.put(harness.key, null)).isEqualTo(harness.first);
+    verify(harness.listener).onResourceRemoved(harness.first);
+    assertFalse(harness.cache.contains(harness.key));
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void clearMemory_afterPutWithExistingItem_evictsOnlyNewItem() {
+    PutWithExistingEntryHarness harness = new PutWithExistingEntryHarness();
+    harness.cache.put(harness.key, harness.first);
+    harness.cache.put(harness.key, harness.second);
+
+    verify(harness.listener).onResourceRemoved(harness.first);
+    verify(harness.listener, never()).onResourceRemoved(harness.second);
+
+    harness.cache.clearMemory();
+
+    verify(harness.listener, times(1)).onResourceRemoved(harness.first);
+    verify(harness.listener).onResourceRemoved(harness.second);
+    assertThat(harness.cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testTrimMemoryBackground() {
+    TrimClearMemoryCacheHarness harness = new TrimClearMemoryCacheHarness();
+
+    harness.resourceCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+    verify(harness.listener).onResourceRemoved(harness.first);
+    verify(harness.listener).onResourceRemoved(harness.second);
+  }
+
+  @Test
+  public void testTrimMemoryModerate() {
+    TrimClearMemoryCacheHarness harness = new TrimClearMemoryCacheHarness();
+
+    harness.resourceCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+
+    verify(harness.listener).onResourceRemoved(harness.first);
+    verify(harness.listener).onResourceRemoved(harness.second);
+  }
+
+  @Test
+  public void testTrimMemoryUiHidden() {
+    TrimClearMemoryCacheHarness harness = new TrimClearMemoryCacheHarness();
+
+    harness.resourceCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    verify(harness.listener).onResourceRemoved(harness.first);
+    verify(harness.listener, never()).onResourceRemoved(harness.second);
+  }
+
+  @Test
+  public void testResourceRemovedListenerIsNotifiedWhenResourceIsTooLarge() {
+    StripedLruResourceCache resourceCache = new StripedLruResourceCache(100);
+    Resource<?> resource = getResource(200);
+
+    ResourceRemovedListener listener = mock(ResourceRemovedListener.class);
+
+    resourceCache.setResourceRemovedListener(listener);
+    resourceCache.put(new MockKey(), resource);
+
+    verify(listener).onResourceRemoved(resource);
+    assertThat(resourceCache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_withItemLargerThanSegmentShare_isRetained() {
+    StripedLruResourceCache resourceCache = new StripedLruResourceCache(100, 4);
+    MockKey key = new MockKey();
+    resourceCache.put(key, getResource(90));
+
+    assertTrue(resourceCache.contains(key));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyPutAcrossSegments() {
+    StripedLruResourceCache resourceCache = new StripedLruResourceCache(100, 16);
+    MockKey[] keys = new MockKey[10];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new MockKey();
+      resourceCache.put(keys[i], getResource(10));
+    }
+
+    // Re-putting the first key makes it the most recently used entry.
+    resourceCache.put(keys[0], resourceCache.remove(keys[0]));
+    MockKey extra = new MockKey();
+    resourceCache.put(extra, getResource(20));
+
+    assertTrue(resourceCache.contains(keys[0]));
+    assertFalse(resourceCache.contains(keys[1]));
+    assertFalse(resourceCache.contains(keys[2]));
+    for (int i = 3; i < keys.length; i++) {
+      assertTrue(resourceCache.contains(keys[i]));
+    }
+    assertTrue(resourceCache.contains(extra));
+    assertThat(resourceCache.getCurrentSize()).isEqualTo(100);
+  }
+
+  @Test
+  public void setSizeMultiplier_evictsUntilBelowNewSize() {
+    StripedLruResourceCache resourceCache = new StripedLruResourceCache(100, 4);
+    for (int i = 0; i < 10; i++) {
+      resourceCache.put(new MockKey(), getResource(10));
+    }
+
+    resourceCache.setSizeMultiplier(0.5f);
+
+    assertThat(resourceCache.getMaxSize()).isEqualTo(50);
+    assertThat(resourceCache.getCurrentSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void testPreventEviction() {
+    final StripedLruResourceCache cache = new StripedLruResourceCache(100);
+    final Resource<?> first = getResource(30);
+    final Key firstKey = new MockKey();
+    cache.put(firstKey, first);
+    Resource<?> second = getResource(30);
+    Key secondKey = new MockKey();
+    cache.put(secondKey, second);
+    Resource<?> third = getResource(30);
+    Key thirdKey = new MockKey();
+    cache.put(thirdKey, third);
+    cache.setResourceRemovedListener(new ResourceRemovedListener() {
+      @Override
+      public void onResourceRemoved(@NonNull Resource<?> removed) {
+        if (removed == first) {
+          cache.put(firstKey, first);
+        }
+      }
+    });
+
+    // trims from 100 to 50, having 30+30+30 items, it should trim to 1 item
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    // and that 1 item must be first, because it's forced to return to cache in the listener
+    assertTrue(cache.contains(firstKey));
+    assertFalse(cache.contains(secondKey));
+    assertFalse(cache.contains(thirdKey));
+  }
+
+  private static Resource<?> getResource(int size) {
+    Resource<?> resource = mockResource();
+    when(resource.getSize()).thenReturn(size);
+    return resource;
+  }
+
+  private static class MockKey implements Key {
+    @Override
+    public void updateDiskCacheKey(MessageDigest messageDigest) {
+      messageDigest.update(toString().getBytes(CHARSET));
+    }
+  }
+
+  private static class PutWithExistingEntryHarness {
+    final StripedLruResourceCache cache = new StripedLruResourceCache(100);
+    final Resource<?> first = mockResource();
+    final Resource<?> second = mockResource();
+    final ResourceRemovedListener listener = mock(ResourceRemovedListener.class);
+    final Key key = new MockKey();
+
+    PutWithExistingEntryHarness() {
+      when(first.getSize()).thenReturn(50);
+      when(second.getSize()).thenReturn(50);
+      cache.setResourceRemovedListener(listener);
+    }
+  }
+
+  private static class TrimClearMemoryCacheHarness {
+    final StripedLruResourceCache resourceCache = new StripedLruResourceCache(100);
+    final Resource<?> first = mockResource();
+    final Resource<?> second = mockResource();
+    final ResourceRemovedListener listener = mock(ResourceRemovedListener.class);
+
+    TrimClearMemoryCacheHarness() {
+      when(first.getSize()).thenReturn(50);
+      when(second.getSize()).thenReturn(50);
+      resourceCache.put(new MockKey(), first);
+      resourceCache.put(new MockKey(), second);
+      resourceCache.setResourceRemovedListener(listener);
+    }
+  }
+}
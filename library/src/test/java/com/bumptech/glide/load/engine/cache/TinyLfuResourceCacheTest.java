@@ -0,0 +1,354 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static com.bumptech.glide.load.engine.cache.MemoryCache.ResourceRemovedListener;
+import static com.bumptech.glide.tests.Util.anyResource;
+import static com.bumptech.glide.tests.Util.mockResource;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.signature.ObjectKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TinyLfuResourceCacheTest {
+  private static final int RESOURCE_SIZE = 10;
+
+  private TinyLfuResourceCache cache;
+  private ResourceRemovedListener listener;
+
+  @Before
+  public void setUp() {
+    cache = new TinyLfuResourceCache(100, 0.1f, 100);
+    listener = mock(ResourceRemovedListener.class);
+    cache.setResourceRemovedListener(listener);
+  }
+
+  @Test
+  public void put_addsToWindow() {
+    Key key = new ObjectKey("key");
+    cache.put(key, getResource(RESOURCE_SIZE));
+
+    assertTrue(cache.contains(key));
+    assertThat(cache.getWindowSize()).isEqualTo(RESOURCE_SIZE);
+    assertThat(cache.getCurrentSize()).isEqualTo(RESOURCE_SIZE);
+  }
+
+  @Test
+  public void put_withEmptyMainRegion_admitsWithoutComparingFrequency() {
+    Key first = new ObjectKey("first");
+    Key second = new ObjectKey("second");
+    cache.put(first, getResource(RESOURCE_SIZE));
+    cache.put(second, getResource(RESOURCE_SIZE));
+
+    assertTrue(cache.contains(first));
+    assertTrue(cache.contains(second));
+    assertThat(cache.getCurrentSize()).isEqualTo(2 * RESOURCE_SIZE);
+    verify(listener, never()).onResourceRemoved(anyResource());
+  }
+
+  @Test
+  public void put_whenFull_rejectsInfrequentCandidate() {
+    fillWithFrequentlyRequestedResources();
+    Key oneOff = new ObjectKey("oneOff");
+    Resource<?> oneOffResource = getResource(RESOURCE_SIZE);
+    cache.put(oneOff, oneOffResource);
+    // Pushes the one off resource out of the window.
+    Key next = new ObjectKey("next");
+    cache.put(next, getResource(RESOURCE_SIZE));
+
+    assertFalse(cache.contains(oneOff));
+    verify(listener).onResourceRemoved(oneOffResource);
+    assertThat(cache.getRejectedCount()).isEqualTo(1);
+    assertThat(cache.getCurrentSize()).isAtMost(100L);
+  }
+
+  @Test
+  public void put_whenFull_admitsFrequentCandidate() {
+    fillWithFrequentlyRequestedResources();
+    Key popular = new ObjectKey("popular");
+    for (int i = 0; i < 10; i++) {
+      cache.remove(popular);
+    }
+    cache.put(popular, getResource(RESOURCE_SIZE));
+    cache.put(new ObjectKey("next"), getResource(RESOURCE_SIZE));
+
+    assertTrue(cache.contains(popular));
+    assertThat(cache.getRejectedCount()).isEqualTo(0);
+    assertThat(cache.getCurrentSize()).isAtMost(100L);
+  }
+
+  @Test
+  public void put_whenFull_rejectsCandidateLessFrequentThanAnyVictim() {
+    Key eldest = new ObjectKey("eldest");
+    Key frequent = new ObjectKey("frequent");
+    fillMainRegion(eldest, 2, frequent, 10);
+    Key candidate = new ObjectKey("candidate");
+    request(candidate, 5);
+    Resource<?> candidateResource = getResource(2 * RESOURCE_SIZE);
+
+    // Needs both eldest and frequent to be evicted from the main region.
+    cache.put(candidate, candidateResource);
+
+    assertFalse(cache.contains(candidate));
+    assertTrue(cache.contains(eldest));
+    assertTrue(cache.contains(frequent));
+    verify(listener).onResourceRemoved(candidateResource);
+    // The resource that was never requested is rejected too.
+    assertThat(cache.getRejectedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void put_whenFull_evictsEveryVictimLessFrequentThanCandidate() {
+    Key eldest = new ObjectKey("eldest");
+    Key next = new ObjectKey("next");
+    fillMainRegion(eldest, 2, next, 3);
+    Key candidate = new ObjectKey("candidate");
+    request(candidate, 5);
+
+    cache.put(candidate, getResource(2 * RESOURCE_SIZE));
+
+    assertTrue(cache.contains(candidate));
+    assertFalse(cache.contains(eldest));
+    assertFalse(cache.contains(next));
+    // Only the resource that was never requested is rejected.
+    assertThat(cache.getRejectedCount()).isEqualTo(1);
+    assertThat(cache.getCurrentSize()).isAtMost(100L);
+  }
+
+  @Test
+  public void put_withExistingItem_evictsExistingItem() {
+    Key key = new ObjectKey("key");
+    Resource<?> first = getResource(RESOURCE_SIZE);
+    Resource<?> second = getResource(RESOURCE_SIZE);
+    cache.put(key, first);
+    cache.put(key, second);
+
+    verify(listener).onResourceRemoved(first);
+    assertThat(cache.getCurrentSize()).isEqualTo(RESOURCE_SIZE);
+    assertThat(cache.remove(key)).isEqualTo(second);
+  }
+
+  @Test
+  public void put_withResourceLargerThanCache_notifiesListener() {
+    Resource<?> resource = getResource(200);
+    cache.put(new ObjectKey("key"), resource);
+
+    verify(listener).onResourceRemoved(resource);
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void remove_countsHitsAndMisses() {
+    Key key = new ObjectKey("key");
+    cache.remove(key);
+    cache.put(key, getResource(RESOURCE_SIZE));
+    cache.remove(key);
+    cache.remove(key);
+
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+    assertThat(cache.getHitRate()).isWithin(0.001).of(1 / 3d);
+
+    cache.resetStats();
+
+    assertThat(cache.getHitRate()).isEqualTo(0d);
+  }
+
+  @Test
+  public void peek_returnsResourceWithoutCountingRequests() {
+    Key key = new ObjectKey("key");
+    Resource<?> resource = getResource(RESOURCE_SIZE);
+    cache.put(key, resource);
+
+    assertThat(cache.peek(key)).isEqualTo(resource);
+    assertThat(cache.peek(new ObjectKey("missing"))).isNull();
+    assertTrue(cache.contains(key));
+    assertThat(cache.getHitCount()).isEqualTo(0);
+    assertThat(cache.getMissCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void peek_doesNotHelpCandidateGetAdmitted() {
+    Key first = new ObjectKey("first");
+    Key second = new ObjectKey("second");
+    fillMainRegion(first, 2, second, 2);
+    Key candidate = new ObjectKey("candidate");
+    request(candidate, 1);
+    cache.put(candidate, getResource(RESOURCE_SIZE));
+    for (int i = 0; i < 5; i++) {
+      cache.peek(candidate);
+    }
+    cache.put(new ObjectKey("next"), getResource(RESOURCE_SIZE));
+
+    assertFalse(cache.contains(candidate));
+    assertTrue(cache.contains(first));
+  }
+
+  @Test
+  public void testTrimMemoryBackground_evictsEverything() {
+    fillWithFrequentlyRequestedResources();
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+    assertThat(cache.getCurrentSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testTrimMemoryUiHidden_evictsHalf() {
+    fillWithFrequentlyRequestedResources();
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    assertThat(cache.getCurrentSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void setSizeMultiplier_evictsUntilBelowNewSize() {
+    fillWithFrequentlyRequestedResources();
+
+    cache.setSizeMultiplier(0.5f);
+
+    assertThat(cache.getMaxSize()).isEqualTo(50);
+    assertThat(cache.getCurrentSize()).isAtMost(50L);
+  }
+
+  @Test
+  public void testPreventEviction() {
+    final Resource<?> first = getResource(30);
+    final Key firstKey = new ObjectKey("first");
+    cache.put(firstKey, first);
+    Key secondKey = new ObjectKey("second");
+    cache.put(secondKey, getResource(30));
+    Key thirdKey = new ObjectKey("third");
+    cache.put(thirdKey, getResource(30));
+    cache.setResourceRemovedListener(new ResourceRemovedListener() {
+      @Override
+      public void onResourceRemoved(@NonNull Resource<?> removed) {
+        if (removed == first) {
+          cache.put(firstKey, first);
+        }
+      }
+    });
+
+    cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    assertTrue(cache.contains(firstKey));
+    assertFalse(cache.contains(secondKey));
+    assertFalse(cache.contains(thirdKey));
+  }
+
+  @Test
+  public void hitRate_withScanningTrace_isHigherThanLru() {
+    LruResourceCache lru = new LruResourceCache(1000);
+    TinyLfuResourceCache tinyLfu = new TinyLfuResourceCache(1000, 0.01f, 100);
+    replayTrace(lru);
+    replayTrace(tinyLfu);
+
+    assertThat(tinyLfu.getHitRate()).isGreaterThan(lru.getHitRate());
+  }
+
+  /**
+   * Simulates a screen with a hot set of avatars that fit in the cache interleaved with a feed of
+   * images that are each shown once, using the same remove and put calls that Engine makes.
+   */
+  private static void replayTrace(MemoryCache cache) {
+    int feedIndex = 0;
+    for (int round = 0; round < 50; round++) {
+      for (int avatar = 0; avatar < 60; avatar++) {
+        request(cache, new ObjectKey("avatar" + avatar));
+      }
+      for (int i = 0; i < 100; i++) {
+        request(cache, new ObjectKey("feed" + feedIndex++));
+      }
+    }
+  }
+
+  private static void request(MemoryCache cache, Key key) {
+    Resource<?> resource = cache.remove(key);
+    if (resource == null) {
+      resource = new SizedResource();
+    }
+    cache.put(key, resource);
+  }
+
+  /**
+   * Fills the main region with resources that are all requested 10 times, except for the two least
+   * recently used ones, which are requested the given number of times, and leaves a resource that
+   * was never requested, and so is rejected on the next put, in the window.
+   */
+  private void fillMainRegion(Key first, int firstRequests, Key second, int secondRequests) {
+    request(first, firstRequests);
+    cache.put(first, getResource(RESOURCE_SIZE));
+    request(second, secondRequests);
+    cache.put(second, getResource(RESOURCE_SIZE));
+    for (int i = 0; i < 7; i++) {
+      Key key = new ObjectKey(i);
+      request(key, 10);
+      cache.put(key, getResource(RESOURCE_SIZE));
+    }
+    cache.put(new ObjectKey("neverRequested"), getResource(RESOURCE_SIZE));
+    cache.resetStats();
+  }
+
+  private void request(Key key, int times) {
+    for (int i = 0; i < times; i++) {
+      cache.remove(key);
+    }
+  }
+
+  private void fillWithFrequentlyRequestedResources() {
+    for (int i = 0; i < 10; i++) {
+      Key key = new ObjectKey(i);
+      // Later keys are more popular so that they're always admitted over earlier keys.
+      for (int j = 0; j < i + 2; j++) {
+        cache.remove(key);
+      }
+      cache.put(key, getResource(RESOURCE_SIZE));
+    }
+    cache.resetStats();
+  }
+
+  private static Resource<?> getResource(int size) {
+    Resource<?> resource = mockResource();
+    when(resource.getSize()).thenReturn(size);
+    return resource;
+  }
+
+  private static final class SizedResource implements Resource<Object> {
+    private final Object object = new Object();
+
+    @NonNull
+    @Override
+    public Class<Object> getResourceClass() {
+      return Object.class;
+    }
+
+    @NonNull
+    @Override
+    public Object get() {
+      return object;
+    }
+
+    @Override
+    public int getSize() {
+      return RESOURCE_SIZE;
+    }
+
+    @Override
+    public void recycle() {
+      // Do nothing.
+    }
+  }
+}
@@ -37,6 +37,27 @@ public class GlideExecutorTest {
     assertThat(resultPriorities).containsExactly(5, 1, 2, 3, 4).inOrder();
   }
 
+  @Test
+  public void testBackgroundExecutorRunsTasksInOrder() throws InterruptedException {
+    final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+    GlideExecutor executor = GlideExecutor.newBackgroundExecutor();
+    for (int i = 0; i < 5; i++) {
+      final int index = i;
+      // Plain Runnables, which can't be queued by the prioritized executors.
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          results.add(index);
+        }
+      });
+    }
+
+    executor.shutdown();
+    executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+
+    assertThat(results).containsExactly(0, 1, 2, 3, 4).inOrder();
+  }
+
   private static final class MockRunnable implements Runnable,
       Comparable<MockRunnable> {
     private final int priority;
@@ -71,6 +71,18 @@ public class BitmapPreFillerTest {
     assertEquals(BITMAPS_IN_POOL + BITMAPS_IN_CACHE, allocationOrder.getSize());
   }
 
+  @Test
+  public void testAllocationOrderWithMaxSizeContainsEnoughSizesToFillMaxSize() {
+    PreFillQueue allocationOrder =
+        bitmapPreFiller.generateAllocationOrder(
+            poolSize / 2,
+            new PreFillType.Builder(DEFAULT_BITMAP_WIDTH, DEFAULT_BITMAP_HEIGHT)
+                .setConfig(defaultBitmapConfig)
+                .build());
+
+    assertEquals(BITMAPS_IN_POOL / 2, allocationOrder.getSize());
+  }
+
   @Test
   public void testAllocationOrderThatDoesNotFitExactlyIntoGivenSizeRoundsDown() {
     PreFillType[] sizes = new PreFillType[] {
@@ -0,0 +1,212 @@
+package com.bumptech.glide.load.engine.prefill;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class BitmapSizeHistogramTest {
+  private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File file;
+  private int executed;
+  private BitmapSizeHistogram histogram;
+
+  @Before
+  public void setUp() throws IOException {
+    file = new File(temporaryFolder.getRoot(), "sizes");
+    histogram = newHistogram();
+  }
+
+  @Test
+  public void record_countsEachSizeAndConfig() {
+    histogram.record(100, 200, CONFIG);
+    histogram.record(100, 200, CONFIG);
+    histogram.record(100, 200, Bitmap.Config.RGB_565);
+    histogram.record(200, 100, CONFIG);
+
+    assertThat(histogram.getCount(100, 200, CONFIG)).isEqualTo(2);
+    assertThat(histogram.getCount(100, 200, Bitmap.Config.RGB_565)).isEqualTo(1);
+    assertThat(histogram.getCount(200, 100, CONFIG)).isEqualTo(1);
+  }
+
+  @Test
+  public void onBitmapRequested_recordsSize() {
+    histogram.onBitmapRequested(100, 200, CONFIG);
+
+    assertThat(histogram.getCount(100, 200, CONFIG)).isEqualTo(1);
+  }
+
+  @Test
+  public void record_withLargeSize_keepsWidthAndHeight() {
+    histogram.record(65_536, 70_000, CONFIG);
+    histogram.save();
+
+    PreFillType type = newHistogram().read().get(0).build();
+
+    assertThat(type.getWidth()).isEqualTo(65_536);
+    assertThat(type.getHeight()).isEqualTo(70_000);
+    assertThat(type.getConfig()).isEqualTo(CONFIG);
+  }
+
+  @Test
+  public void saveAsync_afterExecutorIsShutDown_doesNotThrow() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.shutdown();
+    histogram = new BitmapSizeHistogram(file, executor);
+
+    histogram.saveAsync();
+  }
+
+  @Test
+  public void save_thenRead_returnsSizesByCountWithCountsAsWeights() {
+    record(10, 10, 1);
+    record(30, 30, 3);
+    record(20, 20, 2);
+
+    assertThat(histogram.save()).isEqualTo(3);
+    List<PreFillType.Builder> result = newHistogram().read();
+
+    assertThat(result).hasSize(3);
+    assertType(result.get(0).build(), 30, 3);
+    assertType(result.get(1).build(), 20, 2);
+    assertType(result.get(2).build(), 10, 1);
+  }
+
+  @Test
+  public void save_withManySizes_onlySavesMostFrequentSizes() {
+    for (int i = 1; i <= BitmapSizeHistogram.MAX_SAVED_SIZES + 5; i++) {
+      record(i, i, i);
+    }
+
+    assertThat(histogram.save()).isEqualTo(BitmapSizeHistogram.MAX_SAVED_SIZES);
+    List<PreFillType.Builder> result = newHistogram().read();
+
+    assertThat(result).hasSize(BitmapSizeHistogram.MAX_SAVED_SIZES);
+    assertType(result.get(result.size() - 1).build(), 6, 6);
+  }
+
+  @Test
+  public void save_withNoRecordedSizes_keepsPreviousFile() {
+    record(10, 10, 1);
+    histogram.save();
+
+    BitmapSizeHistogram next = newHistogram();
+
+    assertThat(next.save()).isEqualTo(0);
+    assertThat(next.read()).hasSize(1);
+  }
+
+  @Test
+  public void read_addsHalfOfSavedCountsToCurrentCounts() {
+    record(10, 10, 10);
+    histogram.save();
+    BitmapSizeHistogram next = newHistogram();
+
+    next.read();
+
+    assertThat(next.getCount(10, 10, CONFIG)).isEqualTo(5);
+  }
+
+  @Test
+  public void read_acrossManyRuns_forgetsSizesThatAreNoLongerRequested() {
+    record(10, 10, 100);
+    histogram.save();
+
+    for (int i = 0; i < 10; i++) {
+      BitmapSizeHistogram next = newHistogram();
+      next.read();
+      next.save();
+    }
+
+    assertThat(newHistogram().read()).isEmpty();
+  }
+
+  @Test
+  public void read_withMissingFile_returnsEmptyList() {
+    assertThat(histogram.read()).isEmpty();
+  }
+
+  @Test
+  public void read_withInvalidFile_returnsEmptyListAndDeletesFile() throws IOException {
+    FileOutputStream os = new FileOutputStream(file);
+    try {
+      os.write(new byte[] { 1, 2, 3 });
+    } finally {
+      os.close();
+    }
+
+    assertThat(histogram.read()).isEmpty();
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void record_withMoreThanMaxTrackedSizes_keepsFrequentSizes() {
+    record(10, 10, 10);
+    for (int i = 0; i < 2 * BitmapSizeHistogram.MAX_TRACKED_SIZES; i++) {
+      histogram.record(1000 + i, 1000, CONFIG);
+    }
+
+    assertThat(histogram.getCount(10, 10, CONFIG)).isGreaterThan(0);
+  }
+
+  @Test
+  public void record_afterSaveInterval_savesInBackground() {
+    for (int i = 0; i < BitmapSizeHistogram.SAVE_INTERVAL; i++) {
+      histogram.record(10, 10, CONFIG);
+    }
+
+    assertThat(executed).isEqualTo(1);
+    assertThat(file.exists()).isTrue();
+  }
+
+  @Test
+  public void clear_removesRecordedSizes() {
+    record(10, 10, 1);
+
+    histogram.clear();
+
+    assertThat(histogram.getCount(10, 10, CONFIG)).isEqualTo(0);
+    assertThat(histogram.save()).isEqualTo(0);
+  }
+
+  private void record(int width, int height, int count) {
+    for (int i = 0; i < count; i++) {
+      histogram.record(width, height, CONFIG);
+    }
+  }
+
+  private static void assertType(PreFillType type, int size, int weight) {
+    assertThat(type.getWidth()).isEqualTo(size);
+    assertThat(type.getHeight()).isEqualTo(size);
+    assertThat(type.getConfig()).isEqualTo(CONFIG);
+    assertThat(type.getWeight()).isEqualTo(weight);
+  }
+
+  private BitmapSizeHistogram newHistogram() {
+    return new BitmapSizeHistogram(file, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        executed++;
+        command.run();
+      }
+    });
+  }
+}
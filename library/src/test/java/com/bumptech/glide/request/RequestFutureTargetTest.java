@@ -3,7 +3,6 @@ package com.bumptech.glide.request;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
@@ -12,7 +11,6 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
-import android.os.Handler;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.request.target.SizeReadyCallback;
 import java.util.concurrent.CancellationException;
@@ -34,16 +32,14 @@ public class RequestFutureTargetTest {
   private int height;
   private RequestFutureTarget<Object> future;
   private Request request;
-  private Handler handler;
   private RequestFutureTarget.Waiter waiter;
 
   @Before
   public void setUp() {
     width = 100;
     height = 100;
-    handler = mock(Handler.class);
     waiter = mock(RequestFutureTarget.Waiter.class);
-    future = new RequestFutureTarget<>(handler, width, height, false, waiter);
+    future = new RequestFutureTarget<>(width, height, false, waiter);
     request = mock(Request.class);
     future.setRequest(request);
   }
@@ -82,32 +78,25 @@ public class RequestFutureTargetTest {
   }
 
   @Test
-  public void cancel_withMayInterruptIfRunningTrueAndNotFinishedRequest_clearsFutureOnMainThread() {
+  public void cancel_withMayInterruptIfRunningTrueAndNotFinishedRequest_clearsRequest() {
     future.cancel(true);
 
-    verify(handler).post(eq(future));
+    verify(request).clear();
   }
 
   @Test
-  public void cancel_withInterruptFalseAndNotFinishedRequest_doesNotclearFutureOnMainThread() {
+  public void cancel_withInterruptFalseAndNotFinishedRequest_doesNotClearRequest() {
     future.cancel(false);
 
-    verify(handler, never()).post(eq(future));
+    verify(request, never()).clear();
   }
 
   @Test
-  public void testDoesNotRepeatedlyClearRequestOnMainThreadIfCancelledRepeatedly() {
+  public void testDoesNotRepeatedlyClearRequestIfCancelledRepeatedly() {
     future.cancel(true);
     future.cancel(true);
 
-    verify(handler, times(1)).post(any(Runnable.class));
-  }
-
-  @Test
-  public void testClearsRequestOnRun() {
-    future.run();
-
-    verify(request).clear();
+    verify(request, times(1)).clear();
   }
 
   @Test
@@ -231,14 +220,14 @@ public class RequestFutureTargetTest {
   @Test(expected = IllegalArgumentException.class)
   public void testThrowsExceptionIfGetCalledOnMainThread()
       throws ExecutionException, InterruptedException {
-    future = new RequestFutureTarget<>(handler, width, height, true, waiter);
+    future = new RequestFutureTarget<>(width, height, true, waiter);
     future.get();
   }
 
   @Test
   public void testGetSucceedsOnMainThreadIfDone()
       throws ExecutionException, InterruptedException {
-    future = new RequestFutureTarget<>(handler, width, height, true, waiter);
+    future = new RequestFutureTarget<>(width, height, true, waiter);
     future.onResourceReady(
         /*resource=*/ new Object(),
         /*model=*/ null,
@@ -37,12 +37,14 @@ import com.bumptech.glide.request.target.Target;
 import com.bumptech.glide.request.transition.Transition;
 import com.bumptech.glide.request.transition.TransitionFactory;
 import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.util.Executors;
 import com.google.common.base.Equivalence;
 import com.google.common.testing.EquivalenceTester;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -268,7 +270,8 @@ public class SingleRequestTest {
             anyBoolean(),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class));
+            any(ResourceCallback.class),
+            any(Executor.class));
   }
 
   @Test
@@ -302,7 +305,8 @@ public class SingleRequestTest {
             anyBoolean(),
             anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class)))
+            any(ResourceCallback.class),
+            any(Executor.class)))
         .thenReturn(loadStatus);
 
     SingleRequest<List> request = builder.build();
@@ -569,7 +573,8 @@ public class SingleRequestTest {
             anyBoolean(),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class)))
+            any(ResourceCallback.class),
+            any(Executor.class)))
         .thenAnswer(new Answer<Object>() {
           @Override
           public Object answer(InvocationOnMock invocation) {
@@ -703,7 +708,8 @@ public class SingleRequestTest {
             anyBoolean(),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class));
+            any(ResourceCallback.class),
+            any(Executor.class));
   }
 
   @Test
@@ -741,7 +747,8 @@ public class SingleRequestTest {
             anyBoolean(),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class)))
+            any(ResourceCallback.class),
+            any(Executor.class)))
         .thenAnswer(new CallResourceCallback(builder.resource));
     SingleRequest<List> request = builder.build();
 
@@ -785,7 +792,8 @@ public class SingleRequestTest {
             anyBoolean(),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class));
+            any(ResourceCallback.class),
+            any(Executor.class));
   }
 
 
@@ -818,7 +826,8 @@ public class SingleRequestTest {
             eq(true),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class));
+            any(ResourceCallback.class),
+            any(Executor.class));
   }
 
   @Test
@@ -850,7 +859,8 @@ public class SingleRequestTest {
             eq(false),
             /*useAnimationPool=*/ anyBoolean(),
             anyBoolean(),
-            any(ResourceCallback.class));
+            any(ResourceCallback.class),
+            any(Executor.class));
   }
 
   @Test
@@ -1025,7 +1035,8 @@ public class SingleRequestTest {
           requestListener,
           requestCoordinator,
           engine,
-          transitionFactory);
+          transitionFactory,
+          Executors.directExecutor());
     }
   }
 
@@ -1062,7 +1073,7 @@ public class SingleRequestTest {
       ResourceCallback cb =
           (ResourceCallback) invocationOnMock.getArguments()[
               invocationOnMock.getArguments().length
-                  - 1];
+                  - 2];
       cb.onResourceReady(resource, DataSource.REMOTE);
       return null;
     }
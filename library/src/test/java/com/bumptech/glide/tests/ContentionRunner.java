@@ -0,0 +1,123 @@
+package com.bumptech.glide.tests;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the same workload on several threads at once so that tests can verify thread safe classes
+ * under contention and, in benchmarks, compare how long different implementations take.
+ */
+public final class ContentionRunner {
+  private static final String RUN_BENCHMARKS_PROPERTY = "glide.runBenchmarks";
+
+  private ContentionRunner() {
+    // Utility class.
+  }
+
+  /**
+   * Returns {@code true} if benchmarks were requested, for example with
+   * {@code ./gradlew :library:testDebugUnitTest -PrunBenchmarks}.
+   *
+   * <p>Benchmarks depend on the speed and load of the machine they run on, so they're skipped by
+   * default.
+   */
+  public static boolean isBenchmarkEnabled() {
+    return Boolean.getBoolean(RUN_BENCHMARKS_PROPERTY);
+  }
+
+  /**
+   * Returns {@code true} if the given number of threads can run at the same time on this machine.
+   *
+   * <p>On a machine with fewer processors the threads take turns instead of contending, so
+   * contention benchmarks say nothing about the implementations they compare.
+   */
+  public static boolean canRunInParallel(int threadCount) {
+    return Runtime.getRuntime().availableProcessors() >= threadCount;
+  }
+
+  /**
+   * Starts {@code threadCount} threads that each run the given task at the same time, waits for
+   * all of them to finish and fails if any of them throws.
+   */
+  public static Result run(int threadCount, long timeoutSeconds, final Task task)
+      throws InterruptedException {
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threadCount);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final int thread = t;
+      Thread worker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            task.run(thread);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable e) {
+            error.compareAndSet(null, e);
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+      worker.start();
+      threads.add(worker);
+    }
+
+    long startTime = System.nanoTime();
+    start.countDown();
+    assertThat(done.await(timeoutSeconds, TimeUnit.SECONDS)).isTrue();
+    long elapsedNanos = System.nanoTime() - startTime;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+    return new Result(threadCount, elapsedNanos);
+  }
+
+  /** The workload run by each thread. */
+  public interface Task {
+    /**
+     * Runs the workload on the thread with the given index, from {@code 0} to the number of
+     * threads minus one.
+     */
+    void run(int thread) throws Exception;
+  }
+
+  /** The outcome of a single run. */
+  public static final class Result {
+    private final int threadCount;
+    private final long elapsedNanos;
+
+    Result(int threadCount, long elapsedNanos) {
+      this.threadCount = threadCount;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Returns the time between starting the threads and the last of them finishing. */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /** Returns whichever of this result and the given result took less time. */
+    public Result fastest(Result other) {
+      return other.elapsedNanos < elapsedNanos ? other : this;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{threadCount=" + threadCount
+          + ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "}";
+    }
+  }
+}
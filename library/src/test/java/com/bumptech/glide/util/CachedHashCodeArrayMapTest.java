@@ -0,0 +1,72 @@
+package com.bumptech.glide.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CachedHashCodeArrayMapTest {
+  private CachedHashCodeArrayMap<String, String> map;
+  private Map<String, String> expected;
+
+  @Before
+  public void setUp() {
+    map = new CachedHashCodeArrayMap<>();
+    expected = new HashMap<>();
+    put("key", "value");
+    // Cache the hash code before each mutation below.
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void hashCode_afterPut_isUpdated() {
+    put("other", "value");
+
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void hashCode_afterSetValueAt_isUpdated() {
+    map.setValueAt(map.indexOfKey("key"), "newValue");
+    expected.put("key", "newValue");
+
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void hashCode_afterRemove_isUpdated() {
+    put("other", "value");
+    map.hashCode();
+    map.remove("other");
+    expected.remove("other");
+
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void hashCode_afterPutAll_isUpdated() {
+    CachedHashCodeArrayMap<String, String> other = new CachedHashCodeArrayMap<>();
+    other.put("other", "value");
+    map.putAll(other);
+    expected.put("other", "value");
+
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void hashCode_afterClear_isUpdated() {
+    map.clear();
+
+    assertThat(map.hashCode()).isEqualTo(0);
+  }
+
+  private void put(String key, String value) {
+    map.put(key, value);
+    expected.put(key, value);
+  }
+}